@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchCriteria;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.CriteriaBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Criteria of a conversation : reading them back from the conversation data, adding the criterion of a response and writing them in the
+ * conversation data, as done by the search processor on each response
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Fork( 1 )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+public class CriteriaBenchmark
+{
+    private static final String [ ] NAMES = {
+            "familyname", "name", "direction", "fonction", "site", "office", "street", "city"
+    };
+
+    @Param( {
+            "20", "200"
+    } )
+    private int _nValueLength;
+
+    private CriteriaBuilder _builder;
+    private String _strSerializedCriteria;
+    private SearchCriteria _criteria;
+    private String _strResponse;
+
+    /**
+     * Builds criteria with long values holding the characters escaped in the serialized form and in the filters
+     */
+    @Setup
+    public void setUp( )
+    {
+        Random random = new Random( 42 );
+        _builder = SyntheticDirectory.getCriteriaBuilder( );
+
+        SearchCriteria criteria = SearchCriteria.EMPTY;
+
+        for ( String strName : NAMES )
+        {
+            criteria = criteria.with( _builder.createCriteria( strName, SyntheticDirectory.sentence( random, _nValueLength ) + ", (a:b) \\ *" ) );
+        }
+
+        _criteria = criteria;
+        _strSerializedCriteria = criteria.serialize( );
+        _strResponse = SyntheticDirectory.sentence( random, _nValueLength );
+    }
+
+    /**
+     * Criteria read back from the conversation data
+     * 
+     * @return The filter
+     */
+    @Benchmark
+    public String parse( )
+    {
+        return _builder.build( SearchCriteria.parse( _strSerializedCriteria ) ).getFilter( );
+    }
+
+    /**
+     * Criterion of a response added to the previous criteria
+     * 
+     * @return The filter
+     */
+    @Benchmark
+    public String addCriterion( )
+    {
+        return _criteria.with( _builder.createCriteria( "mail", _strResponse ) ).getFilter( );
+    }
+
+    /**
+     * Criteria written in the conversation data
+     * 
+     * @return The serialized criteria
+     */
+    @Benchmark
+    public String serialize( )
+    {
+        return _criteria.serialize( );
+    }
+}
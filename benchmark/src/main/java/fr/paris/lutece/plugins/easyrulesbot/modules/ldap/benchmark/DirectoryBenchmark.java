@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.PersonComparator;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Directory of a search result : sorting of the persons and rendering of the first page with the module template. The template is read from
+ * the webapp directory of the module (system property benchmark.templates, relative to the benchmark directory by default). The i18n keys are
+ * left as is since the Lutece template service is not started.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Fork( 1 )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+public class DirectoryBenchmark
+{
+    private static final String PROPERTY_TEMPLATES = "benchmark.templates";
+    private static final String DEFAULT_TEMPLATES = "../webapp/WEB-INF/templates";
+    private static final String TEMPLATE_DIRECTORY = "skin/plugins/easyrulesbot/modules/ldap/ldap.html";
+    private static final String KEY_SORT = "familyname";
+
+    @Param( {
+            "1000"
+    } )
+    private int _nPersons;
+
+    @Param( {
+            "20"
+    } )
+    private int _nPageSize;
+
+    private List<Person> _listPersons;
+    private List<Person> _listSortedPersons;
+    private Template _template;
+
+    /**
+     * Builds the persons and loads the template
+     * 
+     * @throws IOException
+     *             if the template can't be read
+     */
+    @Setup
+    public void setUp( ) throws IOException
+    {
+        _listPersons = SyntheticDirectory.createPersons( _nPersons );
+        _listSortedPersons = sort( );
+
+        Configuration configuration = new Configuration( Configuration.VERSION_2_3_28 );
+        configuration.setDirectoryForTemplateLoading( new File( System.getProperty( PROPERTY_TEMPLATES, DEFAULT_TEMPLATES ) ) );
+        configuration.setDefaultEncoding( "UTF-8" );
+        _template = configuration.getTemplate( TEMPLATE_DIRECTORY );
+    }
+
+    /**
+     * Sorting of the persons in display order, done once per search
+     * 
+     * @return The sorted persons
+     */
+    @Benchmark
+    public List<Person> sort( )
+    {
+        List<Person> listPersons = new ArrayList<Person>( _listPersons );
+        Collections.sort( listPersons, new PersonComparator( KEY_SORT, Locale.FRENCH ) );
+
+        return listPersons;
+    }
+
+    /**
+     * Rendering of the bot message : summary and first page
+     * 
+     * @return The HTML
+     * @throws IOException
+     *             if the template can't be written
+     * @throws TemplateException
+     *             if the template fails
+     */
+    @Benchmark
+    public String render( ) throws IOException, TemplateException
+    {
+        Map<String, String> mapCriteria = new LinkedHashMap<String, String>( );
+        mapCriteria.put( "direction", "affaires culturelles" );
+        mapCriteria.put( "fonction", "chef de projet" );
+
+        Map<String, Object> model = new HashMap<String, Object>( );
+        model.put( "persons_list", _listSortedPersons.subList( 0, Math.min( _nPageSize, _listSortedPersons.size( ) ) ) );
+        model.put( "total_size", _listSortedPersons.size( ) );
+        model.put( "first_index", 0 );
+        model.put( "next_page", 1 );
+        model.put( "handle", "0b7c4d6e-2f1a-4e8b-9c3d-5a6f7e8d9c0b" );
+        model.put( "directory_url", "servlet/plugins/easyrulesbot/ldap/directory" );
+        model.put( "criteria_list", mapCriteria );
+        model.put( "truncated", Boolean.FALSE );
+        model.put( "unavailable", Boolean.FALSE );
+        model.put( "max_results", 1000 );
+
+        StringWriter writer = new StringWriter( 16384 );
+        _template.process( model, writer );
+
+        return writer.toString( );
+    }
+}
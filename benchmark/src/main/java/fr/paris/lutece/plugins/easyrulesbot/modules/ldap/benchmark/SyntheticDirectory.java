@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.AttributeProjection;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.CriteriaBuilder;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.FilterTemplate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
+/**
+ * Synthetic directory data shaped like the one of a city administration : the attribute mapping and filter templates of a typical
+ * configuration, and entries built from a seeded random generator so that every run sees the same data.
+ */
+public final class SyntheticDirectory
+{
+    private static final long SEED = 20181018L;
+
+    private static final String [ ] [ ] ATTRIBUTES = {
+            {
+                    "familyname", "sn"
+            }, {
+                    "name", "givenName"
+            }, {
+                    "direction", "ou"
+            }, {
+                    "fonction", "title"
+            }, {
+                    "mail", "mail"
+            }, {
+                    "phonenumber", "telephoneNumber"
+            }, {
+                    "mobilepro", "mobile"
+            }, {
+                    "fax", "facsimileTelephoneNumber"
+            }, {
+                    "adminposition1", "businessCategory"
+            }, {
+                    "adminposition2", "departmentNumber"
+            }, {
+                    "site", "physicalDeliveryOfficeName"
+            }, {
+                    "office", "roomNumber"
+            }, {
+                    "street", "street"
+            }, {
+                    "postalcode", "postalCode"
+            }, {
+                    "city", "l"
+            }
+    };
+
+    private static final String [ ] FAMILY_NAMES = {
+            "Martin", "Bernard", "Dubois", "Thomas", "Robert", "Richard", "Petit", "Durand", "Leroy", "Moreau", "Simon", "Laurent", "Lefebvre",
+            "Michel", "Garcia", "David", "Bertrand", "Roux", "Vincent", "Fournier", "Morel", "Girard", "Andr\u00e9", "Lef\u00e8vre", "Mercier", "Dupont",
+            "Lambert", "Bonnet", "Fran\u00e7ois", "Martinez"
+    };
+    private static final String [ ] NAMES = {
+            "Marie", "Jean", "Pierre", "Michel", "Andr\u00e9", "Philippe", "Nathalie", "Isabelle", "Sylvie", "Catherine", "Fran\u00e7oise", "Nicolas",
+            "Christophe", "St\u00e9phane", "S\u00e9bastien", "Julien", "C\u00e9line", "Sandrine", "H\u00e9l\u00e8ne", "J\u00e9r\u00f4me"
+    };
+    private static final String [ ] DIRECTIONS = {
+            "Direction des Affaires Culturelles", "Direction de la Voirie et des D\u00e9placements", "Direction des Espaces Verts et de l'Environnement",
+            "Direction des Ressources Humaines", "Direction des Syst\u00e8mes d'Information", "Direction des Finances et des Achats",
+            "Direction de la Propret\u00e9 et de l'Eau", "Direction des Affaires Scolaires"
+    };
+    private static final String [ ] FONCTIONS = {
+            "Chef de projet", "Charg\u00e9 d'\u00e9tudes", "Responsable de service", "Assistant de direction", "Ing\u00e9nieur", "Technicien", "Agent d'accueil"
+    };
+    private static final String [ ] SITES = {
+            "H\u00f4tel de Ville", "Morland", "Bercy", "Austerlitz", "Lobau"
+    };
+
+    /**
+     * Private constructor
+     */
+    private SyntheticDirectory( )
+    {
+    }
+
+    /**
+     * Returns the attribute mapping : LDAP attribute names by person key
+     * 
+     * @return The mapping
+     */
+    public static Map<String, String> getAttributeNames( )
+    {
+        Map<String, String> mapAttributeNames = new LinkedHashMap<String, String>( );
+
+        for ( String [ ] attribute : ATTRIBUTES )
+        {
+            mapAttributeNames.put( attribute [0], attribute [1] );
+        }
+
+        return mapAttributeNames;
+    }
+
+    /**
+     * Returns the attribute projection of the mapping
+     * 
+     * @return The projection
+     */
+    public static AttributeProjection getProjection( )
+    {
+        return new AttributeProjection( getAttributeNames( ), Arrays.asList( "direction", "site", "city", "postalcode", "street" ) );
+    }
+
+    /**
+     * Returns a criteria builder with a substring filter template per person key
+     * 
+     * @return The builder
+     */
+    public static CriteriaBuilder getCriteriaBuilder( )
+    {
+        Map<String, FilterTemplate> mapTemplates = new LinkedHashMap<String, FilterTemplate>( );
+
+        for ( Map.Entry<String, String> entry : getFilterPatterns( ).entrySet( ) )
+        {
+            mapTemplates.put( entry.getKey( ), new FilterTemplate( entry.getValue( ) ) );
+        }
+
+        return new CriteriaBuilder( mapTemplates );
+    }
+
+    /**
+     * Returns the filter patterns : the default one on names and directions, a substring filter for the other person keys
+     * 
+     * @return The patterns by person key
+     */
+    public static Map<String, String> getFilterPatterns( )
+    {
+        Map<String, String> mapPatterns = new LinkedHashMap<String, String>( );
+        mapPatterns.put( "default", "(|(sn=*{0}*)(givenName=*{0}*)(ou=*{0}*))" );
+
+        for ( String [ ] attribute : ATTRIBUTES )
+        {
+            mapPatterns.put( attribute [0], "(" + attribute [1] + "=*{0}*)" );
+        }
+
+        return mapPatterns;
+    }
+
+    /**
+     * Returns the seeded generator of the data
+     * 
+     * @return The generator
+     */
+    public static Random createRandom( )
+    {
+        return new Random( SEED );
+    }
+
+    /**
+     * Builds directory entries
+     * 
+     * @param nCount
+     *            The number of entries
+     * @return The entries
+     */
+    public static List<Attributes> createEntries( int nCount )
+    {
+        Random random = createRandom( );
+        List<Attributes> listEntries = new ArrayList<Attributes>( nCount );
+
+        for ( int i = 0; i < nCount; i++ )
+        {
+            listEntries.add( createEntry( random, i ) );
+        }
+
+        return listEntries;
+    }
+
+    /**
+     * Builds a directory entry
+     * 
+     * @param random
+     *            The generator
+     * @param nIndex
+     *            The index of the entry, which makes its mail unique
+     * @return The entry attributes
+     */
+    public static Attributes createEntry( Random random, int nIndex )
+    {
+        String strFamilyName = pick( random, FAMILY_NAMES );
+        String strName = pick( random, NAMES );
+        Attributes attributes = new BasicAttributes( true );
+        attributes.put( "sn", strFamilyName );
+        attributes.put( "givenName", strName );
+        attributes.put( "ou", pick( random, DIRECTIONS ) );
+        attributes.put( "title", pick( random, FONCTIONS ) );
+        attributes.put( "mail", Normalizer.normalize( strName + "." + strFamilyName + nIndex + "@paris.fr", Normalizer.Form.NFD )
+                .replaceAll( "\\p{M}", "" ).toLowerCase( Locale.ROOT ) );
+        attributes.put( "telephoneNumber", String.format( "01 42 76 %02d %02d", random.nextInt( 100 ), random.nextInt( 100 ) ) );
+
+        if ( random.nextInt( 3 ) == 0 )
+        {
+            attributes.put( "mobile", String.format( "06 %02d %02d %02d %02d", random.nextInt( 100 ), random.nextInt( 100 ), random.nextInt( 100 ),
+                    random.nextInt( 100 ) ) );
+        }
+
+        if ( random.nextInt( 10 ) == 0 )
+        {
+            // A few entries have several values, as in real directories
+            BasicAttribute category = new BasicAttribute( "businessCategory" );
+            category.add( "Encadrement" );
+            category.add( "R\u00e9f\u00e9rent" );
+            attributes.put( category );
+        }
+
+        attributes.put( "physicalDeliveryOfficeName", pick( random, SITES ) );
+        attributes.put( "roomNumber", String.valueOf( 100 + random.nextInt( 500 ) ) );
+        attributes.put( "street", random.nextInt( 100 ) + " rue de Rivoli" );
+        attributes.put( "postalCode", "750" + ( 10 + random.nextInt( 11 ) ) );
+        attributes.put( "l", "Paris" );
+
+        return attributes;
+    }
+
+    /**
+     * Returns a value a user could search for a person key
+     * 
+     * @param random
+     *            The generator
+     * @param strKey
+     *            The person key : familyname, name or direction
+     * @return The value, a single word for the directions
+     */
+    public static String pickValue( Random random, String strKey )
+    {
+        if ( "familyname".equals( strKey ) )
+        {
+            return pick( random, FAMILY_NAMES );
+        }
+
+        if ( "name".equals( strKey ) )
+        {
+            return pick( random, NAMES );
+        }
+
+        String [ ] words = pick( random, DIRECTIONS ).split( " " );
+
+        return words [words.length - 1];
+    }
+
+    /**
+     * Builds persons
+     * 
+     * @param nCount
+     *            The number of persons
+     * @return The persons
+     */
+    public static List<Person> createPersons( int nCount )
+    {
+        AttributeProjection projection = getProjection( );
+        Set<String> setMultiValuedAttributes = new HashSet<String>( );
+        List<Person> listPersons = new ArrayList<Person>( nCount );
+
+        try
+        {
+            for ( Attributes attributes : createEntries( nCount ) )
+            {
+                listPersons.add( projection.map( attributes, setMultiValuedAttributes ) );
+            }
+        }
+        catch( NamingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+
+        return listPersons;
+    }
+
+    /**
+     * Builds a synonym map : values of the search field, each one with several terms
+     * 
+     * @param nValues
+     *            The number of values
+     * @param nTermsPerValue
+     *            The number of terms of each value
+     * @return The terms by value
+     */
+    public static Map<String, List<String>> createSynonyms( int nValues, int nTermsPerValue )
+    {
+        Random random = createRandom( );
+        Map<String, List<String>> mapValueTerms = new LinkedHashMap<String, List<String>>( );
+
+        for ( int i = 0; i < nValues; i++ )
+        {
+            List<String> listTerms = new ArrayList<String>( nTermsPerValue );
+
+            for ( int j = 0; j < nTermsPerValue; j++ )
+            {
+                listTerms.add( word( random, 4 + random.nextInt( 8 ) ) + ( ( j % 2 == 0 ) ? " " + word( random, 3 + random.nextInt( 6 ) ) : "" ) );
+            }
+
+            mapValueTerms.put( "value" + i, listTerms );
+        }
+
+        return mapValueTerms;
+    }
+
+    /**
+     * Builds a sentence of random words
+     * 
+     * @param random
+     *            The generator
+     * @param nLength
+     *            The min length of the sentence
+     * @return The sentence
+     */
+    public static String sentence( Random random, int nLength )
+    {
+        StringBuilder sb = new StringBuilder( nLength + 16 );
+
+        while ( sb.length( ) < nLength )
+        {
+            if ( sb.length( ) > 0 )
+            {
+                sb.append( ' ' );
+            }
+
+            sb.append( word( random, 2 + random.nextInt( 9 ) ) );
+        }
+
+        return sb.toString( );
+    }
+
+    /**
+     * Builds a random lower case word
+     * 
+     * @param random
+     *            The generator
+     * @param nLength
+     *            The length
+     * @return The word
+     */
+    private static String word( Random random, int nLength )
+    {
+        char [ ] word = new char [ nLength];
+
+        for ( int i = 0; i < nLength; i++ )
+        {
+            word [i] = (char) ( 'a' + random.nextInt( 26 ) );
+        }
+
+        return new String( word );
+    }
+
+    /**
+     * Picks a value
+     * 
+     * @param random
+     *            The generator
+     * @param values
+     *            The values
+     * @return A value
+     */
+    private static String pick( Random random, String [ ] values )
+    {
+        return values [random.nextInt( values.length )];
+    }
+}
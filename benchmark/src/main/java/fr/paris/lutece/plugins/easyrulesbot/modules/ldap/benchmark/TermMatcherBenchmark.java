@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.matcher.TermMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Search field detection of the criteria loop processor : the terms of a large synonym map matched in the user responses
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Fork( 1 )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+public class TermMatcherBenchmark
+{
+    private static final int RESPONSES = 64;
+
+    @Param( {
+            "100", "10000"
+    } )
+    private int _nValues;
+
+    @Param( {
+            "5"
+    } )
+    private int _nTermsPerValue;
+
+    private Map<String, List<String>> _mapValueTerms;
+    private TermMatcher _matcher;
+    private String [ ] _responses;
+    private int _nResponse;
+
+    /**
+     * Builds the synonym map and responses, half of them holding a term
+     */
+    @Setup
+    public void setUp( )
+    {
+        Random random = new Random( 42 );
+        _mapValueTerms = SyntheticDirectory.createSynonyms( _nValues, _nTermsPerValue );
+        _matcher = new TermMatcher( _mapValueTerms );
+
+        List<String> listTerms = new ArrayList<String>( );
+
+        for ( List<String> listValueTerms : _mapValueTerms.values( ) )
+        {
+            listTerms.addAll( listValueTerms );
+        }
+
+        _responses = new String [ RESPONSES];
+
+        for ( int i = 0; i < RESPONSES; i++ )
+        {
+            String strResponse = SyntheticDirectory.sentence( random, 40 );
+            _responses [i] = ( i % 2 == 0 ) ? strResponse + " " + listTerms.get( random.nextInt( listTerms.size( ) ) ) : strResponse;
+        }
+    }
+
+    /**
+     * Value of the search field found in a response
+     * 
+     * @return The value
+     */
+    @Benchmark
+    public String match( )
+    {
+        _nResponse = ( _nResponse + 1 ) % RESPONSES;
+
+        return _matcher.match( _responses [_nResponse] );
+    }
+
+    /**
+     * Compilation of the synonym map, done when the terms file changes
+     * 
+     * @return The matcher
+     */
+    @Benchmark
+    public TermMatcher compile( )
+    {
+        return new TermMatcher( _mapValueTerms );
+    }
+}
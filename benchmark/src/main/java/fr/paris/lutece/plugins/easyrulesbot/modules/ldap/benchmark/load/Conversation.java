@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark.load;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark.SyntheticDirectory;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchState;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.AddCriteriaLoopProcessor;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.DirectoryRenderer;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.PersonSearchService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.SearchValueProcessor;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.Histogram;
+import fr.paris.lutece.plugins.easyrulesbot.service.response.exceptions.ResponseProcessingException;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulated conversation following the rules of the ldap.yml bot : a first search (InitSearchValue), then while the bot offers to refine the
+ * search, the choice of a criterion (AddCriteria) and its value (SearchValue). The conversation data is handled as the bot does : each
+ * processor result is stored under the data key of its rule. The directory of each search is then rendered as the directory servlet does when
+ * the message is displayed.
+ */
+public class Conversation
+{
+    private static final String KEY_INITIAL_SEARCH_VALUE = "initialsearchvalue";
+    private static final String KEY_SEARCH_VALUE = "searchvalue";
+    private static final String KEY_SEARCH_FIELD = "searchfield";
+    private static final String KEY_CONTINUE_LOOP = "continueloop";
+    private static final String KEY_RESULT_HANDLE = "ldapresult";
+    private static final String [ ] REFINEMENT_FIELDS = {
+            "name", "direction"
+    };
+
+    private final SearchValueProcessor _searchValueProcessor;
+    private final AddCriteriaLoopProcessor _addCriteriaProcessor;
+    private final Random _random;
+    private final int _nMaxRefinements;
+
+    /**
+     * Constructor
+     * 
+     * @param searchValueProcessor
+     *            The processor of the search values
+     * @param addCriteriaProcessor
+     *            The processor of the criteria choice
+     * @param random
+     *            The generator of the user responses
+     * @param nMaxRefinements
+     *            The max number of criteria added after the first search
+     */
+    public Conversation( SearchValueProcessor searchValueProcessor, AddCriteriaLoopProcessor addCriteriaProcessor, Random random, int nMaxRefinements )
+    {
+        _searchValueProcessor = searchValueProcessor;
+        _addCriteriaProcessor = addCriteriaProcessor;
+        _random = random;
+        _nMaxRefinements = nMaxRefinements;
+    }
+
+    /**
+     * Runs a conversation
+     * 
+     * @param searchLatencies
+     *            The histogram of the search turns latencies, in microseconds
+     * @param criteriaLatencies
+     *            The histogram of the criteria choice turns latencies, in microseconds
+     * @return The number of turns
+     * @throws ResponseProcessingException
+     *             if a response is not understood
+     */
+    public int run( Histogram searchLatencies, Histogram criteriaLatencies ) throws ResponseProcessingException
+    {
+        Map<String, String> mapData = new HashMap<String, String>( );
+        Locale locale = Locale.FRENCH;
+
+        long lStart = System.nanoTime( );
+        mapData.put( KEY_INITIAL_SEARCH_VALUE,
+                _searchValueProcessor.processResponse( SyntheticDirectory.pickValue( _random, "familyname" ), locale, mapData ) );
+        display( mapData, locale );
+        searchLatencies.record( elapsedMicros( lStart ) );
+
+        int nTurns = 1;
+
+        for ( int i = 0; i < _nMaxRefinements && Boolean.parseBoolean( mapData.get( KEY_CONTINUE_LOOP ) ); i++ )
+        {
+            String strField = REFINEMENT_FIELDS [i % REFINEMENT_FIELDS.length];
+
+            lStart = System.nanoTime( );
+            mapData.put( KEY_SEARCH_FIELD, _addCriteriaProcessor.processResponse( strField, locale, mapData ) );
+            criteriaLatencies.record( elapsedMicros( lStart ) );
+
+            lStart = System.nanoTime( );
+            mapData.put( KEY_SEARCH_VALUE, _searchValueProcessor.processResponse( SyntheticDirectory.pickValue( _random, strField ), locale, mapData ) );
+            display( mapData, locale );
+            searchLatencies.record( elapsedMicros( lStart ) );
+
+            nTurns += 2;
+        }
+
+        return nTurns;
+    }
+
+    /**
+     * Renders the directory of the last search, as the directory servlet does when the placeholder of the message is displayed
+     * 
+     * @param mapData
+     *            The conversation data
+     * @param locale
+     *            The locale
+     */
+    private static void display( Map<String, String> mapData, Locale locale )
+    {
+        String strHandle = mapData.get( KEY_RESULT_HANDLE );
+        SearchState state = PersonSearchService.getInstance( ).getSearchState( strHandle );
+
+        if ( state != null )
+        {
+            DirectoryRenderer.renderDirectory( state, strHandle, locale );
+        }
+    }
+
+    /**
+     * Returns the time elapsed since a start time
+     * 
+     * @param lStart
+     *            The start time in nanoseconds
+     * @return The elapsed time in microseconds
+     */
+    private static long elapsedMicros( long lStart )
+    {
+        return TimeUnit.NANOSECONDS.toMicros( System.nanoTime( ) - lStart );
+    }
+}
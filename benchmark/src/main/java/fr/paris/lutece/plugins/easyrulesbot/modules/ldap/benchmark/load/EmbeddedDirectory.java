@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark.load;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark.SyntheticDirectory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+/**
+ * In-process LDAP server seeded with the synthetic directory. It listens on an ephemeral port of the loopback interface.
+ */
+public final class EmbeddedDirectory
+{
+    public static final String BASE_DN = "dc=paris,dc=fr";
+    public static final String PEOPLE_DN = "ou=people," + BASE_DN;
+    public static final String BIND_DN = "cn=Directory Manager";
+    public static final String BIND_PASSWORD = "password";
+
+    private static final int BATCH_SIZE = 10000;
+
+    private final InMemoryDirectoryServer _server;
+
+    /**
+     * Starts the server and adds the persons
+     * 
+     * @param nPersons
+     *            The number of persons
+     * @throws LDAPException
+     *             if the server can't be started
+     * @throws NamingException
+     *             if an entry can't be read
+     */
+    public EmbeddedDirectory( int nPersons ) throws LDAPException, NamingException
+    {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig( BASE_DN );
+        config.addAdditionalBindCredentials( BIND_DN, BIND_PASSWORD );
+        config.setListenerConfigs( InMemoryListenerConfig.createLDAPConfig( "default", 0 ) );
+        // The server keeps the changes log off and doesn't check the entries against the schema, to load large directories quickly
+        config.setSchema( null );
+        config.setMaxChangeLogEntries( 0 );
+
+        _server = new InMemoryDirectoryServer( config );
+        _server.add( new Entry( BASE_DN, new com.unboundid.ldap.sdk.Attribute( "objectClass", "top", "domain" ),
+                new com.unboundid.ldap.sdk.Attribute( "dc", "paris" ) ) );
+        _server.add( new Entry( PEOPLE_DN, new com.unboundid.ldap.sdk.Attribute( "objectClass", "top", "organizationalUnit" ),
+                new com.unboundid.ldap.sdk.Attribute( "ou", "people" ) ) );
+
+        Random random = SyntheticDirectory.createRandom( );
+        List<Entry> listEntries = new ArrayList<Entry>( BATCH_SIZE );
+
+        for ( int i = 0; i < nPersons; i++ )
+        {
+            listEntries.add( toEntry( i, SyntheticDirectory.createEntry( random, i ) ) );
+
+            if ( listEntries.size( ) == BATCH_SIZE )
+            {
+                _server.addEntries( listEntries );
+                listEntries.clear( );
+            }
+        }
+
+        if ( !listEntries.isEmpty( ) )
+        {
+            _server.addEntries( listEntries );
+        }
+
+        _server.startListening( );
+    }
+
+    /**
+     * Returns the URL of the server
+     * 
+     * @return The URL
+     */
+    public String getUrl( )
+    {
+        return "ldap://localhost:" + _server.getListenPort( ) + "/";
+    }
+
+    /**
+     * Stops the server
+     */
+    public void shutdown( )
+    {
+        _server.shutDown( true );
+    }
+
+    /**
+     * Converts synthetic attributes to an entry of the people branch
+     * 
+     * @param nIndex
+     *            The index of the person
+     * @param attributes
+     *            The attributes
+     * @return The entry
+     * @throws NamingException
+     *             if an attribute can't be read
+     */
+    private static Entry toEntry( int nIndex, Attributes attributes ) throws NamingException
+    {
+        Entry entry = new Entry( "uid=p" + nIndex + "," + PEOPLE_DN );
+        entry.addAttribute( "objectClass", "top", "person", "organizationalPerson", "inetOrgPerson" );
+        entry.addAttribute( "uid", "p" + nIndex );
+        entry.addAttribute( "cn", attributes.get( "givenName" ).get( ) + " " + attributes.get( "sn" ).get( ) );
+
+        NamingEnumeration<? extends Attribute> enumeration = attributes.getAll( );
+
+        while ( enumeration.hasMore( ) )
+        {
+            Attribute attribute = enumeration.next( );
+
+            for ( int i = 0; i < attribute.size( ); i++ )
+            {
+                entry.addAttribute( attribute.getID( ), String.valueOf( attribute.get( i ) ) );
+            }
+        }
+
+        return entry;
+    }
+}
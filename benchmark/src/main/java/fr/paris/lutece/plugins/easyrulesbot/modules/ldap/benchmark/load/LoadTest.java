@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark.load;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.AddCriteriaLoopProcessor;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.SearchValueProcessor;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.Histogram;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.SearchMetrics;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Load test of the bot searches : concurrent simulated conversations against an embedded directory. It runs offline, the options being system
+ * properties :
+ * <ul>
+ * <li>load.persons : number of persons of the directory (10000)</li>
+ * <li>load.conversations : number of concurrent conversations (50)</li>
+ * <li>load.warmup and load.duration : warm up and measure durations in seconds (10 and 60)</li>
+ * <li>load.refinements : max number of criteria added to the first search of a conversation (3)</li>
+ * <li>load.webapp : webapp directory of the module (../webapp)</li>
+ * <li>load.property.&lt;key&gt; : module property, without its easyrulesbot-ldap. prefix, for instance load.property.refinement.enabled=false</li>
+ * </ul>
+ * Example : java -Xmx4g -Dload.persons=500000 -Dload.conversations=200 -cp target/benchmarks.jar
+ * fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark.load.LoadTest
+ */
+public final class LoadTest
+{
+    private static final String PROPERTY_PREFIX = "load.property.";
+    private static final String SEARCH_FIELD_FILE = "/WEB-INF/plugins/easyrulesbot/modules/ldap/searchfield.txt";
+    private static final long HEAP_SAMPLING_PERIOD = 100L;
+    private static final double MICROS_PER_MILLI = 1000.0;
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    /**
+     * Private constructor
+     */
+    private LoadTest( )
+    {
+    }
+
+    /**
+     * Main
+     * 
+     * @param args
+     *            Unused, the options are system properties
+     * @throws Exception
+     *             if the test can't be started
+     */
+    public static void main( String [ ] args ) throws Exception
+    {
+        int nPersons = Integer.getInteger( "load.persons", 10000 );
+        int nConversations = Integer.getInteger( "load.conversations", 50 );
+        int nWarmup = Integer.getInteger( "load.warmup", 10 );
+        int nDuration = Integer.getInteger( "load.duration", 60 );
+        int nRefinements = Integer.getInteger( "load.refinements", 3 );
+        File moduleWebapp = new File( System.getProperty( "load.webapp", "../webapp" ) );
+
+        Map<String, String> mapOverrides = new HashMap<String, String>( );
+
+        for ( String strName : System.getProperties( ).stringPropertyNames( ) )
+        {
+            if ( strName.startsWith( PROPERTY_PREFIX ) )
+            {
+                mapOverrides.put( strName.substring( PROPERTY_PREFIX.length( ) ), System.getProperty( strName ) );
+            }
+        }
+
+        long lStart = System.currentTimeMillis( );
+        EmbeddedDirectory directory = new EmbeddedDirectory( nPersons );
+        System.out.println( "Directory of " + nPersons + " persons started in " + ( System.currentTimeMillis( ) - lStart ) + " ms on "
+                + directory.getUrl( ) );
+
+        try
+        {
+            LuteceRuntime.start( moduleWebapp, directory, mapOverrides );
+            run( nConversations, nWarmup, nDuration, nRefinements );
+        }
+        finally
+        {
+            directory.shutdown( );
+        }
+    }
+
+    /**
+     * Runs the conversations : a warm up, whose results are dropped, then the measure
+     * 
+     * @param nConversations
+     *            The number of concurrent conversations
+     * @param nWarmup
+     *            The warm up duration in seconds
+     * @param nDuration
+     *            The measure duration in seconds
+     * @param nRefinements
+     *            The max number of criteria added to a search
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    private static void run( int nConversations, int nWarmup, int nDuration, int nRefinements ) throws InterruptedException
+    {
+        final SearchValueProcessor searchValueProcessor = createSearchValueProcessor( );
+        final AddCriteriaLoopProcessor addCriteriaProcessor = createAddCriteriaProcessor( );
+        final CountDownLatch stopped = new CountDownLatch( nConversations );
+        final AtomicReference<Statistics> statistics = new AtomicReference<Statistics>( new Statistics( ) );
+        final AtomicBoolean running = new AtomicBoolean( true );
+
+        for ( int i = 0; i < nConversations; i++ )
+        {
+            final Conversation conversation = new Conversation( searchValueProcessor, addCriteriaProcessor, new Random( i ), nRefinements );
+            Thread thread = new Thread( new Runnable( )
+            {
+                @Override
+                public void run( )
+                {
+                    try
+                    {
+                        while ( running.get( ) )
+                        {
+                            Statistics current = statistics.get( );
+
+                            try
+                            {
+                                current._lTurns.addAndGet( conversation.run( current._searchLatencies, current._criteriaLatencies ) );
+                                current._lConversations.incrementAndGet( );
+                            }
+                            catch( Exception e )
+                            {
+                                current._lErrors.incrementAndGet( );
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        stopped.countDown( );
+                    }
+                }
+            }, "load-conversation-" + i );
+            thread.setDaemon( true );
+            thread.start( );
+        }
+
+        System.out.println( "Warming up " + nConversations + " conversations for " + nWarmup + " s" );
+        TimeUnit.SECONDS.sleep( nWarmup );
+
+        Statistics measured = new Statistics( );
+        statistics.set( measured );
+
+        long lGcCount = getGcCount( );
+        long lGcTime = getGcTime( );
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor( );
+        sampler.scheduleAtFixedRate( new HeapSampler( measured ), 0, HEAP_SAMPLING_PERIOD, TimeUnit.MILLISECONDS );
+
+        System.out.println( "Measuring for " + nDuration + " s" );
+        long lStart = System.nanoTime( );
+        TimeUnit.SECONDS.sleep( nDuration );
+        running.set( false );
+        stopped.await( );
+
+        double dElapsed = ( System.nanoTime( ) - lStart ) / 1e9;
+        sampler.shutdownNow( );
+
+        report( measured, dElapsed, getGcCount( ) - lGcCount, getGcTime( ) - lGcTime );
+    }
+
+    /**
+     * Prints the results
+     * 
+     * @param statistics
+     *            The statistics of the measure
+     * @param dElapsed
+     *            The measure duration in seconds
+     * @param lGcCount
+     *            The number of collections during the measure
+     * @param lGcTime
+     *            The collection time during the measure in milliseconds
+     */
+    private static void report( Statistics statistics, double dElapsed, long lGcCount, long lGcTime )
+    {
+        System.out.println( );
+        System.out.println( String.format( "Conversations : %d (%.1f/s), turns : %d (%.1f/s), errors : %d", statistics._lConversations.get( ),
+                statistics._lConversations.get( ) / dElapsed, statistics._lTurns.get( ), statistics._lTurns.get( ) / dElapsed, statistics._lErrors.get( ) ) );
+        printLatencies( "Search turns", statistics._searchLatencies );
+        printLatencies( "Criteria turns", statistics._criteriaLatencies );
+        System.out.println( String.format( "Heap : max used %.1f MB, max committed %.1f MB, %d collections taking %d ms",
+                statistics._lMaxHeapUsed.get( ) / BYTES_PER_MEGABYTE, statistics._lMaxHeapCommitted.get( ) / BYTES_PER_MEGABYTE, lGcCount, lGcTime ) );
+
+        System.gc( );
+        System.out.println( String.format( "Heap used after a full collection : %.1f MB",
+                ManagementFactory.getMemoryMXBean( ).getHeapMemoryUsage( ).getUsed( ) / BYTES_PER_MEGABYTE ) );
+
+        System.out.println( );
+        System.out.println( "Search metrics since startup (including the warm up) :" );
+
+        for ( Map.Entry<String, Number> entry : SearchMetrics.getInstance( ).getSnapshot( ).entrySet( ) )
+        {
+            System.out.println( "  " + entry.getKey( ) + " = " + entry.getValue( ) );
+        }
+    }
+
+    /**
+     * Prints the percentiles of a latency histogram
+     * 
+     * @param strName
+     *            The name of the histogram
+     * @param histogram
+     *            The histogram in microseconds
+     */
+    private static void printLatencies( String strName, Histogram histogram )
+    {
+        System.out.println( String.format( "%s : %d, latency in ms : mean %.2f, p50 %.2f, p95 %.2f, p99 %.2f, p99.9 %.2f, max %.2f", strName,
+                histogram.getCount( ), histogram.getMean( ) / MICROS_PER_MILLI, histogram.getPercentile( 50 ) / MICROS_PER_MILLI,
+                histogram.getPercentile( 95 ) / MICROS_PER_MILLI, histogram.getPercentile( 99 ) / MICROS_PER_MILLI,
+                histogram.getPercentile( 99.9 ) / MICROS_PER_MILLI, histogram.getMax( ) / MICROS_PER_MILLI ) );
+    }
+
+    /**
+     * Creates the search value processor as configured in the module context
+     * 
+     * @return The processor
+     */
+    private static SearchValueProcessor createSearchValueProcessor( )
+    {
+        SearchValueProcessor processor = new SearchValueProcessor( );
+        processor.setSearchField( "searchfield" );
+        processor.setLdapSearch( "ldapsearch" );
+        processor.setShowDirectory( "showdirectory" );
+        processor.setContinueLoop( "continueloop" );
+        processor.setResultHandle( "ldapresult" );
+        processor.setInvalidResponseMessage( "Invalid search value" );
+
+        return processor;
+    }
+
+    /**
+     * Creates the criteria loop processor as configured in the module context
+     * 
+     * @return The processor
+     */
+    private static AddCriteriaLoopProcessor createAddCriteriaProcessor( )
+    {
+        AddCriteriaLoopProcessor processor = new AddCriteriaLoopProcessor( );
+        processor.setMutipleValuesMapFile( SEARCH_FIELD_FILE );
+        processor.setListLoopRules( Arrays.asList( "searchvalue" ) );
+        processor.setInvalidResponseMessage( "Invalid search field" );
+
+        return processor;
+    }
+
+    /**
+     * Returns the number of collections since startup
+     * 
+     * @return The count
+     */
+    private static long getGcCount( )
+    {
+        long lCount = 0;
+
+        for ( GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans( ) )
+        {
+            lCount += Math.max( 0, collector.getCollectionCount( ) );
+        }
+
+        return lCount;
+    }
+
+    /**
+     * Returns the collection time since startup
+     * 
+     * @return The time in milliseconds
+     */
+    private static long getGcTime( )
+    {
+        long lTime = 0;
+
+        for ( GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans( ) )
+        {
+            lTime += Math.max( 0, collector.getCollectionTime( ) );
+        }
+
+        return lTime;
+    }
+
+    /**
+     * Statistics of a phase of the test
+     */
+    private static final class Statistics
+    {
+        private final Histogram _searchLatencies = new Histogram( );
+        private final Histogram _criteriaLatencies = new Histogram( );
+        private final AtomicLong _lConversations = new AtomicLong( );
+        private final AtomicLong _lTurns = new AtomicLong( );
+        private final AtomicLong _lErrors = new AtomicLong( );
+        private final AtomicLong _lMaxHeapUsed = new AtomicLong( );
+        private final AtomicLong _lMaxHeapCommitted = new AtomicLong( );
+    }
+
+    /**
+     * Samples the heap use
+     */
+    private static final class HeapSampler implements Runnable
+    {
+        private final Statistics _statistics;
+
+        /**
+         * Constructor
+         * 
+         * @param statistics
+         *            The statistics to update
+         */
+        private HeapSampler( Statistics statistics )
+        {
+            _statistics = statistics;
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public void run( )
+        {
+            MemoryUsage usage = ManagementFactory.getMemoryMXBean( ).getHeapMemoryUsage( );
+            updateMax( _statistics._lMaxHeapUsed, usage.getUsed( ) );
+            updateMax( _statistics._lMaxHeapCommitted, usage.getCommitted( ) );
+        }
+
+        /**
+         * Updates a max value
+         * 
+         * @param lMax
+         *            The max
+         * @param lValue
+         *            The new value
+         */
+        private static void updateMax( AtomicLong lMax, long lValue )
+        {
+            long lCurrent = lMax.get( );
+
+            while ( lValue > lCurrent && !lMax.compareAndSet( lCurrent, lValue ) )
+            {
+                lCurrent = lMax.get( );
+            }
+        }
+    }
+}
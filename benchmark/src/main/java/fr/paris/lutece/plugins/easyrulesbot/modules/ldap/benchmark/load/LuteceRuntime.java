@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark.load;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.benchmark.SyntheticDirectory;
+import fr.paris.lutece.portal.service.template.AppTemplateService;
+import fr.paris.lutece.portal.service.util.AppPathService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+
+/**
+ * Minimal Lutece runtime for the load test : a temporary webapp holding the module configuration files, with the properties of the module
+ * pointing to the embedded directory, and the path, properties and template services started on it. The database and plugin services are
+ * not started : the module doesn't use them.
+ */
+public final class LuteceRuntime
+{
+    private static final String PATH_CONF = "/WEB-INF/conf/";
+    private static final String PATH_TEMPLATES = "/WEB-INF/templates";
+    private static final String FILE_PROPERTIES = "WEB-INF/conf/plugins/easyrulesbot-ldap.properties";
+    private static final String PREFIX = "easyrulesbot-ldap.";
+
+    /**
+     * Private constructor
+     */
+    private LuteceRuntime( )
+    {
+    }
+
+    /**
+     * Builds the webapp and starts the services
+     * 
+     * @param moduleWebapp
+     *            The webapp directory of the module
+     * @param directory
+     *            The embedded directory
+     * @param mapOverrides
+     *            Properties of the module set by the load test options, without their prefix
+     * @return The webapp directory
+     * @throws Exception
+     *             if the services can't be started
+     */
+    public static File start( File moduleWebapp, EmbeddedDirectory directory, Map<String, String> mapOverrides ) throws Exception
+    {
+        File webapp = Files.createTempDirectory( "easyrulesbot-ldap-load" ).toFile( );
+        copy( moduleWebapp.toPath( ), webapp.toPath( ) );
+        Files.createDirectories( new File( webapp, PATH_CONF ).toPath( ) );
+        Files.write( new File( webapp, PATH_CONF + "config.properties" ).toPath( ), new byte [ 0], StandardOpenOption.CREATE );
+
+        // Properties loaded last override the ones of the module file
+        try ( Writer writer = new OutputStreamWriter( Files.newOutputStream( new File( webapp, FILE_PROPERTIES ).toPath( ), StandardOpenOption.APPEND ),
+                StandardCharsets.ISO_8859_1 ) )
+        {
+            writer.write( "\n" );
+            write( writer, "ldap.connectionUrl", directory.getUrl( ) );
+            write( writer, "ldap.connectionName", EmbeddedDirectory.BIND_DN );
+            write( writer, "ldap.connectionPassword", EmbeddedDirectory.BIND_PASSWORD );
+            write( writer, "ldap.personBase", EmbeddedDirectory.PEOPLE_DN );
+            write( writer, "ldap.personSubtree", "true" );
+
+            for ( Map.Entry<String, String> entry : SyntheticDirectory.getFilterPatterns( ).entrySet( ) )
+            {
+                write( writer, "ldap.filter.parameter." + entry.getKey( ), entry.getValue( ) );
+            }
+
+            for ( Map.Entry<String, String> entry : SyntheticDirectory.getAttributeNames( ).entrySet( ) )
+            {
+                write( writer, "ldap.dn.attributeName." + entry.getKey( ), entry.getValue( ) );
+            }
+
+            for ( Map.Entry<String, String> entry : mapOverrides.entrySet( ) )
+            {
+                write( writer, entry.getKey( ), entry.getValue( ) );
+            }
+        }
+
+        AppPathService.init( webapp.getAbsolutePath( ) );
+        AppPropertiesService.init( PATH_CONF );
+        AppTemplateService.init( PATH_TEMPLATES );
+
+        return webapp;
+    }
+
+    /**
+     * Writes a property of the module
+     * 
+     * @param writer
+     *            The writer
+     * @param strKey
+     *            The key without the module prefix
+     * @param strValue
+     *            The value
+     * @throws IOException
+     *             if the file can't be written
+     */
+    private static void write( Writer writer, String strKey, String strValue ) throws IOException
+    {
+        writer.write( PREFIX + strKey + "=" + strValue.replace( "\\", "\\\\" ) + "\n" );
+    }
+
+    /**
+     * Copies a directory
+     * 
+     * @param source
+     *            The source directory
+     * @param target
+     *            The target directory
+     * @throws IOException
+     *             if a file can't be copied
+     */
+    private static void copy( final Path source, final Path target ) throws IOException
+    {
+        Files.walkFileTree( source, new SimpleFileVisitor<Path>( )
+        {
+            @Override
+            public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attributes ) throws IOException
+            {
+                Files.createDirectories( target.resolve( source.relativize( dir ).toString( ) ) );
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attributes ) throws IOException
+            {
+                Files.copy( file, target.resolve( source.relativize( file ).toString( ) ), StandardCopyOption.REPLACE_EXISTING );
+
+                return FileVisitResult.CONTINUE;
+            }
+        } );
+    }
+}
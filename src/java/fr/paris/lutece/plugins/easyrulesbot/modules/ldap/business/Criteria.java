@@ -33,13 +33,42 @@
  */
 package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business;
 
+import java.io.Serializable;
+
 /**
- * Criteria
+ * Criteria : a search criterion given by the user and the clauses of its LDAP filter
  */
-public class Criteria
+public class Criteria implements Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     private String _strName;
     private String _strValue;
+    private String _strFilter;
+
+    /**
+     * Constructor
+     */
+    public Criteria( )
+    {
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param strName
+     *            The Name
+     * @param strValue
+     *            The Value
+     * @param strFilter
+     *            The Filter
+     */
+    public Criteria( String strName, String strValue, String strFilter )
+    {
+        _strName = strName;
+        _strValue = strValue;
+        _strFilter = strFilter;
+    }
 
     /**
      * Returns the Name
@@ -82,4 +111,25 @@ public class Criteria
     {
         _strValue = strValue;
     }
+
+    /**
+     * Returns the Filter
+     * 
+     * @return The Filter : the clauses of the criterion, escaped
+     */
+    public String getFilter( )
+    {
+        return ( _strFilter != null ) ? _strFilter : "";
+    }
+
+    /**
+     * Sets the Filter
+     * 
+     * @param strFilter
+     *            The Filter
+     */
+    public void setFilter( String strFilter )
+    {
+        _strFilter = strFilter;
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Facet of a search result : the values of a person key with their number of persons, the most frequent first
+ */
+public final class Facet implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String _strName;
+    private final List<FacetValue> _listValues;
+    private final double _dConcentration;
+
+    /**
+     * Constructor
+     * 
+     * @param strName
+     *            The person key
+     * @param listValues
+     *            The values offered
+     * @param dConcentration
+     *            The share of the persons a value keeps on average, from 0 to 1 : the lower, the better the facet splits the result
+     */
+    public Facet( String strName, List<FacetValue> listValues, double dConcentration )
+    {
+        _strName = strName;
+        _listValues = Collections.unmodifiableList( listValues );
+        _dConcentration = dConcentration;
+    }
+
+    /**
+     * Returns the person key
+     * 
+     * @return The name
+     */
+    public String getName( )
+    {
+        return _strName;
+    }
+
+    /**
+     * Returns the values offered, the most frequent first
+     * 
+     * @return The unmodifiable list of values
+     */
+    public List<FacetValue> getValues( )
+    {
+        return _listValues;
+    }
+
+    /**
+     * Returns the share of the persons a value keeps on average
+     * 
+     * @return The concentration, from 0 to 1
+     */
+    public double getConcentration( )
+    {
+        return _dConcentration;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Person record : an array of values laid out by a shared schema. Absent attributes have no value. The record is read-only and is seen as a
+ * Map by the templates and the filters.
+ */
+public final class Person extends AbstractMap<String, String> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final PersonSchema _schema;
+    private final String [ ] _values;
+
+    /**
+     * Constructor
+     * 
+     * @param schema
+     *            The schema
+     * @param values
+     *            The values by slot, null for an absent attribute. The array is owned by the record.
+     */
+    public Person( PersonSchema schema, String [ ] values )
+    {
+        _schema = schema;
+        _values = values;
+    }
+
+    /**
+     * Returns the schema
+     * 
+     * @return The schema
+     */
+    public PersonSchema getSchema( )
+    {
+        return _schema;
+    }
+
+    /**
+     * Returns the value of a slot
+     * 
+     * @param nSlot
+     *            The slot
+     * @return The value or null if absent
+     */
+    public String getValue( int nSlot )
+    {
+        return _values [nSlot];
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String get( Object key )
+    {
+        int nSlot = _schema.getSlot( key );
+
+        return ( nSlot >= 0 ) ? _values [nSlot] : null;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public boolean containsKey( Object key )
+    {
+        return get( key ) != null;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Set<Map.Entry<String, String>> entrySet( )
+    {
+        return new AbstractSet<Map.Entry<String, String>>( )
+        {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator( )
+            {
+                return new EntryIterator( );
+            }
+
+            @Override
+            public int size( )
+            {
+                int nSize = 0;
+
+                for ( String strValue : _values )
+                {
+                    if ( strValue != null )
+                    {
+                        nSize++;
+                    }
+                }
+
+                return nSize;
+            }
+        };
+    }
+
+    /**
+     * Iterator over the present attributes
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, String>>
+    {
+        private int _nNext = advance( 0 );
+
+        private int advance( int nSlot )
+        {
+            int nCurrent = nSlot;
+
+            while ( nCurrent < _values.length && _values [nCurrent] == null )
+            {
+                nCurrent++;
+            }
+
+            return nCurrent;
+        }
+
+        @Override
+        public boolean hasNext( )
+        {
+            return _nNext < _values.length;
+        }
+
+        @Override
+        public Map.Entry<String, String> next( )
+        {
+            if ( !hasNext( ) )
+            {
+                throw new NoSuchElementException( );
+            }
+
+            Map.Entry<String, String> entry = new SimpleImmutableEntry<String, String>( _schema.getKey( _nNext ), _values [_nNext] );
+            _nNext = advance( _nNext + 1 );
+
+            return entry;
+        }
+
+        @Override
+        public void remove( )
+        {
+            throw new UnsupportedOperationException( );
+        }
+    }
+}
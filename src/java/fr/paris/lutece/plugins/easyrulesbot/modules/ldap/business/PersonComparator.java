@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business;
+
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Sorts persons on a key with the collation rules of a locale. Persons without a value are placed last.
+ */
+public class PersonComparator implements Comparator<Person>
+{
+    private final String _strKey;
+    private final Collator _collator;
+
+    /**
+     * Constructor
+     * 
+     * @param strKey
+     *            The person key
+     * @param locale
+     *            The locale
+     */
+    public PersonComparator( String strKey, Locale locale )
+    {
+        _strKey = strKey;
+        _collator = Collator.getInstance( locale );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public int compare( Person person1, Person person2 )
+    {
+        String strValue1 = person1.get( _strKey );
+        String strValue2 = person2.get( _strKey );
+
+        if ( strValue1 == null )
+        {
+            return ( strValue2 == null ) ? 0 : 1;
+        }
+
+        if ( strValue2 == null )
+        {
+            return -1;
+        }
+
+        return _collator.compare( strValue1, strValue2 );
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of a person search. Instances are immutable and may be shared between conversations through the caches.
+ */
+public class PersonResultSet implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final List<Person> _listPersons;
+    private final Set<String> _setMultiValuedAttributes;
+    private final boolean _bTruncated;
+    private final boolean _bUnavailable;
+    private final boolean _bRejected;
+
+    /**
+     * Constructor
+     * 
+     * @param listPersons
+     *            The persons
+     * @param setMultiValuedAttributes
+     *            The lower case names of the LDAP attributes that had several values for at least one person
+     * @param bTruncated
+     *            true if the directory has more matching entries than the persons of the result
+     */
+    public PersonResultSet( List<Person> listPersons, Set<String> setMultiValuedAttributes, boolean bTruncated )
+    {
+        _listPersons = Collections.unmodifiableList( listPersons );
+        _setMultiValuedAttributes = Collections.unmodifiableSet( setMultiValuedAttributes );
+        _bTruncated = bTruncated;
+        _bUnavailable = false;
+        _bRejected = false;
+    }
+
+    /**
+     * Constructor of an empty result for a search that was not sent to the directory
+     * 
+     * @param bUnavailable
+     *            true if the directory could not be searched, false if the filter was rejected
+     */
+    private PersonResultSet( boolean bUnavailable )
+    {
+        _listPersons = Collections.emptyList( );
+        _setMultiValuedAttributes = Collections.emptySet( );
+        _bTruncated = false;
+        _bUnavailable = bUnavailable;
+        _bRejected = !bUnavailable;
+    }
+
+    /**
+     * Returns the result of a search that failed because no directory answered in time
+     * 
+     * @return An empty result flagged as unavailable
+     */
+    public static PersonResultSet unavailable( )
+    {
+        return new PersonResultSet( true );
+    }
+
+    /**
+     * Returns the result of a search whose filter was not sent to the directory because it is not selective enough
+     * 
+     * @return An empty result flagged as rejected
+     */
+    public static PersonResultSet rejected( )
+    {
+        return new PersonResultSet( false );
+    }
+
+    /**
+     * Returns the persons
+     * 
+     * @return The unmodifiable list of persons
+     */
+    public List<Person> getPersons( )
+    {
+        return _listPersons;
+    }
+
+    /**
+     * Returns the attributes that had several values for at least one person. Only the first value is kept in the person records, so filters on
+     * these attributes can't be evaluated in memory.
+     * 
+     * @return The lower case attribute names
+     */
+    public Set<String> getMultiValuedAttributes( )
+    {
+        return _setMultiValuedAttributes;
+    }
+
+    /**
+     * Tells if the search was stopped after the max number of results. The persons list then only holds the first entries found, or none if
+     * the search was only counted.
+     * 
+     * @return true if the result is truncated
+     */
+    public boolean isTruncated( )
+    {
+        return _bTruncated;
+    }
+
+    /**
+     * Tells if the directory could not be searched. The result is then empty and must not be refined.
+     * 
+     * @return true if the directory is unavailable
+     */
+    public boolean isUnavailable( )
+    {
+        return _bUnavailable;
+    }
+
+    /**
+     * Tells if the filter was rejected before the search. The result is then empty and the search must be narrowed by other criteria.
+     * 
+     * @return true if the search was rejected
+     */
+    public boolean isRejected( )
+    {
+        return _bRejected;
+    }
+
+    /**
+     * Returns the number of persons
+     * 
+     * @return The size
+     */
+    public int size( )
+    {
+        return _listPersons.size( );
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Layout of the person records : the person keys and their slot in the values array. Values of the shared keys (direction, site, city...)
+ * have few distinct values and are deduplicated so that the records of a same direction hold the same String instances.
+ */
+public final class PersonSchema implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+    private static final int MAX_SHARED_VALUES = 10000;
+
+    private final String [ ] _keys;
+    private final Map<String, Integer> _mapSlots;
+    private final boolean [ ] _shared;
+    private transient ConcurrentHashMap<String, String> _mapSharedValues;
+
+    /**
+     * Constructor
+     * 
+     * @param keys
+     *            The person keys in display order
+     * @param collectionSharedKeys
+     *            The keys whose values are deduplicated
+     */
+    public PersonSchema( String [ ] keys, Collection<String> collectionSharedKeys )
+    {
+        _keys = keys.clone( );
+        _mapSlots = new HashMap<String, Integer>( ( _keys.length * 4 / 3 ) + 1 );
+        _shared = new boolean [ _keys.length];
+
+        for ( int i = 0; i < _keys.length; i++ )
+        {
+            _mapSlots.put( _keys [i], i );
+            _shared [i] = collectionSharedKeys.contains( _keys [i] );
+        }
+
+        _mapSharedValues = new ConcurrentHashMap<String, String>( );
+    }
+
+    /**
+     * Returns the number of slots
+     * 
+     * @return The number of person keys
+     */
+    public int size( )
+    {
+        return _keys.length;
+    }
+
+    /**
+     * Returns the key of a slot
+     * 
+     * @param nSlot
+     *            The slot
+     * @return The person key
+     */
+    public String getKey( int nSlot )
+    {
+        return _keys [nSlot];
+    }
+
+    /**
+     * Returns the slot of a key
+     * 
+     * @param key
+     *            The person key
+     * @return The slot or -1 if the key is not part of the schema
+     */
+    public int getSlot( Object key )
+    {
+        Integer nSlot = _mapSlots.get( key );
+
+        return ( nSlot != null ) ? nSlot : -1;
+    }
+
+    /**
+     * Returns the shared instance of a value if its slot is deduplicated
+     * 
+     * @param nSlot
+     *            The slot
+     * @param strValue
+     *            The value
+     * @return The value to store in the record
+     */
+    public String share( int nSlot, String strValue )
+    {
+        if ( !_shared [nSlot] || strValue == null )
+        {
+            return strValue;
+        }
+
+        String strShared = _mapSharedValues.get( strValue );
+
+        if ( strShared != null )
+        {
+            return strShared;
+        }
+
+        if ( _mapSharedValues.size( ) < MAX_SHARED_VALUES )
+        {
+            strShared = _mapSharedValues.putIfAbsent( strValue, strValue );
+        }
+
+        return ( strShared != null ) ? strShared : strValue;
+    }
+
+    /**
+     * Restores the schema, with a new pool of shared values since it is not serialized
+     * 
+     * @param in
+     *            The stream
+     * @throws IOException
+     *             if the stream can not be read
+     * @throws ClassNotFoundException
+     *             if a class of the schema is not found
+     */
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject( );
+        _mapSharedValues = new ConcurrentHashMap<String, String>( );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String toString( )
+    {
+        return "PersonSchema" + Arrays.toString( _keys );
+    }
+}
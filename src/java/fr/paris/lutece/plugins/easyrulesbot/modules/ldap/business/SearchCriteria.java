@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Criteria of a search in the order they were given, with the clauses of the LDAP filter already built. Instances are immutable : adding a
+ * criterion gives a new instance that reuses the clauses of this one.
+ */
+public final class SearchCriteria implements Serializable
+{
+    public static final SearchCriteria EMPTY = new SearchCriteria( new ArrayList<Criteria>( ), "" );
+
+    private static final long serialVersionUID = 1L;
+    private static final char CRITERIA_SEPARATOR = ',';
+    private static final char VALUE_SEPARATOR = ':';
+    private static final char ESCAPE = '\\';
+
+    private final List<Criteria> _listCriteria;
+    private final String _strClauses;
+
+    /**
+     * Constructor
+     * 
+     * @param listCriteria
+     *            The criteria
+     * @param strClauses
+     *            The concatenated clauses of the criteria
+     */
+    private SearchCriteria( List<Criteria> listCriteria, String strClauses )
+    {
+        _listCriteria = Collections.unmodifiableList( listCriteria );
+        _strClauses = strClauses;
+    }
+
+    /**
+     * Returns the criteria with a criterion added. A criterion already present with the same name is replaced.
+     * 
+     * @param criterion
+     *            The criterion, with its filter
+     * @return The new criteria
+     */
+    public SearchCriteria with( Criteria criterion )
+    {
+        List<Criteria> listCriteria = new ArrayList<Criteria>( _listCriteria.size( ) + 1 );
+        int nIndex = indexOf( criterion.getName( ) );
+
+        if ( nIndex < 0 )
+        {
+            listCriteria.addAll( _listCriteria );
+            listCriteria.add( criterion );
+
+            return new SearchCriteria( listCriteria, _strClauses + criterion.getFilter( ) );
+        }
+
+        StringBuilder sbClauses = new StringBuilder( );
+
+        for ( int i = 0; i < _listCriteria.size( ); i++ )
+        {
+            Criteria current = ( i == nIndex ) ? criterion : _listCriteria.get( i );
+            listCriteria.add( current );
+            sbClauses.append( current.getFilter( ) );
+        }
+
+        return new SearchCriteria( listCriteria, sbClauses.toString( ) );
+    }
+
+    /**
+     * Tells if a criterion is present
+     * 
+     * @param strName
+     *            The criterion name
+     * @return true if present
+     */
+    public boolean contains( String strName )
+    {
+        return indexOf( strName ) >= 0;
+    }
+
+    /**
+     * Returns the criteria
+     * 
+     * @return The unmodifiable list of criteria
+     */
+    public List<Criteria> getCriteria( )
+    {
+        return _listCriteria;
+    }
+
+    /**
+     * Returns the values by criterion name, in the order of the criteria
+     * 
+     * @return The map
+     */
+    public Map<String, String> toMap( )
+    {
+        Map<String, String> map = new LinkedHashMap<String, String>( );
+
+        for ( Criteria criterion : _listCriteria )
+        {
+            map.put( criterion.getName( ), criterion.getValue( ) );
+        }
+
+        return map;
+    }
+
+    /**
+     * Returns the LDAP filter of the criteria
+     * 
+     * @return The filter or an empty string if there is no clause
+     */
+    public String getFilter( )
+    {
+        return _strClauses.isEmpty( ) ? "" : "(&" + _strClauses + ")";
+    }
+
+    /**
+     * Returns the criteria as stored in the conversation data : name:value pairs separated by commas, with the separators and backslashes of the
+     * values escaped by a backslash
+     * 
+     * @return The serialized criteria
+     */
+    public String serialize( )
+    {
+        StringBuilder sbCriteria = new StringBuilder( );
+
+        for ( Criteria criterion : _listCriteria )
+        {
+            if ( sbCriteria.length( ) > 0 )
+            {
+                sbCriteria.append( CRITERIA_SEPARATOR );
+            }
+
+            appendEscaped( sbCriteria, criterion.getName( ) );
+            sbCriteria.append( VALUE_SEPARATOR );
+            appendEscaped( sbCriteria, criterion.getValue( ) );
+        }
+
+        return sbCriteria.toString( );
+    }
+
+    /**
+     * Reads serialized criteria. Entries without a value separator are ignored.
+     * 
+     * @param strCriteria
+     *            The serialized criteria, may be null
+     * @return The criteria, without their filter
+     */
+    public static List<Criteria> parse( String strCriteria )
+    {
+        List<Criteria> listCriteria = new ArrayList<Criteria>( );
+
+        if ( strCriteria == null )
+        {
+            return listCriteria;
+        }
+
+        StringBuilder sbToken = new StringBuilder( );
+        String strName = null;
+
+        for ( int i = 0; i <= strCriteria.length( ); i++ )
+        {
+            char c = ( i < strCriteria.length( ) ) ? strCriteria.charAt( i ) : CRITERIA_SEPARATOR;
+
+            if ( c == ESCAPE && i + 1 < strCriteria.length( ) )
+            {
+                sbToken.append( strCriteria.charAt( ++i ) );
+            }
+            else
+                if ( c == VALUE_SEPARATOR && strName == null )
+                {
+                    strName = sbToken.toString( );
+                    sbToken.setLength( 0 );
+                }
+                else
+                    if ( c == CRITERIA_SEPARATOR )
+                    {
+                        if ( strName != null )
+                        {
+                            listCriteria.add( new Criteria( strName, sbToken.toString( ), null ) );
+                        }
+
+                        strName = null;
+                        sbToken.setLength( 0 );
+                    }
+                    else
+                    {
+                        sbToken.append( c );
+                    }
+        }
+
+        return listCriteria;
+    }
+
+    /**
+     * Returns the index of a criterion
+     * 
+     * @param strName
+     *            The criterion name
+     * @return The index or -1
+     */
+    private int indexOf( String strName )
+    {
+        for ( int i = 0; i < _listCriteria.size( ); i++ )
+        {
+            if ( _listCriteria.get( i ).getName( ).equals( strName ) )
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Appends a string escaping the separators
+     * 
+     * @param sbCriteria
+     *            The buffer
+     * @param strValue
+     *            The string
+     */
+    private static void appendEscaped( StringBuilder sbCriteria, String strValue )
+    {
+        for ( int i = 0; i < strValue.length( ); i++ )
+        {
+            char c = strValue.charAt( i );
+
+            if ( c == CRITERIA_SEPARATOR || c == VALUE_SEPARATOR || c == ESCAPE )
+            {
+                sbCriteria.append( ESCAPE );
+            }
+
+            sbCriteria.append( c );
+        }
+    }
+}
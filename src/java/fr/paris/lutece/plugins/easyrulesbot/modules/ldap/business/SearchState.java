@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Search state of a conversation : the criteria of the last search, its result and the persons in display order, which are paged through by
+ * the directory servlet
+ */
+public class SearchState implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final SearchCriteria _criteria;
+    private final PersonResultSet _resultSet;
+    private final List<Person> _listDisplayedPersons;
+
+    /**
+     * Constructor
+     * 
+     * @param criteria
+     *            The search criteria
+     * @param resultSet
+     *            The result of the search
+     * @param listDisplayedPersons
+     *            The persons of the result in display order
+     */
+    public SearchState( SearchCriteria criteria, PersonResultSet resultSet, List<Person> listDisplayedPersons )
+    {
+        _criteria = criteria;
+        _resultSet = resultSet;
+        _listDisplayedPersons = Collections.unmodifiableList( listDisplayedPersons );
+    }
+
+    /**
+     * Returns the search criteria
+     * 
+     * @return The criteria
+     */
+    public SearchCriteria getCriteria( )
+    {
+        return _criteria;
+    }
+
+    /**
+     * Returns the result of the search
+     * 
+     * @return The result set
+     */
+    public PersonResultSet getResultSet( )
+    {
+        return _resultSet;
+    }
+
+    /**
+     * Returns the persons of the result in display order
+     * 
+     * @return The unmodifiable list of persons
+     */
+    public List<Person> getDisplayedPersons( )
+    {
+        return _listDisplayedPersons;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business;
+
+import java.io.Serializable;
+
+/**
+ * Suggestion of the autocompletion : a value of a criterion with the number of persons having it
+ */
+public final class Suggestion implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String _strCriteriaName;
+    private final String _strValue;
+    private final int _nCount;
+
+    /**
+     * Constructor
+     * 
+     * @param strCriteriaName
+     *            The criterion name
+     * @param strValue
+     *            The value
+     * @param nCount
+     *            The number of persons having the value
+     */
+    public Suggestion( String strCriteriaName, String strValue, int nCount )
+    {
+        _strCriteriaName = strCriteriaName;
+        _strValue = strValue;
+        _nCount = nCount;
+    }
+
+    /**
+     * Returns the criterion name
+     * 
+     * @return The name
+     */
+    public String getCriteriaName( )
+    {
+        return _strCriteriaName;
+    }
+
+    /**
+     * Returns the value
+     * 
+     * @return The value
+     */
+    public String getValue( )
+    {
+        return _strValue;
+    }
+
+    /**
+     * Returns the number of persons having the value
+     * 
+     * @return The count
+     */
+    public int getCount( )
+    {
+        return _nCount;
+    }
+}
@@ -33,11 +33,12 @@
  */
 package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service;
 
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.matcher.TermMatcher;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.matcher.TermMatcherFile;
 import fr.paris.lutece.plugins.easyrulesbot.service.response.exceptions.ResponseNotUnderstoodException;
 import fr.paris.lutece.plugins.easyrulesbot.service.response.exceptions.ResponseProcessingException;
 import fr.paris.lutece.plugins.easyrulesbot.service.response.processors.AbstractProcessor;
 import fr.paris.lutece.plugins.easyrulesbot.service.response.processors.ResponseProcessor;
-import fr.paris.lutece.plugins.easyrulesbot.util.FileUtils;
 import fr.paris.lutece.portal.service.i18n.I18nService;
 
 import java.util.List;
@@ -52,20 +53,20 @@ public class AddCriteriaLoopProcessor extends AbstractProcessor implements Respo
     private static final String I18N_KEY_SEARCH_PARAMETER_PREFIX = "module.easyrulesbot.ldap.searchParameter.";
     private static final String KEY_SEARCH_FIELD_NAME = "searchfieldname";
 
-    private String _strMutipleValuesMapFile;
-    private Map<String, List<String>> _mapMultipleValues;
+    private volatile TermMatcherFile _matcherFile;
+    private volatile TermMatcher _matcher;
     private List<String> _listLoopRules;
     private String _strInvalidResponseMessage;
     private String _strInvalidResponseMessageI18nKey;
 
     /**
-     * Set the map file path
+     * Set the map file path. The file is compiled into a term matcher, reloaded when it changes.
      * 
      * @param strMapFile
      */
     public void setMutipleValuesMapFile( String strMapFile )
     {
-        _strMutipleValuesMapFile = strMapFile;
+        _matcherFile = new TermMatcherFile( strMapFile );
     }
 
     /**
@@ -76,7 +77,7 @@ public class AddCriteriaLoopProcessor extends AbstractProcessor implements Respo
      */
     public void setValueTermsMap( Map<String, List<String>> map )
     {
-        _mapMultipleValues = map;
+        _matcher = new TermMatcher( map );
     }
 
     /**
@@ -107,10 +108,7 @@ public class AddCriteriaLoopProcessor extends AbstractProcessor implements Respo
     @Override
     public String processResponse( String strResponse, Locale locale, Map mapData ) throws ResponseProcessingException
     {
-        String strResponseToCheck = strResponse.toLowerCase( );
-        Map<String, List<String>> map = getMultipleValuesMap( );
-        
-        String strValue = getValue( strResponseToCheck, map, locale );
+        String strValue = getValue( strResponse, getMatcher( ), locale );
 
         for ( String strLoopRule : _listLoopRules )
         {
@@ -123,46 +121,38 @@ public class AddCriteriaLoopProcessor extends AbstractProcessor implements Respo
     }
 
     /**
-     * Return the value from the map
+     * Return the value whose terms are found in the response
      * 
-     * @param strResponseToCheck
+     * @param strResponse
      *            The response to check
-     * @param map
-     *            The map
+     * @param matcher
+     *            The term matcher
      * @param locale
      *            The locale
      * @return The value
      */
-    private String getValue( String strResponseToCheck, Map<String, List<String>> map, Locale locale ) throws ResponseNotUnderstoodException
+    private String getValue( String strResponse, TermMatcher matcher, Locale locale ) throws ResponseNotUnderstoodException
     {
-        for ( String strValue : map.keySet( ) )
+        String strValue = ( matcher != null ) ? matcher.match( strResponse ) : null;
+
+        if ( strValue != null )
         {
-            List<String> listTerms = map.get( strValue );
-
-            for ( String strTerm : listTerms )
-            {
-                if ( strResponseToCheck.contains( strTerm ) )
-                {
-                    return strValue;
-                }
-            }
+            return strValue;
         }
 
         throw new ResponseNotUnderstoodException( getInvalidResponse( locale ) );
     }
 
     /**
-     * Return Map loaded from a file
+     * Return the term matcher : the one of the terms file, reloaded when the file changes, or the one of the map
      * 
-     * @return The map
+     * @return The matcher
      */
-    private Map<String, List<String>> getMultipleValuesMap( )
+    private TermMatcher getMatcher( )
     {
-        if ( _mapMultipleValues == null && _strMutipleValuesMapFile != null )
-        {
-            _mapMultipleValues = FileUtils.loadMapFromFile( _strMutipleValuesMapFile );
-        }
-        return _mapMultipleValues;
+        TermMatcherFile matcherFile = _matcherFile;
+
+        return ( matcherFile != null ) ? matcherFile.getMatcher( ) : _matcher;
     }
 
     /**
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.PersonSchema;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Compiled mapping of the LDAP attributes to the person keys, built once from the easyrulesbot-ldap.ldap.dn.attributeName.* properties. Each
+ * person key has a slot holding its LDAP attribute name, so mapping an entry is a loop over the slots filling a compact person record.
+ */
+public final class AttributeProjection
+{
+    private static final String PROPERTY_DN_ATTRIBUTE_PREFIX = "easyrulesbot-ldap.ldap.dn.attributeName";
+    private static final String PROPERTY_SHARED_ATTRIBUTES = "easyrulesbot-ldap.ldap.person.sharedAttributes";
+    private static final String DEFAULT_SHARED_ATTRIBUTES = "direction,site,city,postalcode,street";
+    private static final String SEPARATOR = ",";
+
+    private static volatile AttributeProjection _current;
+
+    private final String [ ] _keys;
+    private final String [ ] _attributeNames;
+    private final String [ ] _returningAttributes;
+    private final Map<String, String> _mapAttributeKeys;
+    private final PersonSchema _schema;
+
+    /**
+     * Constructor
+     * 
+     * @param mapAttributeNames
+     *            The LDAP attribute names by person key, in display order. An empty attribute name gives a key that is always absent.
+     * @param collectionSharedKeys
+     *            The person keys having few distinct values, which are deduplicated
+     */
+    public AttributeProjection( Map<String, String> mapAttributeNames, Collection<String> collectionSharedKeys )
+    {
+        int nSize = mapAttributeNames.size( );
+        _keys = new String [ nSize];
+        _attributeNames = new String [ nSize];
+
+        List<String> listReturningAttributes = new ArrayList<String>( nSize );
+        Map<String, String> mapAttributeKeys = new HashMap<String, String>( );
+        int nSlot = 0;
+
+        for ( Map.Entry<String, String> entry : mapAttributeNames.entrySet( ) )
+        {
+            String strAttributeName = StringUtils.isBlank( entry.getValue( ) ) ? null : entry.getValue( ).trim( );
+            _keys [nSlot] = entry.getKey( );
+            _attributeNames [nSlot] = strAttributeName;
+
+            if ( strAttributeName != null && !mapAttributeKeys.containsKey( strAttributeName.toLowerCase( Locale.ROOT ) ) )
+            {
+                listReturningAttributes.add( strAttributeName );
+                mapAttributeKeys.put( strAttributeName.toLowerCase( Locale.ROOT ), entry.getKey( ) );
+            }
+
+            nSlot++;
+        }
+
+        _returningAttributes = listReturningAttributes.toArray( new String [ listReturningAttributes.size( )] );
+        _mapAttributeKeys = Collections.unmodifiableMap( mapAttributeKeys );
+        _schema = new PersonSchema( _keys, collectionSharedKeys );
+    }
+
+    /**
+     * Returns the projection compiled from the properties
+     * 
+     * @return The projection
+     */
+    public static AttributeProjection getInstance( )
+    {
+        AttributeProjection projection = _current;
+
+        if ( projection == null )
+        {
+            projection = reload( );
+        }
+
+        return projection;
+    }
+
+    /**
+     * Compiles the projection again from the properties, after they have been reloaded
+     * 
+     * @return The new projection
+     */
+    public static synchronized AttributeProjection reload( )
+    {
+        Map<String, String> mapAttributeNames = new LinkedHashMap<String, String>( );
+
+        for ( String strAttributeKey : AppPropertiesService.getKeys( PROPERTY_DN_ATTRIBUTE_PREFIX ) )
+        {
+            mapAttributeNames.put( strAttributeKey.substring( PROPERTY_DN_ATTRIBUTE_PREFIX.length( ) + 1 ),
+                    AppPropertiesService.getProperty( strAttributeKey ) );
+        }
+
+        String strSharedAttributes = AppPropertiesService.getProperty( PROPERTY_SHARED_ATTRIBUTES, DEFAULT_SHARED_ATTRIBUTES );
+        List<String> listSharedKeys = new ArrayList<String>( );
+
+        for ( String strKey : strSharedAttributes.split( SEPARATOR ) )
+        {
+            if ( StringUtils.isNotBlank( strKey ) )
+            {
+                listSharedKeys.add( strKey.trim( ) );
+            }
+        }
+
+        _current = new AttributeProjection( mapAttributeNames, listSharedKeys );
+
+        return _current;
+    }
+
+    /**
+     * Returns the LDAP attributes to request to the server
+     * 
+     * @return The attribute names
+     */
+    public String [ ] getReturningAttributes( )
+    {
+        return _returningAttributes.clone( );
+    }
+
+    /**
+     * Returns the person keys by lower case LDAP attribute name
+     * 
+     * @return The unmodifiable map
+     */
+    public Map<String, String> getAttributeKeys( )
+    {
+        return _mapAttributeKeys;
+    }
+
+    /**
+     * Returns the layout of the person records
+     * 
+     * @return The schema
+     */
+    public PersonSchema getSchema( )
+    {
+        return _schema;
+    }
+
+    /**
+     * Maps the attributes of an entry to a person
+     * 
+     * @param attributes
+     *            The entry attributes
+     * @param setMultiValuedAttributes
+     *            The set to fill with the lower case names of the attributes having several values
+     * @return The person
+     * @throws NamingException
+     *             if an attribute can't be read
+     */
+    public Person map( Attributes attributes, Set<String> setMultiValuedAttributes ) throws NamingException
+    {
+        String [ ] values = new String [ _keys.length];
+
+        for ( int i = 0; i < _keys.length; i++ )
+        {
+            Attribute attribute = ( _attributeNames [i] != null ) ? attributes.get( _attributeNames [i] ) : null;
+            Object value = ( attribute != null ) ? attribute.get( ) : null;
+
+            if ( value != null && attribute.size( ) > 1 )
+            {
+                setMultiValuedAttributes.add( _attributeNames [i].toLowerCase( Locale.ROOT ) );
+            }
+
+            if ( value != null && !value.toString( ).isEmpty( ) )
+            {
+                values [i] = _schema.share( i, value.toString( ) );
+            }
+        }
+
+        return new Person( _schema, values );
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Criteria;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchCriteria;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.FilterTemplate;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.index.NameIndexService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.planner.QueryPlanner;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Builds the criteria of the searches with the filter templates of the easyrulesbot-ldap.ldap.filter.parameter.* properties, compiled once.
+ * Values that look exact are rewritten by the query planner and the terms of the criteria covered by the name index are resolved to equality
+ * clauses on the matching values.
+ */
+public final class CriteriaBuilder
+{
+    private static final String PROPERTY_FILTER_PARAMETER_PREFIX = "easyrulesbot-ldap.ldap.filter.parameter";
+    private static final String TOKEN_SEPARATOR = " ";
+
+    private static volatile CriteriaBuilder _current;
+
+    private final Map<String, FilterTemplate> _mapTemplates;
+    private final NameIndexService _nameIndexService;
+    private final QueryPlanner _queryPlanner;
+
+    /**
+     * Constructor
+     * 
+     * @param mapTemplates
+     *            The filter templates by criterion name
+     */
+    public CriteriaBuilder( Map<String, FilterTemplate> mapTemplates )
+    {
+        this( mapTemplates, null, null );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param mapTemplates
+     *            The filter templates by criterion name
+     * @param nameIndexService
+     *            The name index or null to always use the templates
+     * @param queryPlanner
+     *            The planner rewriting the exact values or null to always use the templates
+     */
+    public CriteriaBuilder( Map<String, FilterTemplate> mapTemplates, NameIndexService nameIndexService, QueryPlanner queryPlanner )
+    {
+        _mapTemplates = Collections.unmodifiableMap( new HashMap<String, FilterTemplate>( mapTemplates ) );
+        _nameIndexService = nameIndexService;
+        _queryPlanner = queryPlanner;
+    }
+
+    /**
+     * Returns the builder compiled from the properties
+     * 
+     * @return The builder
+     */
+    public static CriteriaBuilder getInstance( )
+    {
+        CriteriaBuilder builder = _current;
+
+        if ( builder == null )
+        {
+            builder = reload( );
+        }
+
+        return builder;
+    }
+
+    /**
+     * Compiles the filter templates again from the properties, after they have been reloaded
+     * 
+     * @return The new builder
+     */
+    public static synchronized CriteriaBuilder reload( )
+    {
+        Map<String, FilterTemplate> mapTemplates = new HashMap<String, FilterTemplate>( );
+
+        for ( String strKey : AppPropertiesService.getKeys( PROPERTY_FILTER_PARAMETER_PREFIX ) )
+        {
+            String strPattern = AppPropertiesService.getProperty( strKey );
+
+            if ( StringUtils.isBlank( strPattern ) )
+            {
+                continue;
+            }
+
+            try
+            {
+                mapTemplates.put( strKey.substring( PROPERTY_FILTER_PARAMETER_PREFIX.length( ) + 1 ), new FilterTemplate( strPattern.trim( ) ) );
+            }
+            catch( IllegalArgumentException e )
+            {
+                AppLogService.error( "Invalid search filter template " + strKey + " : " + e.getMessage( ) );
+            }
+        }
+
+        NameIndexService nameIndexService = NameIndexService.getInstance( );
+        QueryPlanner queryPlanner = QueryPlanner.getInstance( );
+        _current = new CriteriaBuilder( mapTemplates, nameIndexService.isEnabled( ) ? nameIndexService : null, queryPlanner.isEnabled( ) ? queryPlanner
+                : null );
+
+        return _current;
+    }
+
+    /**
+     * Creates a criterion : a single clause if the value looks exact, otherwise one clause per word of the value, from the name index if it
+     * resolves the word or from the filter template
+     * 
+     * @param strName
+     *            The criterion name
+     * @param strValue
+     *            The criterion value
+     * @return The criterion, whose filter is empty if the criterion has no template
+     */
+    public Criteria createCriteria( String strName, String strValue )
+    {
+        FilterTemplate template = _mapTemplates.get( strName );
+
+        if ( template == null )
+        {
+            return new Criteria( strName, strValue, "" );
+        }
+
+        String strExactClause = ( _queryPlanner != null ) ? _queryPlanner.rewrite( strName, strValue, template ) : null;
+
+        if ( strExactClause != null )
+        {
+            return new Criteria( strName, strValue, strExactClause );
+        }
+
+        StringBuilder sbFilter = new StringBuilder( );
+
+        for ( String strToken : strValue.split( TOKEN_SEPARATOR ) )
+        {
+            if ( strToken.isEmpty( ) )
+            {
+                continue;
+            }
+
+            String strClause = ( _nameIndexService != null ) ? _nameIndexService.getClause( strName, strToken ) : null;
+
+            if ( strClause != null )
+            {
+                sbFilter.append( strClause );
+            }
+            else
+            {
+                template.appendTo( sbFilter, strToken );
+            }
+        }
+
+        return new Criteria( strName, strValue, sbFilter.toString( ) );
+    }
+
+    /**
+     * Builds search criteria from criteria read without their filter
+     * 
+     * @param listCriteria
+     *            The criteria names and values
+     * @return The search criteria
+     */
+    public SearchCriteria build( List<Criteria> listCriteria )
+    {
+        SearchCriteria criteria = SearchCriteria.EMPTY;
+
+        for ( Criteria criterion : listCriteria )
+        {
+            criteria = criteria.with( createCriteria( criterion.getName( ), criterion.getValue( ) ) );
+        }
+
+        return criteria;
+    }
+
+    /**
+     * Returns the filter template of a criterion
+     * 
+     * @param strName
+     *            The criterion name
+     * @return The template or null if the criterion has no template
+     */
+    public FilterTemplate getTemplate( String strName )
+    {
+        return _mapTemplates.get( strName );
+    }
+
+    /**
+     * Returns the filter templates
+     * 
+     * @return The templates
+     */
+    public Collection<FilterTemplate> getTemplates( )
+    {
+        return _mapTemplates.values( );
+    }
+}
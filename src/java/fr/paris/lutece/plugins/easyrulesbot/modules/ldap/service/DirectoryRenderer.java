@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchState;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.export.ExportService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.facet.FacetService;
+import fr.paris.lutece.portal.service.template.AppTemplateService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Renders the directory of a search page by page. The message of the bot only holds a placeholder with the handle of the search state ; the
+ * directory, its next pages and the details of a person are rendered by the directory servlet from the search state when they are displayed,
+ * without a new search.
+ */
+public final class DirectoryRenderer
+{
+    public static final String DIRECTORY_URL = "servlet/plugins/easyrulesbot/ldap/directory";
+    public static final String EXPORT_URL = "servlet/plugins/easyrulesbot/ldap/export";
+
+    private static final String TEMPLATE_DIRECTORY = "skin/plugins/easyrulesbot/modules/ldap/ldap.html";
+    private static final String TEMPLATE_PAGE = "skin/plugins/easyrulesbot/modules/ldap/ldap_page.html";
+    private static final String TEMPLATE_PERSON = "skin/plugins/easyrulesbot/modules/ldap/ldap_person.html";
+    private static final String TEMPLATE_PLACEHOLDER = "skin/plugins/easyrulesbot/modules/ldap/ldap_placeholder.html";
+
+    private static final String PROPERTY_PAGE_SIZE = "easyrulesbot-ldap.display.pageSize";
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private static final String MARK_PERSONS_LIST = "persons_list";
+    private static final String MARK_PERSON = "person";
+    private static final String MARK_CRITERIA_LIST = "criteria_list";
+    private static final String MARK_FACETS_LIST = "facets_list";
+    private static final String MARK_TRUNCATED = "truncated";
+    private static final String MARK_UNAVAILABLE = "unavailable";
+    private static final String MARK_REJECTED = "rejected";
+    private static final String MARK_MAX_RESULTS = "max_results";
+    private static final String MARK_TOTAL_SIZE = "total_size";
+    private static final String MARK_FIRST_INDEX = "first_index";
+    private static final String MARK_NEXT_PAGE = "next_page";
+    private static final String MARK_HANDLE = "handle";
+    private static final String MARK_DIRECTORY_ID = "directory_id";
+    private static final String MARK_DIRECTORY_URL = "directory_url";
+    private static final String MARK_EXPORT_URL = "export_url";
+
+    /**
+     * Private constructor
+     */
+    private DirectoryRenderer( )
+    {
+    }
+
+    /**
+     * Renders the message of a search. The directory of a stored state having persons is loaded when the message is displayed, so that the
+     * conversation data only holds its handle ; the other messages are short and rendered at once.
+     * 
+     * @param state
+     *            The search state
+     * @param strHandle
+     *            The handle of the search state, null if it is not stored
+     * @param locale
+     *            The locale
+     * @return The HTML
+     */
+    public static String renderMessage( SearchState state, String strHandle, Locale locale )
+    {
+        if ( strHandle == null || state.getDisplayedPersons( ).isEmpty( ) )
+        {
+            return renderDirectory( state, strHandle, locale );
+        }
+
+        Map<String, Object> model = new HashMap<String, Object>( );
+        model.put( MARK_HANDLE, strHandle );
+        model.put( MARK_DIRECTORY_URL, DIRECTORY_URL );
+
+        return AppTemplateService.getTemplate( TEMPLATE_PLACEHOLDER, locale, model ).getHtml( );
+    }
+
+    /**
+     * Renders the directory of a search : its summary, the facets refining it, the export links and the first page
+     * 
+     * @param state
+     *            The search state
+     * @param strHandle
+     *            The handle of the search state, null if it is not stored
+     * @param locale
+     *            The locale
+     * @return The HTML
+     */
+    public static String renderDirectory( SearchState state, String strHandle, Locale locale )
+    {
+        Map<String, Object> model = getPageModel( state, strHandle, 0 );
+        model.put( MARK_CRITERIA_LIST, state.getCriteria( ).toMap( ) );
+        model.put( MARK_TRUNCATED, state.getResultSet( ).isTruncated( ) );
+        model.put( MARK_UNAVAILABLE, state.getResultSet( ).isUnavailable( ) );
+        model.put( MARK_REJECTED, state.getResultSet( ).isRejected( ) );
+        model.put( MARK_MAX_RESULTS, PersonSearchService.getInstance( ).getMaxResults( ) );
+
+        // The refinements are applied by the directory servlet to the stored state
+        if ( strHandle != null )
+        {
+            model.put( MARK_FACETS_LIST, FacetService.getInstance( ).getFacets( state ) );
+
+            if ( ExportService.getInstance( ).isEnabled( ) && !state.getCriteria( ).getFilter( ).isEmpty( ) )
+            {
+                model.put( MARK_EXPORT_URL, EXPORT_URL );
+            }
+        }
+
+        return AppTemplateService.getTemplate( TEMPLATE_DIRECTORY, locale, model ).getHtml( );
+    }
+
+    /**
+     * Renders a page of the directory
+     * 
+     * @param state
+     *            The search state
+     * @param strHandle
+     *            The handle of the search state
+     * @param nPage
+     *            The page number, starting at 0
+     * @param locale
+     *            The locale
+     * @return The HTML
+     */
+    public static String renderPage( SearchState state, String strHandle, int nPage, Locale locale )
+    {
+        return AppTemplateService.getTemplate( TEMPLATE_PAGE, locale, getPageModel( state, strHandle, nPage ) ).getHtml( );
+    }
+
+    /**
+     * Renders the details of a person
+     * 
+     * @param person
+     *            The person
+     * @param locale
+     *            The locale
+     * @return The HTML
+     */
+    public static String renderPerson( Person person, Locale locale )
+    {
+        Map<String, Object> model = new HashMap<String, Object>( );
+        model.put( MARK_PERSON, person );
+
+        return AppTemplateService.getTemplate( TEMPLATE_PERSON, locale, model ).getHtml( );
+    }
+
+    /**
+     * Returns the number of persons of a page
+     * 
+     * @return The page size
+     */
+    public static int getPageSize( )
+    {
+        return Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_PAGE_SIZE, DEFAULT_PAGE_SIZE ) );
+    }
+
+    /**
+     * Builds the model of a page. Without a stored state, neither the next pages nor the details of a person can be loaded : the whole
+     * directory is then a single page, each person carrying its details inline.
+     * 
+     * @param state
+     *            The search state
+     * @param strHandle
+     *            The handle of the search state
+     * @param nPage
+     *            The page number, starting at 0
+     * @return The model
+     */
+    private static Map<String, Object> getPageModel( SearchState state, String strHandle, int nPage )
+    {
+        List<Person> listPersons = state.getDisplayedPersons( );
+        int nPageSize = ( strHandle != null ) ? getPageSize( ) : Math.max( 1, listPersons.size( ) );
+        int nFirst = Math.min( listPersons.size( ), Math.max( 0, nPage ) * nPageSize );
+        int nLast = Math.min( listPersons.size( ), nFirst + nPageSize );
+
+        Map<String, Object> model = new HashMap<String, Object>( );
+        model.put( MARK_PERSONS_LIST, listPersons.subList( nFirst, nLast ) );
+        model.put( MARK_TOTAL_SIZE, listPersons.size( ) );
+        model.put( MARK_FIRST_INDEX, nFirst );
+        model.put( MARK_HANDLE, strHandle );
+        model.put( MARK_DIRECTORY_URL, DIRECTORY_URL );
+
+        if ( strHandle == null )
+        {
+            // Identifies the inline details of the persons, several directories being shown in the same conversation
+            model.put( MARK_DIRECTORY_ID, "easyrulesbot-ldap-" + UUID.randomUUID( ).toString( ) );
+        }
+        else
+            if ( nLast < listPersons.size( ) )
+            {
+                model.put( MARK_NEXT_PAGE, Math.max( 0, nPage ) + 1 );
+            }
+
+        return model;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.PersonResultSet;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchCriteria;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchState;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.DirectorySource;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.LdapContextPool;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.portal.web.l10n.LocaleService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * Warm-up of the search path, run when the plugin is initialized so that the first conversations don't pay for it : the connections of the
+ * directory sources are opened and validated, the templates are compiled and representative searches are replayed to load the classes and
+ * let the JIT compile the search, mapping and rendering code. Every step is optional and its failure only leaves the path cold.
+ */
+public final class DirectoryWarmUp
+{
+    private static final String PROPERTY_ENABLED = "easyrulesbot-ldap.warmup.enabled";
+    private static final String PROPERTY_CONNECTIONS = "easyrulesbot-ldap.warmup.connections";
+    private static final String PROPERTY_ITERATIONS = "easyrulesbot-ldap.warmup.iterations";
+    private static final String PROPERTY_MAX_DURATION = "easyrulesbot-ldap.warmup.maxDuration";
+    private static final String PROPERTY_SEARCH_PREFIX = "easyrulesbot-ldap.warmup.search.";
+
+    private static final int DEFAULT_CONNECTIONS = 2;
+    private static final int DEFAULT_ITERATIONS = 20;
+    private static final long DEFAULT_MAX_DURATION = 60000L;
+    private static final String WARMUP_HANDLE = "warmup";
+
+    /**
+     * Private constructor
+     */
+    private DirectoryWarmUp( )
+    {
+    }
+
+    /**
+     * Tells if the warm-up is enabled
+     * 
+     * @return true if enabled
+     */
+    public static boolean isEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+    }
+
+    /**
+     * Runs the warm-up
+     * 
+     * @return The logs
+     */
+    public static String run( )
+    {
+        long lStart = System.currentTimeMillis( );
+        long lDeadline = lStart + AppPropertiesService.getPropertyLong( PROPERTY_MAX_DURATION, DEFAULT_MAX_DURATION );
+        StringBuilder sbLogs = new StringBuilder( "Warm-up : " );
+        PersonSearchService searchService = PersonSearchService.getInstance( );
+        int nConnections = AppPropertiesService.getPropertyInt( PROPERTY_CONNECTIONS, DEFAULT_CONNECTIONS );
+
+        for ( DirectorySource source : searchService.getSources( ) )
+        {
+            sbLogs.append( source.getName( ) ).append( " : " ).append( openConnections( source.getContextPool( ), nConnections ) )
+                    .append( " connections - " );
+
+            if ( source.getHedgeContextPool( ) != null )
+            {
+                sbLogs.append( source.getName( ) ).append( " hedge : " ).append( openConnections( source.getHedgeContextPool( ), nConnections ) )
+                        .append( " connections - " );
+            }
+        }
+
+        List<SearchCriteria> listSearches = getSearches( );
+        Locale locale = LocaleService.getDefault( );
+        int nIterations = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_ITERATIONS, DEFAULT_ITERATIONS ) );
+        int nSearches = 0;
+
+        // The first iteration reaches the directory, the next ones the cache and the rendering, as the searches repeated by the users
+        for ( int i = 0; i < nIterations && System.currentTimeMillis( ) < lDeadline; i++ )
+        {
+            for ( SearchCriteria criteria : listSearches )
+            {
+                replay( searchService, criteria, locale );
+                nSearches++;
+            }
+        }
+
+        if ( listSearches.isEmpty( ) )
+        {
+            // The templates are compiled anyway
+            render( new SearchState( SearchCriteria.EMPTY, new PersonResultSet( new ArrayList<Person>( ), Collections.<String> emptySet( ),
+                    false ), new ArrayList<Person>( ) ), locale );
+        }
+
+        return sbLogs.append( nSearches ).append( " searches replayed in " ).append( System.currentTimeMillis( ) - lStart ).append( " ms" )
+                .toString( );
+    }
+
+    /**
+     * Opens connections of a pool : they are borrowed together, which opens and validates them, then given back to the pool
+     * 
+     * @param contextPool
+     *            The pool
+     * @param nConnections
+     *            The number of connections
+     * @return The number of connections opened
+     */
+    private static int openConnections( LdapContextPool contextPool, int nConnections )
+    {
+        List<LdapContext> listContexts = new ArrayList<LdapContext>( );
+
+        try
+        {
+            for ( int i = 0; i < Math.min( nConnections, contextPool.getMaxSize( ) ); i++ )
+            {
+                listContexts.add( contextPool.borrowContext( ) );
+            }
+        }
+        catch( NamingException e )
+        {
+            AppLogService.error( "Warm-up : unable to open a connection of the LDAP pool " + contextPool.getName( ) + " - " + e.getMessage( ) );
+        }
+        finally
+        {
+            for ( LdapContext context : listContexts )
+            {
+                contextPool.returnContext( context );
+            }
+        }
+
+        return listContexts.size( );
+    }
+
+    /**
+     * Returns the searches to replay : the warmup.search.* properties, criteria serialized as in the conversation data
+     * 
+     * @return The criteria of the searches
+     */
+    private static List<SearchCriteria> getSearches( )
+    {
+        List<SearchCriteria> listSearches = new ArrayList<SearchCriteria>( );
+        CriteriaBuilder criteriaBuilder = CriteriaBuilder.getInstance( );
+        List<String> listKeys = new ArrayList<String>( AppPropertiesService.getKeys( PROPERTY_SEARCH_PREFIX ) );
+        Collections.sort( listKeys );
+
+        for ( String strKey : listKeys )
+        {
+            SearchCriteria criteria = criteriaBuilder.build( SearchCriteria.parse( AppPropertiesService.getProperty( strKey ) ) );
+
+            if ( !criteria.getFilter( ).isEmpty( ) )
+            {
+                listSearches.add( criteria );
+            }
+        }
+
+        return listSearches;
+    }
+
+    /**
+     * Replays a search and renders its result as the bot and the directory servlet do
+     * 
+     * @param searchService
+     *            The search service
+     * @param criteria
+     *            The criteria of the search
+     * @param locale
+     *            The locale
+     */
+    private static void replay( PersonSearchService searchService, SearchCriteria criteria, Locale locale )
+    {
+        try
+        {
+            PersonResultSet resultSet = searchService.search( criteria.getFilter( ), false );
+            render( new SearchState( criteria, resultSet, resultSet.getPersons( ) ), locale );
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "Warm-up : error while replaying the search " + criteria.serialize( ), e );
+        }
+    }
+
+    /**
+     * Renders a search state with every template of the directory
+     * 
+     * @param state
+     *            The search state
+     * @param locale
+     *            The locale
+     */
+    private static void render( SearchState state, Locale locale )
+    {
+        DirectoryRenderer.renderMessage( state, WARMUP_HANDLE, locale );
+        DirectoryRenderer.renderDirectory( state, null, locale );
+        DirectoryRenderer.renderPage( state, WARMUP_HANDLE, 0, locale );
+
+        if ( !state.getDisplayedPersons( ).isEmpty( ) )
+        {
+            DirectoryRenderer.renderPerson( state.getDisplayedPersons( ).get( 0 ), locale );
+        }
+    }
+}
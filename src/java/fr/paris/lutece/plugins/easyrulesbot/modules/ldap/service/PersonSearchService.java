@@ -0,0 +1,1061 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.PersonResultSet;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchState;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.cache.SearchResultCacheService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.cache.SearchStateCacheService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.LdapFilter;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.CircuitBreaker;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.CircuitOpenException;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.DirectorySource;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.HedgedExecution;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.LatencyTracker;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.LdapContextPool;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.SearchResultHandler;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.SingleFlight;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.SearchMetrics;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.planner.QueryPlanner;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.querylog.QueryLogService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.replica.DirectoryReplicaService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+import javax.naming.CommunicationException;
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.SizeLimitExceededException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+/**
+ * Person search service : runs the directory searches of the bot through the connection pool and the result cache. Searches run on a thread
+ * pool and the calling thread waits for them until a deadline. When several directory sources are configured, they are searched in parallel
+ * and their results are merged.
+ */
+public final class PersonSearchService
+{
+    private static final String PROPERTY_SOURCES = "easyrulesbot-ldap.ldap.sources";
+    private static final String PROPERTY_SEARCH_DEADLINE = "easyrulesbot-ldap.ldap.search.deadline";
+    private static final String PROPERTY_FEDERATION_DEDUP_KEY = "easyrulesbot-ldap.ldap.federation.dedupKey";
+    private static final String PROPERTY_REFINEMENT_ENABLED = "easyrulesbot-ldap.refinement.enabled";
+    private static final String PROPERTY_REFINEMENT_MAX_SIZE = "easyrulesbot-ldap.refinement.maxLocalSize";
+
+    private static final String PROPERTY_SEARCH_MAX_RESULTS = "easyrulesbot-ldap.ldap.search.maxResults";
+    private static final String PROPERTY_SEARCH_PAGE_SIZE = "easyrulesbot-ldap.ldap.search.pageSize";
+    private static final String PROPERTY_SEARCH_COUNT_PROBE = "easyrulesbot-ldap.ldap.search.countProbe";
+
+    private static final int DEFAULT_REFINEMENT_MAX_SIZE = 1000;
+    private static final int DEFAULT_SEARCH_MAX_RESULTS = 500;
+    private static final int DEFAULT_SEARCH_PAGE_SIZE = 100;
+    private static final long DEFAULT_SEARCH_DEADLINE = 15000L;
+    private static final String DEFAULT_FEDERATION_DEDUP_KEY = "mail";
+    private static final String NO_ATTRIBUTES = "1.1";
+    private static final String SOURCES_SEPARATOR = ",";
+
+    private static final String KEY_SEPARATOR = "|";
+
+    private static PersonSearchService _singleton;
+
+    private final List<DirectorySource> _listSources;
+    private final DirectorySource _primarySource;
+    private final String _strSourcesKey;
+    private final ExecutorService _searchExecutor;
+    private final long _lSearchDeadline;
+    private final String _strDedupKey;
+    private final SearchResultCacheService _cacheService;
+    private final SearchStateCacheService _stateCacheService;
+    private final SingleFlight<PersonResultSet, NamingException> _singleFlight = new SingleFlight<PersonResultSet, NamingException>(
+            NamingException.class );
+    private final boolean _bRefinementEnabled;
+    private final int _nRefinementMaxSize;
+    private final int _nMaxResults;
+    private final int _nPageSize;
+    private final boolean _bCountProbe;
+
+    /**
+     * Private constructor
+     */
+    private PersonSearchService( )
+    {
+        _listSources = new ArrayList<DirectorySource>( );
+
+        for ( String strSource : AppPropertiesService.getProperty( PROPERTY_SOURCES, DirectorySource.DEFAULT_SOURCE ).split( SOURCES_SEPARATOR ) )
+        {
+            if ( !strSource.trim( ).isEmpty( ) )
+            {
+                _listSources.add( DirectorySource.load( strSource.trim( ) ) );
+            }
+        }
+
+        if ( _listSources.isEmpty( ) )
+        {
+            _listSources.add( DirectorySource.load( DirectorySource.DEFAULT_SOURCE ) );
+        }
+
+        _primarySource = _listSources.get( 0 );
+        _lSearchDeadline = AppPropertiesService.getPropertyLong( PROPERTY_SEARCH_DEADLINE, DEFAULT_SEARCH_DEADLINE );
+        _strDedupKey = AppPropertiesService.getProperty( PROPERTY_FEDERATION_DEDUP_KEY, DEFAULT_FEDERATION_DEDUP_KEY );
+
+        StringBuilder sbSourcesKey = new StringBuilder( );
+        int nThreads = 0;
+
+        for ( DirectorySource source : _listSources )
+        {
+            if ( sbSourcesKey.length( ) > 0 )
+            {
+                sbSourcesKey.append( SOURCES_SEPARATOR );
+            }
+
+            sbSourcesKey.append( source.getSearchBase( ) ).append( KEY_SEPARATOR ).append( source.getSearchScope( ) );
+            nThreads += source.getContextPool( ).getMaxSize( );
+
+            if ( source.getHedgeContextPool( ) != null )
+            {
+                nThreads += source.getHedgeContextPool( ).getMaxSize( );
+            }
+        }
+
+        _strSourcesKey = sbSourcesKey.toString( );
+        // A search thread per pooled connection : the searches never wait for a thread, only for a connection
+        _searchExecutor = Executors.newFixedThreadPool( nThreads, new DaemonThreadFactory( "easyrulesbot-ldap-search" ) );
+        _cacheService = new SearchResultCacheService( );
+        _stateCacheService = new SearchStateCacheService( );
+        _bRefinementEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_REFINEMENT_ENABLED, true );
+        _nRefinementMaxSize = AppPropertiesService.getPropertyInt( PROPERTY_REFINEMENT_MAX_SIZE, DEFAULT_REFINEMENT_MAX_SIZE );
+        _nMaxResults = AppPropertiesService.getPropertyInt( PROPERTY_SEARCH_MAX_RESULTS, DEFAULT_SEARCH_MAX_RESULTS );
+        _nPageSize = AppPropertiesService.getPropertyInt( PROPERTY_SEARCH_PAGE_SIZE, DEFAULT_SEARCH_PAGE_SIZE );
+        _bCountProbe = AppPropertiesService.getPropertyBoolean( PROPERTY_SEARCH_COUNT_PROBE, false );
+    }
+
+    /**
+     * Returns the unique instance
+     * 
+     * @return The instance
+     */
+    public static synchronized PersonSearchService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new PersonSearchService( );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * Get the persons from ldap. Results are shared between conversations and must not be modified. The filter is planned first : a filter
+     * made only of substrings too short to be selective gives an empty truncated result without being sent.
+     * 
+     * @param strSearchFilter
+     *            The LDAP search filter
+     * @return The result set
+     */
+    public PersonResultSet search( String strSearchFilter )
+    {
+        return search( strSearchFilter, true );
+    }
+
+    /**
+     * Get the persons from ldap, as {@link #search(String)} does
+     * 
+     * @param strSearchFilter
+     *            The LDAP search filter
+     * @param bRecorded
+     *            false for the searches not made by users, such as the warm-up ones : they are neither written to the query log nor recorded in
+     *            the planner statistics
+     * @return The result set
+     */
+    public PersonResultSet search( String strSearchFilter, final boolean bRecorded )
+    {
+        long lStart = System.nanoTime( );
+        QueryPlanner queryPlanner = QueryPlanner.getInstance( );
+        final String strPersonSearchFilter = queryPlanner.plan( strSearchFilter );
+
+        if ( strPersonSearchFilter == null )
+        {
+            return log( strSearchFilter, PersonResultSet.rejected( ), QueryLogService.OUTCOME_REJECTED, lStart, bRecorded );
+        }
+
+        // The replica only holds the persons of the first source : federated searches always go to the directories
+        PersonResultSet replicaResult = ( _listSources.size( ) == 1 ) ? DirectoryReplicaService.getInstance( ).search( strPersonSearchFilter,
+                _nMaxResults ) : null;
+
+        if ( replicaResult != null )
+        {
+            if ( bRecorded )
+            {
+                queryPlanner.record( strPersonSearchFilter, replicaResult.isTruncated( ) ? _nMaxResults + 1 : replicaResult.size( ) );
+            }
+
+            return log( strPersonSearchFilter, replicaResult, QueryLogService.OUTCOME_REPLICA, lStart, bRecorded );
+        }
+
+        final String strCacheKey = getCacheKey( strPersonSearchFilter );
+        PersonResultSet resultSet = _cacheService.getResult( strCacheKey );
+
+        if ( resultSet != null )
+        {
+            return log( strPersonSearchFilter, resultSet, QueryLogService.OUTCOME_CACHE, lStart, bRecorded );
+        }
+
+        try
+        {
+            // Identical searches arriving while this one runs share its directory round trip and its result
+            resultSet = _singleFlight.execute( strCacheKey, new Callable<PersonResultSet>( )
+            {
+                @Override
+                public PersonResultSet call( ) throws NamingException
+                {
+                    return searchDirectory( strPersonSearchFilter, strCacheKey, bRecorded );
+                }
+            } );
+
+            return log( strPersonSearchFilter, resultSet, QueryLogService.OUTCOME_DIRECTORY, lStart, bRecorded );
+        }
+        catch( CircuitOpenException e )
+        {
+            // The directory is known to be down : the search fails fast without waiting for the timeouts
+            SearchMetrics.getInstance( ).recordError( e );
+            AppLogService.debug( "Directory unreachable, search not sent : " + getDebugInfo( strPersonSearchFilter ) );
+
+            return log( strPersonSearchFilter, PersonResultSet.unavailable( ), QueryLogService.OUTCOME_UNAVAILABLE, lStart, bRecorded );
+        }
+        catch( NamingException e )
+        {
+            SearchMetrics.getInstance( ).recordError( e );
+            AppLogService.error( "Error while searching for persons with search filter : " + getDebugInfo( strPersonSearchFilter ) + " - "
+                    + e.getMessage( ) );
+
+            return log( strPersonSearchFilter, PersonResultSet.unavailable( ), QueryLogService.OUTCOME_UNAVAILABLE, lStart, bRecorded );
+        }
+    }
+
+    /**
+     * Searches the directory again for a planned filter, bypassing the cache, and caches the result. Used to refresh the results of the hottest
+     * queries ahead of demand. Being no search of a user, the refresh is not recorded in the planner statistics.
+     * 
+     * @param strPersonSearchFilter
+     *            The planned search filter
+     * @throws NamingException
+     *             if the search fails
+     */
+    public void refresh( final String strPersonSearchFilter ) throws NamingException
+    {
+        final String strCacheKey = getCacheKey( strPersonSearchFilter );
+        _singleFlight.execute( strCacheKey, new Callable<PersonResultSet>( )
+        {
+            @Override
+            public PersonResultSet call( ) throws NamingException
+            {
+                return searchDirectory( strPersonSearchFilter, strCacheKey, false );
+            }
+        } );
+    }
+
+    /**
+     * Logs a search in the query log
+     * 
+     * @param strPersonSearchFilter
+     *            The search filter
+     * @param resultSet
+     *            The result of the search
+     * @param strOutcome
+     *            The outcome of the search
+     * @param lStart
+     *            The start of the search, from System.nanoTime( )
+     * @param bRecorded
+     *            false if the search must not be logged
+     * @return The result of the search
+     */
+    private static PersonResultSet log( String strPersonSearchFilter, PersonResultSet resultSet, String strOutcome, long lStart, boolean bRecorded )
+    {
+        QueryLogService queryLog = QueryLogService.getInstance( );
+
+        if ( bRecorded && queryLog.isEnabled( ) )
+        {
+            queryLog.log( normalizeFilter( strPersonSearchFilter ), resultSet.size( ), resultSet.isTruncated( ), System.nanoTime( ) - lStart, strOutcome );
+        }
+
+        return resultSet;
+    }
+
+    /**
+     * Searches the directory and caches the result when every source answered
+     * 
+     * @param strPersonSearchFilter
+     *            The planned search filter
+     * @param strCacheKey
+     *            The cache key of the search
+     * @param bRecorded
+     *            false if the count must not be recorded in the planner statistics
+     * @return The result set
+     * @throws NamingException
+     *             if the search fails
+     */
+    private PersonResultSet searchDirectory( String strPersonSearchFilter, String strCacheKey, boolean bRecorded ) throws NamingException
+    {
+        List<Person> personList = new ArrayList<Person>( );
+        Set<String> setMultiValuedAttributes = new HashSet<String>( );
+        PersonResultSet resultSet;
+        SearchOutcome outcome = _bCountProbe ? executeSearch( strPersonSearchFilter, null, null ) : null;
+
+        if ( outcome != null && outcome._nCount > _nMaxResults )
+        {
+            // Too many results : the entries are not fetched, the user is asked to refine the search
+            resultSet = new PersonResultSet( personList, setMultiValuedAttributes, true );
+        }
+        else
+        {
+            outcome = executeSearch( strPersonSearchFilter, personList, setMultiValuedAttributes );
+            resultSet = new PersonResultSet( personList, setMultiValuedAttributes, outcome._nCount > _nMaxResults );
+        }
+
+        if ( outcome._bComplete )
+        {
+            // Results missing a source are not cached so that the next search asks it again
+            _cacheService.putResult( strCacheKey, resultSet );
+
+            if ( bRecorded )
+            {
+                QueryPlanner.getInstance( ).record( strPersonSearchFilter, outcome._nCount );
+            }
+        }
+
+        return resultSet;
+    }
+
+    /**
+     * Get the persons matching a search that only adds a criterion to a previous one. The new criterion is applied in memory to the previous
+     * result when it is complete, small enough and the criterion filter can be evaluated locally, otherwise the whole search is sent to the
+     * directory.
+     * 
+     * @param previous
+     *            The result of the previous search
+     * @param strCriterionFilter
+     *            The filter of the added criterion
+     * @param strPersonSearchFilter
+     *            The complete LDAP search filter
+     * @return The result set
+     */
+    public PersonResultSet refine( PersonResultSet previous, String strCriterionFilter, String strPersonSearchFilter )
+    {
+        if ( _bRefinementEnabled && !previous.isTruncated( ) && !previous.isRejected( ) && !previous.isUnavailable( )
+                && ( previous.size( ) <= _nRefinementMaxSize ) && !strCriterionFilter.isEmpty( ) )
+        {
+            long lStart = System.nanoTime( );
+
+            try
+            {
+                LdapFilter filter = LdapFilter.parse( "(&" + strCriterionFilter + ")" );
+                Map<String, String> mapAttributeKeys = AttributeProjection.getInstance( ).getAttributeKeys( );
+
+                if ( filter.isEvaluable( mapAttributeKeys, previous.getMultiValuedAttributes( ) ) )
+                {
+                    List<Person> personList = new ArrayList<Person>( );
+
+                    for ( Person person : previous.getPersons( ) )
+                    {
+                        if ( filter.matches( person, mapAttributeKeys ) )
+                        {
+                            personList.add( person );
+                        }
+                    }
+
+                    return log( strPersonSearchFilter, new PersonResultSet( personList, previous.getMultiValuedAttributes( ), false ),
+                            QueryLogService.OUTCOME_REFINED, lStart, true );
+                }
+            }
+            catch( IllegalArgumentException e )
+            {
+                AppLogService.debug( "Criterion filter not evaluated in memory : " + e.getMessage( ) );
+            }
+        }
+
+        return search( strPersonSearchFilter );
+    }
+
+    /**
+     * Returns the max number of persons returned by a search
+     * 
+     * @return The max number of results
+     */
+    public int getMaxResults( )
+    {
+        return _nMaxResults;
+    }
+
+    /**
+     * Returns the search state store of the conversations
+     * 
+     * @return The search state cache service
+     */
+    public SearchStateCacheService getStateCacheService( )
+    {
+        return _stateCacheService;
+    }
+
+    /**
+     * Returns the search state of a conversation
+     * 
+     * @param strHandle
+     *            The handle stored in the conversation data
+     * @return The state or null
+     */
+    public SearchState getSearchState( String strHandle )
+    {
+        return _stateCacheService.getState( strHandle );
+    }
+
+    /**
+     * Returns the search base of the persons in the primary source
+     * 
+     * @return The search base
+     */
+    public String getSearchBase( )
+    {
+        return _primarySource.getSearchBase( );
+    }
+
+    /**
+     * Returns the search scope of the persons in the primary source
+     * 
+     * @return The scope
+     */
+    public int getSearchScope( )
+    {
+        return _primarySource.getSearchScope( );
+    }
+
+    /**
+     * Returns the LDAP connection pool of the primary source
+     * 
+     * @return The pool
+     */
+    public LdapContextPool getContextPool( )
+    {
+        return _primarySource.getContextPool( );
+    }
+
+    /**
+     * Returns the page size of the searches
+     * 
+     * @return The page size, 0 if paging is disabled
+     */
+    public int getPageSize( )
+    {
+        return _nPageSize;
+    }
+
+    /**
+     * Returns the person key on which the persons of several sources are deduplicated
+     * 
+     * @return The key
+     */
+    public String getDedupKey( )
+    {
+        return _strDedupKey;
+    }
+
+    /**
+     * Returns the directory sources, the primary one first
+     * 
+     * @return The sources
+     */
+    public List<DirectorySource> getSources( )
+    {
+        return _listSources;
+    }
+
+    /**
+     * Returns the coalescing of the identical concurrent searches
+     * 
+     * @return The single flight
+     */
+    public SingleFlight<PersonResultSet, NamingException> getSingleFlight( )
+    {
+        return _singleFlight;
+    }
+
+    /**
+     * Returns the search result cache
+     * 
+     * @return The cache service
+     */
+    public SearchResultCacheService getCacheService( )
+    {
+        return _cacheService;
+    }
+
+    /**
+     * Builds the cache key of a search : search bases, scopes and normalized filter. Values are lower cased since the directory attributes searched
+     * by the bot use case insensitive matching rules.
+     * 
+     * @param strPersonSearchFilter
+     *            The search filter
+     * @return The key
+     */
+    public String getCacheKey( String strPersonSearchFilter )
+    {
+        StringBuilder sbKey = new StringBuilder( );
+        sbKey.append( _strSourcesKey ).append( KEY_SEPARATOR );
+        sbKey.append( normalizeFilter( strPersonSearchFilter ) );
+
+        return sbKey.toString( );
+    }
+
+    /**
+     * Normalizes a filter : trimmed, lower cased, with runs of whitespaces collapsed
+     * 
+     * @param strFilter
+     *            The filter
+     * @return The normalized filter
+     */
+    static String normalizeFilter( String strFilter )
+    {
+        if ( strFilter == null )
+        {
+            return "";
+        }
+
+        String strTrimmed = strFilter.trim( ).toLowerCase( Locale.ROOT );
+        StringBuilder sbFilter = new StringBuilder( strTrimmed.length( ) );
+        boolean bSpace = false;
+
+        for ( int i = 0; i < strTrimmed.length( ); i++ )
+        {
+            char c = strTrimmed.charAt( i );
+
+            if ( Character.isWhitespace( c ) )
+            {
+                if ( !bSpace )
+                {
+                    sbFilter.append( ' ' );
+                }
+
+                bSpace = true;
+            }
+            else
+            {
+                sbFilter.append( c );
+                bSpace = false;
+            }
+        }
+
+        return sbFilter.toString( );
+    }
+
+    /**
+     * Runs a search in all the sources in parallel and merges the results in the order of the sources. With several sources, persons having the
+     * same value for the deduplication key are kept once. A source whose primary replica is slower than usual also gets the search on its
+     * secondary replica, and the first answer is kept. The results of a source are ignored if they are not received before its timeout or the
+     * deadline of the search. A source whose circuit breaker is open is skipped, its results are then missing until it is probed again.
+     * 
+     * @param strPersonSearchFilter
+     *            The search filter
+     * @param personList
+     *            The list to fill with the persons found or null to only count them
+     * @param setMultiValuedAttributes
+     *            The set to fill with the attributes having several values
+     * @return The outcome of the search
+     * @throws NamingException
+     *             if no source answered, CircuitOpenException if the breakers of all the sources are open
+     */
+    private SearchOutcome executeSearch( String strPersonSearchFilter, List<Person> personList, Set<String> setMultiValuedAttributes )
+            throws NamingException
+    {
+        long lDeadline = System.currentTimeMillis( ) + _lSearchDeadline;
+        boolean bCountOnly = personList == null;
+        HedgedExecution<SourceResult> execution = new HedgedExecution<SourceResult>( _searchExecutor );
+        List<DirectorySource> listCalledSources = new ArrayList<DirectorySource>( _listSources.size( ) );
+
+        for ( DirectorySource source : _listSources )
+        {
+            if ( source.getCircuitBreaker( ) != null && !source.getCircuitBreaker( ).allowRequest( ) )
+            {
+                continue;
+            }
+
+            listCalledSources.add( source );
+            LdapContextPool hedgeContextPool = source.getHedgeContextPool( );
+            SourceSearchTask hedge = ( hedgeContextPool != null ) ? new SourceSearchTask( source, hedgeContextPool, null, strPersonSearchFilter,
+                    bCountOnly ) : null;
+            execution.submit( new SourceSearchTask( source, source.getContextPool( ), source.getLatencyTracker( ), strPersonSearchFilter, bCountOnly ),
+                    hedge, source.getHedgeDelay( ), source.getTimeout( ) );
+        }
+
+        if ( listCalledSources.isEmpty( ) )
+        {
+            throw new CircuitOpenException( "The circuit breakers of all the directory sources are open" );
+        }
+
+        try
+        {
+            execution.await( lDeadline );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+
+        Set<String> setKeys = ( _listSources.size( ) > 1 ) ? new HashSet<String>( ) : null;
+        Throwable lastFailure = null;
+        int nCount = 0;
+        int nAnswered = 0;
+        boolean bTruncated = false;
+
+        for ( int i = 0; i < listCalledSources.size( ); i++ )
+        {
+            CircuitBreaker circuitBreaker = listCalledSources.get( i ).getCircuitBreaker( );
+
+            if ( !execution.isDone( i ) )
+            {
+                lastFailure = execution.getFailure( i );
+                SearchMetrics.getInstance( ).recordError( lastFailure );
+                AppLogService.error( "Directory source " + listCalledSources.get( i ) + " did not answer : " + getDebugInfo( strPersonSearchFilter ),
+                        lastFailure );
+
+                if ( circuitBreaker != null )
+                {
+                    recordOutcome( circuitBreaker, lastFailure );
+                }
+
+                continue;
+            }
+
+            if ( circuitBreaker != null )
+            {
+                circuitBreaker.recordSuccess( );
+            }
+
+            SourceResult result = execution.getResult( i );
+            nAnswered++;
+            nCount += result._nCount;
+            bTruncated = bTruncated || ( result._nCount > _nMaxResults );
+
+            if ( !bCountOnly )
+            {
+                nCount -= merge( result, personList, setMultiValuedAttributes, setKeys );
+            }
+        }
+
+        if ( nAnswered == 0 )
+        {
+            ServiceUnavailableException exception = new ServiceUnavailableException( "No directory source answered" );
+            exception.setRootCause( lastFailure );
+
+            throw exception;
+        }
+
+        if ( !bCountOnly && personList.size( ) > _nMaxResults )
+        {
+            personList.subList( _nMaxResults, personList.size( ) ).clear( );
+            bTruncated = true;
+        }
+
+        return new SearchOutcome( bTruncated ? Math.max( nCount, _nMaxResults + 1 ) : nCount, nAnswered == _listSources.size( ) );
+    }
+
+    /**
+     * Records the failure of a source in its circuit breaker. Only the failures showing that the source is unreachable count : an error
+     * returned by the directory is an answer.
+     * 
+     * @param circuitBreaker
+     *            The circuit breaker of the source
+     * @param failure
+     *            The failure or null if the source did not answer before the deadline
+     */
+    private static void recordOutcome( CircuitBreaker circuitBreaker, Throwable failure )
+    {
+        if ( failure == null || failure instanceof CommunicationException || failure instanceof ServiceUnavailableException
+                || failure instanceof TimeoutException )
+        {
+            circuitBreaker.recordFailure( );
+        }
+        else
+        {
+            circuitBreaker.recordSuccess( );
+        }
+    }
+
+    /**
+     * Adds the persons of a source to the merged results
+     * 
+     * @param result
+     *            The results of the source
+     * @param personList
+     *            The merged persons
+     * @param setMultiValuedAttributes
+     *            The merged multi valued attributes
+     * @param setKeys
+     *            The deduplication keys of the merged persons or null to keep all the persons
+     * @return The number of duplicates
+     */
+    private int merge( SourceResult result, List<Person> personList, Set<String> setMultiValuedAttributes, Set<String> setKeys )
+    {
+        int nDuplicates = 0;
+        setMultiValuedAttributes.addAll( result._setMultiValuedAttributes );
+
+        for ( Person person : result._listPersons )
+        {
+            String strKey = person.get( _strDedupKey );
+
+            if ( setKeys == null || strKey == null || setKeys.add( strKey.trim( ).toLowerCase( Locale.ROOT ) ) )
+            {
+                personList.add( person );
+            }
+            else
+            {
+                nDuplicates++;
+            }
+        }
+
+        return nDuplicates;
+    }
+
+    /**
+     * Runs a search in a source, retrying once with a new connection if the pooled one has been closed by the server
+     * 
+     * @param source
+     *            The directory source
+     * @param contextPool
+     *            The connection pool of the replica
+     * @param strPersonSearchFilter
+     *            The search filter
+     * @param personList
+     *            The list to fill with the persons found or null to only count them
+     * @param setMultiValuedAttributes
+     *            The set to fill with the attributes having several values
+     * @return The number of entries read, greater than the max number of results if the search was truncated
+     * @throws NamingException
+     *             if the search fails
+     */
+    private int executeSearch( DirectorySource source, LdapContextPool contextPool, String strPersonSearchFilter, List<Person> personList,
+            Set<String> setMultiValuedAttributes ) throws NamingException
+    {
+        try
+        {
+            return searchPersons( source, contextPool, strPersonSearchFilter, personList, setMultiValuedAttributes );
+        }
+        catch( CommunicationException e )
+        {
+            SearchMetrics.getInstance( ).recordError( e );
+            AppLogService.info( this.getClass( ).toString( ) + " : LDAP connection lost, retrying with a new connection - " + e.getMessage( ) );
+
+            if ( personList != null )
+            {
+                personList.clear( );
+                setMultiValuedAttributes.clear( );
+            }
+
+            return searchPersons( source, contextPool, strPersonSearchFilter, personList, setMultiValuedAttributes );
+        }
+    }
+
+    /**
+     * Search persons in a directory source with a pooled connection. Results are read page by page with the simple paged results control and
+     * the search stops as soon as more entries than the max number of results have been found.
+     * 
+     * @param source
+     *            The directory source
+     * @param contextPool
+     *            The connection pool of the replica
+     * @param strPersonSearchFilter
+     *            The search filter
+     * @param personList
+     *            The list to fill with the persons found or null to only count them
+     * @param setMultiValuedAttributes
+     *            The set to fill with the attributes having several values
+     * @return The number of entries read, greater than the max number of results if the search was truncated
+     * @throws NamingException
+     *             if the search fails
+     */
+    private int searchPersons( DirectorySource source, LdapContextPool contextPool, String strPersonSearchFilter, List<Person> personList,
+            Set<String> setMultiValuedAttributes ) throws NamingException
+    {
+        SearchControls scPersonSearchControls = new SearchControls( );
+        scPersonSearchControls.setSearchScope( source.getSearchScope( ) );
+        scPersonSearchControls.setCountLimit( _nMaxResults + 1L );
+
+        if ( personList == null )
+        {
+            scPersonSearchControls.setReturningAttributes( new String [ ] {
+                NO_ATTRIBUTES
+            } );
+        }
+        else
+        {
+            scPersonSearchControls.setReturningAttributes( AttributeProjection.getInstance( ).getReturningAttributes( ) );
+        }
+
+        AppLogService.info( this.getClass( ).toString( ) + " : Search persons with searchFilter" + strPersonSearchFilter );
+
+        PersonCollector collector = new PersonCollector( personList, setMultiValuedAttributes, _nMaxResults );
+        long lStart = SearchMetrics.start( );
+
+        try
+        {
+            contextPool.search( source.getSearchBase( ), strPersonSearchFilter, scPersonSearchControls,
+                    Math.min( _nPageSize, _nMaxResults + 1 ), collector );
+        }
+        catch( SizeLimitExceededException e )
+        {
+            // Limit reached on the server side
+            return _nMaxResults + 1;
+        }
+        finally
+        {
+            // The mapping runs while the entries are read : it is timed apart and left out of the search time
+            SearchMetrics metrics = SearchMetrics.getInstance( );
+            metrics.recordNanos( SearchMetrics.PHASE_SEARCH, System.nanoTime( ) - lStart - collector._lMappingNanos );
+
+            if ( personList != null )
+            {
+                metrics.recordNanos( SearchMetrics.PHASE_MAPPING, collector._lMappingNanos );
+            }
+        }
+
+        return collector._nCount;
+    }
+
+    /**
+     * Return info for debugging
+     * 
+     * @param strPersonSearchFilter
+     *            The person search filter
+     * @return Info for debugging
+     */
+    private String getDebugInfo( String strPersonSearchFilter )
+    {
+        StringBuilder sb = new StringBuilder( );
+        sb.append( "personBase : " );
+        sb.append( _strSourcesKey );
+        sb.append( "\npersonSearch : " );
+        sb.append( strPersonSearchFilter );
+
+        return sb.toString( );
+    }
+
+    /**
+     * Collects the persons of a search until more entries than the max number of results have been read
+     */
+    private static final class PersonCollector implements SearchResultHandler
+    {
+        private final List<Person> _listPersons;
+        private final Set<String> _setMultiValuedAttributes;
+        private final int _nMaxResults;
+        private final AttributeProjection _projection = AttributeProjection.getInstance( );
+        private int _nCount;
+        private long _lMappingNanos;
+
+        /**
+         * Constructor
+         * 
+         * @param listPersons
+         *            The list to fill or null to only count the entries
+         * @param setMultiValuedAttributes
+         *            The set to fill with the attributes having several values
+         * @param nMaxResults
+         *            The max number of results
+         */
+        private PersonCollector( List<Person> listPersons, Set<String> setMultiValuedAttributes, int nMaxResults )
+        {
+            _listPersons = listPersons;
+            _setMultiValuedAttributes = setMultiValuedAttributes;
+            _nMaxResults = nMaxResults;
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public boolean handle( SearchResult result ) throws NamingException
+        {
+            _nCount++;
+
+            if ( _nCount > _nMaxResults )
+            {
+                return false;
+            }
+
+            if ( _listPersons != null )
+            {
+                long lStart = System.nanoTime( );
+                _listPersons.add( _projection.map( result.getAttributes( ), _setMultiValuedAttributes ) );
+                _lMappingNanos += System.nanoTime( ) - lStart;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Number of entries read by a search and completeness of the results
+     */
+    private static final class SearchOutcome
+    {
+        private final int _nCount;
+        private final boolean _bComplete;
+
+        /**
+         * Constructor
+         * 
+         * @param nCount
+         *            The number of entries read, greater than the max number of results if the search was truncated
+         * @param bComplete
+         *            false if some sources did not answer
+         */
+        private SearchOutcome( int nCount, boolean bComplete )
+        {
+            _nCount = nCount;
+            _bComplete = bComplete;
+        }
+    }
+
+    /**
+     * Results of a search in one source
+     */
+    private static final class SourceResult
+    {
+        private final List<Person> _listPersons;
+        private final Set<String> _setMultiValuedAttributes;
+        private final int _nCount;
+
+        /**
+         * Constructor
+         * 
+         * @param listPersons
+         *            The persons
+         * @param setMultiValuedAttributes
+         *            The attributes having several values
+         * @param nCount
+         *            The number of entries read
+         */
+        private SourceResult( List<Person> listPersons, Set<String> setMultiValuedAttributes, int nCount )
+        {
+            _listPersons = listPersons;
+            _setMultiValuedAttributes = setMultiValuedAttributes;
+            _nCount = nCount;
+        }
+    }
+
+    /**
+     * Search in one replica of a source
+     */
+    private final class SourceSearchTask implements Callable<SourceResult>
+    {
+        private final DirectorySource _source;
+        private final LdapContextPool _contextPool;
+        private final LatencyTracker _latencyTracker;
+        private final String _strPersonSearchFilter;
+        private final boolean _bCountOnly;
+
+        /**
+         * Constructor
+         * 
+         * @param source
+         *            The source
+         * @param contextPool
+         *            The connection pool of the replica
+         * @param latencyTracker
+         *            The tracker recording the latency of the search or null. The count probes are not recorded.
+         * @param strPersonSearchFilter
+         *            The search filter
+         * @param bCountOnly
+         *            true to only count the entries
+         */
+        private SourceSearchTask( DirectorySource source, LdapContextPool contextPool, LatencyTracker latencyTracker, String strPersonSearchFilter,
+                boolean bCountOnly )
+        {
+            _source = source;
+            _contextPool = contextPool;
+            _latencyTracker = latencyTracker;
+            _strPersonSearchFilter = strPersonSearchFilter;
+            _bCountOnly = bCountOnly;
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public SourceResult call( ) throws NamingException
+        {
+            List<Person> listPersons = _bCountOnly ? null : new ArrayList<Person>( );
+            Set<String> setMultiValuedAttributes = new HashSet<String>( );
+            long lStart = System.currentTimeMillis( );
+            boolean bAnswered = false;
+            boolean bCancelled = false;
+
+            try
+            {
+                int nCount = executeSearch( _source, _contextPool, _strPersonSearchFilter, listPersons, setMultiValuedAttributes );
+                bAnswered = true;
+
+                return new SourceResult( ( listPersons != null ) ? listPersons : new ArrayList<Person>( ), setMultiValuedAttributes, nCount );
+            }
+            catch( InterruptedNamingException e )
+            {
+                bCancelled = true;
+
+                throw e;
+            }
+            finally
+            {
+                long lElapsed = System.currentTimeMillis( ) - lStart;
+
+                // A search cancelled or timed out lasted at least its elapsed time : leaving it out would lower the percentile as the replica slows
+                // down. A count probe only reads the number of entries and is not timed.
+                if ( _latencyTracker != null && !_bCountOnly
+                        && ( bAnswered || bCancelled || Thread.currentThread( ).isInterrupted( ) || lElapsed >= _source.getTimeout( ) ) )
+                {
+                    _latencyTracker.record( lElapsed );
+                }
+            }
+        }
+    }
+}
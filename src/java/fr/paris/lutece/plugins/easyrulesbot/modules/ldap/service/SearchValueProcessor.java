@@ -33,32 +33,24 @@
  */
 package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service;
 
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Criteria;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.PersonComparator;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.PersonResultSet;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchCriteria;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchState;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.SearchMetrics;
 import fr.paris.lutece.plugins.easyrulesbot.service.response.exceptions.ResponseNotUnderstoodException;
 import fr.paris.lutece.plugins.easyrulesbot.service.response.exceptions.ResponseProcessingException;
 import fr.paris.lutece.plugins.easyrulesbot.service.response.processors.AbstractProcessor;
 import fr.paris.lutece.plugins.easyrulesbot.service.response.processors.ResponseProcessor;
 import fr.paris.lutece.portal.service.i18n.I18nService;
-import fr.paris.lutece.portal.service.template.AppTemplateService;
-import fr.paris.lutece.portal.service.util.AppLogService;
-import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.portal.web.l10n.LocaleService;
-import fr.paris.lutece.util.html.HtmlTemplate;
-import fr.paris.lutece.util.ldap.LdapUtil;
-import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import javax.naming.CommunicationException;
-import javax.naming.NamingEnumeration;
-import javax.naming.NamingException;
-import javax.naming.directory.Attribute;
-import javax.naming.directory.Attributes;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.SearchControls;
-import javax.naming.directory.SearchResult;
 import org.apache.commons.lang.StringUtils;
 
 /**
@@ -66,32 +58,14 @@ import org.apache.commons.lang.StringUtils;
  */
 public class SearchValueProcessor extends AbstractProcessor implements ResponseProcessor
 {
-    //ldap
-    private static final String PROPERTY_INITIAL_CONTEXT_PROVIDER = "easyrulesbot-ldap.ldap.initialContextProvider";
-    private static final String PROPERTY_PROVIDER_URL = "easyrulesbot-ldap.ldap.connectionUrl";
-    private static final String PROPERTY_BIND_DN = "easyrulesbot-ldap.ldap.connectionName";
-    private static final String PROPERTY_BIND_PASSWORD = "easyrulesbot-ldap.ldap.connectionPassword";
-    private static final String PROPERTY_USER_DN_SEARCH_BASE = "easyrulesbot-ldap.ldap.personBase";
-    private static final String PROPERTY_USER_SUBTREE = "easyrulesbot-ldap.ldap.personSubtree";
-    private static final String PROPERTY_FILTER_PARAMETER_PREFIX = "easyrulesbot-ldap.ldap.filter.parameter";
-    private static final String PROPERTY_DN_ATTRIBUTE_PREFIX = "easyrulesbot-ldap.ldap.dn.attributeName";
-
-    private static final String TEMPLATE_LDAP_FILE = "skin/plugins/easyrulesbot/modules/ldap/ldap.html";
-    private static final String MARK_PERSONS_LIST = "persons_list";
-    private static final String MARK_CRITERIA_LIST = "criteria_list";
+    private static final String KEY_SORT = "familyname";
 
     private static String _strSearchField;
     private static String _strLdapSearch;
     private static String _strDefaultSearchField = "default";
     private static String _strShowDirectory;
     private static String _strContinueLoop;
-
-    private static String _strInitialContextProvider = AppPropertiesService.getProperty( PROPERTY_INITIAL_CONTEXT_PROVIDER );
-    private static String _strProviderUrl = AppPropertiesService.getProperty( PROPERTY_PROVIDER_URL );
-    private static String _strBindDn = AppPropertiesService.getProperty( PROPERTY_BIND_DN );
-    private static String _strBindPassword = AppPropertiesService.getProperty( PROPERTY_BIND_PASSWORD );
-    private static String _strPersonDnSearchBase = AppPropertiesService.getProperty( PROPERTY_USER_DN_SEARCH_BASE );
-    private static int _nPersonDnSearchScope = AppPropertiesService.getProperty( PROPERTY_USER_SUBTREE ).equalsIgnoreCase( "true" ) ? SearchControls.SUBTREE_SCOPE : SearchControls.ONELEVEL_SCOPE ;
+    private static String _strResultHandle = "ldapresult";
 
     private String _strInvalidResponseMessage;
     private String _strInvalidResponseMessageI18nKey;
@@ -107,22 +81,80 @@ public class SearchValueProcessor extends AbstractProcessor implements ResponseP
 
         if ( strResponse != null && !strResponse.isEmpty(  ) )
         {
-            String strCriteriaName = !StringUtils.isEmpty( map.get( _strSearchField ) ) ? map.get( _strSearchField ) : _strDefaultSearchField;
-            String strParameters = !StringUtils.isEmpty( map.get( _strLdapSearch ) ) ? map.get( _strLdapSearch ) : "";
-            String strDelimiter = !StringUtils.isEmpty( strParameters ) ? "," : "";
+            SearchMetrics metrics = SearchMetrics.getInstance( );
+            long lStart = SearchMetrics.start( );
+
+            try
+            {
+                String strCriteriaName = !StringUtils.isEmpty( map.get( _strSearchField ) ) ? map.get( _strSearchField ) : _strDefaultSearchField;
+                PersonSearchService searchService = PersonSearchService.getInstance( );
+                CriteriaBuilder criteriaBuilder = CriteriaBuilder.getInstance( );
+                SearchState previousState = getPreviousState( map, searchService );
+                SearchCriteria previousCriteria = getPreviousCriteria( previousState, map.get( _strLdapSearch ), criteriaBuilder );
 
-            strParameters += strDelimiter + strCriteriaName + ":" + strResponse;  
-            mapData.put( _strLdapSearch, strParameters ); 
+                // Only the new criterion is built, the clauses of the previous ones are reused
+                Criteria criterion = criteriaBuilder.createCriteria( strCriteriaName, strResponse );
+                SearchCriteria criteria = previousCriteria.with( criterion );
+                mapData.put( _strLdapSearch, criteria.serialize( ) );
+
+                PersonResultSet resultSet;
+
+                if ( isRefinement( previousState, previousCriteria, strCriteriaName ) )
+                {
+                    resultSet = searchService.refine( previousState.getResultSet( ), criterion.getFilter( ), criteria.getFilter( ) );
+                }
+                else
+                {
+                    resultSet = searchService.search( criteria.getFilter( ) );
+                }
+
+                SearchState state = new SearchState( criteria, resultSet, sortPersons( resultSet ) );
+                String strStateHandle = null;
+
+                if ( resultSet.isRejected( ) )
+                {
+                    // Nothing was searched : the next criterion must not refine a previous result
+                    mapData.remove( _strResultHandle );
+                }
+                else
+                    if ( !resultSet.isUnavailable( ) )
+                    {
+                        // Each search gets its own handle : the messages already displayed keep pointing to their own result
+                        strStateHandle = searchService.getStateCacheService( ).putState( null, state );
+                        metrics.recordResultSize( resultSet.size( ) );
+
+                        // Without a handle, the state cache is disabled and the directory is rendered in the message
+                        if ( strStateHandle != null )
+                        {
+                            mapData.put( _strResultHandle, strStateHandle );
+                        }
+                        else
+                        {
+                            mapData.remove( _strResultHandle );
+                        }
+                    }
 
-            Map<String, String> mapPersonSearchCriteria = getMapParameters( mapData );
+                List<Person> personList = resultSet.getPersons( );
 
-            List<Map> personList = getPersonList( mapPersonSearchCriteria );
+                // The conversation data only keeps a placeholder, the directory is served from the state by the directory servlet
+                long lRenderStart = SearchMetrics.start( );
+                String strDirectory = DirectoryRenderer.renderMessage( state, strStateHandle, LocaleService.getDefault( ) );
+                metrics.record( SearchMetrics.PHASE_RENDER, lRenderStart );
+                mapData.put( _strShowDirectory, strDirectory );
+                mapData.put( _strContinueLoop, String.valueOf( resultSet.isTruncated( ) || resultSet.isRejected( ) || ( personList != null && !personList.isEmpty(  ) ) ) );
 
-            String strDirectory = buildDirectory( mapData, mapPersonSearchCriteria, personList );
-            mapData.put( _strShowDirectory, strDirectory );
-            mapData.put( _strContinueLoop, String.valueOf( personList != null && !personList.isEmpty(  ) ) );
+                return strResponse;
+            }
+            catch( RuntimeException e )
+            {
+                metrics.recordError( e );
 
-            return strResponse;
+                throw e;
+            }
+            finally
+            {
+                metrics.record( SearchMetrics.PHASE_TOTAL, lStart );
+            }
         }
         
         throw new ResponseNotUnderstoodException( getInvalidResponse( locale ) );
@@ -195,214 +227,117 @@ public class SearchValueProcessor extends AbstractProcessor implements ResponseP
     }
 
     /**
-     * Returns invalid response message
+     * Set the result handle key
      * 
-     * @param locale
-     *            The locale
-     * @return The message
+     * @param strResultHandle
+     *            The result handle key
      */
-    private String getInvalidResponse( Locale locale )
+    public void setResultHandle( String strResultHandle )
     {
-        String strResponse;
-
-        if ( _strInvalidResponseMessageI18nKey != null )
-        {
-            strResponse = I18nService.getLocalizedString( _strInvalidResponseMessageI18nKey, locale );
-        }
-        else
-        {
-            strResponse = _strInvalidResponseMessage;
-        }
-
-        return strResponse;
+        _strResultHandle = strResultHandle;
     }
 
     /**
-     * Build the directory table
+     * Returns the state of the previous search of the conversation. When its directory has been refined by a facet value since, the
+     * refinement becomes the previous search : its handle and criteria replace the ones of the conversation data.
      * 
      * @param mapData
-     *            The map of data
-     * @param mapPersonSearchCriteria
-     *            The map of search criteria
-     * @param personList
-     *            The list of person
-     * @return The directory table
+     *            The conversation data
+     * @param searchService
+     *            The search service
+     * @return The state or null if the conversation has no stored state
      */
-    private String buildDirectory( Map mapData, Map<String, String> mapPersonSearchCriteria, List<Map> personList )
+    private static SearchState getPreviousState( Map<String, String> mapData, PersonSearchService searchService )
     {
-        Map<String, Object> model = new HashMap<String, Object>( );
-        model.put( MARK_PERSONS_LIST, personList );
-        model.put( MARK_CRITERIA_LIST, mapPersonSearchCriteria );
+        String strHandle = mapData.get( _strResultHandle );
+        String strRefinedHandle = searchService.getStateCacheService( ).getRefinement( strHandle );
+        SearchState refinedState = searchService.getSearchState( strRefinedHandle );
+
+        if ( refinedState != null )
+        {
+            mapData.put( _strResultHandle, strRefinedHandle );
+            mapData.put( _strLdapSearch, refinedState.getCriteria( ).serialize( ) );
 
-        HtmlTemplate template = AppTemplateService.getTemplate( TEMPLATE_LDAP_FILE, LocaleService.getDefault(  ), model );
+            return refinedState;
+        }
 
-        return template.getHtml( );
+        return searchService.getSearchState( strHandle );
     }
 
     /**
-     * Get the list of persons from ldap
+     * Returns the criteria of the previous searches of the conversation : the ones of the search state when they are still the ones of the
+     * conversation data, otherwise they are read again from the conversation data
      * 
-     * @param mapPersonSearchCriteria
-     *            The map of search criteria
-     * @return The list of persons
+     * @param previousState
+     *            The previous search state
+     * @param strSerializedCriteria
+     *            The criteria stored in the conversation data
+     * @param criteriaBuilder
+     *            The criteria builder
+     * @return The criteria
      */
-    private ArrayList<Map> getPersonList( Map<String, String> mapPersonSearchCriteria )
+    private static SearchCriteria getPreviousCriteria( SearchState previousState, String strSerializedCriteria, CriteriaBuilder criteriaBuilder )
     {
-        ArrayList<Map> personList = new ArrayList<Map>(  );
-        SearchResult sr = null;
-
-        DirContext context = null;
-        
-        String strPersonSearchFilter = getParameters( mapPersonSearchCriteria );
-
-        try
+        if ( previousState != null && previousState.getCriteria( ).serialize( ).equals( StringUtils.defaultString( strSerializedCriteria ) ) )
         {
-            SearchControls scPersonSearchControls = new SearchControls(  );
-            scPersonSearchControls.setSearchScope( _nPersonDnSearchScope );
-            scPersonSearchControls.setReturningObjFlag( true );
-            scPersonSearchControls.setCountLimit( 0 );
-
-            context = LdapUtil.getContext( _strInitialContextProvider, _strProviderUrl, _strBindDn,
-                    _strBindPassword );
-
-            NamingEnumeration personResults = LdapUtil.searchUsers( context, strPersonSearchFilter,
-                    _strPersonDnSearchBase, "", scPersonSearchControls );
-
-            AppLogService.info( this.getClass(  ).toString(  ) + " : Search persons with searchFilter" + 
-                    strPersonSearchFilter );
-
-            while ( ( personResults != null ) && personResults.hasMore(  ) )
-            {
-                sr = (SearchResult) personResults.next(  );
-
-                Attributes attributes = sr.getAttributes(  );
-
-                HashMap<String, String> attributeMap = new HashMap<String, String>(  );
-
-                for ( String strAttributeKey : AppPropertiesService.getKeys( PROPERTY_DN_ATTRIBUTE_PREFIX ) )
-                {
-                    String strAttributeName = AppPropertiesService.getProperty( strAttributeKey );
-                    Attribute attribute = attributes.get( strAttributeName );
-                    String strAttributeValue = "";
-
-                    if ( attribute != null )
-                    {
-                        strAttributeValue = attribute.get(  ).toString(  );
-                    }
-
-                    attributeMap.put( strAttributeKey.replace( PROPERTY_DN_ATTRIBUTE_PREFIX + ".", ""), strAttributeValue );
-                }
-
-                personList.add( attributeMap );
-            }
-
-            return personList;
-        }
-        catch ( CommunicationException e )
-        {
-            AppLogService.error( "Error while searching for persons with search filter : " +
-                getDebugInfo( strPersonSearchFilter ), e );
-
-            return personList;
+            return previousState.getCriteria( );
         }
-        catch ( NamingException e )
-        {
-            AppLogService.error( "Error while searching for persons " );
 
-            return personList;
-        }
-        finally
-        {
-            try
-            {
-                LdapUtil.freeContext( context );
-            }
-            catch ( NamingException naming )
-            {
-                //todo
-            }
-        }
+        return criteriaBuilder.build( SearchCriteria.parse( strSerializedCriteria ) );
     }
 
     /**
-     * Gets the criteria parameters map
+     * Tells if a search only adds a criterion to the previous search of the conversation
      * 
-     * @param mapData
-     *            The data provided by the bot
-     * @return The criteria parameters list
+     * @param previousState
+     *            The previous search state
+     * @param previousCriteria
+     *            The criteria of the previous searches
+     * @param strCriteriaName
+     *            The name of the criterion added by the response
+     * @return true if the new result is a subset of the previous one
      */
-    private static Map<String, String> getMapParameters( Map mapData )
+    private static boolean isRefinement( SearchState previousState, SearchCriteria previousCriteria, String strCriteriaName )
     {
-        Map<String, String> map = (Map<String, String>) mapData;
-        Map<String, String> mapCriteria = new HashMap<String, String>();
-
-        String strCriteria = map.get( _strLdapSearch );
-
-        if ( strCriteria != null )
-        {
-            String [ ] tabCriteria = strCriteria.split( "," );
-
-            for ( String strCriterion : tabCriteria )
-            {
-                int x = strCriterion.indexOf(":");
-                if ( x > -1 )
-                {
-                    String strKey = strCriterion.substring(0, x);
-                    String strValue = strCriterion.substring(x + 1);
-                    mapCriteria.put(strKey, strValue);
-                }
-            }
-        }
-
-        return mapCriteria;
+        return previousState != null && previousState.getCriteria( ) == previousCriteria && !previousCriteria.contains( strCriteriaName );
     }
 
     /**
-     * Gets the criteria parameters string
+     * Returns invalid response message
      * 
-     * @param mapSearchCriteria
-     *            The map of search criteria
-     * @return The criteria parameters list
+     * @param locale
+     *            The locale
+     * @return The message
      */
-    private static String getParameters( Map<String, String> mapSearchCriteria )
+    private String getInvalidResponse( Locale locale )
     {
-        String strParameters = "";
+        String strResponse;
 
-        for (Map.Entry<String, String> entry : mapSearchCriteria.entrySet())
+        if ( _strInvalidResponseMessageI18nKey != null )
         {
-            String strCriteriaName = entry.getKey();
-            String strCriteriaKey = AppPropertiesService.getProperty( PROPERTY_FILTER_PARAMETER_PREFIX + "." + strCriteriaName);
-            String[] strCriteriaValue = entry.getValue( ).split( " " );
-            String strParameter = "";
-
-            for (String strCriteriaToken : strCriteriaValue)
-            {
-                if( !StringUtils.isEmpty( strCriteriaKey ) && !StringUtils.isEmpty( strCriteriaToken ) )
-                {
-                    strParameter += MessageFormat.format( strCriteriaKey, strCriteriaToken);
-                }
-            }
-            strParameters += strParameter;
+            strResponse = I18nService.getLocalizedString( _strInvalidResponseMessageI18nKey, locale );
+        }
+        else
+        {
+            strResponse = _strInvalidResponseMessage;
         }
 
-        return ( strParameters.isEmpty( ) ) ? "" : "(&" + strParameters + ")";
+        return strResponse;
     }
 
     /**
-     * Return info for debugging
+     * Sorts the persons of a result in display order, once per search
      * 
-     * @param PersonSearchFilter
-     *            The person search filter
-     * @return Info for debugging
+     * @param resultSet
+     *            The result of the search
+     * @return The sorted persons
      */
-    private String getDebugInfo( String strPersonSearchFilter )
+    private static List<Person> sortPersons( PersonResultSet resultSet )
     {
-        StringBuffer sb = new StringBuffer(  );
-        sb.append( "personBase : " );
-        sb.append( _strPersonDnSearchBase );
-        sb.append( "\npersonSearch : " );
-        sb.append( strPersonSearchFilter );
+        // The result may be shared through the cache : it is sorted on a copy
+        List<Person> listPersons = new ArrayList<Person>( resultSet.getPersons( ) );
+        Collections.sort( listPersons, new PersonComparator( KEY_SORT, LocaleService.getDefault( ) ) );
 
-        return sb.toString(  );
+        return listPersons;
     }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.cache;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.PersonResultSet;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.AttributeProjection;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.CriteriaBuilder;
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the LDAP search results, keyed by search base, scope and normalized filter. Time to live and max number of entries (LRU eviction) are
+ * set in caches.properties under the cache name. The cache can be reset from the cache management page of the back office. A reset also compiles
+ * again the attribute mapping, so that a change of the mapping properties is taken into account once they have been reloaded.
+ */
+public class SearchResultCacheService extends AbstractCacheableService
+{
+    private static final String CACHE_NAME = "EasyRulesBotLdapSearchResultCacheService";
+
+    private final AtomicLong _lHits = new AtomicLong( );
+    private final AtomicLong _lMisses = new AtomicLong( );
+    private final AtomicLong _lPuts = new AtomicLong( );
+    private final AtomicLong _lInvalidated = new AtomicLong( );
+
+    /**
+     * Constructor
+     */
+    public SearchResultCacheService( )
+    {
+        initCache( );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String getName( )
+    {
+        return CACHE_NAME;
+    }
+
+    /**
+     * Returns the cached result of a search
+     * 
+     * @param strKey
+     *            The search key
+     * @return The result or null if the search is not in cache
+     */
+    public PersonResultSet getResult( String strKey )
+    {
+        if ( !isCacheEnable( ) )
+        {
+            return null;
+        }
+
+        PersonResultSet result = (PersonResultSet) getFromCache( strKey );
+
+        if ( result != null )
+        {
+            _lHits.incrementAndGet( );
+        }
+        else
+        {
+            _lMisses.incrementAndGet( );
+        }
+
+        return result;
+    }
+
+    /**
+     * Puts the result of a search in the cache
+     * 
+     * @param strKey
+     *            The search key
+     * @param result
+     *            The result
+     */
+    public void putResult( String strKey, PersonResultSet result )
+    {
+        if ( isCacheEnable( ) )
+        {
+            putInCache( strKey, result );
+            _lPuts.incrementAndGet( );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void resetCache( )
+    {
+        _lInvalidated.addAndGet( getCacheSize( ) );
+        AttributeProjection.reload( );
+        CriteriaBuilder.reload( );
+        super.resetCache( );
+    }
+
+    /**
+     * Returns the number of searches served from the cache
+     * 
+     * @return The number of hits
+     */
+    public long getHitCount( )
+    {
+        return _lHits.get( );
+    }
+
+    /**
+     * Returns the number of searches not found in the cache
+     * 
+     * @return The number of misses
+     */
+    public long getMissCount( )
+    {
+        return _lMisses.get( );
+    }
+
+    /**
+     * Returns the number of entries dropped by the cache itself, after their time to live or to make room for newer entries
+     * 
+     * @return The number of evictions
+     */
+    public long getEvictionCount( )
+    {
+        return Math.max( 0, _lPuts.get( ) - _lInvalidated.get( ) - getCacheSize( ) );
+    }
+
+    /**
+     * Returns the hit ratio
+     * 
+     * @return The ratio between 0 and 1
+     */
+    public double getHitRatio( )
+    {
+        long lHits = _lHits.get( );
+        long lTotal = lHits + _lMisses.get( );
+
+        return ( lTotal == 0 ) ? 0 : ( (double) lHits / lTotal );
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.cache;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchState;
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+
+import java.util.UUID;
+
+/**
+ * Shared store of the conversations search states. Conversations only keep the handle of their state in their data, the store being bounded in
+ * size and time to live through caches.properties like the other Lutece caches.
+ */
+public class SearchStateCacheService extends AbstractCacheableService
+{
+    private static final String CACHE_NAME = "EasyRulesBotLdapSearchStateCacheService";
+    private static final String KEY_CONVERSATION = "conversation:";
+    private static final String KEY_REFINEMENT = "refinement:";
+
+    /**
+     * Constructor
+     */
+    public SearchStateCacheService( )
+    {
+        initCache( );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String getName( )
+    {
+        return CACHE_NAME;
+    }
+
+    /**
+     * Returns a search state
+     * 
+     * @param strHandle
+     *            The handle
+     * @return The state or null if the handle is unknown or the state has been evicted
+     */
+    public SearchState getState( String strHandle )
+    {
+        if ( strHandle == null || !isCacheEnable( ) )
+        {
+            return null;
+        }
+
+        Object state = getFromCache( strHandle );
+
+        return ( state instanceof SearchState ) ? (SearchState) state : null;
+    }
+
+    /**
+     * Stores a search state
+     * 
+     * @param strHandle
+     *            The handle of the conversation or null to create a new one
+     * @param state
+     *            The state
+     * @return The handle, or null if the cache is disabled and the state can't be found again
+     */
+    public String putState( String strHandle, SearchState state )
+    {
+        if ( !isCacheEnable( ) )
+        {
+            return null;
+        }
+
+        String strKey = ( strHandle != null ) ? strHandle : UUID.randomUUID( ).toString( );
+        putInCache( strKey, state );
+
+        return strKey;
+    }
+
+    /**
+     * Records the refinement of a search state by a facet value as the current search of its conversation. The conversation is known by the
+     * handle of its data : the one of the state refined first.
+     * 
+     * @param strHandle
+     *            The handle of the refined state
+     * @param strRefinedHandle
+     *            The handle of the refinement
+     */
+    public void putRefinement( String strHandle, String strRefinedHandle )
+    {
+        if ( strHandle == null || strRefinedHandle == null || !isCacheEnable( ) )
+        {
+            return;
+        }
+
+        Object conversation = getFromCache( KEY_CONVERSATION + strHandle );
+        String strConversationHandle = ( conversation instanceof String ) ? (String) conversation : strHandle;
+        putInCache( KEY_CONVERSATION + strRefinedHandle, strConversationHandle );
+        putInCache( KEY_REFINEMENT + strConversationHandle, strRefinedHandle );
+    }
+
+    /**
+     * Returns the handle of the last refinement by a facet value of the search of a conversation
+     * 
+     * @param strHandle
+     *            The handle of the conversation data
+     * @return The handle of the refinement or null if the search has not been refined
+     */
+    public String getRefinement( String strHandle )
+    {
+        if ( strHandle == null || !isCacheEnable( ) )
+        {
+            return null;
+        }
+
+        Object refinement = getFromCache( KEY_REFINEMENT + strHandle );
+
+        return ( refinement instanceof String ) ? (String) refinement : null;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.export;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.portal.service.i18n.I18nService;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the persons as CSV rows, with a row of column labels first. The separator is a semicolon, as expected by spreadsheets in French
+ * locales, and the output starts with a byte order mark so that they read it as UTF-8.
+ */
+public class CsvPersonWriter implements PersonWriter
+{
+    private static final String I18N_KEY_SEARCH_PARAMETER_PREFIX = "module.easyrulesbot.ldap.searchParameter.";
+    private static final char SEPARATOR = ';';
+    private static final char QUOTE = '"';
+    private static final char BYTE_ORDER_MARK = '\ufeff';
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    private final Writer _writer;
+    private final List<String> _listKeys;
+    private final Locale _locale;
+
+    /**
+     * Constructor
+     * 
+     * @param writer
+     *            The output
+     * @param listKeys
+     *            The person keys of the columns
+     * @param locale
+     *            The locale of the column labels
+     */
+    public CsvPersonWriter( Writer writer, List<String> listKeys, Locale locale )
+    {
+        _writer = writer;
+        _listKeys = listKeys;
+        _locale = locale;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void writeHeader( ) throws IOException
+    {
+        _writer.write( BYTE_ORDER_MARK );
+
+        for ( int i = 0; i < _listKeys.size( ); i++ )
+        {
+            writeField( i, I18nService.getLocalizedString( I18N_KEY_SEARCH_PARAMETER_PREFIX + _listKeys.get( i ), _locale ) );
+        }
+
+        _writer.write( LINE_SEPARATOR );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void write( Person person ) throws IOException
+    {
+        for ( int i = 0; i < _listKeys.size( ); i++ )
+        {
+            writeField( i, person.get( _listKeys.get( i ) ) );
+        }
+
+        _writer.write( LINE_SEPARATOR );
+    }
+
+    /**
+     * Writes a field, quoted if it holds a separator, a quote or a line break
+     * 
+     * @param nColumn
+     *            The column
+     * @param strValue
+     *            The value, may be null
+     * @throws IOException
+     *             if the output can't be written
+     */
+    private void writeField( int nColumn, String strValue ) throws IOException
+    {
+        if ( nColumn > 0 )
+        {
+            _writer.write( SEPARATOR );
+        }
+
+        if ( strValue == null || strValue.isEmpty( ) )
+        {
+            return;
+        }
+
+        String strField = isFormula( strValue ) ? "'" + strValue : strValue;
+
+        if ( strField.indexOf( SEPARATOR ) < 0 && strField.indexOf( QUOTE ) < 0 && strField.indexOf( '\n' ) < 0 && strField.indexOf( '\r' ) < 0 )
+        {
+            _writer.write( strField );
+
+            return;
+        }
+
+        _writer.write( QUOTE );
+        _writer.write( strField.replace( "\"", "\"\"" ) );
+        _writer.write( QUOTE );
+    }
+
+    /**
+     * Tells if a value would be read as a formula by a spreadsheet. Phone numbers starting with a sign are not formulas.
+     * 
+     * @param strValue
+     *            The value
+     * @return true if the value must be escaped
+     */
+    private static boolean isFormula( String strValue )
+    {
+        char cFirst = strValue.charAt( 0 );
+
+        if ( cFirst == '=' || cFirst == '@' || cFirst == '\t' )
+        {
+            return true;
+        }
+
+        return ( cFirst == '+' || cFirst == '-' ) && strValue.length( ) > 1 && !Character.isDigit( strValue.charAt( 1 ) )
+                && strValue.charAt( 1 ) != ' ';
+    }
+}
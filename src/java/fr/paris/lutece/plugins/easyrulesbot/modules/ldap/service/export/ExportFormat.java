@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.export;
+
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Formats of the exports
+ */
+public enum ExportFormat
+{
+    CSV( "csv", "text/csv", "csv" )
+    {
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public PersonWriter createWriter( Writer writer, List<String> listKeys, Locale locale )
+        {
+            return new CsvPersonWriter( writer, listKeys, locale );
+        }
+    },
+    VCARD( "vcard", "text/vcard", "vcf" )
+    {
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public PersonWriter createWriter( Writer writer, List<String> listKeys, Locale locale )
+        {
+            return new VCardPersonWriter( writer );
+        }
+    };
+
+    private final String _strName;
+    private final String _strContentType;
+    private final String _strFileExtension;
+
+    /**
+     * Constructor
+     * 
+     * @param strName
+     *            The name of the format in the requests
+     * @param strContentType
+     *            The content type
+     * @param strFileExtension
+     *            The extension of the file name
+     */
+    ExportFormat( String strName, String strContentType, String strFileExtension )
+    {
+        _strName = strName;
+        _strContentType = strContentType;
+        _strFileExtension = strFileExtension;
+    }
+
+    /**
+     * Creates the writer of the persons
+     * 
+     * @param writer
+     *            The output
+     * @param listKeys
+     *            The person keys exported, for the formats having columns
+     * @param locale
+     *            The locale of the labels
+     * @return The person writer
+     */
+    public abstract PersonWriter createWriter( Writer writer, List<String> listKeys, Locale locale );
+
+    /**
+     * Returns the content type
+     * 
+     * @return The content type
+     */
+    public String getContentType( )
+    {
+        return _strContentType;
+    }
+
+    /**
+     * Returns the extension of the file name
+     * 
+     * @return The extension
+     */
+    public String getFileExtension( )
+    {
+        return _strFileExtension;
+    }
+
+    /**
+     * Returns the format of a name
+     * 
+     * @param strName
+     *            The name of the format in the request
+     * @return The format or null if the name is unknown
+     */
+    public static ExportFormat fromName( String strName )
+    {
+        for ( ExportFormat format : values( ) )
+        {
+            if ( format._strName.equals( strName ) )
+            {
+                return format;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.export;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.AttributeProjection;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.PersonSearchService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.CircuitBreaker;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.CircuitOpenException;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.DirectorySource;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.SearchResultHandler;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+/**
+ * Exports the persons matching a search filter. The entries are read page by page from each directory source and each one is written as soon
+ * as it is mapped, so the memory used does not depend on the number of persons exported ; only the deduplication keys are kept when several
+ * sources are searched.
+ */
+public final class ExportService
+{
+    private static final String PROPERTY_ENABLED = "easyrulesbot-ldap.export.enabled";
+    private static final String PROPERTY_MAX_RESULTS = "easyrulesbot-ldap.export.maxResults";
+    private static final String PROPERTY_KEYS = "easyrulesbot-ldap.export.keys";
+
+    private static final String DEFAULT_KEYS = "familyname,name,direction,fonction,mail,phonenumber,mobilepro,site,office,street,postalcode,city";
+    private static final int DEFAULT_MAX_RESULTS = 20000;
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    private static final String SEPARATOR = ",";
+
+    private static ExportService _singleton;
+
+    private final boolean _bEnabled;
+    private final int _nMaxResults;
+    private final List<String> _listKeys;
+
+    /**
+     * Private constructor
+     */
+    private ExportService( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+        _nMaxResults = AppPropertiesService.getPropertyInt( PROPERTY_MAX_RESULTS, DEFAULT_MAX_RESULTS );
+
+        List<String> listKeys = new ArrayList<String>( );
+
+        for ( String strKey : AppPropertiesService.getProperty( PROPERTY_KEYS, DEFAULT_KEYS ).split( SEPARATOR ) )
+        {
+            if ( !strKey.trim( ).isEmpty( ) )
+            {
+                listKeys.add( strKey.trim( ) );
+            }
+        }
+
+        _listKeys = Collections.unmodifiableList( listKeys );
+    }
+
+    /**
+     * Returns the unique instance
+     * 
+     * @return The instance
+     */
+    public static synchronized ExportService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new ExportService( );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * Tells if the export is enabled
+     * 
+     * @return true if enabled
+     */
+    public boolean isEnabled( )
+    {
+        return _bEnabled;
+    }
+
+    /**
+     * Exports the persons matching a search filter
+     * 
+     * @param strPersonSearchFilter
+     *            The search filter
+     * @param format
+     *            The format
+     * @param writer
+     *            The output
+     * @param locale
+     *            The locale of the labels
+     * @return The number of persons written
+     * @throws NamingException
+     *             if a source can't be searched, CircuitOpenException before anything is written if the breakers of all the sources are open
+     * @throws IOException
+     *             if the output can't be written
+     */
+    public int export( String strPersonSearchFilter, ExportFormat format, Writer writer, Locale locale ) throws NamingException, IOException
+    {
+        PersonSearchService searchService = PersonSearchService.getInstance( );
+        PersonExportHandler handler = null;
+        long lStart = System.currentTimeMillis( );
+
+        for ( DirectorySource source : searchService.getSources( ) )
+        {
+            // The breaker is asked only when the source is about to be searched : in the half open state, it gives the single probe call
+            CircuitBreaker circuitBreaker = source.getCircuitBreaker( );
+
+            if ( circuitBreaker != null && !circuitBreaker.allowRequest( ) )
+            {
+                continue;
+            }
+
+            boolean bFailure = false;
+
+            try
+            {
+                if ( handler == null )
+                {
+                    PersonWriter personWriter = format.createWriter( writer, _listKeys, locale );
+                    personWriter.writeHeader( );
+                    handler = new PersonExportHandler( personWriter, searchService.getDedupKey( ),
+                            ( searchService.getSources( ).size( ) > 1 ) ? new HashSet<String>( ) : null, _nMaxResults );
+                }
+
+                exportSource( source, strPersonSearchFilter, searchService.getPageSize( ), handler );
+            }
+            catch( CommunicationException e )
+            {
+                bFailure = true;
+
+                throw e;
+            }
+            catch( ServiceUnavailableException e )
+            {
+                bFailure = true;
+
+                throw e;
+            }
+            finally
+            {
+                // An outcome is always recorded, otherwise a half open breaker would keep waiting for its probe
+                recordOutcome( circuitBreaker, bFailure );
+            }
+
+            if ( handler._nWritten >= _nMaxResults )
+            {
+                break;
+            }
+        }
+
+        if ( handler == null )
+        {
+            throw new CircuitOpenException( "The circuit breakers of all the directory sources are open" );
+        }
+
+        AppLogService.info( "Export of " + handler._nWritten + " persons (" + format + ") with search filter " + strPersonSearchFilter + " in "
+                + ( System.currentTimeMillis( ) - lStart ) + " ms" );
+
+        return handler._nWritten;
+    }
+
+    /**
+     * Exports the persons of a source
+     * 
+     * @param source
+     *            The directory source
+     * @param strPersonSearchFilter
+     *            The search filter
+     * @param nPageSize
+     *            The page size of the searches
+     * @param handler
+     *            The handler writing the persons
+     * @throws NamingException
+     *             if the source can't be searched
+     * @throws IOException
+     *             if the output can't be written
+     */
+    private static void exportSource( DirectorySource source, String strPersonSearchFilter, int nPageSize, PersonExportHandler handler )
+            throws NamingException, IOException
+    {
+        SearchControls controls = new SearchControls( );
+        controls.setSearchScope( source.getSearchScope( ) );
+        controls.setReturningAttributes( AttributeProjection.getInstance( ).getReturningAttributes( ) );
+
+        // Without paging, the server would send all the entries at once
+        source.getContextPool( ).search( source.getSearchBase( ), strPersonSearchFilter, controls, ( nPageSize > 0 ) ? nPageSize : DEFAULT_PAGE_SIZE,
+                handler );
+
+        if ( handler._writeError != null )
+        {
+            throw handler._writeError;
+        }
+    }
+
+    /**
+     * Records the outcome of the search of a source. Only the failures showing that the source is unreachable count : an error returned by the
+     * directory or a write error is not a failure of the source.
+     * 
+     * @param circuitBreaker
+     *            The circuit breaker of the source, may be null
+     * @param bFailure
+     *            true if the source could not be reached
+     */
+    private static void recordOutcome( CircuitBreaker circuitBreaker, boolean bFailure )
+    {
+        if ( circuitBreaker == null )
+        {
+            return;
+        }
+
+        if ( bFailure )
+        {
+            circuitBreaker.recordFailure( );
+        }
+        else
+        {
+            circuitBreaker.recordSuccess( );
+        }
+    }
+
+    /**
+     * Maps the entries to persons and writes them until the max number of persons is reached
+     */
+    private static final class PersonExportHandler implements SearchResultHandler
+    {
+        private final PersonWriter _personWriter;
+        private final String _strDedupKey;
+        private final Set<String> _setKeys;
+        private final int _nMaxResults;
+        private final AttributeProjection _projection = AttributeProjection.getInstance( );
+        private final Set<String> _setMultiValuedAttributes = new HashSet<String>( );
+        private int _nWritten;
+        private IOException _writeError;
+
+        /**
+         * Constructor
+         * 
+         * @param personWriter
+         *            The person writer
+         * @param strDedupKey
+         *            The person key on which the persons of several sources are deduplicated
+         * @param setKeys
+         *            The deduplication keys of the persons written, null to write all the persons
+         * @param nMaxResults
+         *            The max number of persons
+         */
+        private PersonExportHandler( PersonWriter personWriter, String strDedupKey, Set<String> setKeys, int nMaxResults )
+        {
+            _personWriter = personWriter;
+            _strDedupKey = strDedupKey;
+            _setKeys = setKeys;
+            _nMaxResults = nMaxResults;
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public boolean handle( SearchResult result ) throws NamingException
+        {
+            if ( _nWritten >= _nMaxResults )
+            {
+                return false;
+            }
+
+            Person person = _projection.map( result.getAttributes( ), _setMultiValuedAttributes );
+            String strKey = person.get( _strDedupKey );
+
+            if ( _setKeys != null && strKey != null && !_setKeys.add( strKey.trim( ).toLowerCase( Locale.ROOT ) ) )
+            {
+                return true;
+            }
+
+            try
+            {
+                _personWriter.write( person );
+                _nWritten++;
+            }
+            catch( IOException e )
+            {
+                // The client went away : the search is stopped and the error is thrown once the connection is released
+                _writeError = e;
+
+                return false;
+            }
+
+            return true;
+        }
+    }
+}
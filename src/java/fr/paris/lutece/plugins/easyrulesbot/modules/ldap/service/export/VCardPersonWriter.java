@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.export;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the persons as vCard 3.0 cards
+ */
+public class VCardPersonWriter implements PersonWriter
+{
+    private static final String KEY_FAMILY_NAME = "familyname";
+    private static final String KEY_NAME = "name";
+    private static final String KEY_DIRECTION = "direction";
+    private static final String KEY_FONCTION = "fonction";
+    private static final String KEY_MAIL = "mail";
+    private static final String KEY_PHONE_NUMBER = "phonenumber";
+    private static final String KEY_MOBILE = "mobilepro";
+    private static final String KEY_FAX = "fax";
+    private static final String KEY_OFFICE = "office";
+    private static final String KEY_STREET = "street";
+    private static final String KEY_CITY = "city";
+    private static final String KEY_POSTAL_CODE = "postalcode";
+    private static final String LINE_SEPARATOR = "\r\n";
+    private static final int MAX_LINE_LENGTH = 75;
+
+    private final Writer _writer;
+
+    /**
+     * Constructor
+     * 
+     * @param writer
+     *            The output
+     */
+    public VCardPersonWriter( Writer writer )
+    {
+        _writer = writer;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void writeHeader( ) throws IOException
+    {
+        // The cards follow each other without a header
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void write( Person person ) throws IOException
+    {
+        String strFamilyName = escape( person.get( KEY_FAMILY_NAME ) );
+        String strName = escape( person.get( KEY_NAME ) );
+
+        writeLine( "BEGIN:VCARD" );
+        writeLine( "VERSION:3.0" );
+        writeLine( "N:" + strFamilyName + ";" + strName + ";;;" );
+        writeLine( "FN:" + ( strName + " " + strFamilyName ).trim( ) );
+        writeProperty( "ORG:", person.get( KEY_DIRECTION ) );
+        writeProperty( "TITLE:", person.get( KEY_FONCTION ) );
+        writeProperty( "EMAIL;TYPE=INTERNET:", person.get( KEY_MAIL ) );
+        writeProperty( "TEL;TYPE=WORK,VOICE:", person.get( KEY_PHONE_NUMBER ) );
+        writeProperty( "TEL;TYPE=WORK,CELL:", person.get( KEY_MOBILE ) );
+        writeProperty( "TEL;TYPE=WORK,FAX:", person.get( KEY_FAX ) );
+
+        if ( person.get( KEY_STREET ) != null || person.get( KEY_CITY ) != null || person.get( KEY_POSTAL_CODE ) != null )
+        {
+            writeLine( "ADR;TYPE=WORK:;" + escape( person.get( KEY_OFFICE ) ) + ";" + escape( person.get( KEY_STREET ) ) + ";"
+                    + escape( person.get( KEY_CITY ) ) + ";;" + escape( person.get( KEY_POSTAL_CODE ) ) + ";" );
+        }
+
+        writeLine( "END:VCARD" );
+    }
+
+    /**
+     * Writes a property if the person has a value
+     * 
+     * @param strName
+     *            The property name with its parameters and the colon
+     * @param strValue
+     *            The value, may be null
+     * @throws IOException
+     *             if the output can't be written
+     */
+    private void writeProperty( String strName, String strValue ) throws IOException
+    {
+        if ( strValue != null )
+        {
+            writeLine( strName + escape( strValue ) );
+        }
+    }
+
+    /**
+     * Writes a content line, folded after 75 characters
+     * 
+     * @param strLine
+     *            The line
+     * @throws IOException
+     *             if the output can't be written
+     */
+    private void writeLine( String strLine ) throws IOException
+    {
+        int nStart = 0;
+
+        while ( strLine.length( ) - nStart > MAX_LINE_LENGTH )
+        {
+            // The continuation lines start with a space, which counts in their length
+            int nEnd = nStart + ( ( nStart == 0 ) ? MAX_LINE_LENGTH : MAX_LINE_LENGTH - 1 );
+            _writer.write( strLine, nStart, nEnd - nStart );
+            _writer.write( LINE_SEPARATOR );
+            _writer.write( ' ' );
+            nStart = nEnd;
+        }
+
+        _writer.write( strLine, nStart, strLine.length( ) - nStart );
+        _writer.write( LINE_SEPARATOR );
+    }
+
+    /**
+     * Escapes a text value
+     * 
+     * @param strValue
+     *            The value, may be null
+     * @return The escaped value, empty if the value is null
+     */
+    private static String escape( String strValue )
+    {
+        if ( strValue == null )
+        {
+            return "";
+        }
+
+        StringBuilder sbValue = new StringBuilder( strValue.length( ) );
+
+        for ( int i = 0; i < strValue.length( ); i++ )
+        {
+            char c = strValue.charAt( i );
+
+            if ( c == '\\' || c == ',' || c == ';' )
+            {
+                sbValue.append( '\\' ).append( c );
+            }
+            else
+                if ( c == '\n' )
+                {
+                    sbValue.append( "\\n" );
+                }
+                else
+                    if ( c != '\r' )
+                    {
+                        sbValue.append( c );
+                    }
+        }
+
+        return sbValue.toString( );
+    }
+}
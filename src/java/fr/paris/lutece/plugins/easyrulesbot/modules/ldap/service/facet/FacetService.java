@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.facet;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Criteria;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Facet;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.FacetValue;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.PersonResultSet;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchState;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.AttributeProjection;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.FilterTemplate;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the values of some person keys over the result of a search, in a single pass over its persons, and offers the facets that split the
+ * result best as refinements. A refinement is applied to the persons of the search state, without searching the directory again. Results
+ * that are truncated or unavailable have no facets : their persons are not all known.
+ */
+public final class FacetService
+{
+    private static final String PROPERTY_ENABLED = "easyrulesbot-ldap.facets.enabled";
+    private static final String PROPERTY_ATTRIBUTES = "easyrulesbot-ldap.facets.attributes";
+    private static final String PROPERTY_MIN_RESULTS = "easyrulesbot-ldap.facets.minResults";
+    private static final String PROPERTY_MAX_FACETS = "easyrulesbot-ldap.facets.maxFacets";
+    private static final String PROPERTY_MAX_VALUES = "easyrulesbot-ldap.facets.maxValues";
+    private static final String PROPERTY_MAX_CONCENTRATION = "easyrulesbot-ldap.facets.maxConcentration";
+
+    private static final String DEFAULT_ATTRIBUTES = "direction,site,familyname";
+    private static final int DEFAULT_MIN_RESULTS = 5;
+    private static final int DEFAULT_MAX_FACETS = 3;
+    private static final int DEFAULT_MAX_VALUES = 5;
+    private static final int DEFAULT_MAX_CONCENTRATION = 90;
+    private static final String SEPARATOR = ",";
+
+    private static FacetService _singleton;
+
+    private final boolean _bEnabled;
+    private final List<String> _listAttributes;
+    private final int _nMinResults;
+    private final int _nMaxFacets;
+    private final int _nMaxValues;
+    private final double _dMaxConcentration;
+    private final AtomicLong _lRefinedCount = new AtomicLong( );
+
+    /**
+     * Private constructor
+     */
+    private FacetService( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, true );
+        _nMinResults = AppPropertiesService.getPropertyInt( PROPERTY_MIN_RESULTS, DEFAULT_MIN_RESULTS );
+        _nMaxFacets = AppPropertiesService.getPropertyInt( PROPERTY_MAX_FACETS, DEFAULT_MAX_FACETS );
+        _nMaxValues = AppPropertiesService.getPropertyInt( PROPERTY_MAX_VALUES, DEFAULT_MAX_VALUES );
+        _dMaxConcentration = AppPropertiesService.getPropertyInt( PROPERTY_MAX_CONCENTRATION, DEFAULT_MAX_CONCENTRATION ) / 100.0;
+        _listAttributes = new ArrayList<String>( );
+
+        for ( String strAttribute : AppPropertiesService.getProperty( PROPERTY_ATTRIBUTES, DEFAULT_ATTRIBUTES ).split( SEPARATOR ) )
+        {
+            if ( !strAttribute.trim( ).isEmpty( ) )
+            {
+                _listAttributes.add( strAttribute.trim( ) );
+            }
+        }
+    }
+
+    /**
+     * Returns the unique instance
+     * 
+     * @return The instance
+     */
+    public static synchronized FacetService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new FacetService( );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * Returns the facets offered for a search : the ones whose values split its persons, the best first
+     * 
+     * @param state
+     *            The search state
+     * @return The facets, empty if the result can't be refined locally
+     */
+    public List<Facet> getFacets( SearchState state )
+    {
+        PersonResultSet resultSet = state.getResultSet( );
+        List<Person> listPersons = state.getDisplayedPersons( );
+
+        if ( !_bEnabled || resultSet.isTruncated( ) || resultSet.isUnavailable( ) || listPersons.size( ) < Math.max( 2, _nMinResults ) )
+        {
+            return Collections.emptyList( );
+        }
+
+        int nAttributes = _listAttributes.size( );
+        List<Map<String, int [ ]>> listCounts = new ArrayList<Map<String, int [ ]>>( nAttributes );
+
+        for ( int i = 0; i < nAttributes; i++ )
+        {
+            listCounts.add( new HashMap<String, int [ ]>( ) );
+        }
+
+        // Single pass over the persons, counting the values of every key
+        for ( Person person : listPersons )
+        {
+            for ( int i = 0; i < nAttributes; i++ )
+            {
+                String strValue = person.get( _listAttributes.get( i ) );
+
+                if ( strValue != null && !strValue.isEmpty( ) )
+                {
+                    Map<String, int [ ]> mapCounts = listCounts.get( i );
+                    int [ ] count = mapCounts.get( strValue );
+
+                    if ( count == null )
+                    {
+                        count = new int [ 1];
+                        mapCounts.put( strValue, count );
+                    }
+
+                    count [0]++;
+                }
+            }
+        }
+
+        List<Facet> listFacets = new ArrayList<Facet>( );
+
+        for ( int i = 0; i < nAttributes; i++ )
+        {
+            Facet facet = createFacet( _listAttributes.get( i ), listCounts.get( i ), listPersons.size( ) );
+
+            if ( facet != null && facet.getConcentration( ) <= _dMaxConcentration )
+            {
+                listFacets.add( facet );
+            }
+        }
+
+        Collections.sort( listFacets, new Comparator<Facet>( )
+        {
+            @Override
+            public int compare( Facet facet1, Facet facet2 )
+            {
+                return Double.compare( facet1.getConcentration( ), facet2.getConcentration( ) );
+            }
+        } );
+
+        return ( listFacets.size( ) > _nMaxFacets ) ? new ArrayList<Facet>( listFacets.subList( 0, Math.max( 0, _nMaxFacets ) ) ) : listFacets;
+    }
+
+    /**
+     * Applies a refinement to a search : keeps the persons having the value, in display order, and adds to the criteria an equality
+     * criterion on the attribute of the key
+     * 
+     * @param state
+     *            The search state
+     * @param strName
+     *            The person key of the facet
+     * @param strValue
+     *            The value
+     * @return The refined search state, or null if the key is not a facet or the result can't be refined locally
+     */
+    public SearchState refine( SearchState state, String strName, String strValue )
+    {
+        PersonResultSet resultSet = state.getResultSet( );
+
+        if ( !_bEnabled || !_listAttributes.contains( strName ) || strValue == null || resultSet.isTruncated( ) || resultSet.isUnavailable( ) )
+        {
+            return null;
+        }
+
+        String strFilter = getEqualityFilter( strName, strValue );
+
+        if ( strFilter == null )
+        {
+            return null;
+        }
+
+        List<Person> listPersons = new ArrayList<Person>( );
+
+        for ( Person person : state.getDisplayedPersons( ) )
+        {
+            if ( strValue.equals( person.get( strName ) ) )
+            {
+                listPersons.add( person );
+            }
+        }
+
+        // The criterion selects the same persons as the refinement, so that the directory gives them again, for an export for instance
+        Criteria criterion = new Criteria( strName, strValue, strFilter );
+        _lRefinedCount.incrementAndGet( );
+
+        return new SearchState( state.getCriteria( ).with( criterion ), new PersonResultSet( listPersons, resultSet.getMultiValuedAttributes( ),
+                false ), listPersons );
+    }
+
+    /**
+     * Returns the number of refinements applied
+     * 
+     * @return The count
+     */
+    public long getRefinedCount( )
+    {
+        return _lRefinedCount.get( );
+    }
+
+    /**
+     * Returns the equality assertion on the LDAP attribute of a person key
+     * 
+     * @param strName
+     *            The person key
+     * @param strValue
+     *            The value
+     * @return The assertion, or null if the key is not mapped to an attribute
+     */
+    private static String getEqualityFilter( String strName, String strValue )
+    {
+        for ( Map.Entry<String, String> entry : AttributeProjection.getInstance( ).getAttributeKeys( ).entrySet( ) )
+        {
+            if ( strName.equals( entry.getValue( ) ) )
+            {
+                return "(" + entry.getKey( ) + "=" + FilterTemplate.escape( strValue ) + ")";
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates a facet from the counts of its values
+     * 
+     * @param strName
+     *            The person key
+     * @param mapCounts
+     *            The number of persons by value
+     * @param nTotal
+     *            The number of persons of the result
+     * @return The facet, or null if no value splits the persons
+     */
+    private Facet createFacet( String strName, Map<String, int [ ]> mapCounts, int nTotal )
+    {
+        List<FacetValue> listValues = new ArrayList<FacetValue>( mapCounts.size( ) );
+        long lMissing = nTotal;
+        double dSquares = 0;
+
+        for ( Map.Entry<String, int [ ]> entry : mapCounts.entrySet( ) )
+        {
+            int nCount = entry.getValue( ) [0];
+            lMissing -= nCount;
+            dSquares += (double) nCount * nCount;
+
+            // A value shared by every person does not refine anything
+            if ( nCount < nTotal )
+            {
+                listValues.add( new FacetValue( entry.getKey( ), nCount ) );
+            }
+        }
+
+        if ( listValues.isEmpty( ) )
+        {
+            return null;
+        }
+
+        Collections.sort( listValues, new Comparator<FacetValue>( )
+        {
+            @Override
+            public int compare( FacetValue value1, FacetValue value2 )
+            {
+                int nCompare = Integer.compare( value2.getCount( ), value1.getCount( ) );
+
+                return ( nCompare != 0 ) ? nCompare : value1.getValue( ).compareTo( value2.getValue( ) );
+            }
+        } );
+
+        if ( listValues.size( ) > _nMaxValues )
+        {
+            listValues = new ArrayList<FacetValue>( listValues.subList( 0, Math.max( 1, _nMaxValues ) ) );
+        }
+
+        // Share of the persons kept on average by picking the value of a person at random, the persons without value being a group of their own
+        double dConcentration = ( dSquares + (double) lMissing * lMissing ) / ( (double) nTotal * nTotal );
+
+        return new Facet( strName, listValues, dConcentration );
+    }
+}
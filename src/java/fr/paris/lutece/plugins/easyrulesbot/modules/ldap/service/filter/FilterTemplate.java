@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter;
+
+import java.text.MessageFormat;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Filter template compiled once from a MessageFormat pattern such as (cn=*{0}*). The pattern is split around its placeholders, so building a
+ * clause is a few appends. Values are escaped as RFC 4515 assertion values.
+ */
+public final class FilterTemplate
+{
+    private static final String MARKER = "\u0000";
+    private static final String SAMPLE_VALUE = "x";
+    private static final char [ ] HEX_DIGITS = "0123456789abcdef".toCharArray( );
+
+    private final String _strPattern;
+    private final String [ ] _parts;
+    private final String _strAttribute;
+
+    /**
+     * Constructor
+     * 
+     * @param strPattern
+     *            The MessageFormat pattern, whose {0} placeholders receive the value
+     */
+    public FilterTemplate( String strPattern )
+    {
+        _strPattern = strPattern;
+        // Formatting with a marker keeps the MessageFormat quoting rules of the pattern
+        _parts = MessageFormat.format( strPattern, MARKER ).split( MARKER, -1 );
+        _strAttribute = findAttribute( format( SAMPLE_VALUE ) );
+    }
+
+    /**
+     * Appends the clause of a value
+     * 
+     * @param sbFilter
+     *            The filter being built
+     * @param strValue
+     *            The raw value
+     */
+    public void appendTo( StringBuilder sbFilter, String strValue )
+    {
+        sbFilter.append( _parts [0] );
+
+        if ( _parts.length > 1 )
+        {
+            String strEscaped = escape( strValue );
+
+            for ( int i = 1; i < _parts.length; i++ )
+            {
+                sbFilter.append( strEscaped ).append( _parts [i] );
+            }
+        }
+    }
+
+    /**
+     * Returns the clause of a value
+     * 
+     * @param strValue
+     *            The raw value
+     * @return The clause
+     */
+    public String format( String strValue )
+    {
+        StringBuilder sbFilter = new StringBuilder( );
+        appendTo( sbFilter, strValue );
+
+        return sbFilter.toString( );
+    }
+
+    /**
+     * Returns the pattern
+     * 
+     * @return The pattern
+     */
+    public String getPattern( )
+    {
+        return _strPattern;
+    }
+
+    /**
+     * Returns the attribute of the template when its clauses use a single one
+     * 
+     * @return The lower case attribute name, or null if the template uses several attributes or is not a valid filter
+     */
+    public String getAttribute( )
+    {
+        return _strAttribute;
+    }
+
+    /**
+     * Escapes a value as a RFC 4515 assertion value : the characters * ( ) \ and NUL are replaced by their hexadecimal escape
+     * 
+     * @param strValue
+     *            The value
+     * @return The escaped value
+     */
+    public static String escape( String strValue )
+    {
+        StringBuilder sbEscaped = null;
+
+        for ( int i = 0; i < strValue.length( ); i++ )
+        {
+            char c = strValue.charAt( i );
+
+            if ( c == '*' || c == '(' || c == ')' || c == '\\' || c == '\u0000' )
+            {
+                if ( sbEscaped == null )
+                {
+                    sbEscaped = new StringBuilder( strValue.length( ) + 8 );
+                    sbEscaped.append( strValue, 0, i );
+                }
+
+                sbEscaped.append( '\\' ).append( HEX_DIGITS [ ( c >> 4 ) & 0xF] ).append( HEX_DIGITS [c & 0xF] );
+            }
+            else
+                if ( sbEscaped != null )
+                {
+                    sbEscaped.append( c );
+                }
+        }
+
+        return ( sbEscaped != null ) ? sbEscaped.toString( ) : strValue;
+    }
+
+    /**
+     * Finds the single attribute of a clause
+     * 
+     * @param strClause
+     *            The clause of a sample value
+     * @return The lower case attribute name or null
+     */
+    private static String findAttribute( String strClause )
+    {
+        Set<String> setAttributes = new HashSet<String>( );
+
+        try
+        {
+            LdapFilter.parse( strClause ).collectAttributes( setAttributes );
+        }
+        catch( IllegalArgumentException e )
+        {
+            return null;
+        }
+
+        return ( setAttributes.size( ) == 1 ) ? setAttributes.iterator( ).next( ) : null;
+    }
+}
@@ -0,0 +1,649 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parsed LDAP search filter (RFC 4515) that can be evaluated in memory against person records. Values are compared ignoring case and
+ * insignificant spaces, like the caseIgnore matching rules of the directory attributes searched by the bot. Ordering, approximate and extensible
+ * matches are parsed but can't be evaluated locally.
+ */
+public abstract class LdapFilter
+{
+    private static final char WILDCARD = '*';
+
+    /**
+     * Parses a filter
+     * 
+     * @param strFilter
+     *            The filter
+     * @return The parsed filter
+     * @throws IllegalArgumentException
+     *             if the filter is malformed
+     */
+    public static LdapFilter parse( String strFilter )
+    {
+        Parser parser = new Parser( strFilter.trim( ) );
+        LdapFilter filter = parser.parseFilter( );
+
+        if ( !parser.isAtEnd( ) )
+        {
+            throw new IllegalArgumentException( "Unexpected characters at position " + parser._nPosition + " in filter " + strFilter );
+        }
+
+        return filter;
+    }
+
+    /**
+     * Tells if the filter can be evaluated in memory
+     * 
+     * @param mapAttributeKeys
+     *            The person keys by lower case LDAP attribute name
+     * @param setMultiValuedAttributes
+     *            The lower case names of the attributes having several values for some persons, only the first value being kept in records
+     * @return true if every attribute is mapped to a single valued person key and every operator is supported
+     */
+    public abstract boolean isEvaluable( Map<String, String> mapAttributeKeys, Set<String> setMultiValuedAttributes );
+
+    /**
+     * Evaluates the filter against a person
+     * 
+     * @param person
+     *            The person attributes by person key
+     * @param mapAttributeKeys
+     *            The person keys by lower case LDAP attribute name
+     * @return true if the person matches
+     */
+    public abstract boolean matches( Map<String, String> person, Map<String, String> mapAttributeKeys );
+
+    /**
+     * Collects the lower case names of the attributes used by the filter
+     * 
+     * @param attributes
+     *            The collection to fill
+     */
+    public abstract void collectAttributes( Collection<String> attributes );
+
+    /**
+     * Returns the records that may match the filter according to an index. The candidates must then be evaluated with
+     * {@link #matches(Map, Map)}.
+     * 
+     * @param index
+     *            The index
+     * @return The candidate record numbers, or null if every record is a candidate
+     */
+    public abstract BitSet getCandidates( FilterIndex index );
+
+    /**
+     * Estimates the number of entries matching the filter, or the cost of the search, from the estimates of its assertions. An and filter
+     * matches at most the entries of its most selective part, an or filter at most the sum of the entries of its parts.
+     * 
+     * @param estimator
+     *            The estimator of the assertions
+     * @return The estimate, Long.MAX_VALUE if unbounded
+     */
+    public abstract long estimate( FilterEstimator estimator );
+
+    /**
+     * Normalizes a value for comparison : lower case with runs of spaces collapsed and leading or trailing spaces removed
+     * 
+     * @param strValue
+     *            The value
+     * @return The normalized value
+     */
+    public static String normalize( String strValue )
+    {
+        String strLower = strValue.toLowerCase( Locale.ROOT );
+        StringBuilder sbValue = new StringBuilder( strLower.length( ) );
+        boolean bSpace = false;
+
+        for ( int i = 0; i < strLower.length( ); i++ )
+        {
+            char c = strLower.charAt( i );
+
+            if ( c == ' ' )
+            {
+                bSpace = sbValue.length( ) > 0;
+            }
+            else
+            {
+                if ( bSpace )
+                {
+                    sbValue.append( ' ' );
+                    bSpace = false;
+                }
+
+                sbValue.append( c );
+            }
+        }
+
+        return sbValue.toString( );
+    }
+
+    /**
+     * Returns the normalized value of a person attribute
+     * 
+     * @param person
+     *            The person
+     * @param mapAttributeKeys
+     *            The person keys by lower case LDAP attribute name
+     * @param strAttribute
+     *            The lower case LDAP attribute name
+     * @return The normalized value or null if the person has no value
+     */
+    private static String getValue( Map<String, String> person, Map<String, String> mapAttributeKeys, String strAttribute )
+    {
+        String strValue = person.get( mapAttributeKeys.get( strAttribute ) );
+
+        if ( ( strValue == null ) || strValue.isEmpty( ) )
+        {
+            return null;
+        }
+
+        return normalize( strValue );
+    }
+
+    /**
+     * And / Or filter
+     */
+    private static final class CompositeFilter extends LdapFilter
+    {
+        private final boolean _bAnd;
+        private final List<LdapFilter> _listFilters;
+
+        private CompositeFilter( boolean bAnd, List<LdapFilter> listFilters )
+        {
+            _bAnd = bAnd;
+            _listFilters = listFilters;
+        }
+
+        @Override
+        public boolean isEvaluable( Map<String, String> mapAttributeKeys, Set<String> setMultiValuedAttributes )
+        {
+            for ( LdapFilter filter : _listFilters )
+            {
+                if ( !filter.isEvaluable( mapAttributeKeys, setMultiValuedAttributes ) )
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean matches( Map<String, String> person, Map<String, String> mapAttributeKeys )
+        {
+            for ( LdapFilter filter : _listFilters )
+            {
+                if ( filter.matches( person, mapAttributeKeys ) != _bAnd )
+                {
+                    return !_bAnd;
+                }
+            }
+
+            return _bAnd;
+        }
+
+        @Override
+        public void collectAttributes( Collection<String> attributes )
+        {
+            for ( LdapFilter filter : _listFilters )
+            {
+                filter.collectAttributes( attributes );
+            }
+        }
+
+        @Override
+        public BitSet getCandidates( FilterIndex index )
+        {
+            BitSet candidates = null;
+
+            for ( LdapFilter filter : _listFilters )
+            {
+                BitSet filterCandidates = filter.getCandidates( index );
+
+                if ( _bAnd && filterCandidates != null )
+                {
+                    if ( candidates == null )
+                    {
+                        candidates = (BitSet) filterCandidates.clone( );
+                    }
+                    else
+                    {
+                        candidates.and( filterCandidates );
+                    }
+                }
+                else
+                    if ( !_bAnd )
+                    {
+                        if ( filterCandidates == null )
+                        {
+                            return null;
+                        }
+
+                        if ( candidates == null )
+                        {
+                            candidates = new BitSet( );
+                        }
+
+                        candidates.or( filterCandidates );
+                    }
+            }
+
+            return candidates;
+        }
+
+        @Override
+        public long estimate( FilterEstimator estimator )
+        {
+            long lEstimate = _bAnd ? Long.MAX_VALUE : 0L;
+
+            for ( LdapFilter filter : _listFilters )
+            {
+                long lFilterEstimate = filter.estimate( estimator );
+
+                if ( _bAnd )
+                {
+                    lEstimate = Math.min( lEstimate, lFilterEstimate );
+                }
+                else
+                {
+                    lEstimate = ( lFilterEstimate > Long.MAX_VALUE - lEstimate ) ? Long.MAX_VALUE : lEstimate + lFilterEstimate;
+                }
+            }
+
+            return lEstimate;
+        }
+    }
+
+    /**
+     * Not filter
+     */
+    private static final class NotFilter extends LdapFilter
+    {
+        private final LdapFilter _filter;
+
+        private NotFilter( LdapFilter filter )
+        {
+            _filter = filter;
+        }
+
+        @Override
+        public boolean isEvaluable( Map<String, String> mapAttributeKeys, Set<String> setMultiValuedAttributes )
+        {
+            return _filter.isEvaluable( mapAttributeKeys, setMultiValuedAttributes );
+        }
+
+        @Override
+        public boolean matches( Map<String, String> person, Map<String, String> mapAttributeKeys )
+        {
+            return !_filter.matches( person, mapAttributeKeys );
+        }
+
+        @Override
+        public void collectAttributes( Collection<String> attributes )
+        {
+            _filter.collectAttributes( attributes );
+        }
+
+        @Override
+        public BitSet getCandidates( FilterIndex index )
+        {
+            return null;
+        }
+
+        @Override
+        public long estimate( FilterEstimator estimator )
+        {
+            // A negation matches most of the directory
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Attribute value assertion : equality, presence or substrings
+     */
+    private static final class ItemFilter extends LdapFilter
+    {
+        private final String _strAttribute;
+        private final String _strOperator;
+        private final List<String> _listParts;
+        private final boolean _bInitial;
+        private final boolean _bFinal;
+
+        private ItemFilter( String strAttribute, String strOperator, List<String> listParts, boolean bInitial, boolean bFinal )
+        {
+            _strAttribute = strAttribute;
+            _strOperator = strOperator;
+            _listParts = listParts;
+            _bInitial = bInitial;
+            _bFinal = bFinal;
+        }
+
+        @Override
+        public boolean isEvaluable( Map<String, String> mapAttributeKeys, Set<String> setMultiValuedAttributes )
+        {
+            return "=".equals( _strOperator ) && mapAttributeKeys.containsKey( _strAttribute ) && !setMultiValuedAttributes.contains( _strAttribute );
+        }
+
+        @Override
+        public boolean matches( Map<String, String> person, Map<String, String> mapAttributeKeys )
+        {
+            String strValue = getValue( person, mapAttributeKeys, _strAttribute );
+
+            if ( strValue == null )
+            {
+                return false;
+            }
+
+            if ( _listParts.isEmpty( ) )
+            {
+                // Presence
+                return true;
+            }
+
+            if ( _listParts.size( ) == 1 && _bInitial && _bFinal )
+            {
+                return strValue.equals( _listParts.get( 0 ) );
+            }
+
+            int nFrom = 0;
+
+            for ( int i = 0; i < _listParts.size( ); i++ )
+            {
+                String strPart = _listParts.get( i );
+                boolean bFirst = ( i == 0 ) && _bInitial;
+                boolean bLast = ( i == _listParts.size( ) - 1 ) && _bFinal;
+
+                if ( bFirst )
+                {
+                    if ( !strValue.startsWith( strPart ) )
+                    {
+                        return false;
+                    }
+
+                    nFrom = strPart.length( );
+                }
+                else
+                    if ( bLast )
+                    {
+                        return ( strValue.length( ) - strPart.length( ) >= nFrom ) && strValue.endsWith( strPart );
+                    }
+                    else
+                    {
+                        int nIndex = strValue.indexOf( strPart, nFrom );
+
+                        if ( nIndex < 0 )
+                        {
+                            return false;
+                        }
+
+                        nFrom = nIndex + strPart.length( );
+                    }
+            }
+
+            return true;
+        }
+
+        @Override
+        public void collectAttributes( Collection<String> attributes )
+        {
+            attributes.add( _strAttribute );
+        }
+
+        @Override
+        public BitSet getCandidates( FilterIndex index )
+        {
+            if ( !"=".equals( _strOperator ) || _listParts.isEmpty( ) )
+            {
+                return null;
+            }
+
+            return index.getCandidates( _strAttribute, _listParts );
+        }
+
+        @Override
+        public long estimate( FilterEstimator estimator )
+        {
+            return estimator.estimate( _strAttribute, _strOperator, _listParts, _bInitial, _bFinal );
+        }
+    }
+
+    /**
+     * Recursive descent parser
+     */
+    private static final class Parser
+    {
+        private final String _strFilter;
+        private int _nPosition;
+
+        private Parser( String strFilter )
+        {
+            _strFilter = strFilter;
+        }
+
+        private boolean isAtEnd( )
+        {
+            return _nPosition >= _strFilter.length( );
+        }
+
+        private LdapFilter parseFilter( )
+        {
+            boolean bParenthesis = !isAtEnd( ) && _strFilter.charAt( _nPosition ) == '(';
+
+            if ( !bParenthesis )
+            {
+                // A bare item such as uid=john is accepted as a filter
+                return parseItem( _strFilter.length( ) );
+            }
+
+            _nPosition++;
+
+            LdapFilter filter;
+            char c = current( );
+
+            if ( c == '&' || c == '|' )
+            {
+                _nPosition++;
+
+                List<LdapFilter> listFilters = new ArrayList<LdapFilter>( );
+
+                while ( current( ) == '(' )
+                {
+                    listFilters.add( parseFilter( ) );
+                }
+
+                filter = new CompositeFilter( c == '&', listFilters );
+            }
+            else
+                if ( c == '!' )
+                {
+                    _nPosition++;
+                    filter = new NotFilter( parseFilter( ) );
+                }
+                else
+                {
+                    int nEnd = _strFilter.indexOf( ')', _nPosition );
+
+                    if ( nEnd < 0 )
+                    {
+                        throw new IllegalArgumentException( "Missing closing parenthesis in filter " + _strFilter );
+                    }
+
+                    filter = parseItem( nEnd );
+                }
+
+            if ( current( ) != ')' )
+            {
+                throw new IllegalArgumentException( "Missing closing parenthesis at position " + _nPosition + " in filter " + _strFilter );
+            }
+
+            _nPosition++;
+
+            return filter;
+        }
+
+        private char current( )
+        {
+            if ( isAtEnd( ) )
+            {
+                throw new IllegalArgumentException( "Unexpected end of filter " + _strFilter );
+            }
+
+            return _strFilter.charAt( _nPosition );
+        }
+
+        private LdapFilter parseItem( int nEnd )
+        {
+            String strItem = _strFilter.substring( _nPosition, nEnd );
+            _nPosition = nEnd;
+
+            int nEquals = strItem.indexOf( '=' );
+
+            if ( nEquals <= 0 )
+            {
+                throw new IllegalArgumentException( "Invalid item '" + strItem + "' in filter " + _strFilter );
+            }
+
+            char cBefore = strItem.charAt( nEquals - 1 );
+            String strOperator = "=";
+            int nAttributeEnd = nEquals;
+
+            if ( cBefore == '~' || cBefore == '>' || cBefore == '<' || cBefore == ':' )
+            {
+                strOperator = cBefore + "=";
+                nAttributeEnd--;
+            }
+
+            String strAttribute = strItem.substring( 0, nAttributeEnd ).trim( ).toLowerCase( Locale.ROOT );
+            String strValue = strItem.substring( nEquals + 1 );
+            List<String> listParts = new ArrayList<String>( );
+
+            if ( "=".equals( strOperator ) && "*".equals( strValue ) )
+            {
+                return new ItemFilter( strAttribute, strOperator, listParts, false, false );
+            }
+
+            int nStart = 0;
+            int nStar = strValue.indexOf( WILDCARD );
+
+            if ( !"=".equals( strOperator ) )
+            {
+                nStar = -1;
+            }
+
+            while ( nStar >= 0 )
+            {
+                addPart( listParts, strValue.substring( nStart, nStar ) );
+                nStart = nStar + 1;
+                nStar = strValue.indexOf( WILDCARD, nStart );
+            }
+
+            addPart( listParts, strValue.substring( nStart ) );
+
+            if ( listParts.isEmpty( ) )
+            {
+                // Empty assertion value : left to the directory
+                strOperator = "";
+            }
+
+            boolean bInitial = !strValue.isEmpty( ) && strValue.charAt( 0 ) != WILDCARD;
+            boolean bFinal = !strValue.isEmpty( ) && strValue.charAt( strValue.length( ) - 1 ) != WILDCARD;
+
+            return new ItemFilter( strAttribute, strOperator, listParts, bInitial, bFinal );
+        }
+
+        private void addPart( List<String> listParts, String strRawPart )
+        {
+            if ( !strRawPart.isEmpty( ) )
+            {
+                String strPart = normalize( unescape( strRawPart ) );
+
+                if ( !strPart.isEmpty( ) )
+                {
+                    listParts.add( strPart );
+                }
+            }
+        }
+
+        private String unescape( String strValue )
+        {
+            if ( strValue.indexOf( '\\' ) < 0 )
+            {
+                return strValue;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream( strValue.length( ) );
+            int nStart = 0;
+            int nEscape = strValue.indexOf( '\\' );
+
+            while ( nEscape >= 0 && nEscape + 2 < strValue.length( ) )
+            {
+                writeUtf8( bytes, strValue.substring( nStart, nEscape ) );
+
+                try
+                {
+                    bytes.write( Integer.parseInt( strValue.substring( nEscape + 1, nEscape + 3 ), 16 ) );
+                }
+                catch( NumberFormatException e )
+                {
+                    throw new IllegalArgumentException( "Invalid escape sequence in filter " + _strFilter, e );
+                }
+
+                nStart = nEscape + 3;
+                nEscape = strValue.indexOf( '\\', nStart );
+            }
+
+            writeUtf8( bytes, strValue.substring( nStart ) );
+
+            return new String( bytes.toByteArray( ), StandardCharsets.UTF_8 );
+        }
+
+        private void writeUtf8( ByteArrayOutputStream bytes, String strValue )
+        {
+            byte [ ] utf8 = strValue.getBytes( StandardCharsets.UTF_8 );
+            bytes.write( utf8, 0, utf8.length );
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index of the distinct values of an attribute. The values are found from a word by their folded words : the ones containing it,
+ * the ones having the same phonetic key and the ones sharing enough trigrams with it, to match the accent and typing variants of names.
+ */
+public final class NameIndex
+{
+    private static final int GRAM_LENGTH = 3;
+
+    private final String [ ] _values;
+    private final Map<String, int [ ]> _mapWordValues;
+    private final Map<String, String [ ]> _mapPhoneticWords;
+    private final Map<String, String [ ]> _mapTrigramWords;
+
+    /**
+     * Constructor
+     * 
+     * @param values
+     *            The distinct values of the attribute
+     */
+    public NameIndex( Collection<String> values )
+    {
+        _values = values.toArray( new String [ values.size( )] );
+
+        Map<String, List<Integer>> mapWordValues = new HashMap<String, List<Integer>>( );
+
+        for ( int nIndex = 0; nIndex < _values.length; nIndex++ )
+        {
+            for ( String strWord : new HashSet<String>( TextFolding.getWords( _values [nIndex] ) ) )
+            {
+                List<Integer> listValues = mapWordValues.get( strWord );
+
+                if ( listValues == null )
+                {
+                    listValues = new ArrayList<Integer>( 2 );
+                    mapWordValues.put( strWord, listValues );
+                }
+
+                listValues.add( nIndex );
+            }
+        }
+
+        _mapWordValues = new HashMap<String, int [ ]>( ( mapWordValues.size( ) * 4 / 3 ) + 1 );
+        Map<String, List<String>> mapPhoneticWords = new HashMap<String, List<String>>( );
+        Map<String, List<String>> mapTrigramWords = new HashMap<String, List<String>>( );
+
+        for ( Map.Entry<String, List<Integer>> entry : mapWordValues.entrySet( ) )
+        {
+            String strWord = entry.getKey( );
+            int [ ] valueIndexes = new int [ entry.getValue( ).size( )];
+
+            for ( int i = 0; i < valueIndexes.length; i++ )
+            {
+                valueIndexes [i] = entry.getValue( ).get( i );
+            }
+
+            _mapWordValues.put( strWord, valueIndexes );
+            add( mapPhoneticWords, TextFolding.getPhoneticKey( strWord ), strWord );
+
+            for ( String strGram : getTrigrams( strWord ) )
+            {
+                add( mapTrigramWords, strGram, strWord );
+            }
+        }
+
+        _mapPhoneticWords = toArrays( mapPhoneticWords );
+        _mapTrigramWords = toArrays( mapTrigramWords );
+    }
+
+    /**
+     * Finds the values matching a search term : each word of the term must match a word of the value, either because it contains the word of
+     * the term, or sounds the same, or shares at least the given ratio of trigrams with it
+     * 
+     * @param strTerm
+     *            The search term
+     * @param nMinSimilarity
+     *            The min ratio of shared trigrams, in percent
+     * @param nMaxValues
+     *            The max number of values
+     * @param listValues
+     *            The list to fill with the matching values
+     * @return false if the values are not resolved : a word of the term is shorter than a trigram or more values than the max number match
+     */
+    public boolean findValues( String strTerm, int nMinSimilarity, int nMaxValues, List<String> listValues )
+    {
+        BitSet matches = null;
+
+        for ( String strWord : TextFolding.getWords( strTerm ) )
+        {
+            if ( strWord.length( ) < GRAM_LENGTH )
+            {
+                return false;
+            }
+
+            BitSet wordMatches = findValues( strWord, nMinSimilarity );
+
+            if ( matches == null )
+            {
+                matches = wordMatches;
+            }
+            else
+            {
+                matches.and( wordMatches );
+            }
+        }
+
+        if ( matches == null )
+        {
+            return true;
+        }
+
+        if ( matches.cardinality( ) > nMaxValues )
+        {
+            return false;
+        }
+
+        for ( int i = matches.nextSetBit( 0 ); i >= 0; i = matches.nextSetBit( i + 1 ) )
+        {
+            listValues.add( _values [i] );
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of distinct values
+     * 
+     * @return The size
+     */
+    public int size( )
+    {
+        return _values.length;
+    }
+
+    /**
+     * Returns the number of distinct words
+     * 
+     * @return The number of words
+     */
+    public int getWordCount( )
+    {
+        return _mapWordValues.size( );
+    }
+
+    /**
+     * Finds the values matching a folded word
+     * 
+     * @param strWord
+     *            The word
+     * @param nMinSimilarity
+     *            The min ratio of shared trigrams, in percent
+     * @return The matching values
+     */
+    private BitSet findValues( String strWord, int nMinSimilarity )
+    {
+        BitSet matches = new BitSet( _values.length );
+        addValues( matches, strWord );
+
+        String [ ] phoneticWords = _mapPhoneticWords.get( TextFolding.getPhoneticKey( strWord ) );
+
+        if ( phoneticWords != null )
+        {
+            for ( String strPhoneticWord : phoneticWords )
+            {
+                addValues( matches, strPhoneticWord );
+            }
+        }
+
+        Set<String> setGrams = getTrigrams( strWord );
+        Map<String, Integer> mapSharedGrams = new HashMap<String, Integer>( );
+
+        for ( String strGram : setGrams )
+        {
+            String [ ] words = _mapTrigramWords.get( strGram );
+
+            if ( words != null )
+            {
+                for ( String strCandidate : words )
+                {
+                    Integer nShared = mapSharedGrams.get( strCandidate );
+                    mapSharedGrams.put( strCandidate, ( nShared == null ) ? 1 : nShared + 1 );
+                }
+            }
+        }
+
+        for ( Map.Entry<String, Integer> entry : mapSharedGrams.entrySet( ) )
+        {
+            String strCandidate = entry.getKey( );
+            int nShared = entry.getValue( );
+
+            // A word containing all the trigrams of the search word usually contains it, the check tells the other ones apart
+            boolean bContains = ( nShared == setGrams.size( ) ) && strCandidate.contains( strWord );
+            int nCandidateGrams = Math.max( 1, strCandidate.length( ) - GRAM_LENGTH + 1 );
+
+            if ( bContains || ( 200 * nShared >= nMinSimilarity * ( setGrams.size( ) + nCandidateGrams ) ) )
+            {
+                addValues( matches, strCandidate );
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Adds the values having a word
+     * 
+     * @param matches
+     *            The matching values
+     * @param strWord
+     *            The word
+     */
+    private void addValues( BitSet matches, String strWord )
+    {
+        int [ ] values = _mapWordValues.get( strWord );
+
+        if ( values != null )
+        {
+            for ( int nIndex : values )
+            {
+                matches.set( nIndex );
+            }
+        }
+    }
+
+    /**
+     * Returns the trigrams of a word
+     * 
+     * @param strWord
+     *            The word
+     * @return The distinct trigrams, empty if the word is shorter than a trigram
+     */
+    private static Set<String> getTrigrams( String strWord )
+    {
+        Set<String> setGrams = new HashSet<String>( );
+
+        for ( int i = 0; i + GRAM_LENGTH <= strWord.length( ); i++ )
+        {
+            setGrams.add( strWord.substring( i, i + GRAM_LENGTH ) );
+        }
+
+        return setGrams;
+    }
+
+    /**
+     * Adds a word to a list of a map
+     * 
+     * @param map
+     *            The map
+     * @param strKey
+     *            The key
+     * @param strWord
+     *            The word
+     */
+    private static void add( Map<String, List<String>> map, String strKey, String strWord )
+    {
+        List<String> list = map.get( strKey );
+
+        if ( list == null )
+        {
+            list = new ArrayList<String>( 2 );
+            map.put( strKey, list );
+        }
+
+        list.add( strWord );
+    }
+
+    /**
+     * Converts the lists of a map to arrays
+     * 
+     * @param map
+     *            The map
+     * @return The map of arrays
+     */
+    private static Map<String, String [ ]> toArrays( Map<String, List<String>> map )
+    {
+        Map<String, String [ ]> mapArrays = new HashMap<String, String [ ]>( ( map.size( ) * 4 / 3 ) + 1 );
+
+        for ( Map.Entry<String, List<String>> entry : map.entrySet( ) )
+        {
+            mapArrays.put( entry.getKey( ), entry.getValue( ).toArray( new String [ entry.getValue( ).size( )] ) );
+        }
+
+        return mapArrays;
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.index;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Suggestion;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.CriteriaBuilder;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.PersonSearchService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.FilterTemplate;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.DirectorySource;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.SearchResultHandler;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Local index of the values of the name attributes. The search terms of the indexed criteria are resolved to the matching values, accent and
+ * spelling variants included, and the search filter becomes equality assertions on these values instead of substring assertions, which the
+ * directory answers with its equality indexes instead of a full scan. The same values, with their number of persons, feed the prefix index of
+ * the autocompletion. The values are read from every directory source : a value missing from the index would leave out the persons having it.
+ */
+public final class NameIndexService
+{
+    private static final String PROPERTY_ENABLED = "easyrulesbot-ldap.nameIndex.enabled";
+    private static final String PROPERTY_CRITERIA = "easyrulesbot-ldap.nameIndex.criteria";
+    private static final String PROPERTY_FILTER = "easyrulesbot-ldap.nameIndex.filter";
+    private static final String PROPERTY_PAGE_SIZE = "easyrulesbot-ldap.nameIndex.pageSize";
+    private static final String PROPERTY_MAX_VALUES = "easyrulesbot-ldap.nameIndex.maxValues";
+    private static final String PROPERTY_MIN_SIMILARITY = "easyrulesbot-ldap.nameIndex.minSimilarity";
+    private static final String PROPERTY_AUTOCOMPLETE_ENABLED = "easyrulesbot-ldap.autocomplete.enabled";
+    private static final String PROPERTY_AUTOCOMPLETE_MAX_SIZE = "easyrulesbot-ldap.autocomplete.maxSize";
+
+    private static final String DEFAULT_CRITERIA = "name,familyname,direction";
+    private static final String DEFAULT_FILTER = "(objectClass=person)";
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    private static final int DEFAULT_MAX_VALUES = 20;
+    private static final int DEFAULT_MIN_SIMILARITY = 60;
+    private static final int DEFAULT_AUTOCOMPLETE_MAX_SIZE = 10;
+    private static final String SEPARATOR = ",";
+
+    private static NameIndexService _singleton;
+
+    private final boolean _bEnabled;
+    private final String _strFilter;
+    private final int _nPageSize;
+    private final int _nMaxValues;
+    private final int _nMinSimilarity;
+    private final boolean _bAutocompleteEnabled;
+    private final int _nAutocompleteMaxSize;
+    private volatile Map<String, IndexedAttribute> _mapIndexes = Collections.emptyMap( );
+    private volatile PrefixIndex _prefixIndex;
+
+    /**
+     * Private constructor
+     */
+    private NameIndexService( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+        _strFilter = AppPropertiesService.getProperty( PROPERTY_FILTER, DEFAULT_FILTER );
+        _nPageSize = AppPropertiesService.getPropertyInt( PROPERTY_PAGE_SIZE, DEFAULT_PAGE_SIZE );
+        _nMaxValues = AppPropertiesService.getPropertyInt( PROPERTY_MAX_VALUES, DEFAULT_MAX_VALUES );
+        _nMinSimilarity = AppPropertiesService.getPropertyInt( PROPERTY_MIN_SIMILARITY, DEFAULT_MIN_SIMILARITY );
+        _bAutocompleteEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_AUTOCOMPLETE_ENABLED, false );
+        _nAutocompleteMaxSize = AppPropertiesService.getPropertyInt( PROPERTY_AUTOCOMPLETE_MAX_SIZE, DEFAULT_AUTOCOMPLETE_MAX_SIZE );
+    }
+
+    /**
+     * Returns the unique instance
+     * 
+     * @return The instance
+     */
+    public static synchronized NameIndexService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new NameIndexService( );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * Tells if the name index is enabled
+     * 
+     * @return true if enabled
+     */
+    public boolean isEnabled( )
+    {
+        return _bEnabled;
+    }
+
+    /**
+     * Tells if the autocompletion is enabled
+     * 
+     * @return true if enabled
+     */
+    public boolean isAutocompleteEnabled( )
+    {
+        return _bAutocompleteEnabled;
+    }
+
+    /**
+     * Returns the max number of suggestions of the autocompletion
+     * 
+     * @return The max size
+     */
+    public int getAutocompleteMaxSize( )
+    {
+        return _nAutocompleteMaxSize;
+    }
+
+    /**
+     * Returns the values of the indexed criteria having a word starting with a prefix, the ones of the most persons first
+     * 
+     * @param strPrefix
+     *            The prefix
+     * @param nSize
+     *            The max number of suggestions
+     * @return The suggestions, empty if the autocompletion is disabled or the index is not built yet
+     */
+    public List<Suggestion> suggest( String strPrefix, int nSize )
+    {
+        PrefixIndex prefixIndex = _prefixIndex;
+
+        if ( prefixIndex == null || strPrefix == null )
+        {
+            return Collections.emptyList( );
+        }
+
+        return prefixIndex.find( strPrefix, nSize );
+    }
+
+    /**
+     * Returns the filter clause of a search term of a criterion : the equality assertions on the indexed values matching the term
+     * 
+     * @param strCriteriaName
+     *            The criterion name
+     * @param strTerm
+     *            The search term
+     * @return The clause, or null if the criterion is not indexed or the term is not resolved and the filter template must be used
+     */
+    public String getClause( String strCriteriaName, String strTerm )
+    {
+        IndexedAttribute indexed = _mapIndexes.get( strCriteriaName );
+
+        if ( indexed == null )
+        {
+            return null;
+        }
+
+        List<String> listValues = new ArrayList<String>( );
+
+        // No match is not trusted either : the person may have been added since the index was built
+        if ( !indexed._index.findValues( strTerm, _nMinSimilarity, _nMaxValues, listValues ) || listValues.isEmpty( ) )
+        {
+            return null;
+        }
+
+        StringBuilder sbClause = new StringBuilder( );
+
+        if ( listValues.size( ) > 1 )
+        {
+            sbClause.append( "(|" );
+        }
+
+        for ( String strValue : listValues )
+        {
+            sbClause.append( '(' ).append( indexed._strAttribute ).append( '=' ).append( FilterTemplate.escape( strValue ) ).append( ')' );
+        }
+
+        if ( listValues.size( ) > 1 )
+        {
+            sbClause.append( ')' );
+        }
+
+        return sbClause.toString( );
+    }
+
+    /**
+     * Builds the index again from the directory
+     * 
+     * @return The build logs
+     */
+    public synchronized String rebuild( )
+    {
+        if ( !_bEnabled && !_bAutocompleteEnabled )
+        {
+            return "Name index and autocompletion disabled";
+        }
+
+        long lStart = System.currentTimeMillis( );
+        Map<String, String> mapCriteriaAttributes = getCriteriaAttributes( );
+
+        if ( mapCriteriaAttributes.isEmpty( ) )
+        {
+            return "No criteria to index";
+        }
+
+        ValueCollector collector = new ValueCollector( new HashSet<String>( mapCriteriaAttributes.values( ) ) );
+
+        try
+        {
+            load( collector );
+        }
+        catch( NamingException e )
+        {
+            AppLogService.error( "Error while building the name index", e );
+
+            return "Build error : " + e.getMessage( );
+        }
+
+        StringBuilder sbLogs = new StringBuilder( );
+
+        if ( _bEnabled )
+        {
+            Map<String, NameIndex> mapAttributeIndexes = new HashMap<String, NameIndex>( );
+            Map<String, IndexedAttribute> mapIndexes = new HashMap<String, IndexedAttribute>( );
+
+            for ( Map.Entry<String, String> entry : mapCriteriaAttributes.entrySet( ) )
+            {
+                String strAttribute = entry.getValue( );
+                NameIndex index = mapAttributeIndexes.get( strAttribute );
+
+                if ( index == null )
+                {
+                    index = new NameIndex( collector._mapValues.get( strAttribute ).keySet( ) );
+                    mapAttributeIndexes.put( strAttribute, index );
+                    sbLogs.append( strAttribute ).append( " : " ).append( index.size( ) ).append( " values, " ).append( index.getWordCount( ) )
+                            .append( " words - " );
+                }
+
+                mapIndexes.put( entry.getKey( ), new IndexedAttribute( strAttribute, index ) );
+            }
+
+            _mapIndexes = mapIndexes;
+        }
+
+        if ( _bAutocompleteEnabled )
+        {
+            List<Suggestion> listSuggestions = new ArrayList<Suggestion>( );
+
+            for ( Map.Entry<String, String> entry : mapCriteriaAttributes.entrySet( ) )
+            {
+                for ( Map.Entry<String, int [ ]> value : collector._mapValues.get( entry.getValue( ) ).entrySet( ) )
+                {
+                    listSuggestions.add( new Suggestion( entry.getKey( ), value.getKey( ), value.getValue( ) [0] ) );
+                }
+            }
+
+            PrefixIndex prefixIndex = new PrefixIndex( listSuggestions, _nAutocompleteMaxSize );
+            _prefixIndex = prefixIndex;
+            sbLogs.append( "autocompletion : " ).append( prefixIndex.size( ) ).append( " suggestions, " ).append( prefixIndex.getKeyCount( ) )
+                    .append( " keys - " );
+        }
+
+        return sbLogs.append( collector._nEntries ).append( " entries read, " ).append( System.currentTimeMillis( ) - lStart ).append( " ms" )
+                .toString( );
+    }
+
+    /**
+     * Returns the attributes of the criteria to index. A criterion is indexed if its filter template uses a single attribute.
+     * 
+     * @return The lower case attribute names by criterion name
+     */
+    private static Map<String, String> getCriteriaAttributes( )
+    {
+        Map<String, String> mapCriteriaAttributes = new HashMap<String, String>( );
+        CriteriaBuilder criteriaBuilder = CriteriaBuilder.getInstance( );
+
+        for ( String strCriteriaName : AppPropertiesService.getProperty( PROPERTY_CRITERIA, DEFAULT_CRITERIA ).split( SEPARATOR ) )
+        {
+            strCriteriaName = strCriteriaName.trim( );
+            FilterTemplate template = criteriaBuilder.getTemplate( strCriteriaName );
+
+            if ( StringUtils.isEmpty( strCriteriaName ) || template == null )
+            {
+                continue;
+            }
+
+            if ( template.getAttribute( ) != null )
+            {
+                mapCriteriaAttributes.put( strCriteriaName, template.getAttribute( ) );
+            }
+            else
+            {
+                AppLogService.error( "Criterion " + strCriteriaName + " not indexed : its filter template must use a single attribute" );
+            }
+        }
+
+        return mapCriteriaAttributes;
+    }
+
+    /**
+     * Reads the values of the indexed attributes from every directory source, since the resolved clauses are sent to all of them. The whole
+     * load is retried once with new connections after a communication error.
+     * 
+     * @param collector
+     *            The collector of the values
+     * @throws NamingException
+     *             if the search of a source fails
+     */
+    private void load( ValueCollector collector ) throws NamingException
+    {
+        try
+        {
+            loadSources( collector );
+        }
+        catch( CommunicationException e )
+        {
+            collector.clear( );
+            loadSources( collector );
+        }
+    }
+
+    /**
+     * Reads the values of the indexed attributes from every directory source
+     * 
+     * @param collector
+     *            The collector of the values
+     * @throws NamingException
+     *             if the search of a source fails
+     */
+    private void loadSources( ValueCollector collector ) throws NamingException
+    {
+        String [ ] attributes = collector._mapValues.keySet( ).toArray( new String [ collector._mapValues.size( )] );
+
+        for ( DirectorySource source : PersonSearchService.getInstance( ).getSources( ) )
+        {
+            SearchControls controls = new SearchControls( );
+            controls.setSearchScope( source.getSearchScope( ) );
+            controls.setReturningAttributes( attributes );
+            source.getContextPool( ).search( source.getSearchBase( ), _strFilter, controls, _nPageSize, collector );
+        }
+    }
+
+    /**
+     * Index of a criterion with the attribute of its filter template
+     */
+    private static final class IndexedAttribute
+    {
+        private final String _strAttribute;
+        private final NameIndex _index;
+
+        /**
+         * Constructor
+         * 
+         * @param strAttribute
+         *            The attribute name
+         * @param index
+         *            The index of the attribute values
+         */
+        private IndexedAttribute( String strAttribute, NameIndex index )
+        {
+            _strAttribute = strAttribute;
+            _index = index;
+        }
+    }
+
+    /**
+     * Collects the distinct values of the indexed attributes with their number of entries
+     */
+    private static final class ValueCollector implements SearchResultHandler
+    {
+        private final Map<String, Map<String, int [ ]>> _mapValues = new HashMap<String, Map<String, int [ ]>>( );
+        private int _nEntries;
+
+        /**
+         * Constructor
+         * 
+         * @param setAttributes
+         *            The lower case names of the attributes
+         */
+        private ValueCollector( Set<String> setAttributes )
+        {
+            for ( String strAttribute : setAttributes )
+            {
+                _mapValues.put( strAttribute, new HashMap<String, int [ ]>( ) );
+            }
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public boolean handle( SearchResult result ) throws NamingException
+        {
+            _nEntries++;
+
+            for ( Map.Entry<String, Map<String, int [ ]>> entry : _mapValues.entrySet( ) )
+            {
+                Attribute attribute = result.getAttributes( ).get( entry.getKey( ) );
+
+                if ( attribute == null )
+                {
+                    continue;
+                }
+
+                NamingEnumeration<?> values = attribute.getAll( );
+
+                while ( values.hasMore( ) )
+                {
+                    Object value = values.next( );
+
+                    if ( value != null )
+                    {
+                        int [ ] count = entry.getValue( ).get( value.toString( ) );
+
+                        if ( count == null )
+                        {
+                            count = new int [ 1];
+                            entry.getValue( ).put( value.toString( ), count );
+                        }
+
+                        count [0]++;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Clears the collected values before a retry
+         */
+        private void clear( )
+        {
+            for ( Map<String, int [ ]> mapCounts : _mapValues.values( ) )
+            {
+                mapCounts.clear( );
+            }
+
+            _nEntries = 0;
+        }
+    }
+}
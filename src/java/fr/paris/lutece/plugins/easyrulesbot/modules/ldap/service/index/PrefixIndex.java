@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.index;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Suggestion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Prefix index of the suggestions of the autocompletion. The folded value of a suggestion and its endings starting at each word are kept in a
+ * sorted array, so that the keys starting with a prefix are a range found by binary search. The suggestions of a range are ranked by number of
+ * persons ; the ranking of the short prefixes, whose ranges are the largest, is computed when the index is built. The index is immutable.
+ */
+public final class PrefixIndex
+{
+    private static final int PRECOMPUTED_PREFIX_LENGTH = 2;
+    private static final char WORD_SEPARATOR = ' ';
+
+    private final Suggestion [ ] _suggestions;
+    private final String [ ] _keys;
+    private final int [ ] _keySuggestions;
+    private final int _nMaxSize;
+    private final Map<String, Suggestion [ ]> _mapShortPrefixes = new HashMap<String, Suggestion [ ]>( );
+    private final Comparator<Integer> _rankComparator = new Comparator<Integer>( )
+    {
+        @Override
+        public int compare( Integer nSuggestion1, Integer nSuggestion2 )
+        {
+            return compareRanks( nSuggestion1, nSuggestion2 );
+        }
+    };
+
+    /**
+     * Constructor
+     * 
+     * @param listSuggestions
+     *            The suggestions
+     * @param nMaxSize
+     *            The max number of suggestions returned for a prefix
+     */
+    public PrefixIndex( List<Suggestion> listSuggestions, int nMaxSize )
+    {
+        _suggestions = listSuggestions.toArray( new Suggestion [ listSuggestions.size( )] );
+        _nMaxSize = Math.max( 1, nMaxSize );
+
+        List<Key> listKeys = new ArrayList<Key>( );
+
+        for ( int nSuggestion = 0; nSuggestion < _suggestions.length; nSuggestion++ )
+        {
+            String strFolded = TextFolding.fold( _suggestions [nSuggestion].getValue( ) );
+
+            if ( strFolded.isEmpty( ) )
+            {
+                continue;
+            }
+
+            listKeys.add( new Key( strFolded, nSuggestion ) );
+
+            for ( int i = strFolded.indexOf( WORD_SEPARATOR ); i >= 0; i = strFolded.indexOf( WORD_SEPARATOR, i + 1 ) )
+            {
+                listKeys.add( new Key( strFolded.substring( i + 1 ), nSuggestion ) );
+            }
+        }
+
+        Collections.sort( listKeys );
+        _keys = new String [ listKeys.size( )];
+        _keySuggestions = new int [ listKeys.size( )];
+
+        for ( int i = 0; i < _keys.length; i++ )
+        {
+            _keys [i] = listKeys.get( i )._strKey;
+            _keySuggestions [i] = listKeys.get( i )._nSuggestion;
+        }
+
+        for ( int i = 0; i < _keys.length; i++ )
+        {
+            for ( int nLength = 1; nLength <= Math.min( PRECOMPUTED_PREFIX_LENGTH, _keys [i].length( ) ); nLength++ )
+            {
+                String strPrefix = _keys [i].substring( 0, nLength );
+
+                if ( !_mapShortPrefixes.containsKey( strPrefix ) )
+                {
+                    _mapShortPrefixes.put( strPrefix, rank( strPrefix, _nMaxSize ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the suggestions having a value or a word of their value starting with a prefix, the ones of the most persons first
+     * 
+     * @param strPrefix
+     *            The prefix, folded before the search
+     * @param nSize
+     *            The max number of suggestions, limited to the max size of the index
+     * @return The suggestions
+     */
+    public List<Suggestion> find( String strPrefix, int nSize )
+    {
+        String strFolded = TextFolding.fold( strPrefix );
+        int nLimit = Math.min( nSize, _nMaxSize );
+
+        if ( strFolded.isEmpty( ) || nLimit <= 0 )
+        {
+            return Collections.emptyList( );
+        }
+
+        Suggestion [ ] suggestions = _mapShortPrefixes.get( strFolded );
+
+        if ( suggestions == null )
+        {
+            suggestions = ( strFolded.length( ) <= PRECOMPUTED_PREFIX_LENGTH ) ? new Suggestion [ 0] : rank( strFolded, nLimit );
+        }
+
+        return Arrays.asList( suggestions ).subList( 0, Math.min( nLimit, suggestions.length ) );
+    }
+
+    /**
+     * Returns the number of suggestions
+     * 
+     * @return The size
+     */
+    public int size( )
+    {
+        return _suggestions.length;
+    }
+
+    /**
+     * Returns the number of keys
+     * 
+     * @return The count
+     */
+    public int getKeyCount( )
+    {
+        return _keys.length;
+    }
+
+    /**
+     * Ranks the suggestions of the keys starting with a prefix, keeping the best ones in a bounded heap
+     * 
+     * @param strFolded
+     *            The folded prefix
+     * @param nSize
+     *            The max number of suggestions
+     * @return The best suggestions, the best first
+     */
+    private Suggestion [ ] rank( String strFolded, int nSize )
+    {
+        int nFirst = lowerBound( strFolded );
+        int nLast = lowerBound( strFolded + Character.MAX_VALUE );
+
+        // The worst suggestion kept is the head of the heap
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>( nSize + 1, Collections.reverseOrder( _rankComparator ) );
+        Set<Integer> setKept = new HashSet<Integer>( );
+
+        for ( int i = nFirst; i < nLast; i++ )
+        {
+            Integer nSuggestion = _keySuggestions [i];
+
+            if ( setKept.contains( nSuggestion ) )
+            {
+                continue;
+            }
+
+            if ( heap.size( ) < nSize )
+            {
+                heap.add( nSuggestion );
+                setKept.add( nSuggestion );
+            }
+            else
+                if ( compareRanks( nSuggestion, heap.peek( ) ) < 0 )
+                {
+                    setKept.remove( heap.poll( ) );
+                    heap.add( nSuggestion );
+                    setKept.add( nSuggestion );
+                }
+        }
+
+        Suggestion [ ] suggestions = new Suggestion [ heap.size( )];
+
+        for ( int i = suggestions.length - 1; i >= 0; i-- )
+        {
+            suggestions [i] = _suggestions [heap.poll( )];
+        }
+
+        return suggestions;
+    }
+
+    /**
+     * Compares the ranks of two suggestions : the one of the most persons first, then by value
+     * 
+     * @param nSuggestion1
+     *            The first suggestion
+     * @param nSuggestion2
+     *            The second suggestion
+     * @return A negative number if the first one is ranked before the second one
+     */
+    private int compareRanks( int nSuggestion1, int nSuggestion2 )
+    {
+        Suggestion suggestion1 = _suggestions [nSuggestion1];
+        Suggestion suggestion2 = _suggestions [nSuggestion2];
+        int nCompare = Integer.compare( suggestion2.getCount( ), suggestion1.getCount( ) );
+
+        if ( nCompare == 0 )
+        {
+            nCompare = suggestion1.getValue( ).compareTo( suggestion2.getValue( ) );
+        }
+
+        return ( nCompare != 0 ) ? nCompare : Integer.compare( nSuggestion1, nSuggestion2 );
+    }
+
+    /**
+     * Returns the index of the first key greater than or equal to a string
+     * 
+     * @param strValue
+     *            The string
+     * @return The index
+     */
+    private int lowerBound( String strValue )
+    {
+        int nLow = 0;
+        int nHigh = _keys.length;
+
+        while ( nLow < nHigh )
+        {
+            int nMiddle = ( nLow + nHigh ) >>> 1;
+
+            if ( _keys [nMiddle].compareTo( strValue ) < 0 )
+            {
+                nLow = nMiddle + 1;
+            }
+            else
+            {
+                nHigh = nMiddle;
+            }
+        }
+
+        return nLow;
+    }
+
+    /**
+     * Key of the index with its suggestion
+     */
+    private static final class Key implements Comparable<Key>
+    {
+        private final String _strKey;
+        private final int _nSuggestion;
+
+        /**
+         * Constructor
+         * 
+         * @param strKey
+         *            The folded key
+         * @param nSuggestion
+         *            The index of the suggestion
+         */
+        private Key( String strKey, int nSuggestion )
+        {
+            _strKey = strKey;
+            _nSuggestion = nSuggestion;
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public int compareTo( Key other )
+        {
+            int nCompare = _strKey.compareTo( other._strKey );
+
+            return ( nCompare != 0 ) ? nCompare : Integer.compare( _nSuggestion, other._nSuggestion );
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.index;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Accent folding and French phonetic keys of the words of names
+ */
+public final class TextFolding
+{
+    private static final String NASAL = "nasal";
+
+    // Rules applied from left to right, the first one matching at a position wins. Nasal rules only apply before a consonant or at the end
+    private static final String [ ] [ ] RULES = {
+        { "eau", "o" },
+        { "au", "o" },
+        { "ou", "u" },
+        { "ph", "f" },
+        { "qu", "k" },
+        { "ck", "k" },
+        { "sch", "s" },
+        { "ch", "s" },
+        { "sh", "s" },
+        { "gu", "g" },
+        { "ge", "je" },
+        { "gi", "ji" },
+        { "gy", "ji" },
+        { "ce", "se" },
+        { "ci", "si" },
+        { "cy", "si" },
+        { "c", "k" },
+        { "q", "k" },
+        { "ain", "in", NASAL },
+        { "ein", "in", NASAL },
+        { "aim", "in", NASAL },
+        { "eim", "in", NASAL },
+        { "ai", "e" },
+        { "ei", "e" },
+        { "am", "an", NASAL },
+        { "em", "an", NASAL },
+        { "en", "an", NASAL },
+        { "im", "in", NASAL },
+        { "un", "in", NASAL },
+        { "um", "in", NASAL },
+        { "y", "i" },
+        { "w", "v" },
+        { "z", "s" },
+        { "x", "ks" },
+        { "h", "" }
+    };
+
+    private static final String SILENT_ENDINGS = "stdx";
+    private static final String VOWELS = "aeiouy";
+
+    /**
+     * Private constructor
+     */
+    private TextFolding( )
+    {
+    }
+
+    /**
+     * Folds a value : accents removed, lower case, ligatures expanded and any character other than a letter or a digit replaced by a
+     * space, with runs of spaces collapsed
+     * 
+     * @param strValue
+     *            The value
+     * @return The folded value
+     */
+    public static String fold( String strValue )
+    {
+        String strDecomposed = Normalizer.normalize( strValue, Normalizer.Form.NFD ).toLowerCase( Locale.ROOT );
+        StringBuilder sbFolded = new StringBuilder( strDecomposed.length( ) );
+        boolean bSpace = false;
+
+        for ( int i = 0; i < strDecomposed.length( ); i++ )
+        {
+            char c = strDecomposed.charAt( i );
+
+            if ( Character.getType( c ) == Character.NON_SPACING_MARK )
+            {
+                continue;
+            }
+
+            if ( !Character.isLetterOrDigit( c ) )
+            {
+                bSpace = sbFolded.length( ) > 0;
+
+                continue;
+            }
+
+            if ( bSpace )
+            {
+                sbFolded.append( ' ' );
+                bSpace = false;
+            }
+
+            if ( c == '\u0153' )
+            {
+                sbFolded.append( "oe" );
+            }
+            else
+                if ( c == '\u00e6' )
+                {
+                    sbFolded.append( "ae" );
+                }
+                else
+                    if ( c == '\u00df' )
+                    {
+                        sbFolded.append( "ss" );
+                    }
+                    else
+                    {
+                        sbFolded.append( c );
+                    }
+        }
+
+        return sbFolded.toString( );
+    }
+
+    /**
+     * Returns the folded words of a value
+     * 
+     * @param strValue
+     *            The value
+     * @return The words
+     */
+    public static List<String> getWords( String strValue )
+    {
+        List<String> listWords = new ArrayList<String>( );
+        String strFolded = fold( strValue );
+        int nStart = 0;
+
+        while ( nStart < strFolded.length( ) )
+        {
+            int nEnd = strFolded.indexOf( ' ', nStart );
+
+            if ( nEnd < 0 )
+            {
+                nEnd = strFolded.length( );
+            }
+
+            listWords.add( strFolded.substring( nStart, nEnd ) );
+            nStart = nEnd + 1;
+        }
+
+        return listWords;
+    }
+
+    /**
+     * Returns the French phonetic key of a folded word : the spellings of a same sound are replaced by a single one, doubled letters are
+     * collapsed and the silent final letters are removed. Lefebvre and Lefevre or Dupont and Dupond get the same key.
+     * 
+     * @param strWord
+     *            The folded word
+     * @return The phonetic key
+     */
+    public static String getPhoneticKey( String strWord )
+    {
+        StringBuilder sbKey = new StringBuilder( strWord.length( ) );
+        int nPosition = 0;
+
+        while ( nPosition < strWord.length( ) )
+        {
+            String [ ] rule = getRule( strWord, nPosition );
+
+            if ( rule != null )
+            {
+                appendCollapsed( sbKey, rule [1] );
+                nPosition += rule [0].length( );
+            }
+            else
+            {
+                appendCollapsed( sbKey, strWord.substring( nPosition, nPosition + 1 ) );
+                nPosition++;
+            }
+        }
+
+        // b before v is not heard either : Lefebvre
+        int nIndex = sbKey.indexOf( "bv" );
+
+        while ( nIndex >= 0 )
+        {
+            sbKey.deleteCharAt( nIndex );
+            nIndex = sbKey.indexOf( "bv", nIndex );
+        }
+
+        if ( sbKey.length( ) > 2 && sbKey.charAt( sbKey.length( ) - 1 ) == 'e' )
+        {
+            sbKey.setLength( sbKey.length( ) - 1 );
+        }
+
+        if ( sbKey.length( ) > 2 && SILENT_ENDINGS.indexOf( sbKey.charAt( sbKey.length( ) - 1 ) ) >= 0 )
+        {
+            sbKey.setLength( sbKey.length( ) - 1 );
+        }
+
+        return sbKey.toString( );
+    }
+
+    /**
+     * Returns the rule matching at a position of a word
+     * 
+     * @param strWord
+     *            The word
+     * @param nPosition
+     *            The position
+     * @return The rule or null if none matches
+     */
+    private static String [ ] getRule( String strWord, int nPosition )
+    {
+        for ( String [ ] rule : RULES )
+        {
+            if ( strWord.startsWith( rule [0], nPosition ) )
+            {
+                int nNext = nPosition + rule [0].length( );
+
+                if ( rule.length < 3 || nNext >= strWord.length( ) || VOWELS.indexOf( strWord.charAt( nNext ) ) < 0 )
+                {
+                    return rule;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Appends a sound to a key, without repeating the last letter of the key
+     * 
+     * @param sbKey
+     *            The key
+     * @param strSound
+     *            The sound
+     */
+    private static void appendCollapsed( StringBuilder sbKey, String strSound )
+    {
+        for ( int i = 0; i < strSound.length( ); i++ )
+        {
+            char c = strSound.charAt( i );
+
+            if ( sbKey.length( ) == 0 || sbKey.charAt( sbKey.length( ) - 1 ) != c )
+            {
+                sbKey.append( c );
+            }
+        }
+    }
+}
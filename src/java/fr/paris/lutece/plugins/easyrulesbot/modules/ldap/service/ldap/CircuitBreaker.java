@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+/**
+ * Circuit breaker of a directory source. It opens when the failure rate of the last calls reaches a threshold : the source is then left out
+ * of the searches, which fail fast instead of waiting for the connection timeouts. After the open duration, a single probe call is let through
+ * (half open) : the breaker closes if it succeeds and opens again if it fails. A probe whose outcome is not recorded within the open duration
+ * is given up and another probe is let through.
+ */
+public final class CircuitBreaker
+{
+    /**
+     * States of the breaker
+     */
+    public enum State
+    {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final boolean [ ] _window;
+    private final int _nMinCalls;
+    private final int _nFailureRateThreshold;
+    private final long _lOpenDuration;
+
+    private State _state = State.CLOSED;
+    private int _nPosition;
+    private int _nCalls;
+    private int _nFailures;
+    private long _lOpenedTime;
+    private boolean _bProbing;
+    private long _lProbeTime;
+    private long _lOpenedCount;
+    private long _lRejectedCount;
+
+    /**
+     * Constructor
+     * 
+     * @param nWindowSize
+     *            The number of last calls whose failure rate is computed
+     * @param nMinCalls
+     *            The min number of calls in the window before the breaker can open
+     * @param nFailureRateThreshold
+     *            The failure rate opening the breaker, in percent
+     * @param lOpenDuration
+     *            The time the breaker stays open before a probe call, in milliseconds
+     */
+    public CircuitBreaker( int nWindowSize, int nMinCalls, int nFailureRateThreshold, long lOpenDuration )
+    {
+        _window = new boolean [ Math.max( 1, nWindowSize )];
+        _nMinCalls = Math.max( 1, Math.min( nMinCalls, _window.length ) );
+        _nFailureRateThreshold = nFailureRateThreshold;
+        _lOpenDuration = lOpenDuration;
+    }
+
+    /**
+     * Tells if a call may be sent. In the half open state, only the probe call is allowed and it must be followed by a call to
+     * {@link #recordSuccess()} or {@link #recordFailure()}.
+     * 
+     * @return true if the call is allowed
+     */
+    public synchronized boolean allowRequest( )
+    {
+        long lNow = System.currentTimeMillis( );
+
+        if ( _state == State.OPEN && lNow - _lOpenedTime >= _lOpenDuration )
+        {
+            _state = State.HALF_OPEN;
+            _bProbing = false;
+        }
+
+        // A caller that never recorded the outcome of its probe must not keep the source out forever
+        if ( _state == State.HALF_OPEN && _bProbing && lNow - _lProbeTime >= _lOpenDuration )
+        {
+            _bProbing = false;
+        }
+
+        if ( _state == State.CLOSED || ( _state == State.HALF_OPEN && !_bProbing ) )
+        {
+            _bProbing = _state == State.HALF_OPEN;
+            _lProbeTime = lNow;
+
+            return true;
+        }
+
+        _lRejectedCount++;
+
+        return false;
+    }
+
+    /**
+     * Records a successful call
+     */
+    public synchronized void recordSuccess( )
+    {
+        if ( _state == State.HALF_OPEN )
+        {
+            reset( );
+            _state = State.CLOSED;
+
+            return;
+        }
+
+        record( false );
+    }
+
+    /**
+     * Records a failed call : the server could not be reached or did not answer in time
+     */
+    public synchronized void recordFailure( )
+    {
+        if ( _state == State.HALF_OPEN )
+        {
+            open( );
+
+            return;
+        }
+
+        record( true );
+
+        if ( _state == State.CLOSED && _nCalls >= _nMinCalls && _nFailures * 100 >= _nFailureRateThreshold * _nCalls )
+        {
+            open( );
+        }
+    }
+
+    /**
+     * Returns the state
+     * 
+     * @return The state
+     */
+    public synchronized State getState( )
+    {
+        return _state;
+    }
+
+    /**
+     * Returns the failure rate of the last calls
+     * 
+     * @return The rate in percent
+     */
+    public synchronized double getFailureRate( )
+    {
+        return ( _nCalls == 0 ) ? 0 : ( _nFailures * 100.0 / _nCalls );
+    }
+
+    /**
+     * Returns the number of times the breaker opened since startup
+     * 
+     * @return The count
+     */
+    public synchronized long getOpenedCount( )
+    {
+        return _lOpenedCount;
+    }
+
+    /**
+     * Returns the number of calls rejected since startup
+     * 
+     * @return The count
+     */
+    public synchronized long getRejectedCount( )
+    {
+        return _lRejectedCount;
+    }
+
+    /**
+     * Adds an outcome to the window
+     * 
+     * @param bFailure
+     *            true for a failure
+     */
+    private void record( boolean bFailure )
+    {
+        if ( _nCalls == _window.length )
+        {
+            if ( _window [_nPosition] )
+            {
+                _nFailures--;
+            }
+        }
+        else
+        {
+            _nCalls++;
+        }
+
+        _window [_nPosition] = bFailure;
+
+        if ( bFailure )
+        {
+            _nFailures++;
+        }
+
+        _nPosition = ( _nPosition + 1 ) % _window.length;
+    }
+
+    /**
+     * Opens the breaker
+     */
+    private void open( )
+    {
+        reset( );
+        _state = State.OPEN;
+        _lOpenedTime = System.currentTimeMillis( );
+        _lOpenedCount++;
+    }
+
+    /**
+     * Clears the window
+     */
+    private void reset( )
+    {
+        _nPosition = 0;
+        _nCalls = 0;
+        _nFailures = 0;
+        _bProbing = false;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import javax.naming.directory.SearchControls;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * A directory searched by the bot : a connection pool, a search base and a scope. The default source is configured by the
+ * easyrulesbot-ldap.ldap.* properties, the other ones by the easyrulesbot-ldap.ldap.source.&lt;name&gt;.* properties. A source may have a
+ * secondary replica receiving hedged requests when the primary one is slower than usual : the hedge delay is a percentile of the recent
+ * latencies of the primary replica. Each source has a circuit breaker, which leaves it out of the searches while it is unreachable.
+ */
+public final class DirectorySource
+{
+    public static final String DEFAULT_SOURCE = "default";
+
+    private static final String PROPERTY_DEFAULT_PREFIX = "easyrulesbot-ldap.ldap.";
+    private static final String PROPERTY_SOURCE_PREFIX = "easyrulesbot-ldap.ldap.source.";
+    private static final String SUFFIX_INITIAL_CONTEXT_PROVIDER = "initialContextProvider";
+    private static final String SUFFIX_PROVIDER_URL = "connectionUrl";
+    private static final String SUFFIX_BIND_DN = "connectionName";
+    private static final String SUFFIX_BIND_PASSWORD = "connectionPassword";
+    private static final String SUFFIX_PERSON_BASE = "personBase";
+    private static final String SUFFIX_PERSON_SUBTREE = "personSubtree";
+    private static final String SUFFIX_TIMEOUT = "timeout";
+    private static final String SUFFIX_HEDGE_URL = "hedgeUrl";
+    private static final String PROPERTY_HEDGE_ENABLED = "easyrulesbot-ldap.ldap.hedge.enabled";
+    private static final String PROPERTY_HEDGE_PERCENTILE = "easyrulesbot-ldap.ldap.hedge.percentile";
+    private static final String PROPERTY_HEDGE_MIN_DELAY = "easyrulesbot-ldap.ldap.hedge.minDelay";
+    private static final String PROPERTY_HEDGE_INITIAL_DELAY = "easyrulesbot-ldap.ldap.hedge.initialDelay";
+    private static final String PROPERTY_HEDGE_MIN_SAMPLES = "easyrulesbot-ldap.ldap.hedge.minSamples";
+    private static final String PROPERTY_BREAKER_ENABLED = "easyrulesbot-ldap.ldap.circuitBreaker.enabled";
+    private static final String PROPERTY_BREAKER_WINDOW_SIZE = "easyrulesbot-ldap.ldap.circuitBreaker.windowSize";
+    private static final String PROPERTY_BREAKER_MIN_CALLS = "easyrulesbot-ldap.ldap.circuitBreaker.minCalls";
+    private static final String PROPERTY_BREAKER_FAILURE_RATE = "easyrulesbot-ldap.ldap.circuitBreaker.failureRate";
+    private static final String PROPERTY_BREAKER_OPEN_DURATION = "easyrulesbot-ldap.ldap.circuitBreaker.openDuration";
+    private static final String HEDGE_POOL_SUFFIX = "-hedge";
+    private static final long DEFAULT_TIMEOUT = 10000L;
+    private static final int DEFAULT_HEDGE_PERCENTILE = 95;
+    private static final long DEFAULT_HEDGE_MIN_DELAY = 50L;
+    private static final long DEFAULT_HEDGE_INITIAL_DELAY = 500L;
+    private static final int DEFAULT_HEDGE_MIN_SAMPLES = 20;
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int LATENCY_REFRESH_INTERVAL = 16;
+    private static final int DEFAULT_BREAKER_WINDOW_SIZE = 20;
+    private static final int DEFAULT_BREAKER_MIN_CALLS = 5;
+    private static final int DEFAULT_BREAKER_FAILURE_RATE = 50;
+    private static final long DEFAULT_BREAKER_OPEN_DURATION = 30000L;
+
+    private final String _strName;
+    private final LdapContextPool _contextPool;
+    private final String _strSearchBase;
+    private final int _nSearchScope;
+    private final long _lTimeout;
+    private final LdapContextPool _hedgeContextPool;
+    private final LatencyTracker _latencyTracker;
+    private final long _lHedgeMinDelay;
+    private final long _lHedgeInitialDelay;
+    private final int _nHedgeMinSamples;
+    private final CircuitBreaker _circuitBreaker;
+
+    /**
+     * Constructor
+     * 
+     * @param strName
+     *            The source name
+     * @param contextPool
+     *            The connection pool
+     * @param hedgeContextPool
+     *            The connection pool of the secondary replica or null
+     * @param strSearchBase
+     *            The person search base
+     * @param nSearchScope
+     *            The search scope
+     * @param lTimeout
+     *            The max time to wait for the results of the source, in milliseconds
+     */
+    public DirectorySource( String strName, LdapContextPool contextPool, LdapContextPool hedgeContextPool, String strSearchBase, int nSearchScope,
+            long lTimeout )
+    {
+        _strName = strName;
+        _contextPool = contextPool;
+        _hedgeContextPool = hedgeContextPool;
+        _strSearchBase = strSearchBase;
+        _nSearchScope = nSearchScope;
+        _lTimeout = lTimeout;
+        _latencyTracker = new LatencyTracker( LATENCY_SAMPLES,
+                AppPropertiesService.getPropertyInt( PROPERTY_HEDGE_PERCENTILE, DEFAULT_HEDGE_PERCENTILE ) / 100.0, LATENCY_REFRESH_INTERVAL );
+        _lHedgeMinDelay = AppPropertiesService.getPropertyLong( PROPERTY_HEDGE_MIN_DELAY, DEFAULT_HEDGE_MIN_DELAY );
+        _lHedgeInitialDelay = AppPropertiesService.getPropertyLong( PROPERTY_HEDGE_INITIAL_DELAY, DEFAULT_HEDGE_INITIAL_DELAY );
+        _nHedgeMinSamples = AppPropertiesService.getPropertyInt( PROPERTY_HEDGE_MIN_SAMPLES, DEFAULT_HEDGE_MIN_SAMPLES );
+        _circuitBreaker = AppPropertiesService.getPropertyBoolean( PROPERTY_BREAKER_ENABLED, true ) ? new CircuitBreaker(
+                AppPropertiesService.getPropertyInt( PROPERTY_BREAKER_WINDOW_SIZE, DEFAULT_BREAKER_WINDOW_SIZE ),
+                AppPropertiesService.getPropertyInt( PROPERTY_BREAKER_MIN_CALLS, DEFAULT_BREAKER_MIN_CALLS ),
+                AppPropertiesService.getPropertyInt( PROPERTY_BREAKER_FAILURE_RATE, DEFAULT_BREAKER_FAILURE_RATE ),
+                AppPropertiesService.getPropertyLong( PROPERTY_BREAKER_OPEN_DURATION, DEFAULT_BREAKER_OPEN_DURATION ) ) : null;
+    }
+
+    /**
+     * Creates a source from the properties
+     * 
+     * @param strName
+     *            The source name, DEFAULT_SOURCE for the default directory
+     * @return The source
+     */
+    public static DirectorySource load( String strName )
+    {
+        String strPrefix = DEFAULT_SOURCE.equals( strName ) ? PROPERTY_DEFAULT_PREFIX : ( PROPERTY_SOURCE_PREFIX + strName + "." );
+        String strProvider = AppPropertiesService.getProperty( strPrefix + SUFFIX_INITIAL_CONTEXT_PROVIDER,
+                AppPropertiesService.getProperty( PROPERTY_DEFAULT_PREFIX + SUFFIX_INITIAL_CONTEXT_PROVIDER ) );
+        String strBindDn = AppPropertiesService.getProperty( strPrefix + SUFFIX_BIND_DN );
+        String strBindPassword = AppPropertiesService.getProperty( strPrefix + SUFFIX_BIND_PASSWORD );
+        long lTimeout = AppPropertiesService.getPropertyLong( strPrefix + SUFFIX_TIMEOUT, DEFAULT_TIMEOUT );
+        LdapContextPool contextPool = new LdapContextPool( strName, strProvider, AppPropertiesService.getProperty( strPrefix + SUFFIX_PROVIDER_URL ),
+                strBindDn, strBindPassword, lTimeout );
+        String strHedgeUrl = AppPropertiesService.getProperty( strPrefix + SUFFIX_HEDGE_URL );
+        LdapContextPool hedgeContextPool = null;
+
+        if ( AppPropertiesService.getPropertyBoolean( PROPERTY_HEDGE_ENABLED, false ) && StringUtils.isNotBlank( strHedgeUrl ) )
+        {
+            hedgeContextPool = new LdapContextPool( strName + HEDGE_POOL_SUFFIX, strProvider, strHedgeUrl.trim( ), strBindDn, strBindPassword,
+                    lTimeout );
+        }
+
+        // The connections of the min size are opened in the background instead of by the first searches
+        contextPool.requestFill( );
+
+        if ( hedgeContextPool != null )
+        {
+            hedgeContextPool.requestFill( );
+        }
+
+        int nScope = "true".equalsIgnoreCase( AppPropertiesService.getProperty( strPrefix + SUFFIX_PERSON_SUBTREE ) ) ? SearchControls.SUBTREE_SCOPE
+                : SearchControls.ONELEVEL_SCOPE;
+
+        return new DirectorySource( strName, contextPool, hedgeContextPool, AppPropertiesService.getProperty( strPrefix + SUFFIX_PERSON_BASE ), nScope,
+                lTimeout );
+    }
+
+    /**
+     * Returns the source name
+     * 
+     * @return The name
+     */
+    public String getName( )
+    {
+        return _strName;
+    }
+
+    /**
+     * Returns the connection pool
+     * 
+     * @return The pool
+     */
+    public LdapContextPool getContextPool( )
+    {
+        return _contextPool;
+    }
+
+    /**
+     * Returns the person search base
+     * 
+     * @return The search base
+     */
+    public String getSearchBase( )
+    {
+        return _strSearchBase;
+    }
+
+    /**
+     * Returns the search scope
+     * 
+     * @return The scope
+     */
+    public int getSearchScope( )
+    {
+        return _nSearchScope;
+    }
+
+    /**
+     * Returns the max time to wait for the results of the source
+     * 
+     * @return The timeout in milliseconds
+     */
+    public long getTimeout( )
+    {
+        return _lTimeout;
+    }
+
+    /**
+     * Returns the connection pool of the secondary replica
+     * 
+     * @return The pool or null if the source has no secondary replica
+     */
+    public LdapContextPool getHedgeContextPool( )
+    {
+        return _hedgeContextPool;
+    }
+
+    /**
+     * Returns the latencies of the primary replica
+     * 
+     * @return The latency tracker
+     */
+    public LatencyTracker getLatencyTracker( )
+    {
+        return _latencyTracker;
+    }
+
+    /**
+     * Returns the circuit breaker of the source
+     * 
+     * @return The breaker or null if the breakers are disabled
+     */
+    public CircuitBreaker getCircuitBreaker( )
+    {
+        return _circuitBreaker;
+    }
+
+    /**
+     * Returns the delay after which a search is also sent to the secondary replica : the configured percentile of the recent latencies of the
+     * primary replica, or the initial delay until enough searches have been timed
+     * 
+     * @return The delay in milliseconds
+     */
+    public long getHedgeDelay( )
+    {
+        if ( _latencyTracker.getSampleCount( ) < _nHedgeMinSamples )
+        {
+            return _lHedgeInitialDelay;
+        }
+
+        return Math.max( _lHedgeMinDelay, _latencyTracker.getPercentile( ) );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String toString( )
+    {
+        return _strName + "(" + _strSearchBase + ")";
+    }
+}
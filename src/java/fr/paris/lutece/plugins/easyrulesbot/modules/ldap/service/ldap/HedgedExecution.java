@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs a set of calls concurrently under a common deadline. Each call may have a hedge, an equivalent call sent to another server when the
+ * first one has not answered after a delay or has failed : the first successful answer is kept and the other attempt is cancelled. The
+ * waiting is done by the calling thread, so the executor threads only run the calls themselves.
+ * 
+ * @param <T>
+ *            The result type
+ */
+public final class HedgedExecution<T>
+{
+    private final CompletionService<T> _completionService;
+    private final List<Call<T>> _listCalls = new ArrayList<Call<T>>( );
+    private final Map<Future<T>, Call<T>> _mapPending = new HashMap<Future<T>, Call<T>>( );
+
+    /**
+     * Constructor
+     * 
+     * @param executor
+     *            The executor running the calls
+     */
+    public HedgedExecution( ExecutorService executor )
+    {
+        _completionService = new ExecutorCompletionService<T>( executor );
+    }
+
+    /**
+     * Adds a call and starts it
+     * 
+     * @param primary
+     *            The call
+     * @param hedge
+     *            The hedge or null
+     * @param lHedgeDelay
+     *            The delay before the hedge is sent, in milliseconds
+     * @param lTimeout
+     *            The max time to wait for the call, in milliseconds
+     * @return The index of the call
+     */
+    public int submit( Callable<T> primary, Callable<T> hedge, long lHedgeDelay, long lTimeout )
+    {
+        long lNow = System.currentTimeMillis( );
+        Call<T> call = new Call<T>( _listCalls.size( ), hedge, lNow + lHedgeDelay, lNow + lTimeout );
+        _listCalls.add( call );
+        start( call, primary );
+
+        return call._nIndex;
+    }
+
+    /**
+     * Waits for the calls until they are all done or the deadline is reached. The calls still running are then cancelled.
+     * 
+     * @param lDeadline
+     *            The deadline as a time in milliseconds
+     * @throws InterruptedException
+     *             if the calling thread is interrupted
+     */
+    public void await( long lDeadline ) throws InterruptedException
+    {
+        try
+        {
+            while ( !_mapPending.isEmpty( ) )
+            {
+                long lNow = System.currentTimeMillis( );
+                long lNextEvent = lDeadline;
+
+                for ( Call<T> call : _listCalls )
+                {
+                    if ( call.isPending( ) )
+                    {
+                        if ( lNow >= call._lTimeoutTime )
+                        {
+                            call.timeout( _mapPending );
+                            continue;
+                        }
+
+                        if ( call._hedge != null && !call._bHedged )
+                        {
+                            if ( lNow >= call._lHedgeTime )
+                            {
+                                hedge( call );
+                            }
+                            else
+                            {
+                                lNextEvent = Math.min( lNextEvent, call._lHedgeTime );
+                            }
+                        }
+
+                        lNextEvent = Math.min( lNextEvent, call._lTimeoutTime );
+                    }
+                }
+
+                if ( _mapPending.isEmpty( ) || lNow >= lDeadline )
+                {
+                    break;
+                }
+
+                Future<T> future = _completionService.poll( Math.max( 1L, lNextEvent - lNow ), TimeUnit.MILLISECONDS );
+
+                if ( future != null )
+                {
+                    complete( future );
+                }
+            }
+        }
+        finally
+        {
+            for ( Call<T> call : _listCalls )
+            {
+                if ( call.isPending( ) )
+                {
+                    call.timeout( _mapPending );
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the result of a call
+     * 
+     * @param nIndex
+     *            The index of the call
+     * @return The result or null if the call did not succeed
+     */
+    public T getResult( int nIndex )
+    {
+        return _listCalls.get( nIndex )._result;
+    }
+
+    /**
+     * Tells if a call succeeded
+     * 
+     * @param nIndex
+     *            The index of the call
+     * @return true if a result was received
+     */
+    public boolean isDone( int nIndex )
+    {
+        return _listCalls.get( nIndex )._bDone;
+    }
+
+    /**
+     * Returns the last failure of a call
+     * 
+     * @param nIndex
+     *            The index of the call
+     * @return The failure, a TimeoutException if the call did not answer in time, or null
+     */
+    public Throwable getFailure( int nIndex )
+    {
+        return _listCalls.get( nIndex )._failure;
+    }
+
+    /**
+     * Tells if the hedge of a call has been sent
+     * 
+     * @param nIndex
+     *            The index of the call
+     * @return true if hedged
+     */
+    public boolean isHedged( int nIndex )
+    {
+        return _listCalls.get( nIndex )._bHedged;
+    }
+
+    /**
+     * Handles a completed attempt
+     * 
+     * @param future
+     *            The attempt
+     */
+    private void complete( Future<T> future )
+    {
+        Call<T> call = _mapPending.remove( future );
+
+        if ( call == null || call._bDone )
+        {
+            return;
+        }
+
+        call._listAttempts.remove( future );
+
+        try
+        {
+            call._result = future.get( );
+            call._bDone = true;
+            call.cancel( _mapPending );
+        }
+        catch( ExecutionException e )
+        {
+            call._failure = e.getCause( );
+
+            // Failover : the hedge is sent at once
+            if ( call._hedge != null && !call._bHedged )
+            {
+                hedge( call );
+            }
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+        }
+        catch( RuntimeException e )
+        {
+            call._failure = e;
+        }
+    }
+
+    /**
+     * Sends the hedge of a call
+     * 
+     * @param call
+     *            The call
+     */
+    private void hedge( Call<T> call )
+    {
+        call._bHedged = true;
+        start( call, call._hedge );
+    }
+
+    /**
+     * Starts an attempt
+     * 
+     * @param call
+     *            The call
+     * @param callable
+     *            The attempt
+     */
+    private void start( Call<T> call, Callable<T> callable )
+    {
+        Future<T> future = _completionService.submit( callable );
+        call._listAttempts.add( future );
+        _mapPending.put( future, call );
+    }
+
+    /**
+     * State of a call
+     * 
+     * @param <T>
+     *            The result type
+     */
+    private static final class Call<T>
+    {
+        private final int _nIndex;
+        private final Callable<T> _hedge;
+        private final long _lHedgeTime;
+        private final long _lTimeoutTime;
+        private final List<Future<T>> _listAttempts = new ArrayList<Future<T>>( 2 );
+        private boolean _bHedged;
+        private boolean _bDone;
+        private T _result;
+        private Throwable _failure;
+
+        private Call( int nIndex, Callable<T> hedge, long lHedgeTime, long lTimeoutTime )
+        {
+            _nIndex = nIndex;
+            _hedge = hedge;
+            _lHedgeTime = lHedgeTime;
+            _lTimeoutTime = lTimeoutTime;
+        }
+
+        private boolean isPending( )
+        {
+            return !_listAttempts.isEmpty( );
+        }
+
+        private void cancel( Map<Future<T>, Call<T>> mapPending )
+        {
+            for ( Future<T> future : _listAttempts )
+            {
+                future.cancel( true );
+                mapPending.remove( future );
+            }
+
+            _listAttempts.clear( );
+        }
+
+        private void timeout( Map<Future<T>, Call<T>> mapPending )
+        {
+            cancel( mapPending );
+            _failure = new TimeoutException( "No answer before the timeout or the deadline" );
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the last searches of a directory to compute one of their percentiles. The percentile is computed again every few
+ * samples by the thread recording the latency, so that reading it does not sort the samples on each search.
+ */
+public class LatencyTracker
+{
+    private final long [ ] _samples;
+    private final double _dPercentile;
+    private final int _nRefreshInterval;
+    private int _nNext;
+    private volatile int _nSize;
+    private int _nSinceRefresh;
+    private volatile long _lPercentile = -1L;
+
+    /**
+     * Constructor
+     * 
+     * @param nCapacity
+     *            The number of latencies kept
+     * @param dPercentile
+     *            The percentile, between 0 and 1
+     * @param nRefreshInterval
+     *            The number of latencies recorded between two computations of the percentile
+     */
+    public LatencyTracker( int nCapacity, double dPercentile, int nRefreshInterval )
+    {
+        _samples = new long [ Math.max( 1, nCapacity )];
+        _dPercentile = dPercentile;
+        _nRefreshInterval = Math.max( 1, nRefreshInterval );
+    }
+
+    /**
+     * Records a latency
+     * 
+     * @param lLatency
+     *            The latency in milliseconds
+     */
+    public void record( long lLatency )
+    {
+        long [ ] sorted = null;
+
+        synchronized( this )
+        {
+            _samples [_nNext] = lLatency;
+            _nNext = ( _nNext + 1 ) % _samples.length;
+            _nSize = Math.min( _nSize + 1, _samples.length );
+            _nSinceRefresh++;
+
+            // The first samples are few : the percentile follows each of them until the interval is reached
+            if ( _nSinceRefresh >= _nRefreshInterval || _nSize <= _nRefreshInterval )
+            {
+                _nSinceRefresh = 0;
+                sorted = Arrays.copyOf( _samples, _nSize );
+            }
+        }
+
+        if ( sorted != null )
+        {
+            Arrays.sort( sorted );
+
+            int nIndex = (int) Math.ceil( _dPercentile * sorted.length ) - 1;
+            _lPercentile = sorted [Math.min( sorted.length - 1, Math.max( 0, nIndex ) )];
+        }
+    }
+
+    /**
+     * Returns the number of latencies kept
+     * 
+     * @return The number of samples
+     */
+    public int getSampleCount( )
+    {
+        return _nSize;
+    }
+
+    /**
+     * Returns the percentile of the recorded latencies, as computed at the last refresh
+     * 
+     * @return The latency in milliseconds or -1 if no latency has been recorded
+     */
+    public long getPercentile( )
+    {
+        return _lPercentile;
+    }
+}
@@ -0,0 +1,617 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.DaemonThreadFactory;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.SearchMetrics;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.Hashtable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.SearchControls;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Pool of bound LDAP contexts. A JNDI context is not thread safe, so a context is borrowed by a single search at a time and given back to the pool
+ * once its results have been read.
+ */
+public class LdapContextPool
+{
+    private static final String PROPERTY_POOL_ENABLED = "easyrulesbot-ldap.ldap.pool.enabled";
+    private static final String PROPERTY_POOL_MIN_SIZE = "easyrulesbot-ldap.ldap.pool.minSize";
+    private static final String PROPERTY_POOL_MAX_SIZE = "easyrulesbot-ldap.ldap.pool.maxSize";
+    private static final String PROPERTY_POOL_MAX_WAIT = "easyrulesbot-ldap.ldap.pool.maxWait";
+    private static final String PROPERTY_POOL_MAX_IDLE_TIME = "easyrulesbot-ldap.ldap.pool.maxIdleTime";
+    private static final String PROPERTY_POOL_VALIDATE_ON_BORROW = "easyrulesbot-ldap.ldap.pool.validateOnBorrow";
+    private static final String PROPERTY_CONNECT_TIMEOUT = "easyrulesbot-ldap.ldap.connectTimeout";
+    private static final String PROPERTY_READ_TIMEOUT = "easyrulesbot-ldap.ldap.readTimeout";
+
+    private static final String ENV_CONNECT_TIMEOUT = "com.sun.jndi.ldap.connect.timeout";
+    private static final String ENV_READ_TIMEOUT = "com.sun.jndi.ldap.read.timeout";
+    private static final String AUTHENTICATION_SIMPLE = "simple";
+    private static final String NO_ATTRIBUTES = "1.1";
+
+    private static final int DEFAULT_MIN_SIZE = 0;
+    private static final int DEFAULT_MAX_SIZE = 10;
+    private static final long DEFAULT_MAX_WAIT = 5000L;
+    private static final long DEFAULT_MAX_IDLE_TIME = 300000L;
+
+    // The connections of the min size are opened in the background : the searches never wait for them
+    private static final ExecutorService FILL_EXECUTOR = Executors.newSingleThreadExecutor( new DaemonThreadFactory( "easyrulesbot-ldap-pool-fill" ) );
+
+    private final String _strName;
+    private final Hashtable<String, String> _env;
+    private final boolean _bEnabled;
+    private final int _nMinSize;
+    private final int _nMaxSize;
+    private final long _lMaxWait;
+    private final long _lMaxIdleTime;
+    private final boolean _bValidateOnBorrow;
+
+    private final LinkedBlockingDeque<PooledContext> _idleContexts = new LinkedBlockingDeque<PooledContext>( );
+    private final Semaphore _permits;
+    private final AtomicBoolean _bFilling = new AtomicBoolean( );
+
+    private final AtomicLong _lCreated = new AtomicLong( );
+    private final AtomicLong _lDestroyed = new AtomicLong( );
+    private final AtomicLong _lBorrowed = new AtomicLong( );
+    private final AtomicLong _lValidationFailures = new AtomicLong( );
+    private final AtomicLong _lWaitTimeouts = new AtomicLong( );
+
+    /**
+     * Constructor
+     * 
+     * @param strName
+     *            The pool name, used in logs
+     * @param strInitialContextProvider
+     *            The JNDI initial context factory
+     * @param strProviderUrl
+     *            The LDAP server URL
+     * @param strBindDn
+     *            The bind DN
+     * @param strBindPassword
+     *            The bind password
+     * @param lDefaultReadTimeout
+     *            The read timeout in milliseconds used when none is configured, 0 for none
+     */
+    public LdapContextPool( String strName, String strInitialContextProvider, String strProviderUrl, String strBindDn, String strBindPassword,
+            long lDefaultReadTimeout )
+    {
+        _strName = strName;
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_POOL_ENABLED, true );
+        _nMaxSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_POOL_MAX_SIZE, DEFAULT_MAX_SIZE ) );
+        _nMinSize = Math.min( _nMaxSize, AppPropertiesService.getPropertyInt( PROPERTY_POOL_MIN_SIZE, DEFAULT_MIN_SIZE ) );
+        _lMaxWait = AppPropertiesService.getPropertyLong( PROPERTY_POOL_MAX_WAIT, DEFAULT_MAX_WAIT );
+        _lMaxIdleTime = AppPropertiesService.getPropertyLong( PROPERTY_POOL_MAX_IDLE_TIME, DEFAULT_MAX_IDLE_TIME );
+        _bValidateOnBorrow = AppPropertiesService.getPropertyBoolean( PROPERTY_POOL_VALIDATE_ON_BORROW, true );
+        _permits = new Semaphore( _nMaxSize, true );
+
+        _env = new Hashtable<String, String>( );
+        _env.put( Context.INITIAL_CONTEXT_FACTORY, strInitialContextProvider );
+        _env.put( Context.PROVIDER_URL, strProviderUrl );
+
+        if ( !StringUtils.isEmpty( strBindDn ) )
+        {
+            _env.put( Context.SECURITY_AUTHENTICATION, AUTHENTICATION_SIMPLE );
+            _env.put( Context.SECURITY_PRINCIPAL, strBindDn );
+            _env.put( Context.SECURITY_CREDENTIALS, StringUtils.defaultString( strBindPassword ) );
+        }
+
+        String strConnectTimeout = AppPropertiesService.getProperty( PROPERTY_CONNECT_TIMEOUT );
+
+        if ( !StringUtils.isEmpty( strConnectTimeout ) )
+        {
+            _env.put( ENV_CONNECT_TIMEOUT, strConnectTimeout );
+        }
+
+        String strReadTimeout = AppPropertiesService.getProperty( PROPERTY_READ_TIMEOUT );
+
+        if ( !StringUtils.isEmpty( strReadTimeout ) )
+        {
+            _env.put( ENV_READ_TIMEOUT, strReadTimeout );
+        }
+        else
+            if ( lDefaultReadTimeout > 0 )
+            {
+                // Without a read timeout, a search abandoned on a hung server would hold its thread and its connection forever
+                _env.put( ENV_READ_TIMEOUT, String.valueOf( lDefaultReadTimeout ) );
+            }
+    }
+
+    /**
+     * Asks the background thread to open connections until the pool holds its minimum size. Called when the source is created and after a
+     * connection is closed on a failure. It returns at once, and a single fill of the pool runs at a time.
+     */
+    public void requestFill( )
+    {
+        if ( !_bEnabled || _idleContexts.size( ) >= _nMinSize || !_bFilling.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        FILL_EXECUTOR.execute( new Runnable( )
+        {
+            @Override
+            public void run( )
+            {
+                try
+                {
+                    fill( );
+                }
+                finally
+                {
+                    _bFilling.set( false );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Opens connections until the pool holds its minimum size
+     */
+    private void fill( )
+    {
+        while ( _bEnabled && ( _idleContexts.size( ) < _nMinSize ) && _permits.tryAcquire( ) )
+        {
+            try
+            {
+                _idleContexts.offerFirst( new PooledContext( createContext( ) ) );
+            }
+            catch( NamingException e )
+            {
+                AppLogService.error( "LDAP pool " + _strName + " : unable to open a connection to " + _env.get( Context.PROVIDER_URL ), e );
+
+                return;
+            }
+            finally
+            {
+                _permits.release( );
+            }
+        }
+    }
+
+    /**
+     * Borrows a bound context. The context must be given back with {@link #returnContext(LdapContext)} or {@link #invalidateContext(LdapContext)}
+     * 
+     * @return The context
+     * @throws NamingException
+     *             if no context is available within the max wait time or if the connection can't be opened
+     */
+    public LdapContext borrowContext( ) throws NamingException
+    {
+        long lStart = SearchMetrics.start( );
+
+        try
+        {
+            if ( !_permits.tryAcquire( _lMaxWait, TimeUnit.MILLISECONDS ) )
+            {
+                _lWaitTimeouts.incrementAndGet( );
+
+                throw new ServiceUnavailableException( "LDAP pool " + _strName + " exhausted : no connection available after " + _lMaxWait + " ms" );
+            }
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+
+            throw new ServiceUnavailableException( "LDAP pool " + _strName + " : interrupted while waiting for a connection" );
+        }
+
+        try
+        {
+            LdapContext context = pollIdleContext( );
+
+            if ( context == null )
+            {
+                context = createContext( );
+            }
+
+            _lBorrowed.incrementAndGet( );
+            SearchMetrics.getInstance( ).record( SearchMetrics.PHASE_CONNECT, lStart );
+
+            return context;
+        }
+        catch( NamingException | RuntimeException e )
+        {
+            _permits.release( );
+
+            throw e;
+        }
+    }
+
+    /**
+     * Gives a healthy context back to the pool
+     * 
+     * @param context
+     *            The context
+     */
+    public void returnContext( LdapContext context )
+    {
+        if ( context == null )
+        {
+            return;
+        }
+
+        if ( _bEnabled )
+        {
+            _idleContexts.offerFirst( new PooledContext( context ) );
+        }
+        else
+        {
+            destroyContext( context );
+        }
+
+        _permits.release( );
+        evictIdleContexts( );
+    }
+
+    /**
+     * Discards a context after a failure. The next borrow opens and binds a new connection.
+     * 
+     * @param context
+     *            The context
+     */
+    public void invalidateContext( LdapContext context )
+    {
+        if ( context == null )
+        {
+            return;
+        }
+
+        destroyContext( context );
+        _permits.release( );
+        requestFill( );
+    }
+
+    /**
+     * Runs a paged search with a pooled context. The context is given back to the pool after the search, or discarded if the connection failed.
+     * 
+     * @param strBase
+     *            The search base
+     * @param strFilter
+     *            The search filter
+     * @param controls
+     *            The search controls
+     * @param nPageSize
+     *            The page size, 0 to disable paging
+     * @param handler
+     *            The handler of the entries
+     * @throws NamingException
+     *             if the search fails
+     */
+    public void search( String strBase, String strFilter, SearchControls controls, int nPageSize, SearchResultHandler handler ) throws NamingException
+    {
+        LdapContext context = borrowContext( );
+        boolean bValid = false;
+
+        try
+        {
+            PagedSearch.search( context, strBase, strFilter, controls, nPageSize, handler );
+            bValid = true;
+        }
+        catch( NamingException e )
+        {
+            // Errors on the request itself leave the connection usable
+            bValid = !( e instanceof CommunicationException || e instanceof ServiceUnavailableException );
+
+            throw e;
+        }
+        finally
+        {
+            if ( bValid )
+            {
+                returnContext( context );
+            }
+            else
+            {
+                invalidateContext( context );
+            }
+        }
+    }
+
+    /**
+     * Closes the connections that stayed idle longer than the max idle time, keeping at least the minimum size
+     */
+    public void evictIdleContexts( )
+    {
+        long lOldest = System.currentTimeMillis( ) - _lMaxIdleTime;
+
+        while ( _idleContexts.size( ) > _nMinSize )
+        {
+            PooledContext pooled = _idleContexts.pollLast( );
+
+            if ( pooled == null )
+            {
+                return;
+            }
+
+            if ( pooled._lLastUsed >= lOldest )
+            {
+                _idleContexts.offerLast( pooled );
+
+                return;
+            }
+
+            destroyContext( pooled._context );
+        }
+    }
+
+    /**
+     * Closes all idle connections
+     */
+    public void shutdown( )
+    {
+        PooledContext pooled = _idleContexts.pollFirst( );
+
+        while ( pooled != null )
+        {
+            destroyContext( pooled._context );
+            pooled = _idleContexts.pollFirst( );
+        }
+    }
+
+    /**
+     * Returns the pool name
+     * 
+     * @return The name
+     */
+    public String getName( )
+    {
+        return _strName;
+    }
+
+    /**
+     * Returns the number of contexts currently borrowed
+     * 
+     * @return The number of active contexts
+     */
+    public int getActiveCount( )
+    {
+        return _nMaxSize - _permits.availablePermits( );
+    }
+
+    /**
+     * Returns the number of idle contexts
+     * 
+     * @return The number of idle contexts
+     */
+    public int getIdleCount( )
+    {
+        return _idleContexts.size( );
+    }
+
+    /**
+     * Returns the max size of the pool
+     * 
+     * @return The max size
+     */
+    public int getMaxSize( )
+    {
+        return _nMaxSize;
+    }
+
+    /**
+     * Returns the number of connections opened since startup
+     * 
+     * @return The number of created contexts
+     */
+    public long getCreatedCount( )
+    {
+        return _lCreated.get( );
+    }
+
+    /**
+     * Returns the number of connections closed since startup
+     * 
+     * @return The number of destroyed contexts
+     */
+    public long getDestroyedCount( )
+    {
+        return _lDestroyed.get( );
+    }
+
+    /**
+     * Returns the number of borrows since startup
+     * 
+     * @return The number of borrows
+     */
+    public long getBorrowedCount( )
+    {
+        return _lBorrowed.get( );
+    }
+
+    /**
+     * Returns the number of idle connections found broken when borrowed
+     * 
+     * @return The number of validation failures
+     */
+    public long getValidationFailureCount( )
+    {
+        return _lValidationFailures.get( );
+    }
+
+    /**
+     * Returns the number of borrows that timed out waiting for a connection
+     * 
+     * @return The number of wait timeouts
+     */
+    public long getWaitTimeoutCount( )
+    {
+        return _lWaitTimeouts.get( );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public String toString( )
+    {
+        StringBuilder sbOutput = new StringBuilder( "LdapContextPool " ).append( _strName );
+        sbOutput.append( " : active=" ).append( getActiveCount( ) ).append( ", idle=" ).append( getIdleCount( ) );
+        sbOutput.append( ", max=" ).append( _nMaxSize ).append( ", created=" ).append( getCreatedCount( ) );
+        sbOutput.append( ", destroyed=" ).append( getDestroyedCount( ) ).append( ", borrowed=" ).append( getBorrowedCount( ) );
+        sbOutput.append( ", validationFailures=" ).append( getValidationFailureCount( ) ).append( ", waitTimeouts=" ).append( getWaitTimeoutCount( ) );
+
+        return sbOutput.toString( );
+    }
+
+    /**
+     * Takes the most recently used idle context that is still valid
+     * 
+     * @return The context or null if none is available
+     */
+    private LdapContext pollIdleContext( )
+    {
+        long lOldest = System.currentTimeMillis( ) - _lMaxIdleTime;
+        PooledContext pooled = _idleContexts.pollFirst( );
+
+        while ( pooled != null )
+        {
+            if ( pooled._lLastUsed < lOldest )
+            {
+                destroyContext( pooled._context );
+            }
+            else
+                if ( !_bValidateOnBorrow || isValid( pooled._context ) )
+                {
+                    return pooled._context;
+                }
+                else
+                {
+                    _lValidationFailures.incrementAndGet( );
+                    destroyContext( pooled._context );
+                }
+
+            pooled = _idleContexts.pollFirst( );
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks that a connection is still usable by reading its base entry without attributes
+     * 
+     * @param context
+     *            The context
+     * @return true if the server answered
+     */
+    private boolean isValid( LdapContext context )
+    {
+        try
+        {
+            context.getAttributes( "", new String [ ] {
+                NO_ATTRIBUTES
+            } );
+
+            return true;
+        }
+        catch( NamingException e )
+        {
+            AppLogService.debug( "LDAP pool " + _strName + " : discarding a broken connection - " + e.getMessage( ) );
+
+            return false;
+        }
+    }
+
+    /**
+     * Opens and binds a new connection
+     * 
+     * @return The context
+     * @throws NamingException
+     *             if the connection or the bind fails
+     */
+    private LdapContext createContext( ) throws NamingException
+    {
+        LdapContext context = new InitialLdapContext( _env, null );
+        _lCreated.incrementAndGet( );
+
+        return context;
+    }
+
+    /**
+     * Closes a connection
+     * 
+     * @param context
+     *            The context
+     */
+    private void destroyContext( LdapContext context )
+    {
+        _lDestroyed.incrementAndGet( );
+
+        try
+        {
+            context.close( );
+        }
+        catch( NamingException e )
+        {
+            AppLogService.debug( "LDAP pool " + _strName + " : error while closing a connection - " + e.getMessage( ) );
+        }
+    }
+
+    /**
+     * Idle context with its last use time
+     */
+    private static final class PooledContext
+    {
+        private final LdapContext _context;
+        private final long _lLastUsed;
+
+        /**
+         * Constructor
+         * 
+         * @param context
+         *            The context
+         */
+        private PooledContext( LdapContext context )
+        {
+            _context = context;
+            _lLastUsed = System.currentTimeMillis( );
+        }
+    }
+}
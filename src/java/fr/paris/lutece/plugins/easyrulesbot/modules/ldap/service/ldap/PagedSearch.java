@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+import java.io.IOException;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+/**
+ * Search reading its results page by page with the simple paged results control (RFC 2696). The control is not critical, so servers that don't
+ * support it return all the results at once. A search stopped before its last page is abandoned with a page size of 0, so that the server
+ * releases its paging state before the context goes back to the pool.
+ */
+public final class PagedSearch
+{
+    /**
+     * Private constructor
+     */
+    private PagedSearch( )
+    {
+    }
+
+    /**
+     * Runs a search and gives each entry to a handler until the handler stops it or there is no more entry
+     * 
+     * @param context
+     *            The context, borrowed for the whole search
+     * @param strBase
+     *            The search base
+     * @param strFilter
+     *            The search filter
+     * @param controls
+     *            The search controls
+     * @param nPageSize
+     *            The page size, 0 to disable paging
+     * @param handler
+     *            The handler
+     * @throws NamingException
+     *             if the search fails
+     */
+    public static void search( LdapContext context, String strBase, String strFilter, SearchControls controls, int nPageSize, SearchResultHandler handler )
+            throws NamingException
+    {
+        byte [ ] cookie = null;
+        boolean bContinue = true;
+
+        try
+        {
+            do
+            {
+                setPagedResultsControl( context, nPageSize, cookie );
+
+                NamingEnumeration<SearchResult> results = context.search( strBase, strFilter, controls );
+
+                try
+                {
+                    while ( bContinue && results.hasMore( ) )
+                    {
+                        bContinue = handler.handle( results.next( ) );
+                    }
+                }
+                finally
+                {
+                    results.close( );
+                }
+
+                byte [ ] nextCookie = getPagedResultsCookie( context );
+
+                if ( !bContinue )
+                {
+                    // The page may have been closed before its response : the cookie of its request then still holds the server state
+                    abandon( context, strBase, strFilter, controls, ( nextCookie != null ) ? nextCookie : cookie );
+                }
+
+                cookie = nextCookie;
+            }
+            while ( bContinue && cookie != null );
+        }
+        finally
+        {
+            if ( nPageSize > 0 )
+            {
+                // The context goes back to a pool : no control must be left for the next search
+                context.setRequestControls( null );
+            }
+        }
+    }
+
+    /**
+     * Sets the simple paged results control on a context, if paging is enabled
+     * 
+     * @param context
+     *            The context
+     * @param nPageSize
+     *            The page size
+     * @param cookie
+     *            The cookie returned with the previous page or null for the first page
+     * @throws NamingException
+     *             if the control can't be set
+     */
+    private static void setPagedResultsControl( LdapContext context, int nPageSize, byte [ ] cookie ) throws NamingException
+    {
+        if ( nPageSize <= 0 )
+        {
+            return;
+        }
+
+        try
+        {
+            context.setRequestControls( new Control [ ] {
+                new PagedResultsControl( nPageSize, cookie, Control.NONCRITICAL )
+            } );
+        }
+        catch( IOException e )
+        {
+            NamingException exception = new NamingException( "Unable to create the paged results control" );
+            exception.setRootCause( e );
+
+            throw exception;
+        }
+    }
+
+    /**
+     * Abandons a paged search by requesting a page of size 0 with its cookie. A failure only leaves the paging state to the server timeout,
+     * so it does not fail the search.
+     * 
+     * @param context
+     *            The context that ran the search
+     * @param strBase
+     *            The search base
+     * @param strFilter
+     *            The search filter
+     * @param controls
+     *            The search controls
+     * @param cookie
+     *            The cookie of the paged search or null if it has no more page
+     */
+    private static void abandon( LdapContext context, String strBase, String strFilter, SearchControls controls, byte [ ] cookie )
+    {
+        if ( cookie == null )
+        {
+            return;
+        }
+
+        try
+        {
+            context.setRequestControls( new Control [ ] {
+                new PagedResultsControl( 0, cookie, Control.NONCRITICAL )
+            } );
+            context.search( strBase, strFilter, controls ).close( );
+        }
+        catch( IOException e )
+        {
+            AppLogService.debug( "Paged search : unable to create the abandon control - " + e.getMessage( ) );
+        }
+        catch( NamingException e )
+        {
+            AppLogService.debug( "Paged search : error while abandoning the search - " + e.getMessage( ) );
+        }
+    }
+
+    /**
+     * Returns the cookie of the next page, if any
+     * 
+     * @param context
+     *            The context that ran the search
+     * @return The cookie or null if there is no more page
+     * @throws NamingException
+     *             if the response controls can't be read
+     */
+    private static byte [ ] getPagedResultsCookie( LdapContext context ) throws NamingException
+    {
+        Control [ ] controls = context.getResponseControls( );
+
+        if ( controls != null )
+        {
+            for ( Control control : controls )
+            {
+                if ( control instanceof PagedResultsResponseControl )
+                {
+                    byte [ ] cookie = ( (PagedResultsResponseControl) control ).getCookie( );
+
+                    return ( ( cookie != null ) && ( cookie.length > 0 ) ) ? cookie : null;
+                }
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent calls : the first caller of a key runs the call, the callers arriving while it is running wait for it and get
+ * the same result or the same failure. The key is released as soon as the call is done, so the results are not kept.
+ * 
+ * @param <T>
+ *            The result type
+ * @param <E>
+ *            The checked exception thrown by the calls
+ */
+public final class SingleFlight<T, E extends Exception>
+{
+    private final ConcurrentMap<String, FutureTask<T>> _mapCalls = new ConcurrentHashMap<String, FutureTask<T>>( );
+    private final Class<E> _exceptionClass;
+    private final AtomicLong _lSharedCount = new AtomicLong( );
+
+    /**
+     * Constructor
+     * 
+     * @param exceptionClass
+     *            The class of the checked exception thrown by the calls
+     */
+    public SingleFlight( Class<E> exceptionClass )
+    {
+        _exceptionClass = exceptionClass;
+    }
+
+    /**
+     * Runs a call, or waits for the identical call in progress
+     * 
+     * @param strKey
+     *            The key identifying identical calls
+     * @param call
+     *            The call
+     * @return The result of the call
+     * @throws E
+     *             if the call failed
+     */
+    public T execute( String strKey, Callable<T> call ) throws E
+    {
+        FutureTask<T> task = new FutureTask<T>( call );
+        FutureTask<T> inFlight = _mapCalls.putIfAbsent( strKey, task );
+
+        if ( inFlight != null )
+        {
+            _lSharedCount.incrementAndGet( );
+
+            return getResult( inFlight );
+        }
+
+        try
+        {
+            task.run( );
+        }
+        finally
+        {
+            _mapCalls.remove( strKey, task );
+        }
+
+        return getResult( task );
+    }
+
+    /**
+     * Returns the number of calls that got the result of an identical call in progress
+     * 
+     * @return The count
+     */
+    public long getSharedCount( )
+    {
+        return _lSharedCount.get( );
+    }
+
+    /**
+     * Returns the number of calls in progress
+     * 
+     * @return The count
+     */
+    public int getInFlightCount( )
+    {
+        return _mapCalls.size( );
+    }
+
+    /**
+     * Waits for the result of a call. The wait is not interrupted, the calls being bounded by the search deadline ; the interruption is
+     * restored afterwards.
+     * 
+     * @param task
+     *            The call
+     * @return The result
+     * @throws E
+     *             if the call failed
+     */
+    private T getResult( FutureTask<T> task ) throws E
+    {
+        boolean bInterrupted = false;
+
+        try
+        {
+            while ( true )
+            {
+                try
+                {
+                    return task.get( );
+                }
+                catch( InterruptedException e )
+                {
+                    bInterrupted = true;
+                }
+                catch( ExecutionException e )
+                {
+                    Throwable cause = e.getCause( );
+
+                    if ( _exceptionClass.isInstance( cause ) )
+                    {
+                        throw _exceptionClass.cast( cause );
+                    }
+
+                    if ( cause instanceof RuntimeException )
+                    {
+                        throw (RuntimeException) cause;
+                    }
+
+                    if ( cause instanceof Error )
+                    {
+                        throw (Error) cause;
+                    }
+
+                    throw new IllegalStateException( cause );
+                }
+            }
+        }
+        finally
+        {
+            if ( bInterrupted )
+            {
+                Thread.currentThread( ).interrupt( );
+            }
+        }
+    }
+}
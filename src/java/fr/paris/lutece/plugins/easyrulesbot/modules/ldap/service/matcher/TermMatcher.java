@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.matcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Multi-pattern matcher (Aho-Corasick automaton) finding which value has one of its terms in a text. The text is scanned once whatever the
+ * number of terms. When several terms are found, the longest one wins, then the one found first in the text, then the one whose value comes
+ * first in alphabetical order. Instances are immutable and thread safe.
+ */
+public final class TermMatcher
+{
+    private static final int ROOT = 0;
+    private static final int NO_OUTPUT = -1;
+
+    private final String [ ] _values;
+    private final char [ ] [ ] _labels;
+    private final int [ ] [ ] _targets;
+    private final int [ ] _fail;
+    private final int [ ] _outputValue;
+    private final int [ ] _outputLength;
+    private final int _nTermCount;
+
+    /**
+     * Compiles the automaton
+     * 
+     * @param mapValueTerms
+     *            The terms by value. Terms are matched in lower case.
+     */
+    public TermMatcher( Map<String, List<String>> mapValueTerms )
+    {
+        // Values are sorted so that a term shared by several values always resolves to the same one
+        TreeMap<String, List<String>> mapSorted = new TreeMap<String, List<String>>( mapValueTerms );
+        _values = mapSorted.keySet( ).toArray( new String [ mapSorted.size( )] );
+
+        List<TreeMap<Character, Integer>> listChildren = new ArrayList<TreeMap<Character, Integer>>( );
+        List<Integer> listOutputValues = new ArrayList<Integer>( );
+        List<Integer> listOutputLengths = new ArrayList<Integer>( );
+        listChildren.add( new TreeMap<Character, Integer>( ) );
+        listOutputValues.add( NO_OUTPUT );
+        listOutputLengths.add( 0 );
+
+        int nTermCount = 0;
+
+        for ( int nValue = 0; nValue < _values.length; nValue++ )
+        {
+            List<String> listTerms = mapSorted.get( _values [nValue] );
+
+            if ( listTerms == null )
+            {
+                continue;
+            }
+
+            for ( String strTerm : listTerms )
+            {
+                String strLowerTerm = ( strTerm != null ) ? strTerm.trim( ).toLowerCase( Locale.ROOT ) : "";
+
+                if ( strLowerTerm.isEmpty( ) )
+                {
+                    continue;
+                }
+
+                int nNode = ROOT;
+
+                for ( int i = 0; i < strLowerTerm.length( ); i++ )
+                {
+                    Character c = strLowerTerm.charAt( i );
+                    Integer nChild = listChildren.get( nNode ).get( c );
+
+                    if ( nChild == null )
+                    {
+                        nChild = listChildren.size( );
+                        listChildren.add( new TreeMap<Character, Integer>( ) );
+                        listOutputValues.add( NO_OUTPUT );
+                        listOutputLengths.add( 0 );
+                        listChildren.get( nNode ).put( c, nChild );
+                    }
+
+                    nNode = nChild;
+                }
+
+                // The first value in alphabetical order keeps the term
+                if ( listOutputValues.get( nNode ) == NO_OUTPUT )
+                {
+                    listOutputValues.set( nNode, nValue );
+                    listOutputLengths.set( nNode, strLowerTerm.length( ) );
+                }
+
+                nTermCount++;
+            }
+        }
+
+        int nSize = listChildren.size( );
+        _labels = new char [ nSize] [ ];
+        _targets = new int [ nSize] [ ];
+        _fail = new int [ nSize];
+        _outputValue = new int [ nSize];
+        _outputLength = new int [ nSize];
+        _nTermCount = nTermCount;
+
+        for ( int nNode = 0; nNode < nSize; nNode++ )
+        {
+            TreeMap<Character, Integer> mapChildren = listChildren.get( nNode );
+            _labels [nNode] = new char [ mapChildren.size( )];
+            _targets [nNode] = new int [ mapChildren.size( )];
+
+            int i = 0;
+
+            for ( Map.Entry<Character, Integer> entry : mapChildren.entrySet( ) )
+            {
+                _labels [nNode] [i] = entry.getKey( );
+                _targets [nNode] [i] = entry.getValue( );
+                i++;
+            }
+
+            _outputValue [nNode] = listOutputValues.get( nNode );
+            _outputLength [nNode] = listOutputLengths.get( nNode );
+        }
+
+        buildFailureLinks( );
+    }
+
+    /**
+     * Computes the failure links breadth first. Each node also inherits the output of its failure node when it has none, which is the longest
+     * term ending at this node.
+     */
+    private void buildFailureLinks( )
+    {
+        Deque<Integer> queue = new ArrayDeque<Integer>( );
+
+        for ( int nChild : _targets [ROOT] )
+        {
+            _fail [nChild] = ROOT;
+            queue.add( nChild );
+        }
+
+        while ( !queue.isEmpty( ) )
+        {
+            int nNode = queue.poll( );
+
+            for ( int i = 0; i < _labels [nNode].length; i++ )
+            {
+                int nChild = _targets [nNode] [i];
+                int nFail = _fail [nNode];
+                int nTarget = child( nFail, _labels [nNode] [i] );
+
+                while ( nTarget < 0 && nFail != ROOT )
+                {
+                    nFail = _fail [nFail];
+                    nTarget = child( nFail, _labels [nNode] [i] );
+                }
+
+                _fail [nChild] = ( nTarget < 0 || nTarget == nChild ) ? ROOT : nTarget;
+
+                if ( _outputValue [nChild] == NO_OUTPUT )
+                {
+                    _outputValue [nChild] = _outputValue [_fail [nChild]];
+                    _outputLength [nChild] = _outputLength [_fail [nChild]];
+                }
+
+                queue.add( nChild );
+            }
+        }
+    }
+
+    /**
+     * Returns the child of a node for a character
+     * 
+     * @param nNode
+     *            The node
+     * @param c
+     *            The character
+     * @return The child or -1
+     */
+    private int child( int nNode, char c )
+    {
+        int nIndex = Arrays.binarySearch( _labels [nNode], c );
+
+        return ( nIndex >= 0 ) ? _targets [nNode] [nIndex] : -1;
+    }
+
+    /**
+     * Finds the value having a term in a text
+     * 
+     * @param strText
+     *            The text
+     * @return The value of the best term found, or null if no term is found
+     */
+    public String match( String strText )
+    {
+        if ( strText == null )
+        {
+            return null;
+        }
+
+        String strLowerText = strText.toLowerCase( Locale.ROOT );
+        int nNode = ROOT;
+        int nBestValue = NO_OUTPUT;
+        int nBestLength = 0;
+
+        for ( int i = 0; i < strLowerText.length( ); i++ )
+        {
+            char c = strLowerText.charAt( i );
+            int nNext = child( nNode, c );
+
+            while ( nNext < 0 && nNode != ROOT )
+            {
+                nNode = _fail [nNode];
+                nNext = child( nNode, c );
+            }
+
+            nNode = ( nNext < 0 ) ? ROOT : nNext;
+
+            // Terms are found by end position : at equal length, the first one found also starts first
+            if ( _outputLength [nNode] > nBestLength )
+            {
+                nBestValue = _outputValue [nNode];
+                nBestLength = _outputLength [nNode];
+            }
+        }
+
+        return ( nBestValue == NO_OUTPUT ) ? null : _values [nBestValue];
+    }
+
+    /**
+     * Returns the number of compiled terms
+     * 
+     * @return The number of terms
+     */
+    public int getTermCount( )
+    {
+        return _nTermCount;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.matcher;
+
+import fr.paris.lutece.plugins.easyrulesbot.util.FileUtils;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPathService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Term matcher compiled from a terms file of the webapp. The file modification date is checked at most every reloadCheckInterval
+ * milliseconds and a new matcher is compiled and swapped in when it changed. Searches in progress keep the matcher they started with.
+ */
+public final class TermMatcherFile
+{
+    private static final String PROPERTY_RELOAD_CHECK_INTERVAL = "easyrulesbot-ldap.termMatcher.reloadCheckInterval";
+    private static final long DEFAULT_RELOAD_CHECK_INTERVAL = 10000L;
+
+    private final String _strRelativePath;
+    private final long _lReloadCheckInterval;
+    private volatile TermMatcher _matcher;
+    private volatile long _lLastModified;
+    private volatile long _lNextCheck;
+
+    /**
+     * Constructor. The file is compiled immediately.
+     * 
+     * @param strRelativePath
+     *            The file path relative to the webapp
+     */
+    public TermMatcherFile( String strRelativePath )
+    {
+        _strRelativePath = strRelativePath;
+        _lReloadCheckInterval = AppPropertiesService.getPropertyLong( PROPERTY_RELOAD_CHECK_INTERVAL, DEFAULT_RELOAD_CHECK_INTERVAL );
+        reload( );
+    }
+
+    /**
+     * Returns the current matcher, compiled again first if the file changed
+     * 
+     * @return The matcher or null if the file could not be loaded
+     */
+    public TermMatcher getMatcher( )
+    {
+        long lNow = System.currentTimeMillis( );
+
+        if ( lNow >= _lNextCheck )
+        {
+            _lNextCheck = lNow + _lReloadCheckInterval;
+
+            if ( getFile( ).lastModified( ) != _lLastModified )
+            {
+                reload( );
+            }
+        }
+
+        return _matcher;
+    }
+
+    /**
+     * Compiles the file and swaps the matcher
+     */
+    private synchronized void reload( )
+    {
+        long lLastModified = getFile( ).lastModified( );
+
+        if ( _matcher != null && lLastModified == _lLastModified )
+        {
+            // Already reloaded by another thread
+            return;
+        }
+
+        try
+        {
+            Map<String, List<String>> mapValueTerms = FileUtils.loadMapFromFile( _strRelativePath );
+
+            if ( mapValueTerms != null )
+            {
+                TermMatcher matcher = new TermMatcher( mapValueTerms );
+                _matcher = matcher;
+                _lLastModified = lLastModified;
+                AppLogService.info( "Terms file " + _strRelativePath + " compiled : " + matcher.getTermCount( ) + " terms" );
+            }
+        }
+        catch( RuntimeException e )
+        {
+            // The previous matcher is kept
+            AppLogService.error( "Error while compiling the terms file " + _strRelativePath, e );
+        }
+    }
+
+    /**
+     * Returns the terms file
+     * 
+     * @return The file
+     */
+    private File getFile( )
+    {
+        return new File( AppPathService.getAbsolutePathFromRelativeFilename( _strRelativePath ) );
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of positive values with log-linear buckets : each power of two is split in 8 buckets, so percentiles are known with a
+ * relative error under 12.5%, whatever the range of the values, in a fixed memory size.
+ */
+public final class Histogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS * ( 64 - SUB_BUCKET_BITS );
+
+    private final AtomicLongArray _counts = new AtomicLongArray( BUCKETS );
+    private final AtomicLong _lCount = new AtomicLong( );
+    private final AtomicLong _lSum = new AtomicLong( );
+    private final AtomicLong _lMax = new AtomicLong( );
+
+    /**
+     * Records a value
+     * 
+     * @param lValue
+     *            The value, negative values being recorded as 0
+     */
+    public void record( long lValue )
+    {
+        long lPositive = Math.max( 0L, lValue );
+        _counts.incrementAndGet( getBucket( lPositive ) );
+        _lCount.incrementAndGet( );
+        _lSum.addAndGet( lPositive );
+
+        long lMax = _lMax.get( );
+
+        while ( lPositive > lMax && !_lMax.compareAndSet( lMax, lPositive ) )
+        {
+            lMax = _lMax.get( );
+        }
+    }
+
+    /**
+     * Returns the number of recorded values
+     * 
+     * @return The count
+     */
+    public long getCount( )
+    {
+        return _lCount.get( );
+    }
+
+    /**
+     * Returns the mean of the recorded values
+     * 
+     * @return The mean or 0 if no value has been recorded
+     */
+    public double getMean( )
+    {
+        long lCount = _lCount.get( );
+
+        return ( lCount == 0 ) ? 0 : (double) _lSum.get( ) / lCount;
+    }
+
+    /**
+     * Returns the max recorded value
+     * 
+     * @return The max
+     */
+    public long getMax( )
+    {
+        return _lMax.get( );
+    }
+
+    /**
+     * Returns a percentile of the recorded values : the upper bound of the bucket holding it
+     * 
+     * @param dPercentile
+     *            The percentile, between 0 and 100
+     * @return The value or 0 if no value has been recorded
+     */
+    public long getPercentile( double dPercentile )
+    {
+        long lCount = _lCount.get( );
+
+        if ( lCount == 0 )
+        {
+            return 0;
+        }
+
+        long lRank = Math.max( 1L, (long) Math.ceil( lCount * dPercentile / 100 ) );
+        long lSeen = 0;
+
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            lSeen += _counts.get( i );
+
+            if ( lSeen >= lRank )
+            {
+                return Math.min( getUpperBound( i ), getMax( ) );
+            }
+        }
+
+        // Values recorded while reading the buckets
+        return getMax( );
+    }
+
+    /**
+     * Returns the bucket of a value
+     * 
+     * @param lValue
+     *            The positive value
+     * @return The bucket index
+     */
+    static int getBucket( long lValue )
+    {
+        if ( lValue < SUB_BUCKETS )
+        {
+            return (int) lValue;
+        }
+
+        int nExponent = 63 - Long.numberOfLeadingZeros( lValue );
+        int nSubBucket = (int) ( lValue >>> ( nExponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 );
+
+        return SUB_BUCKETS * ( nExponent - SUB_BUCKET_BITS + 1 ) + nSubBucket;
+    }
+
+    /**
+     * Returns the greatest value of a bucket
+     * 
+     * @param nBucket
+     *            The bucket index
+     * @return The upper bound
+     */
+    static long getUpperBound( int nBucket )
+    {
+        if ( nBucket < SUB_BUCKETS )
+        {
+            return nBucket;
+        }
+
+        int nShift = nBucket / SUB_BUCKETS - 1;
+        long lMantissa = SUB_BUCKETS + ( nBucket % SUB_BUCKETS ) + 1L;
+
+        return ( nShift >= 60 ) ? Long.MAX_VALUE : ( lMantissa << nShift ) - 1;
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.PersonSearchService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.CircuitBreaker;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.DirectorySource;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.LdapContextPool;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.facet.FacetService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.planner.QueryPlanner;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.querylog.QueryLogService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.replica.DirectoryReplicaService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.replica.ReplicaSnapshot;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the bot searches : latency histograms of each phase of a response, distribution of the result sizes and errors by exception type.
+ * The snapshot also holds the gauges of the caches, connection pools and replica. It is exposed through JMX and the metrics servlet.
+ */
+public final class SearchMetrics
+{
+    /** Whole response of the search processor */
+    public static final String PHASE_TOTAL = "total";
+    /** Borrow of a pooled connection, including the wait for a free one and the bind of a new one */
+    public static final String PHASE_CONNECT = "connect";
+    /** LDAP search of a source, including the borrow of the connection and the reading of the entries but not their mapping */
+    public static final String PHASE_SEARCH = "search";
+    /** Mapping of the entries to persons */
+    public static final String PHASE_MAPPING = "mapping";
+    /** Rendering of the directory template */
+    public static final String PHASE_RENDER = "render";
+    /** Suggestions of the autocompletion for a prefix */
+    public static final String PHASE_AUTOCOMPLETE = "autocomplete";
+
+    public static final String OBJECT_NAME = "fr.paris.lutece.plugins.easyrulesbot.modules.ldap:type=SearchMetrics";
+
+    private static final String [ ] PHASES = {
+            PHASE_TOTAL, PHASE_CONNECT, PHASE_SEARCH, PHASE_MAPPING, PHASE_RENDER, PHASE_AUTOCOMPLETE
+    };
+    private static final double [ ] PERCENTILES = {
+            50, 95, 99
+    };
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private static SearchMetrics _singleton;
+
+    private final Map<String, Histogram> _mapPhases = new TreeMap<String, Histogram>( );
+    private final Histogram _resultSizes = new Histogram( );
+    private final ConcurrentMap<String, AtomicLong> _mapErrors = new ConcurrentHashMap<String, AtomicLong>( );
+    private final long _lStartTime = System.currentTimeMillis( );
+
+    /**
+     * Private constructor
+     */
+    private SearchMetrics( )
+    {
+        for ( String strPhase : PHASES )
+        {
+            _mapPhases.put( strPhase, new Histogram( ) );
+        }
+    }
+
+    /**
+     * Returns the unique instance, registered in the platform MBean server when it is created
+     * 
+     * @return The instance
+     */
+    public static synchronized SearchMetrics getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new SearchMetrics( );
+            register( _singleton );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * Returns the current time to pass to {@link #record(String, long)}
+     * 
+     * @return The start time in nanoseconds
+     */
+    public static long start( )
+    {
+        return System.nanoTime( );
+    }
+
+    /**
+     * Records the duration of a phase
+     * 
+     * @param strPhase
+     *            The phase
+     * @param lStartNanos
+     *            The start time returned by {@link #start()}
+     */
+    public void record( String strPhase, long lStartNanos )
+    {
+        recordNanos( strPhase, System.nanoTime( ) - lStartNanos );
+    }
+
+    /**
+     * Records the duration of a phase
+     * 
+     * @param strPhase
+     *            The phase
+     * @param lNanos
+     *            The duration in nanoseconds
+     */
+    public void recordNanos( String strPhase, long lNanos )
+    {
+        Histogram histogram = _mapPhases.get( strPhase );
+
+        if ( histogram != null )
+        {
+            histogram.record( TimeUnit.NANOSECONDS.toMicros( lNanos ) );
+        }
+    }
+
+    /**
+     * Records the number of persons of a result
+     * 
+     * @param nSize
+     *            The size
+     */
+    public void recordResultSize( int nSize )
+    {
+        _resultSizes.record( nSize );
+    }
+
+    /**
+     * Counts an error
+     * 
+     * @param error
+     *            The error
+     */
+    public void recordError( Throwable error )
+    {
+        String strType = ( error != null ) ? error.getClass( ).getSimpleName( ) : "Unknown";
+        AtomicLong lCount = _mapErrors.get( strType );
+
+        if ( lCount == null )
+        {
+            AtomicLong lNew = new AtomicLong( );
+            lCount = _mapErrors.putIfAbsent( strType, lNew );
+
+            if ( lCount == null )
+            {
+                lCount = lNew;
+            }
+        }
+
+        lCount.incrementAndGet( );
+    }
+
+    /**
+     * Returns the current values of the metrics, sorted by name. Durations are in milliseconds.
+     * 
+     * @return The metrics
+     */
+    public Map<String, Number> getSnapshot( )
+    {
+        Map<String, Number> mapMetrics = new TreeMap<String, Number>( );
+        long lRequests = _mapPhases.get( PHASE_TOTAL ).getCount( );
+        double dUptime = Math.max( 1L, System.currentTimeMillis( ) - _lStartTime ) / 1000.0;
+
+        mapMetrics.put( "requests.count", lRequests );
+        mapMetrics.put( "requests.perSecond", lRequests / dUptime );
+
+        for ( Map.Entry<String, Histogram> entry : _mapPhases.entrySet( ) )
+        {
+            putHistogram( mapMetrics, "phase." + entry.getKey( ), entry.getValue( ), MICROS_PER_MILLI );
+        }
+
+        putHistogram( mapMetrics, "results.size", _resultSizes, 1 );
+
+        long lErrors = 0;
+
+        for ( Map.Entry<String, AtomicLong> entry : _mapErrors.entrySet( ) )
+        {
+            mapMetrics.put( "errors." + entry.getKey( ), entry.getValue( ).get( ) );
+            lErrors += entry.getValue( ).get( );
+        }
+
+        mapMetrics.put( "errors.count", lErrors );
+        putGauges( mapMetrics );
+
+        return mapMetrics;
+    }
+
+    /**
+     * Puts the values of a histogram in the metrics
+     * 
+     * @param mapMetrics
+     *            The metrics
+     * @param strPrefix
+     *            The name prefix
+     * @param histogram
+     *            The histogram
+     * @param dScale
+     *            The divisor of the recorded values
+     */
+    private static void putHistogram( Map<String, Number> mapMetrics, String strPrefix, Histogram histogram, double dScale )
+    {
+        mapMetrics.put( strPrefix + ".count", histogram.getCount( ) );
+        mapMetrics.put( strPrefix + ".mean", histogram.getMean( ) / dScale );
+        mapMetrics.put( strPrefix + ".max", histogram.getMax( ) / dScale );
+
+        for ( double dPercentile : PERCENTILES )
+        {
+            mapMetrics.put( strPrefix + ".p" + (int) dPercentile, histogram.getPercentile( dPercentile ) / dScale );
+        }
+    }
+
+    /**
+     * Puts the gauges of the caches, search coalescing, connection pools, circuit breakers, planner, facets, query log and replica in the metrics
+     * 
+     * @param mapMetrics
+     *            The metrics
+     */
+    private static void putGauges( Map<String, Number> mapMetrics )
+    {
+        PersonSearchService searchService = PersonSearchService.getInstance( );
+
+        mapMetrics.put( "cache.results.size", searchService.getCacheService( ).getCacheSize( ) );
+        mapMetrics.put( "cache.results.hits", searchService.getCacheService( ).getHitCount( ) );
+        mapMetrics.put( "cache.results.misses", searchService.getCacheService( ).getMissCount( ) );
+        mapMetrics.put( "cache.results.hitRatio", searchService.getCacheService( ).getHitRatio( ) );
+        mapMetrics.put( "cache.states.size", searchService.getStateCacheService( ).getCacheSize( ) );
+        mapMetrics.put( "singleflight.shared", searchService.getSingleFlight( ).getSharedCount( ) );
+        mapMetrics.put( "singleflight.inFlight", searchService.getSingleFlight( ).getInFlightCount( ) );
+
+        for ( DirectorySource source : searchService.getSources( ) )
+        {
+            putPool( mapMetrics, source.getContextPool( ) );
+
+            if ( source.getHedgeContextPool( ) != null )
+            {
+                putPool( mapMetrics, source.getHedgeContextPool( ) );
+            }
+
+            if ( source.getCircuitBreaker( ) != null )
+            {
+                putBreaker( mapMetrics, source.getName( ), source.getCircuitBreaker( ) );
+            }
+        }
+
+        QueryPlanner queryPlanner = QueryPlanner.getInstance( );
+        mapMetrics.put( "planner.rewritten", queryPlanner.getRewrittenCount( ) );
+        mapMetrics.put( "planner.merged", queryPlanner.getMergedCount( ) );
+        mapMetrics.put( "planner.rejected", queryPlanner.getRejectedCount( ) );
+        mapMetrics.put( "facets.refined", FacetService.getInstance( ).getRefinedCount( ) );
+        mapMetrics.put( "querylog.logged", QueryLogService.getInstance( ).getLoggedCount( ) );
+        mapMetrics.put( "querylog.dropped", QueryLogService.getInstance( ).getDroppedCount( ) );
+
+        ReplicaSnapshot snapshot = DirectoryReplicaService.getInstance( ).getSnapshot( );
+
+        if ( snapshot != null )
+        {
+            mapMetrics.put( "replica.size", snapshot.size( ) );
+        }
+    }
+
+    /**
+     * Puts the gauges of a connection pool in the metrics
+     * 
+     * @param mapMetrics
+     *            The metrics
+     * @param pool
+     *            The pool
+     */
+    private static void putPool( Map<String, Number> mapMetrics, LdapContextPool pool )
+    {
+        String strPrefix = "pool." + pool.getName( );
+        mapMetrics.put( strPrefix + ".active", pool.getActiveCount( ) );
+        mapMetrics.put( strPrefix + ".idle", pool.getIdleCount( ) );
+        mapMetrics.put( strPrefix + ".maxSize", pool.getMaxSize( ) );
+        mapMetrics.put( strPrefix + ".created", pool.getCreatedCount( ) );
+        mapMetrics.put( strPrefix + ".waitTimeouts", pool.getWaitTimeoutCount( ) );
+    }
+
+    /**
+     * Puts the gauges of a circuit breaker in the metrics. The state is given by its ordinal : 0 closed, 1 half open, 2 open.
+     * 
+     * @param mapMetrics
+     *            The metrics
+     * @param strSourceName
+     *            The name of the directory source
+     * @param circuitBreaker
+     *            The circuit breaker
+     */
+    private static void putBreaker( Map<String, Number> mapMetrics, String strSourceName, CircuitBreaker circuitBreaker )
+    {
+        String strPrefix = "breaker." + strSourceName;
+        mapMetrics.put( strPrefix + ".state", circuitBreaker.getState( ).ordinal( ) );
+        mapMetrics.put( strPrefix + ".failureRate", circuitBreaker.getFailureRate( ) );
+        mapMetrics.put( strPrefix + ".opened", circuitBreaker.getOpenedCount( ) );
+        mapMetrics.put( strPrefix + ".rejected", circuitBreaker.getRejectedCount( ) );
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server
+     * 
+     * @param metrics
+     *            The metrics
+     */
+    private static void register( SearchMetrics metrics )
+    {
+        try
+        {
+            ObjectName name = new ObjectName( OBJECT_NAME );
+
+            if ( !ManagementFactory.getPlatformMBeanServer( ).isRegistered( name ) )
+            {
+                ManagementFactory.getPlatformMBeanServer( ).registerMBean( new SearchMetricsMBean( metrics ), name );
+            }
+        }
+        catch( JMException e )
+        {
+            AppLogService.error( "Unable to register the LDAP bot metrics MBean : " + e.getMessage( ), e );
+        }
+    }
+}
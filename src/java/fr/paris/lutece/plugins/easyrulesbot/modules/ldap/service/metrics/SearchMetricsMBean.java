@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Read only MBean exposing each value of the metrics snapshot as an attribute. The attributes follow the snapshot, so the gauges of the
+ * connection pools appear with their sources.
+ */
+public class SearchMetricsMBean implements DynamicMBean
+{
+    private final SearchMetrics _metrics;
+
+    /**
+     * Constructor
+     * 
+     * @param metrics
+     *            The metrics
+     */
+    public SearchMetricsMBean( SearchMetrics metrics )
+    {
+        _metrics = metrics;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Object getAttribute( String strAttribute ) throws AttributeNotFoundException
+    {
+        Number value = _metrics.getSnapshot( ).get( strAttribute );
+
+        if ( value == null )
+        {
+            throw new AttributeNotFoundException( strAttribute );
+        }
+
+        return value;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public AttributeList getAttributes( String [ ] attributes )
+    {
+        Map<String, Number> mapSnapshot = _metrics.getSnapshot( );
+        AttributeList list = new AttributeList( );
+
+        for ( String strAttribute : attributes )
+        {
+            Number value = mapSnapshot.get( strAttribute );
+
+            if ( value != null )
+            {
+                list.add( new Attribute( strAttribute, value ) );
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void setAttribute( Attribute attribute ) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException( "Read only attribute : " + attribute.getName( ) );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public AttributeList setAttributes( AttributeList attributes )
+    {
+        return new AttributeList( );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Object invoke( String strActionName, Object [ ] params, String [ ] signature ) throws ReflectionException
+    {
+        throw new ReflectionException( new NoSuchMethodException( strActionName ) );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public MBeanInfo getMBeanInfo( )
+    {
+        List<MBeanAttributeInfo> listAttributes = new ArrayList<MBeanAttributeInfo>( );
+
+        for ( Map.Entry<String, Number> entry : _metrics.getSnapshot( ).entrySet( ) )
+        {
+            listAttributes.add( new MBeanAttributeInfo( entry.getKey( ), entry.getValue( ).getClass( ).getName( ), entry.getKey( ), true, false, false ) );
+        }
+
+        return new MBeanInfo( getClass( ).getName( ), "LDAP bot search metrics", listAttributes.toArray( new MBeanAttributeInfo [ listAttributes.size( )] ),
+                new MBeanConstructorInfo [ 0], new MBeanOperationInfo [ 0], new MBeanNotificationInfo [ 0] );
+    }
+}
@@ -0,0 +1,735 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.planner;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.FilterEstimator;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.FilterTemplate;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.LdapFilter;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Plans the search filters before they are sent to the directory. The values of the criteria that look exact, such as a mail address or a
+ * complete phone number, become a single equality or prefix assertion instead of a substring assertion per word. The clauses of a filter are
+ * deduplicated and ordered by estimated cost, using the indexes declared for the attributes and the numbers of entries observed for the
+ * previous searches of the same shape. A filter whose every clause is a substring too short to be selective is not sent. The statistics only
+ * order the clauses : a filter rejected on them would never be searched again to correct them.
+ */
+public final class QueryPlanner
+{
+    private static final String PROPERTY_ENABLED = "easyrulesbot-ldap.planner.enabled";
+    private static final String PROPERTY_INDEX_PREFIX = "easyrulesbot-ldap.planner.index.";
+    private static final String PROPERTY_EXACT_PREFIX = "easyrulesbot-ldap.planner.exact.";
+    private static final String PROPERTY_PREFIX_PREFIX = "easyrulesbot-ldap.planner.prefix.";
+    private static final String PROPERTY_MIN_SUBSTRING_LENGTH = "easyrulesbot-ldap.planner.minSubstringLength";
+    private static final String PROPERTY_MIN_SAMPLES = "easyrulesbot-ldap.planner.minSamples";
+    private static final String PROPERTY_STATISTICS_TTL = "easyrulesbot-ldap.planner.statisticsTimeToLive";
+    private static final String PROPERTY_SEARCH_MAX_RESULTS = "easyrulesbot-ldap.ldap.search.maxResults";
+
+    private static final String INDEX_EQUALITY = "equality";
+    private static final String INDEX_SUBSTRING = "substring";
+    private static final String INDEX_PRESENCE = "presence";
+    private static final String KIND_EQUALITY = "eq";
+    private static final String KIND_PREFIX = "prefix";
+    private static final String KIND_SUBSTRING = "sub";
+    private static final String KIND_PRESENCE = "pres";
+    private static final String KIND_OTHER = "other";
+    private static final String SEPARATOR = ",";
+    private static final String SHAPE_SEPARATOR = ":";
+
+    private static final int DEFAULT_MIN_SUBSTRING_LENGTH = 2;
+    private static final int DEFAULT_MIN_SAMPLES = 5;
+    private static final long DEFAULT_STATISTICS_TTL = 3600L;
+    private static final int DEFAULT_SEARCH_MAX_RESULTS = 500;
+    private static final long ESTIMATE_EQUALITY = 1L;
+    private static final long ESTIMATE_PREFIX = 10L;
+    private static final long ESTIMATE_SUBSTRING = 100L;
+    private static final long UNINDEXED_COST_FACTOR = 1000L;
+    private static final int MAX_SHAPE_LENGTH = 5;
+    private static final double SAMPLE_WEIGHT = 0.25;
+
+    private static QueryPlanner _singleton;
+
+    private final boolean _bEnabled;
+    private final Map<String, Set<String>> _mapIndexes;
+    private final Map<String, Pattern> _mapExactPatterns;
+    private final Map<String, Pattern> _mapPrefixPatterns;
+    private final int _nMinSubstringLength;
+    private final int _nMinSamples;
+    private final long _lStatisticsTtl;
+    private final long _lMaxResults;
+    private final ConcurrentMap<String, ShapeStatistics> _mapStatistics = new ConcurrentHashMap<String, ShapeStatistics>( );
+    private final AtomicLong _lRewrittenCount = new AtomicLong( );
+    private final AtomicLong _lMergedCount = new AtomicLong( );
+    private final AtomicLong _lRejectedCount = new AtomicLong( );
+
+    /**
+     * Private constructor
+     */
+    private QueryPlanner( )
+    {
+        this( AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, true ), loadIndexes( ), loadPatterns( PROPERTY_EXACT_PREFIX ),
+                loadPatterns( PROPERTY_PREFIX_PREFIX ), AppPropertiesService.getPropertyInt( PROPERTY_MIN_SUBSTRING_LENGTH, DEFAULT_MIN_SUBSTRING_LENGTH ),
+                AppPropertiesService.getPropertyInt( PROPERTY_MIN_SAMPLES, DEFAULT_MIN_SAMPLES ),
+                AppPropertiesService.getPropertyLong( PROPERTY_STATISTICS_TTL, DEFAULT_STATISTICS_TTL ) * 1000L,
+                AppPropertiesService.getPropertyInt( PROPERTY_SEARCH_MAX_RESULTS, DEFAULT_SEARCH_MAX_RESULTS ) );
+    }
+
+    /**
+     * Constructor from the settings, the instance of the plugin reading them from the properties
+     * 
+     * @param bEnabled
+     *            true if the filters are planned
+     * @param mapIndexes
+     *            The kinds of index by lower case attribute name
+     * @param mapExactPatterns
+     *            The patterns of the exact values by criterion name
+     * @param mapPrefixPatterns
+     *            The patterns of the prefix values by criterion name
+     * @param nMinSubstringLength
+     *            The min length of a selective substring
+     * @param nMinSamples
+     *            The min number of searches of a shape before its statistics are used
+     * @param lStatisticsTtl
+     *            The time to live of the statistics, in milliseconds
+     * @param lMaxResults
+     *            The max number of results of a search
+     */
+    QueryPlanner( boolean bEnabled, Map<String, Set<String>> mapIndexes, Map<String, Pattern> mapExactPatterns, Map<String, Pattern> mapPrefixPatterns,
+            int nMinSubstringLength, int nMinSamples, long lStatisticsTtl, long lMaxResults )
+    {
+        _bEnabled = bEnabled;
+        _mapIndexes = mapIndexes;
+        _mapExactPatterns = mapExactPatterns;
+        _mapPrefixPatterns = mapPrefixPatterns;
+        _nMinSubstringLength = nMinSubstringLength;
+        _nMinSamples = nMinSamples;
+        _lStatisticsTtl = lStatisticsTtl;
+        _lMaxResults = lMaxResults;
+    }
+
+    /**
+     * Returns the unique instance
+     * 
+     * @return The instance
+     */
+    public static synchronized QueryPlanner getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new QueryPlanner( );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * Tells if the planner is enabled
+     * 
+     * @return true if enabled
+     */
+    public boolean isEnabled( )
+    {
+        return _bEnabled;
+    }
+
+    /**
+     * Rewrites the value of a criterion that looks exact into a single equality or prefix assertion on the attribute of its template
+     * 
+     * @param strCriteriaName
+     *            The criterion name
+     * @param strValue
+     *            The criterion value
+     * @param template
+     *            The filter template of the criterion
+     * @return The clause or null if the value does not look exact and the template must be used
+     */
+    public String rewrite( String strCriteriaName, String strValue, FilterTemplate template )
+    {
+        String strAttribute = template.getAttribute( );
+        String strTrimmedValue = strValue.trim( );
+
+        if ( strAttribute == null || strTrimmedValue.isEmpty( ) )
+        {
+            return null;
+        }
+
+        Pattern exactPattern = _mapExactPatterns.get( strCriteriaName );
+
+        if ( exactPattern != null && exactPattern.matcher( strTrimmedValue ).matches( ) )
+        {
+            _lRewrittenCount.incrementAndGet( );
+
+            return "(" + strAttribute + "=" + FilterTemplate.escape( strTrimmedValue ) + ")";
+        }
+
+        Pattern prefixPattern = _mapPrefixPatterns.get( strCriteriaName );
+
+        if ( prefixPattern != null && prefixPattern.matcher( strTrimmedValue ).matches( ) )
+        {
+            _lRewrittenCount.incrementAndGet( );
+
+            return "(" + strAttribute + "=" + FilterTemplate.escape( strTrimmedValue ) + "*)";
+        }
+
+        return null;
+    }
+
+    /**
+     * Plans a search filter : its clauses are deduplicated and ordered by increasing estimated cost
+     * 
+     * @param strFilter
+     *            The filter built from the criteria
+     * @return The planned filter, or null if the filter has only substrings too short to be selective and must not be sent
+     */
+    public String plan( String strFilter )
+    {
+        if ( !_bEnabled || strFilter.isEmpty( ) )
+        {
+            return strFilter;
+        }
+
+        List<String> listClauses = splitClauses( strFilter );
+
+        if ( listClauses == null )
+        {
+            return strFilter;
+        }
+
+        final Map<String, Long> mapCosts = new HashMap<String, Long>( );
+        Set<String> setKeys = new HashSet<String>( );
+        List<String> listPlannedClauses = new ArrayList<String>( listClauses.size( ) );
+        long lEstimate = Long.MAX_VALUE;
+
+        try
+        {
+            for ( String strClause : listClauses )
+            {
+                if ( !setKeys.add( LdapFilter.normalize( strClause ) ) )
+                {
+                    _lMergedCount.incrementAndGet( );
+
+                    continue;
+                }
+
+                LdapFilter clause = LdapFilter.parse( strClause );
+                lEstimate = Math.min( lEstimate, clause.estimate( new Estimator( false, false ) ) );
+                mapCosts.put( strClause, clause.estimate( new Estimator( true, true ) ) );
+                listPlannedClauses.add( strClause );
+            }
+        }
+        catch( IllegalArgumentException e )
+        {
+            AppLogService.debug( "Filter not planned : " + e.getMessage( ) );
+
+            return strFilter;
+        }
+
+        if ( lEstimate > _lMaxResults )
+        {
+            _lRejectedCount.incrementAndGet( );
+
+            return null;
+        }
+
+        Collections.sort( listPlannedClauses, new Comparator<String>( )
+        {
+            @Override
+            public int compare( String strClause1, String strClause2 )
+            {
+                return mapCosts.get( strClause1 ).compareTo( mapCosts.get( strClause2 ) );
+            }
+        } );
+
+        StringBuilder sbFilter = new StringBuilder( strFilter.length( ) ).append( "(&" );
+
+        for ( String strClause : listPlannedClauses )
+        {
+            sbFilter.append( strClause );
+        }
+
+        return sbFilter.append( ')' ).toString( );
+    }
+
+    /**
+     * Records the number of entries matching a filter sent to the directory. Only the filters made of a single assertion are recorded : their
+     * count is the one of the shape of the assertion.
+     * 
+     * @param strFilter
+     *            The planned filter
+     * @param nCount
+     *            The number of matching entries, greater than the max number of results if the search was truncated
+     */
+    public void record( String strFilter, int nCount )
+    {
+        if ( !_bEnabled || strFilter.isEmpty( ) )
+        {
+            return;
+        }
+
+        List<String> listClauses = splitClauses( strFilter );
+
+        if ( listClauses == null || listClauses.size( ) != 1 )
+        {
+            return;
+        }
+
+        ShapeCollector collector = new ShapeCollector( );
+
+        try
+        {
+            LdapFilter.parse( listClauses.get( 0 ) ).estimate( collector );
+        }
+        catch( IllegalArgumentException e )
+        {
+            return;
+        }
+
+        if ( collector._listShapes.size( ) == 1 )
+        {
+            String strShape = collector._listShapes.get( 0 );
+            ShapeStatistics statistics = _mapStatistics.get( strShape );
+
+            if ( statistics == null )
+            {
+                ShapeStatistics newStatistics = new ShapeStatistics( );
+                statistics = _mapStatistics.putIfAbsent( strShape, newStatistics );
+
+                if ( statistics == null )
+                {
+                    statistics = newStatistics;
+                }
+            }
+
+            statistics.add( nCount );
+        }
+    }
+
+    /**
+     * Returns the number of criteria values rewritten to an exact assertion
+     * 
+     * @return The count
+     */
+    public long getRewrittenCount( )
+    {
+        return _lRewrittenCount.get( );
+    }
+
+    /**
+     * Returns the number of duplicate clauses removed
+     * 
+     * @return The count
+     */
+    public long getMergedCount( )
+    {
+        return _lMergedCount.get( );
+    }
+
+    /**
+     * Returns the number of filters not sent because they had only substrings too short to be selective
+     * 
+     * @return The count
+     */
+    public long getRejectedCount( )
+    {
+        return _lRejectedCount.get( );
+    }
+
+    /**
+     * Splits the clauses of an and filter
+     * 
+     * @param strFilter
+     *            The filter
+     * @return The clauses or null if the filter is not an and filter
+     */
+    private static List<String> splitClauses( String strFilter )
+    {
+        if ( !strFilter.startsWith( "(&" ) || !strFilter.endsWith( ")" ) )
+        {
+            return null;
+        }
+
+        List<String> listClauses = new ArrayList<String>( );
+        int nDepth = 0;
+        int nStart = 0;
+
+        // Parentheses are always escaped in the assertion values, so they only delimit the clauses
+        for ( int i = 2; i < strFilter.length( ) - 1; i++ )
+        {
+            char c = strFilter.charAt( i );
+
+            if ( c == '(' )
+            {
+                if ( nDepth == 0 )
+                {
+                    nStart = i;
+                }
+
+                nDepth++;
+            }
+            else
+                if ( c == ')' )
+                {
+                    nDepth--;
+
+                    if ( nDepth == 0 )
+                    {
+                        listClauses.add( strFilter.substring( nStart, i + 1 ) );
+                    }
+                    else
+                        if ( nDepth < 0 )
+                        {
+                            return null;
+                        }
+                }
+        }
+
+        return ( nDepth == 0 ) ? listClauses : null;
+    }
+
+    /**
+     * Returns the kind of an assertion
+     * 
+     * @param strOperator
+     *            The operator
+     * @param listParts
+     *            The parts of the value
+     * @param bInitial
+     *            true if the value does not start with a wildcard
+     * @param bFinal
+     *            true if the value does not end with a wildcard
+     * @return The kind
+     */
+    private static String getKind( String strOperator, List<String> listParts, boolean bInitial, boolean bFinal )
+    {
+        if ( !"=".equals( strOperator ) )
+        {
+            return KIND_OTHER;
+        }
+
+        if ( listParts.isEmpty( ) )
+        {
+            return KIND_PRESENCE;
+        }
+
+        if ( listParts.size( ) == 1 && bInitial )
+        {
+            return bFinal ? KIND_EQUALITY : KIND_PREFIX;
+        }
+
+        return KIND_SUBSTRING;
+    }
+
+    /**
+     * Returns the shape of an assertion : its attribute, kind and the length of its longest part, the lengths above 5 being counted as 5
+     * 
+     * @param strAttribute
+     *            The attribute
+     * @param strKind
+     *            The kind
+     * @param nLength
+     *            The length of the longest part
+     * @return The shape
+     */
+    private static String getShape( String strAttribute, String strKind, int nLength )
+    {
+        return strAttribute + SHAPE_SEPARATOR + strKind + SHAPE_SEPARATOR + Math.min( nLength, MAX_SHAPE_LENGTH );
+    }
+
+    /**
+     * Returns the length of the longest part of a value
+     * 
+     * @param listParts
+     *            The parts
+     * @return The length
+     */
+    private static int getLongestPartLength( List<String> listParts )
+    {
+        int nLength = 0;
+
+        for ( String strPart : listParts )
+        {
+            nLength = Math.max( nLength, strPart.length( ) );
+        }
+
+        return nLength;
+    }
+
+    /**
+     * Loads the indexes declared for the attributes
+     * 
+     * @return The kinds of index by lower case attribute name
+     */
+    private static Map<String, Set<String>> loadIndexes( )
+    {
+        Map<String, Set<String>> mapIndexes = new HashMap<String, Set<String>>( );
+
+        for ( String strKey : AppPropertiesService.getKeys( PROPERTY_INDEX_PREFIX ) )
+        {
+            Set<String> setIndexes = new HashSet<String>( );
+
+            for ( String strIndex : AppPropertiesService.getProperty( strKey, "" ).split( SEPARATOR ) )
+            {
+                setIndexes.add( strIndex.trim( ) );
+            }
+
+            mapIndexes.put( strKey.substring( PROPERTY_INDEX_PREFIX.length( ) ).toLowerCase( Locale.ROOT ), setIndexes );
+        }
+
+        return mapIndexes;
+    }
+
+    /**
+     * Loads the value patterns of the criteria
+     * 
+     * @param strPrefix
+     *            The prefix of the properties
+     * @return The patterns by criterion name
+     */
+    private static Map<String, Pattern> loadPatterns( String strPrefix )
+    {
+        Map<String, Pattern> mapPatterns = new HashMap<String, Pattern>( );
+
+        for ( String strKey : AppPropertiesService.getKeys( strPrefix ) )
+        {
+            String strPattern = AppPropertiesService.getProperty( strKey );
+
+            if ( strPattern == null || strPattern.trim( ).isEmpty( ) )
+            {
+                continue;
+            }
+
+            try
+            {
+                mapPatterns.put( strKey.substring( strPrefix.length( ) ), Pattern.compile( strPattern.trim( ) ) );
+            }
+            catch( PatternSyntaxException e )
+            {
+                AppLogService.error( "Invalid criterion value pattern " + strKey + " : " + e.getMessage( ) );
+            }
+        }
+
+        return mapPatterns;
+    }
+
+    /**
+     * Estimates the number of entries matching the assertions, or the cost of their search
+     */
+    private final class Estimator implements FilterEstimator
+    {
+        private final boolean _bCost;
+        private final boolean _bStatistics;
+
+        /**
+         * Constructor
+         * 
+         * @param bCost
+         *            true to estimate the cost, in which the assertions that the directory can't answer from an index weigh more
+         * @param bStatistics
+         *            true to use the numbers of entries observed for the shapes, false to only use the static estimates
+         */
+        private Estimator( boolean bCost, boolean bStatistics )
+        {
+            _bCost = bCost;
+            _bStatistics = bStatistics;
+        }
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public long estimate( String strAttribute, String strOperator, List<String> listParts, boolean bInitial, boolean bFinal )
+        {
+            String strKind = getKind( strOperator, listParts, bInitial, bFinal );
+            int nLength = getLongestPartLength( listParts );
+            long lEstimate = getDefaultEstimate( strKind, nLength );
+            ShapeStatistics statistics = _bStatistics ? _mapStatistics.get( getShape( strAttribute, strKind, nLength ) ) : null;
+
+            // Old statistics are ignored so that the order follows the current content of the directory
+            if ( statistics != null && statistics.isReliable( _nMinSamples, System.currentTimeMillis( ) - _lStatisticsTtl ) )
+            {
+                lEstimate = statistics.getMean( );
+            }
+
+            if ( _bCost && lEstimate != Long.MAX_VALUE && !isIndexed( strAttribute, strKind ) )
+            {
+                lEstimate = ( lEstimate > Long.MAX_VALUE / UNINDEXED_COST_FACTOR ) ? Long.MAX_VALUE : lEstimate * UNINDEXED_COST_FACTOR;
+            }
+
+            return lEstimate;
+        }
+
+        /**
+         * Returns the estimate of an assertion without statistics. It never exceeds the max number of results, except for the substrings too
+         * short to be selective.
+         * 
+         * @param strKind
+         *            The kind of the assertion
+         * @param nLength
+         *            The length of the longest part of the value
+         * @return The estimate
+         */
+        private long getDefaultEstimate( String strKind, int nLength )
+        {
+            if ( KIND_EQUALITY.equals( strKind ) )
+            {
+                return ESTIMATE_EQUALITY;
+            }
+
+            if ( KIND_PREFIX.equals( strKind ) )
+            {
+                return Math.min( ESTIMATE_PREFIX, _lMaxResults );
+            }
+
+            if ( KIND_SUBSTRING.equals( strKind ) )
+            {
+                return ( nLength < _nMinSubstringLength ) ? Long.MAX_VALUE : Math.min( ESTIMATE_SUBSTRING, _lMaxResults );
+            }
+
+            return _lMaxResults;
+        }
+
+        /**
+         * Tells if the directory has an index for an assertion
+         * 
+         * @param strAttribute
+         *            The attribute
+         * @param strKind
+         *            The kind of the assertion
+         * @return true if indexed
+         */
+        private boolean isIndexed( String strAttribute, String strKind )
+        {
+            Set<String> setIndexes = _mapIndexes.get( strAttribute );
+
+            if ( setIndexes == null )
+            {
+                return false;
+            }
+
+            if ( KIND_EQUALITY.equals( strKind ) )
+            {
+                return setIndexes.contains( INDEX_EQUALITY );
+            }
+
+            if ( KIND_PREFIX.equals( strKind ) || KIND_SUBSTRING.equals( strKind ) )
+            {
+                return setIndexes.contains( INDEX_SUBSTRING );
+            }
+
+            return KIND_PRESENCE.equals( strKind ) && setIndexes.contains( INDEX_PRESENCE );
+        }
+    }
+
+    /**
+     * Collects the shapes of the assertions of a filter
+     */
+    private static final class ShapeCollector implements FilterEstimator
+    {
+        private final List<String> _listShapes = new ArrayList<String>( 1 );
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public long estimate( String strAttribute, String strOperator, List<String> listParts, boolean bInitial, boolean bFinal )
+        {
+            _listShapes.add( getShape( strAttribute, getKind( strOperator, listParts, bInitial, bFinal ), getLongestPartLength( listParts ) ) );
+
+            return 0L;
+        }
+    }
+
+    /**
+     * Number of entries matching the assertions of a shape : moving average of the last searches
+     */
+    private static final class ShapeStatistics
+    {
+        private double _dMean;
+        private long _lSampleCount;
+        private long _lUpdateTime;
+
+        /**
+         * Adds a sample
+         * 
+         * @param nCount
+         *            The number of entries
+         */
+        private synchronized void add( int nCount )
+        {
+            _dMean = ( _lSampleCount == 0 ) ? nCount : _dMean + SAMPLE_WEIGHT * ( nCount - _dMean );
+            _lSampleCount++;
+            _lUpdateTime = System.currentTimeMillis( );
+        }
+
+        /**
+         * Returns the average number of entries
+         * 
+         * @return The mean
+         */
+        private synchronized long getMean( )
+        {
+            return Math.round( _dMean );
+        }
+
+        /**
+         * Tells if the average can be used
+         * 
+         * @param nMinSamples
+         *            The min number of samples
+         * @param lMinUpdateTime
+         *            The min time of the last sample
+         * @return true if there are enough recent samples
+         */
+        private synchronized boolean isReliable( int nMinSamples, long lMinUpdateTime )
+        {
+            return _lSampleCount >= nMinSamples && _lUpdateTime >= lMinUpdateTime;
+        }
+    }
+}
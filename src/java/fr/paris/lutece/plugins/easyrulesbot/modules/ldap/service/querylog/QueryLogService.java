@@ -0,0 +1,626 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.querylog;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.DaemonThreadFactory;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.PersonSearchService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.Histogram;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPathService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+
+/**
+ * Log of the searches : each search is written to a local append-only file with its normalized filter, number of results, latency and
+ * outcome. The searches are queued without waiting and written by batches by a background thread ; when the queue is full they are dropped.
+ * The log is aggregated by a daemon into the hottest queries and the latency outliers, and the results of the hottest queries can be refreshed
+ * in the cache ahead of demand.
+ */
+public final class QueryLogService
+{
+    /** Search answered by the local replica */
+    public static final String OUTCOME_REPLICA = "replica";
+    /** Search answered by the result cache */
+    public static final String OUTCOME_CACHE = "cache";
+    /** Search sent to the directory, or sharing the result of an identical search in progress */
+    public static final String OUTCOME_DIRECTORY = "directory";
+    /** Refinement of a previous result evaluated in memory */
+    public static final String OUTCOME_REFINED = "refined";
+    /** Search not sent because it was made only of substrings too short to be selective */
+    public static final String OUTCOME_REJECTED = "rejected";
+    /** Search that failed because no directory source answered */
+    public static final String OUTCOME_UNAVAILABLE = "unavailable";
+
+    private static final String PROPERTY_ENABLED = "easyrulesbot-ldap.queryLog.enabled";
+    private static final String PROPERTY_FILE = "easyrulesbot-ldap.queryLog.file";
+    private static final String PROPERTY_QUEUE_SIZE = "easyrulesbot-ldap.queryLog.queueSize";
+    private static final String PROPERTY_BATCH_SIZE = "easyrulesbot-ldap.queryLog.batchSize";
+    private static final String PROPERTY_FLUSH_INTERVAL = "easyrulesbot-ldap.queryLog.flushInterval";
+    private static final String PROPERTY_MAX_FILE_SIZE = "easyrulesbot-ldap.queryLog.maxFileSize";
+    private static final String PROPERTY_TOP_SIZE = "easyrulesbot-ldap.queryLog.topSize";
+    private static final String PROPERTY_PRECOMPUTE_SIZE = "easyrulesbot-ldap.queryLog.precomputeSize";
+
+    private static final String DEFAULT_FILE = "/WEB-INF/logs/easyrulesbot-ldap-queries.log";
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+    private static final long DEFAULT_MAX_FILE_SIZE = 10485760L;
+    private static final int DEFAULT_TOP_SIZE = 10;
+    private static final int DEFAULT_PRECOMPUTE_SIZE = 0;
+    private static final String ROTATED_SUFFIX = ".1";
+    private static final char FIELD_SEPARATOR = '\t';
+    private static final String TRUNCATED_MARK = "+";
+    private static final int FIELD_COUNT = 5;
+    private static final double OUTLIER_PERCENTILE = 99;
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private static QueryLogService _singleton;
+
+    private final boolean _bEnabled;
+    private final File _file;
+    private final BlockingQueue<QueryLogEntry> _queue;
+    private final int _nBatchSize;
+    private final long _lFlushInterval;
+    private final long _lMaxFileSize;
+    private final int _nTopSize;
+    private final int _nPrecomputeSize;
+    private final AtomicLong _lLoggedCount = new AtomicLong( );
+    private final AtomicLong _lDroppedCount = new AtomicLong( );
+    private final Thread _writerThread;
+
+    /**
+     * Private constructor
+     */
+    private QueryLogService( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false );
+        _file = new File( AppPathService.getAbsolutePathFromRelativeFilename( AppPropertiesService.getProperty( PROPERTY_FILE, DEFAULT_FILE ) ) );
+        _queue = new ArrayBlockingQueue<QueryLogEntry>( Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_QUEUE_SIZE, DEFAULT_QUEUE_SIZE ) ) );
+        _nBatchSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE ) );
+        _lFlushInterval = AppPropertiesService.getPropertyLong( PROPERTY_FLUSH_INTERVAL, DEFAULT_FLUSH_INTERVAL );
+        _lMaxFileSize = AppPropertiesService.getPropertyLong( PROPERTY_MAX_FILE_SIZE, DEFAULT_MAX_FILE_SIZE );
+        _nTopSize = AppPropertiesService.getPropertyInt( PROPERTY_TOP_SIZE, DEFAULT_TOP_SIZE );
+        _nPrecomputeSize = AppPropertiesService.getPropertyInt( PROPERTY_PRECOMPUTE_SIZE, DEFAULT_PRECOMPUTE_SIZE );
+
+        if ( _bEnabled )
+        {
+            _writerThread = new DaemonThreadFactory( "easyrulesbot-ldap-querylog" ).newThread( new Runnable( )
+            {
+                @Override
+                public void run( )
+                {
+                    writeEntries( );
+                }
+            } );
+            _writerThread.start( );
+        }
+        else
+        {
+            _writerThread = null;
+        }
+    }
+
+    /**
+     * Returns the unique instance
+     * 
+     * @return The instance
+     */
+    public static synchronized QueryLogService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new QueryLogService( );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * Stops the thread writing the log, once it has written the queued searches. Called when the webapp is stopped.
+     */
+    public static synchronized void shutdown( )
+    {
+        if ( _singleton != null && _singleton._writerThread != null )
+        {
+            _singleton._writerThread.interrupt( );
+        }
+    }
+
+    /**
+     * Tells if the searches are logged
+     * 
+     * @return true if enabled
+     */
+    public boolean isEnabled( )
+    {
+        return _bEnabled;
+    }
+
+    /**
+     * Logs a search. The entry is queued without waiting, and dropped if the queue is full.
+     * 
+     * @param strFilter
+     *            The normalized search filter
+     * @param nCount
+     *            The number of persons found
+     * @param bTruncated
+     *            true if the search matched more persons than it returned
+     * @param lLatencyNanos
+     *            The duration of the search in nanoseconds
+     * @param strOutcome
+     *            The outcome, one of the OUTCOME_ constants
+     */
+    public void log( String strFilter, int nCount, boolean bTruncated, long lLatencyNanos, String strOutcome )
+    {
+        if ( !_bEnabled )
+        {
+            return;
+        }
+
+        if ( _queue.offer( new QueryLogEntry( System.currentTimeMillis( ), strFilter, nCount, bTruncated, TimeUnit.NANOSECONDS
+                .toMicros( lLatencyNanos ), strOutcome ) ) )
+        {
+            _lLoggedCount.incrementAndGet( );
+        }
+        else
+        {
+            _lDroppedCount.incrementAndGet( );
+        }
+    }
+
+    /**
+     * Returns the number of searches queued
+     * 
+     * @return The count
+     */
+    public long getLoggedCount( )
+    {
+        return _lLoggedCount.get( );
+    }
+
+    /**
+     * Returns the number of searches dropped because the queue was full
+     * 
+     * @return The count
+     */
+    public long getDroppedCount( )
+    {
+        return _lDroppedCount.get( );
+    }
+
+    /**
+     * Aggregates the log : the hottest queries and the latency outliers, then refreshes the results of the hottest queries if the precomputation
+     * is enabled
+     * 
+     * @return The report
+     */
+    public String aggregate( )
+    {
+        if ( !_bEnabled )
+        {
+            return "Query log disabled";
+        }
+
+        Map<String, QueryStatistics> mapStatistics = new HashMap<String, QueryStatistics>( );
+        Histogram latencies = new Histogram( );
+        int nLines = read( new File( _file.getPath( ) + ROTATED_SUFFIX ), mapStatistics, latencies ) + read( _file, mapStatistics, latencies );
+
+        List<QueryStatistics> listQueries = new ArrayList<QueryStatistics>( mapStatistics.values( ) );
+        StringBuilder sbReport = new StringBuilder( );
+        sbReport.append( nLines ).append( " searches, " ).append( listQueries.size( ) ).append( " distinct, latency p" ).append( (int) OUTLIER_PERCENTILE )
+                .append( " " ).append( latencies.getPercentile( OUTLIER_PERCENTILE ) / MICROS_PER_MILLI ).append( " ms\n" );
+
+        Collections.sort( listQueries, new Comparator<QueryStatistics>( )
+        {
+            @Override
+            public int compare( QueryStatistics query1, QueryStatistics query2 )
+            {
+                return Long.compare( query2._lHits, query1._lHits );
+            }
+        } );
+
+        List<QueryStatistics> listHotQueries = new ArrayList<QueryStatistics>( listQueries.subList( 0, Math.min( _nTopSize, listQueries.size( ) ) ) );
+        sbReport.append( "Hottest queries :\n" );
+        appendQueries( sbReport, listHotQueries );
+
+        long lOutlierLatency = latencies.getPercentile( OUTLIER_PERCENTILE );
+        List<QueryStatistics> listOutliers = new ArrayList<QueryStatistics>( );
+
+        for ( QueryStatistics query : listQueries )
+        {
+            if ( query._lMaxLatency > lOutlierLatency )
+            {
+                listOutliers.add( query );
+            }
+        }
+
+        Collections.sort( listOutliers, new Comparator<QueryStatistics>( )
+        {
+            @Override
+            public int compare( QueryStatistics query1, QueryStatistics query2 )
+            {
+                return Long.compare( query2._lMaxLatency, query1._lMaxLatency );
+            }
+        } );
+
+        sbReport.append( "Latency outliers :\n" );
+        appendQueries( sbReport, listOutliers.subList( 0, Math.min( _nTopSize, listOutliers.size( ) ) ) );
+
+        if ( _nPrecomputeSize > 0 )
+        {
+            sbReport.append( "Precomputed : " ).append( precompute( listQueries ) ).append( '\n' );
+        }
+
+        return sbReport.toString( );
+    }
+
+    /**
+     * Refreshes in the cache the results of the hottest queries answered by the directory or the cache
+     * 
+     * @param listQueries
+     *            The queries, the hottest first
+     * @return The number of queries refreshed
+     */
+    private int precompute( List<QueryStatistics> listQueries )
+    {
+        PersonSearchService searchService = PersonSearchService.getInstance( );
+        int nRefreshed = 0;
+
+        for ( QueryStatistics query : listQueries )
+        {
+            if ( nRefreshed >= _nPrecomputeSize )
+            {
+                break;
+            }
+
+            // The other searches don't reach the directory or can't be cached
+            if ( OUTCOME_DIRECTORY.equals( query._strLastOutcome ) || OUTCOME_CACHE.equals( query._strLastOutcome ) )
+            {
+                try
+                {
+                    searchService.refresh( query._strFilter );
+                    nRefreshed++;
+                }
+                catch( NamingException e )
+                {
+                    AppLogService.error( "Query log : unable to refresh the search " + query._strFilter + " - " + e.getMessage( ) );
+
+                    break;
+                }
+            }
+        }
+
+        return nRefreshed;
+    }
+
+    /**
+     * Appends queries to the report
+     * 
+     * @param sbReport
+     *            The report
+     * @param listQueries
+     *            The queries
+     */
+    private static void appendQueries( StringBuilder sbReport, List<QueryStatistics> listQueries )
+    {
+        for ( QueryStatistics query : listQueries )
+        {
+            sbReport.append( "  " ).append( query._lHits ).append( " x " ).append( query._strFilter ).append( " : " ).append( query._strLastCount )
+                    .append( " results, mean " ).append( query._lTotalLatency / query._lHits / MICROS_PER_MILLI ).append( " ms, max " )
+                    .append( query._lMaxLatency / MICROS_PER_MILLI ).append( " ms, last " ).append( query._strLastOutcome ).append( '\n' );
+        }
+    }
+
+    /**
+     * Reads a log file
+     * 
+     * @param file
+     *            The file
+     * @param mapStatistics
+     *            The statistics by filter to update
+     * @param latencies
+     *            The latencies of all the searches
+     * @return The number of searches read
+     */
+    private static int read( File file, Map<String, QueryStatistics> mapStatistics, Histogram latencies )
+    {
+        if ( !file.exists( ) )
+        {
+            return 0;
+        }
+
+        int nLines = 0;
+        BufferedReader reader = null;
+
+        try
+        {
+            reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), StandardCharsets.UTF_8 ) );
+            String strLine;
+
+            while ( ( strLine = reader.readLine( ) ) != null )
+            {
+                String [ ] fields = strLine.split( String.valueOf( FIELD_SEPARATOR ), FIELD_COUNT );
+
+                if ( fields.length < FIELD_COUNT )
+                {
+                    continue;
+                }
+
+                long lLatency;
+
+                try
+                {
+                    lLatency = Long.parseLong( fields [3] );
+                }
+                catch( NumberFormatException e )
+                {
+                    continue;
+                }
+
+                QueryStatistics query = mapStatistics.get( fields [4] );
+
+                if ( query == null )
+                {
+                    query = new QueryStatistics( fields [4] );
+                    mapStatistics.put( fields [4], query );
+                }
+
+                query._lHits++;
+                query._lTotalLatency += lLatency;
+                query._lMaxLatency = Math.max( query._lMaxLatency, lLatency );
+                query._strLastOutcome = fields [1];
+                query._strLastCount = fields [2];
+                latencies.record( lLatency );
+                nLines++;
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Query log : unable to read " + file, e );
+        }
+        finally
+        {
+            close( reader );
+        }
+
+        return nLines;
+    }
+
+    /**
+     * Writes the queued entries by batches, until the thread is interrupted
+     */
+    private void writeEntries( )
+    {
+        List<QueryLogEntry> listBatch = new ArrayList<QueryLogEntry>( _nBatchSize );
+
+        while ( !Thread.currentThread( ).isInterrupted( ) )
+        {
+            try
+            {
+                QueryLogEntry entry = _queue.poll( _lFlushInterval, TimeUnit.MILLISECONDS );
+
+                if ( entry == null )
+                {
+                    continue;
+                }
+
+                listBatch.add( entry );
+                _queue.drainTo( listBatch, _nBatchSize - 1 );
+                write( listBatch );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+            }
+            catch( RuntimeException e )
+            {
+                // The thread must survive an unexpected error, the batch is lost
+                AppLogService.error( "Query log : error while writing the searches", e );
+            }
+            finally
+            {
+                listBatch.clear( );
+            }
+        }
+
+        // The searches queued before the shutdown are still written
+        _queue.drainTo( listBatch );
+
+        if ( !listBatch.isEmpty( ) )
+        {
+            write( listBatch );
+        }
+    }
+
+    /**
+     * Appends a batch of entries to the log file, rotating it first when it is too large
+     * 
+     * @param listBatch
+     *            The entries
+     */
+    private void write( List<QueryLogEntry> listBatch )
+    {
+        if ( _file.length( ) > _lMaxFileSize )
+        {
+            File rotated = new File( _file.getPath( ) + ROTATED_SUFFIX );
+
+            if ( ( rotated.exists( ) && !rotated.delete( ) ) || !_file.renameTo( rotated ) )
+            {
+                AppLogService.error( "Query log : unable to rotate " + _file );
+            }
+        }
+
+        Writer writer = null;
+
+        try
+        {
+            writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( _file, true ), StandardCharsets.UTF_8 ) );
+
+            for ( QueryLogEntry entry : listBatch )
+            {
+                writer.write( String.valueOf( entry._lTime ) );
+                writer.write( FIELD_SEPARATOR );
+                writer.write( entry._strOutcome );
+                writer.write( FIELD_SEPARATOR );
+                writer.write( String.valueOf( entry._nCount ) );
+
+                if ( entry._bTruncated )
+                {
+                    writer.write( TRUNCATED_MARK );
+                }
+
+                writer.write( FIELD_SEPARATOR );
+                writer.write( String.valueOf( entry._lLatencyMicros ) );
+                writer.write( FIELD_SEPARATOR );
+                writer.write( entry._strFilter.replace( '\t', ' ' ).replace( '\n', ' ' ).replace( '\r', ' ' ) );
+                writer.write( '\n' );
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "Query log : unable to write " + _file + " - " + e.getMessage( ) );
+        }
+        finally
+        {
+            close( writer );
+        }
+    }
+
+    /**
+     * Closes a stream quietly
+     * 
+     * @param closeable
+     *            The stream, may be null
+     */
+    private static void close( Closeable closeable )
+    {
+        if ( closeable != null )
+        {
+            try
+            {
+                closeable.close( );
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "Query log : unable to close the file - " + e.getMessage( ) );
+            }
+        }
+    }
+
+    /**
+     * Search queued to be written
+     */
+    private static final class QueryLogEntry
+    {
+        private final long _lTime;
+        private final String _strFilter;
+        private final int _nCount;
+        private final boolean _bTruncated;
+        private final long _lLatencyMicros;
+        private final String _strOutcome;
+
+        /**
+         * Constructor
+         * 
+         * @param lTime
+         *            The time of the search
+         * @param strFilter
+         *            The normalized search filter
+         * @param nCount
+         *            The number of persons found
+         * @param bTruncated
+         *            true if the search matched more persons than it returned
+         * @param lLatencyMicros
+         *            The latency in microseconds
+         * @param strOutcome
+         *            The outcome
+         */
+        private QueryLogEntry( long lTime, String strFilter, int nCount, boolean bTruncated, long lLatencyMicros, String strOutcome )
+        {
+            _lTime = lTime;
+            _strFilter = strFilter;
+            _nCount = nCount;
+            _bTruncated = bTruncated;
+            _lLatencyMicros = lLatencyMicros;
+            _strOutcome = strOutcome;
+        }
+    }
+
+    /**
+     * Statistics of a query read from the log
+     */
+    private static final class QueryStatistics
+    {
+        private final String _strFilter;
+        private long _lHits;
+        private long _lTotalLatency;
+        private long _lMaxLatency;
+        private String _strLastOutcome;
+        private String _strLastCount;
+
+        /**
+         * Constructor
+         * 
+         * @param strFilter
+         *            The normalized search filter
+         */
+        private QueryStatistics( String strFilter )
+        {
+            _strFilter = strFilter;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.replica;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.PersonResultSet;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.AttributeProjection;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.CriteriaBuilder;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.PersonSearchService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.FilterTemplate;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.LdapFilter;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.SearchResultHandler;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Local replica of the directory persons. The replica is fully loaded once, then kept up to date with the entries whose modifyTimestamp
+ * changed since the last synchronization. A full load is done again periodically to remove the deleted entries. Searches are answered from
+ * the replica when their filter can be evaluated in memory. The replica is only used when a single directory source is configured.
+ */
+public final class DirectoryReplicaService
+{
+    private static final String PROPERTY_REPLICA_ENABLED = "easyrulesbot-ldap.replica.enabled";
+    private static final String PROPERTY_REPLICA_FILTER = "easyrulesbot-ldap.replica.filter";
+    private static final String PROPERTY_REPLICA_PAGE_SIZE = "easyrulesbot-ldap.replica.pageSize";
+    private static final String PROPERTY_REPLICA_FULL_RELOAD_INTERVAL = "easyrulesbot-ldap.replica.fullReloadInterval";
+
+    private static final String ATTRIBUTE_MODIFY_TIMESTAMP = "modifyTimestamp";
+    private static final String DEFAULT_REPLICA_FILTER = "(objectClass=person)";
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    private static final long DEFAULT_FULL_RELOAD_INTERVAL = 86400L;
+    private static final String SAMPLE_VALUE = "x";
+
+    private static DirectoryReplicaService _singleton;
+
+    private final boolean _bEnabled;
+    private final String _strReplicaFilter;
+    private final int _nPageSize;
+    private final long _lFullReloadInterval;
+    private volatile ReplicaSnapshot _snapshot;
+
+    /**
+     * Private constructor
+     */
+    private DirectoryReplicaService( )
+    {
+        _bEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_REPLICA_ENABLED, false );
+        _strReplicaFilter = AppPropertiesService.getProperty( PROPERTY_REPLICA_FILTER, DEFAULT_REPLICA_FILTER );
+        _nPageSize = AppPropertiesService.getPropertyInt( PROPERTY_REPLICA_PAGE_SIZE, DEFAULT_PAGE_SIZE );
+        _lFullReloadInterval = AppPropertiesService.getPropertyLong( PROPERTY_REPLICA_FULL_RELOAD_INTERVAL, DEFAULT_FULL_RELOAD_INTERVAL ) * 1000L;
+    }
+
+    /**
+     * Returns the unique instance
+     * 
+     * @return The instance
+     */
+    public static synchronized DirectoryReplicaService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new DirectoryReplicaService( );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * Tells if the replica mode is enabled
+     * 
+     * @return true if enabled
+     */
+    public boolean isEnabled( )
+    {
+        return _bEnabled;
+    }
+
+    /**
+     * Tells if the replica is loaded and can answer searches
+     * 
+     * @return true if ready
+     */
+    public boolean isReady( )
+    {
+        return _bEnabled && ( _snapshot != null );
+    }
+
+    /**
+     * Returns the current snapshot
+     * 
+     * @return The snapshot or null if the replica is not loaded
+     */
+    public ReplicaSnapshot getSnapshot( )
+    {
+        return _snapshot;
+    }
+
+    /**
+     * Search persons in the replica
+     * 
+     * @param strPersonSearchFilter
+     *            The LDAP search filter
+     * @param nMaxResults
+     *            The max number of results
+     * @return The result set, or null if the replica is not ready or the filter can't be evaluated in memory
+     */
+    public PersonResultSet search( String strPersonSearchFilter, int nMaxResults )
+    {
+        ReplicaSnapshot snapshot = _snapshot;
+
+        if ( !_bEnabled || snapshot == null || StringUtils.isEmpty( strPersonSearchFilter ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            LdapFilter filter = LdapFilter.parse( strPersonSearchFilter );
+            Map<String, String> mapAttributeKeys = AttributeProjection.getInstance( ).getAttributeKeys( );
+
+            if ( !filter.isEvaluable( mapAttributeKeys, snapshot.getMultiValuedAttributes( ) ) )
+            {
+                return null;
+            }
+
+            List<Person> listPersons = new ArrayList<Person>( );
+            boolean bTruncated = snapshot.search( filter, mapAttributeKeys, nMaxResults, listPersons );
+
+            return new PersonResultSet( listPersons, snapshot.getMultiValuedAttributes( ), bTruncated );
+        }
+        catch( IllegalArgumentException e )
+        {
+            AppLogService.debug( "Filter not evaluated on the replica : " + e.getMessage( ) );
+
+            return null;
+        }
+    }
+
+    /**
+     * Synchronizes the replica with the directory : full load at the first call and after the full reload interval, modified entries otherwise
+     * 
+     * @return The synchronization logs
+     */
+    public synchronized String synchronize( )
+    {
+        if ( !_bEnabled )
+        {
+            return "Directory replica disabled";
+        }
+
+        if ( PersonSearchService.getInstance( ).getSources( ).size( ) > 1 )
+        {
+            return "Directory replica not used : several directory sources are configured";
+        }
+
+        ReplicaSnapshot snapshot = _snapshot;
+        boolean bFullLoad = ( snapshot == null ) || ( snapshot.getHighestModifyTimestamp( ) == null )
+                || ( System.currentTimeMillis( ) - snapshot.getFullLoadTime( ) > _lFullReloadInterval );
+        long lStart = System.currentTimeMillis( );
+
+        try
+        {
+            String strFilter = bFullLoad ? _strReplicaFilter : "(&" + _strReplicaFilter + "(" + ATTRIBUTE_MODIFY_TIMESTAMP + ">="
+                    + snapshot.getHighestModifyTimestamp( ) + "))";
+            EntryCollector collector = new EntryCollector( );
+            load( strFilter, collector );
+
+            Map<String, String> mapIndexedAttributes = getIndexedAttributes( );
+
+            if ( bFullLoad )
+            {
+                _snapshot = new ReplicaSnapshot( collector._listDns, collector._listPersons, collector._setMultiValuedAttributes, mapIndexedAttributes,
+                        collector._strHighestModifyTimestamp, lStart );
+            }
+            else
+                if ( !collector._listDns.isEmpty( ) )
+                {
+                    _snapshot = snapshot.merge( collector._listDns, collector._listPersons, collector._setMultiValuedAttributes, mapIndexedAttributes,
+                            collector._strHighestModifyTimestamp );
+                }
+
+            return ( bFullLoad ? "Full load : " : "Delta : " ) + collector._listDns.size( ) + " entries read, " + _snapshot.size( )
+                    + " persons in replica, " + ( System.currentTimeMillis( ) - lStart ) + " ms";
+        }
+        catch( NamingException e )
+        {
+            AppLogService.error( "Error while synchronizing the directory replica", e );
+
+            return "Synchronization error : " + e.getMessage( );
+        }
+    }
+
+    /**
+     * Reads entries from the directory, retrying once with a new connection after a communication error
+     * 
+     * @param strFilter
+     *            The filter
+     * @param collector
+     *            The collector of the entries
+     * @throws NamingException
+     *             if the search fails
+     */
+    private void load( String strFilter, EntryCollector collector ) throws NamingException
+    {
+        PersonSearchService searchService = PersonSearchService.getInstance( );
+        List<String> listAttributes = new ArrayList<String>( Arrays.asList( AttributeProjection.getInstance( ).getReturningAttributes( ) ) );
+        listAttributes.add( ATTRIBUTE_MODIFY_TIMESTAMP );
+
+        SearchControls controls = new SearchControls( );
+        controls.setSearchScope( searchService.getSearchScope( ) );
+        controls.setReturningAttributes( listAttributes.toArray( new String [ listAttributes.size( )] ) );
+
+        try
+        {
+            searchService.getContextPool( ).search( searchService.getSearchBase( ), strFilter, controls, _nPageSize, collector );
+        }
+        catch( CommunicationException e )
+        {
+            collector.clear( );
+            searchService.getContextPool( ).search( searchService.getSearchBase( ), strFilter, controls, _nPageSize, collector );
+        }
+    }
+
+    /**
+     * Returns the attributes used by the search filters, which are the ones to index
+     * 
+     * @return The person keys by lower case LDAP attribute name
+     */
+    private static Map<String, String> getIndexedAttributes( )
+    {
+        Map<String, String> mapAttributeKeys = AttributeProjection.getInstance( ).getAttributeKeys( );
+        Map<String, String> mapIndexedAttributes = new HashMap<String, String>( );
+        Set<String> setAttributes = new HashSet<String>( );
+
+        for ( FilterTemplate template : CriteriaBuilder.getInstance( ).getTemplates( ) )
+        {
+            try
+            {
+                LdapFilter.parse( template.format( SAMPLE_VALUE ) ).collectAttributes( setAttributes );
+            }
+            catch( IllegalArgumentException e )
+            {
+                AppLogService.error( "Invalid search filter template " + template.getPattern( ) + " : " + e.getMessage( ) );
+            }
+        }
+
+        for ( String strAttribute : setAttributes )
+        {
+            if ( mapAttributeKeys.containsKey( strAttribute ) )
+            {
+                mapIndexedAttributes.put( strAttribute, mapAttributeKeys.get( strAttribute ) );
+            }
+        }
+
+        return mapIndexedAttributes;
+    }
+
+    /**
+     * Collects the entries read from the directory with their DN and modification timestamp
+     */
+    private static final class EntryCollector implements SearchResultHandler
+    {
+        private final AttributeProjection _projection = AttributeProjection.getInstance( );
+        private final List<String> _listDns = new ArrayList<String>( );
+        private final List<Person> _listPersons = new ArrayList<Person>( );
+        private final Set<String> _setMultiValuedAttributes = new HashSet<String>( );
+        private String _strHighestModifyTimestamp;
+
+        /**
+         * {@inheritDoc }
+         */
+        @Override
+        public boolean handle( SearchResult result ) throws NamingException
+        {
+            _listDns.add( result.getNameInNamespace( ) );
+            _listPersons.add( _projection.map( result.getAttributes( ), _setMultiValuedAttributes ) );
+
+            Attribute attribute = result.getAttributes( ).get( ATTRIBUTE_MODIFY_TIMESTAMP );
+            Object timestamp = ( attribute != null ) ? attribute.get( ) : null;
+
+            if ( timestamp != null && ( _strHighestModifyTimestamp == null || timestamp.toString( ).compareTo( _strHighestModifyTimestamp ) > 0 ) )
+            {
+                _strHighestModifyTimestamp = timestamp.toString( );
+            }
+
+            return true;
+        }
+
+        /**
+         * Clears the collected entries before a retry
+         */
+        private void clear( )
+        {
+            _listDns.clear( );
+            _listPersons.clear( );
+            _setMultiValuedAttributes.clear( );
+            _strHighestModifyTimestamp = null;
+        }
+    }
+}
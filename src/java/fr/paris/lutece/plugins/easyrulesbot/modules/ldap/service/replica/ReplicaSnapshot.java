@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.replica;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.FilterIndex;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.LdapFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable copy of the directory persons with a trigram index over the searched attributes. A synchronization builds a new snapshot that
+ * replaces the previous one.
+ */
+public final class ReplicaSnapshot implements FilterIndex
+{
+    private static final int GRAM_LENGTH = 3;
+
+    private final List<String> _listDns;
+    private final List<Person> _listPersons;
+    private final Map<String, Integer> _mapDnIndex;
+    private final Set<String> _setMultiValuedAttributes;
+    private final Map<String, Map<String, int [ ]>> _mapTrigrams;
+    private final String _strHighestModifyTimestamp;
+    private final long _lFullLoadTime;
+
+    /**
+     * Constructor
+     * 
+     * @param listDns
+     *            The DNs of the entries
+     * @param listPersons
+     *            The persons, in the same order as the DNs
+     * @param setMultiValuedAttributes
+     *            The lower case names of the attributes having several values for some persons
+     * @param mapIndexedAttributes
+     *            The person keys of the attributes to index, by lower case LDAP attribute name
+     * @param strHighestModifyTimestamp
+     *            The most recent modification timestamp of the entries
+     * @param lFullLoadTime
+     *            The time of the last full load
+     */
+    public ReplicaSnapshot( List<String> listDns, List<Person> listPersons, Set<String> setMultiValuedAttributes, Map<String, String> mapIndexedAttributes,
+            String strHighestModifyTimestamp, long lFullLoadTime )
+    {
+        _listDns = Collections.unmodifiableList( listDns );
+        _listPersons = Collections.unmodifiableList( listPersons );
+        _setMultiValuedAttributes = Collections.unmodifiableSet( setMultiValuedAttributes );
+        _strHighestModifyTimestamp = strHighestModifyTimestamp;
+        _lFullLoadTime = lFullLoadTime;
+        _mapDnIndex = new HashMap<String, Integer>( ( listDns.size( ) * 4 / 3 ) + 1 );
+
+        for ( int i = 0; i < listDns.size( ); i++ )
+        {
+            _mapDnIndex.put( listDns.get( i ), i );
+        }
+
+        _mapTrigrams = new HashMap<String, Map<String, int [ ]>>( );
+
+        for ( Map.Entry<String, String> entry : mapIndexedAttributes.entrySet( ) )
+        {
+            _mapTrigrams.put( entry.getKey( ), buildTrigrams( listPersons, entry.getValue( ) ) );
+        }
+    }
+
+    /**
+     * Builds a new snapshot with the entries modified since this one
+     * 
+     * @param listDns
+     *            The DNs of the modified entries
+     * @param listPersons
+     *            The modified persons
+     * @param setMultiValuedAttributes
+     *            The attributes having several values for some modified persons
+     * @param mapIndexedAttributes
+     *            The person keys of the attributes to index, by lower case LDAP attribute name
+     * @param strHighestModifyTimestamp
+     *            The most recent modification timestamp of the modified entries
+     * @return The new snapshot
+     */
+    public ReplicaSnapshot merge( List<String> listDns, List<Person> listPersons, Set<String> setMultiValuedAttributes,
+            Map<String, String> mapIndexedAttributes, String strHighestModifyTimestamp )
+    {
+        List<String> listMergedDns = new ArrayList<String>( _listDns );
+        List<Person> listMergedPersons = new ArrayList<Person>( _listPersons );
+        Set<String> setMergedMultiValuedAttributes = new HashSet<String>( _setMultiValuedAttributes );
+        setMergedMultiValuedAttributes.addAll( setMultiValuedAttributes );
+
+        for ( int i = 0; i < listDns.size( ); i++ )
+        {
+            Integer nIndex = _mapDnIndex.get( listDns.get( i ) );
+
+            if ( nIndex != null )
+            {
+                listMergedPersons.set( nIndex, listPersons.get( i ) );
+            }
+            else
+            {
+                listMergedDns.add( listDns.get( i ) );
+                listMergedPersons.add( listPersons.get( i ) );
+            }
+        }
+
+        String strTimestamp = _strHighestModifyTimestamp;
+
+        if ( strTimestamp == null || ( strHighestModifyTimestamp != null && strHighestModifyTimestamp.compareTo( strTimestamp ) > 0 ) )
+        {
+            strTimestamp = strHighestModifyTimestamp;
+        }
+
+        return new ReplicaSnapshot( listMergedDns, listMergedPersons, setMergedMultiValuedAttributes, mapIndexedAttributes, strTimestamp, _lFullLoadTime );
+    }
+
+    /**
+     * Returns the persons matching a filter
+     * 
+     * @param filter
+     *            The filter, that must be evaluable with the given attribute keys
+     * @param mapAttributeKeys
+     *            The person keys by lower case LDAP attribute name
+     * @param nMaxResults
+     *            The max number of results
+     * @param listResults
+     *            The list to fill with at most nMaxResults persons
+     * @return true if more persons than the max number of results match
+     */
+    public boolean search( LdapFilter filter, Map<String, String> mapAttributeKeys, int nMaxResults, List<Person> listResults )
+    {
+        BitSet candidates = filter.getCandidates( this );
+        int nCount = 0;
+
+        if ( candidates == null )
+        {
+            candidates = new BitSet( _listPersons.size( ) );
+            candidates.set( 0, _listPersons.size( ) );
+        }
+
+        for ( int i = candidates.nextSetBit( 0 ); i >= 0; i = candidates.nextSetBit( i + 1 ) )
+        {
+            Person person = _listPersons.get( i );
+
+            if ( filter.matches( person, mapAttributeKeys ) )
+            {
+                nCount++;
+
+                if ( nCount > nMaxResults )
+                {
+                    return true;
+                }
+
+                listResults.add( person );
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public BitSet getCandidates( String strAttribute, List<String> listParts )
+    {
+        Map<String, int [ ]> mapTrigrams = _mapTrigrams.get( strAttribute );
+
+        if ( mapTrigrams == null )
+        {
+            return null;
+        }
+
+        BitSet candidates = null;
+
+        for ( String strPart : listParts )
+        {
+            for ( int i = 0; i + GRAM_LENGTH <= strPart.length( ); i++ )
+            {
+                int [ ] postings = mapTrigrams.get( strPart.substring( i, i + GRAM_LENGTH ) );
+
+                if ( postings == null )
+                {
+                    return new BitSet( );
+                }
+
+                BitSet gramCandidates = new BitSet( _listPersons.size( ) );
+
+                for ( int nIndex : postings )
+                {
+                    gramCandidates.set( nIndex );
+                }
+
+                if ( candidates == null )
+                {
+                    candidates = gramCandidates;
+                }
+                else
+                {
+                    candidates.and( gramCandidates );
+                }
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Returns the number of persons
+     * 
+     * @return The size
+     */
+    public int size( )
+    {
+        return _listPersons.size( );
+    }
+
+    /**
+     * Returns the persons
+     * 
+     * @return The unmodifiable list of persons
+     */
+    public List<Person> getPersons( )
+    {
+        return _listPersons;
+    }
+
+    /**
+     * Returns the attributes having several values for some persons
+     * 
+     * @return The lower case attribute names
+     */
+    public Set<String> getMultiValuedAttributes( )
+    {
+        return _setMultiValuedAttributes;
+    }
+
+    /**
+     * Returns the most recent modification timestamp of the entries
+     * 
+     * @return The timestamp in generalized time format
+     */
+    public String getHighestModifyTimestamp( )
+    {
+        return _strHighestModifyTimestamp;
+    }
+
+    /**
+     * Returns the time of the last full load
+     * 
+     * @return The time in milliseconds
+     */
+    public long getFullLoadTime( )
+    {
+        return _lFullLoadTime;
+    }
+
+    /**
+     * Builds the posting lists of the trigrams of an attribute
+     * 
+     * @param listPersons
+     *            The persons
+     * @param strKey
+     *            The person key of the attribute
+     * @return The sorted record numbers by trigram
+     */
+    private static Map<String, int [ ]> buildTrigrams( List<Person> listPersons, String strKey )
+    {
+        Map<String, int [ ]> mapPostings = new HashMap<String, int [ ]>( );
+        Map<String, Integer> mapSizes = new HashMap<String, Integer>( );
+        Set<String> setGrams = new HashSet<String>( );
+
+        for ( int nIndex = 0; nIndex < listPersons.size( ); nIndex++ )
+        {
+            Object value = listPersons.get( nIndex ).get( strKey );
+
+            if ( value == null )
+            {
+                continue;
+            }
+
+            String strValue = LdapFilter.normalize( value.toString( ) );
+            setGrams.clear( );
+
+            for ( int i = 0; i + GRAM_LENGTH <= strValue.length( ); i++ )
+            {
+                setGrams.add( strValue.substring( i, i + GRAM_LENGTH ) );
+            }
+
+            for ( String strGram : setGrams )
+            {
+                int [ ] postings = mapPostings.get( strGram );
+                Integer nSize = mapSizes.get( strGram );
+                int nCurrentSize = ( nSize == null ) ? 0 : nSize;
+
+                if ( postings == null )
+                {
+                    postings = new int [ 4];
+                }
+                else
+                    if ( nCurrentSize == postings.length )
+                    {
+                        postings = Arrays.copyOf( postings, nCurrentSize * 2 );
+                    }
+
+                postings [nCurrentSize] = nIndex;
+                mapPostings.put( strGram, postings );
+                mapSizes.put( strGram, nCurrentSize + 1 );
+            }
+        }
+
+        for ( Map.Entry<String, int [ ]> entry : mapPostings.entrySet( ) )
+        {
+            entry.setValue( Arrays.copyOf( entry.getValue( ), mapSizes.get( entry.getKey( ) ) ) );
+        }
+
+        return mapPostings;
+    }
+}
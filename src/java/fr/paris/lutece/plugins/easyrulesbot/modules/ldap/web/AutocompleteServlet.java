@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.web;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Suggestion;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.index.NameIndexService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.SearchMetrics;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the suggestions of the autocompletion for a prefix as a JSON array, from the prefix index of the names and directions. No search is
+ * sent to the directory.
+ */
+public class AutocompleteServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final String PARAMETER_PREFIX = "q";
+    private static final String PARAMETER_SIZE = "size";
+    private static final String CONTENT_TYPE = "application/json";
+    private static final String ENCODING = "UTF-8";
+    private static final String CACHE_CONTROL = "private, max-age=60";
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws ServletException, IOException
+    {
+        NameIndexService nameIndexService = NameIndexService.getInstance( );
+
+        if ( !nameIndexService.isAutocompleteEnabled( ) )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+
+            return;
+        }
+
+        long lStart = SearchMetrics.start( );
+        int nSize = parseSize( request.getParameter( PARAMETER_SIZE ), nameIndexService.getAutocompleteMaxSize( ) );
+        StringBuilder sbJson = new StringBuilder( "[" );
+
+        for ( Suggestion suggestion : nameIndexService.suggest( request.getParameter( PARAMETER_PREFIX ), nSize ) )
+        {
+            if ( sbJson.length( ) > 1 )
+            {
+                sbJson.append( ',' );
+            }
+
+            sbJson.append( "{\"criteria\":\"" ).append( MetricsServlet.escape( suggestion.getCriteriaName( ) ) ).append( "\",\"value\":\"" )
+                    .append( MetricsServlet.escape( suggestion.getValue( ) ) ).append( "\",\"count\":" ).append( suggestion.getCount( ) )
+                    .append( '}' );
+        }
+
+        sbJson.append( ']' );
+        SearchMetrics.getInstance( ).record( SearchMetrics.PHASE_AUTOCOMPLETE, lStart );
+
+        response.setContentType( CONTENT_TYPE );
+        response.setCharacterEncoding( ENCODING );
+        response.setHeader( "Cache-Control", CACHE_CONTROL );
+        response.getWriter( ).write( sbJson.toString( ) );
+    }
+
+    /**
+     * Parses the number of suggestions requested
+     * 
+     * @param strSize
+     *            The parameter value
+     * @param nMaxSize
+     *            The max number of suggestions
+     * @return The number of suggestions, the max one if the parameter is missing or invalid
+     */
+    private static int parseSize( String strSize, int nMaxSize )
+    {
+        try
+        {
+            return ( strSize != null ) ? Math.max( 1, Math.min( nMaxSize, Integer.parseInt( strSize ) ) ) : nMaxSize;
+        }
+        catch( NumberFormatException e )
+        {
+            return nMaxSize;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.web;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Person;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchState;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.DirectoryRenderer;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.PersonSearchService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.cache.SearchStateCacheService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.facet.FacetService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.SearchMetrics;
+import fr.paris.lutece.portal.service.i18n.I18nService;
+import fr.paris.lutece.portal.web.l10n.LocaleService;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the directories of the bot messages, their next pages, the details of their persons and their refinements by a facet value from the
+ * search states, without searching the directory again. The HTML fragments are written straight into the response. The refinements store a
+ * state and become the current search of the conversation : they are posted.
+ */
+public class DirectoryServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final String PARAMETER_ACTION = "action";
+    private static final String PARAMETER_HANDLE = "handle";
+    private static final String PARAMETER_PAGE = "page";
+    private static final String PARAMETER_INDEX = "index";
+    private static final String PARAMETER_NAME = "name";
+    private static final String PARAMETER_VALUE = "value";
+    private static final String ACTION_DIRECTORY = "directory";
+    private static final String ACTION_PAGE = "page";
+    private static final String ACTION_PERSON = "person";
+    private static final String ACTION_FACET = "facet";
+    private static final String MESSAGE_EXPIRED = "module.easyrulesbot.ldap.result.expired";
+    private static final String CONTENT_TYPE = "text/html";
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws ServletException, IOException
+    {
+        String strAction = request.getParameter( PARAMETER_ACTION );
+        boolean bDirectory = ACTION_DIRECTORY.equals( strAction );
+        int nValue = bDirectory ? 0 : parseInt( request.getParameter( ACTION_PERSON.equals( strAction ) ? PARAMETER_INDEX : PARAMETER_PAGE ) );
+
+        if ( !( bDirectory || ACTION_PAGE.equals( strAction ) || ACTION_PERSON.equals( strAction ) ) || nValue < 0 )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST );
+
+            return;
+        }
+
+        Locale locale = LocaleService.getDefault( );
+        String strHandle = request.getParameter( PARAMETER_HANDLE );
+        SearchState state = PersonSearchService.getInstance( ).getSearchState( strHandle );
+        String strHtml;
+
+        if ( state == null )
+        {
+            strHtml = I18nService.getLocalizedString( MESSAGE_EXPIRED, locale );
+        }
+        else
+            if ( ACTION_DIRECTORY.equals( strAction ) )
+            {
+                long lRenderStart = SearchMetrics.start( );
+                strHtml = DirectoryRenderer.renderDirectory( state, strHandle, locale );
+                SearchMetrics.getInstance( ).record( SearchMetrics.PHASE_RENDER, lRenderStart );
+            }
+            else
+                if ( ACTION_PAGE.equals( strAction ) )
+                {
+                    strHtml = DirectoryRenderer.renderPage( state, strHandle, nValue, locale );
+                }
+                else
+                {
+                    List<Person> listPersons = state.getDisplayedPersons( );
+
+                    if ( nValue >= listPersons.size( ) )
+                    {
+                        response.sendError( HttpServletResponse.SC_NOT_FOUND );
+
+                        return;
+                    }
+
+                    strHtml = DirectoryRenderer.renderPerson( listPersons.get( nValue ), locale );
+                }
+
+        write( response, strHtml );
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected void doPost( HttpServletRequest request, HttpServletResponse response ) throws ServletException, IOException
+    {
+        if ( !ACTION_FACET.equals( request.getParameter( PARAMETER_ACTION ) ) )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST );
+
+            return;
+        }
+
+        Locale locale = LocaleService.getDefault( );
+        String strHandle = request.getParameter( PARAMETER_HANDLE );
+        SearchState state = PersonSearchService.getInstance( ).getSearchState( strHandle );
+
+        if ( state == null )
+        {
+            write( response, I18nService.getLocalizedString( MESSAGE_EXPIRED, locale ) );
+
+            return;
+        }
+
+        String strName = request.getParameter( PARAMETER_NAME );
+        String strValue = request.getParameter( PARAMETER_VALUE );
+        SearchStateCacheService stateCacheService = PersonSearchService.getInstance( ).getStateCacheService( );
+
+        // The refined state gets its own handle, so the directory it replaces keeps its result. The handle is derived from the refinement :
+        // repeated requests (retries) find the stored state instead of storing a new one
+        String strRefinedHandle = getRefinedHandle( strHandle, strName, strValue );
+        SearchState refinedState = stateCacheService.getState( strRefinedHandle );
+
+        if ( refinedState == null )
+        {
+            refinedState = FacetService.getInstance( ).refine( state, strName, strValue );
+
+            if ( refinedState == null )
+            {
+                response.sendError( HttpServletResponse.SC_BAD_REQUEST );
+
+                return;
+            }
+
+            strRefinedHandle = stateCacheService.putState( strRefinedHandle, refinedState );
+        }
+
+        // The next criterion added in the conversation refines this result instead of the one of the conversation data
+        stateCacheService.putRefinement( strHandle, strRefinedHandle );
+
+        long lRenderStart = SearchMetrics.start( );
+        String strHtml = DirectoryRenderer.renderDirectory( refinedState, strRefinedHandle, locale );
+        SearchMetrics.getInstance( ).record( SearchMetrics.PHASE_RENDER, lRenderStart );
+
+        write( response, strHtml );
+    }
+
+    /**
+     * Writes an HTML fragment into the response
+     * 
+     * @param response
+     *            The response
+     * @param strHtml
+     *            The HTML
+     * @throws IOException
+     *             If the response can't be written
+     */
+    private static void write( HttpServletResponse response, String strHtml ) throws IOException
+    {
+        response.setContentType( CONTENT_TYPE );
+        response.setCharacterEncoding( ENCODING );
+        response.getWriter( ).write( strHtml );
+    }
+
+    /**
+     * Returns the handle of the refinement of a search state by a facet value
+     * 
+     * @param strHandle
+     *            The handle of the search state
+     * @param strName
+     *            The facet name
+     * @param strValue
+     *            The facet value
+     * @return The handle
+     */
+    private static String getRefinedHandle( String strHandle, String strName, String strValue )
+    {
+        String strRefinement = strHandle + '\n' + strName + '\n' + strValue;
+
+        return UUID.nameUUIDFromBytes( strRefinement.getBytes( StandardCharsets.UTF_8 ) ).toString( );
+    }
+
+    /**
+     * Parses a positive integer parameter
+     * 
+     * @param strValue
+     *            The parameter value
+     * @return The value or -1 if the parameter is missing or invalid
+     */
+    private static int parseInt( String strValue )
+    {
+        try
+        {
+            return ( strValue != null ) ? Integer.parseInt( strValue ) : -1;
+        }
+        catch( NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.web;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.SearchState;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.PersonSearchService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.export.ExportFormat;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.export.ExportService;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap.CircuitOpenException;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.SearchMetrics;
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.planner.QueryPlanner;
+import fr.paris.lutece.portal.service.admin.AdminUserService;
+import fr.paris.lutece.portal.service.security.SecurityService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.web.l10n.LocaleService;
+
+import java.io.IOException;
+
+import javax.naming.NamingException;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Exports the persons matching the criteria of a search state as CSV or vCard. The entries are streamed from the directory to the response
+ * without being kept in memory nor rendered. The export is only served to the authenticated users, back office or front office.
+ */
+public class ExportServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final String PARAMETER_HANDLE = "handle";
+    private static final String PARAMETER_FORMAT = "format";
+    private static final String ENCODING = "UTF-8";
+    private static final String FILE_NAME = "directory.";
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws ServletException, IOException
+    {
+        ExportService exportService = ExportService.getInstance( );
+        ExportFormat format = ExportFormat.fromName( request.getParameter( PARAMETER_FORMAT ) );
+
+        if ( !exportService.isEnabled( ) )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+
+            return;
+        }
+
+        if ( !isAuthenticated( request ) )
+        {
+            response.sendError( HttpServletResponse.SC_FORBIDDEN );
+
+            return;
+        }
+
+        if ( format == null )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST );
+
+            return;
+        }
+
+        SearchState state = PersonSearchService.getInstance( ).getSearchState( request.getParameter( PARAMETER_HANDLE ) );
+
+        if ( state == null )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+
+            return;
+        }
+
+        // A search without criteria would export the whole directory, and the filters the planner rejects are not sent either
+        String strCriteriaFilter = state.getCriteria( ).getFilter( );
+        String strPersonSearchFilter = strCriteriaFilter.isEmpty( ) ? null : QueryPlanner.getInstance( ).plan( strCriteriaFilter );
+
+        if ( strPersonSearchFilter == null )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST );
+
+            return;
+        }
+
+        response.setContentType( format.getContentType( ) );
+        response.setCharacterEncoding( ENCODING );
+        response.setHeader( "Content-Disposition", "attachment; filename=\"" + FILE_NAME + format.getFileExtension( ) + "\"" );
+
+        try
+        {
+            exportService.export( strPersonSearchFilter, format, response.getWriter( ), LocaleService.getDefault( ) );
+            response.flushBuffer( );
+        }
+        catch( CircuitOpenException e )
+        {
+            // Nothing has been written : the attachment headers are dropped
+            response.reset( );
+            response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+        }
+        catch( NamingException e )
+        {
+            SearchMetrics.getInstance( ).recordError( e );
+            AppLogService.error( "Error while exporting the persons with search filter : " + strPersonSearchFilter + " - " + e.getMessage( ) );
+
+            // Once the first entries are sent, the export can only be cut short
+            if ( !response.isCommitted( ) )
+            {
+                response.reset( );
+                response.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+            }
+        }
+    }
+
+    /**
+     * Tells if the request comes from an authenticated user, of the back office or of the front office
+     * 
+     * @param request
+     *            The request
+     * @return true if authenticated
+     */
+    private static boolean isAuthenticated( HttpServletRequest request )
+    {
+        if ( AdminUserService.getAdminUser( request ) != null )
+        {
+            return true;
+        }
+
+        return SecurityService.isAuthenticationEnable( ) && ( SecurityService.getInstance( ).getRegisteredUser( request ) != null );
+    }
+}
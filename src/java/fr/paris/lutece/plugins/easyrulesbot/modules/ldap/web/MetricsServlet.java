@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.web;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.metrics.SearchMetrics;
+import fr.paris.lutece.portal.service.admin.AdminUserService;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the metrics of the bot searches as a flat JSON object, to back office users only
+ */
+public class MetricsServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final String CONTENT_TYPE = "application/json";
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws ServletException, IOException
+    {
+        if ( AdminUserService.getAdminUser( request ) == null )
+        {
+            response.sendError( HttpServletResponse.SC_FORBIDDEN );
+
+            return;
+        }
+
+        StringBuilder sbJson = new StringBuilder( "{" );
+
+        for ( Map.Entry<String, Number> entry : SearchMetrics.getInstance( ).getSnapshot( ).entrySet( ) )
+        {
+            if ( sbJson.length( ) > 1 )
+            {
+                sbJson.append( ',' );
+            }
+
+            sbJson.append( "\n  \"" ).append( escape( entry.getKey( ) ) ).append( "\": " ).append( toJson( entry.getValue( ) ) );
+        }
+
+        sbJson.append( "\n}" );
+
+        response.setContentType( CONTENT_TYPE );
+        response.setCharacterEncoding( ENCODING );
+        response.setHeader( "Cache-Control", "no-cache" );
+        response.getWriter( ).write( sbJson.toString( ) );
+    }
+
+    /**
+     * Formats a number, NaN and infinite values having no JSON form
+     * 
+     * @param value
+     *            The number
+     * @return The JSON value
+     */
+    private static String toJson( Number value )
+    {
+        double dValue = value.doubleValue( );
+
+        return ( Double.isNaN( dValue ) || Double.isInfinite( dValue ) ) ? "null" : value.toString( );
+    }
+
+    /**
+     * Escapes a JSON string. Metric names hold the names of the directory sources, set in the properties ; the autocompletion serves values
+     * read from the directory.
+     * 
+     * @param strValue
+     *            The string
+     * @return The escaped string
+     */
+    static String escape( String strValue )
+    {
+        StringBuilder sb = new StringBuilder( strValue.length( ) );
+
+        for ( int i = 0; i < strValue.length( ); i++ )
+        {
+            char c = strValue.charAt( i );
+
+            if ( c == '"' || c == '\\' )
+            {
+                sb.append( '\\' ).append( c );
+            }
+            else
+                if ( c < ' ' )
+                {
+                    sb.append( String.format( "\\u%04x", (int) c ) );
+                }
+                else
+                {
+                    sb.append( c );
+                }
+        }
+
+        return sb.toString( );
+    }
+}
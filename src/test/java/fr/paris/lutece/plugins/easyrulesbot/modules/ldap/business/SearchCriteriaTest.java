@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * SearchCriteria Test
+ */
+public class SearchCriteriaTest
+{
+    /**
+     * Test of the clauses and filter of the criteria, a criterion given again replacing the previous one in place
+     */
+    @Test
+    public void testWith( )
+    {
+        SearchCriteria criteria = SearchCriteria.EMPTY.with( new Criteria( "familyname", "dupont", "(sn=dupont)" ) ).with(
+                new Criteria( "direction", "dsti", "(ou=dsti)" ) );
+
+        assertEquals( "", SearchCriteria.EMPTY.getFilter( ) );
+        assertEquals( "(&(sn=dupont)(ou=dsti))", criteria.getFilter( ) );
+        assertTrue( criteria.contains( "direction" ) );
+        assertFalse( criteria.contains( "site" ) );
+
+        SearchCriteria replaced = criteria.with( new Criteria( "familyname", "martin", "(sn=martin)" ) );
+
+        assertEquals( "(&(sn=martin)(ou=dsti))", replaced.getFilter( ) );
+        assertEquals( "{familyname=martin, direction=dsti}", replaced.toMap( ).toString( ) );
+
+        // The criteria are immutable
+        assertEquals( "(&(sn=dupont)(ou=dsti))", criteria.getFilter( ) );
+        assertEquals( 0, SearchCriteria.EMPTY.getCriteria( ).size( ) );
+    }
+
+    /**
+     * Test of the serialization, the separators and backslashes of the values being escaped
+     */
+    @Test
+    public void testSerialize( )
+    {
+        SearchCriteria criteria = SearchCriteria.EMPTY.with( new Criteria( "familyname", "dupont", "(sn=dupont)" ) )
+                .with( new Criteria( "site", "Paris, 12e : bureau \\ 3", "(l=x)" ) ).with( new Criteria( "direction", "", "(ou=*)" ) );
+
+        assertEquals( "familyname:dupont,site:Paris\\, 12e \\: bureau \\\\ 3,direction:", criteria.serialize( ) );
+        assertEquals( "", SearchCriteria.EMPTY.serialize( ) );
+    }
+
+    /**
+     * Test of the parsing of serialized criteria, which gives back the values of the serialized ones
+     */
+    @Test
+    public void testRoundTrip( )
+    {
+        String [ ] values = {
+                "dupont", "a,b", "a:b", "a\\b", "\\", ",:,", "a\\,b", "", "trailing\\"
+        };
+
+        SearchCriteria criteria = SearchCriteria.EMPTY;
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            criteria = criteria.with( new Criteria( "name:" + i, values [i], "(x=" + i + ")" ) );
+        }
+
+        List<Criteria> listCriteria = SearchCriteria.parse( criteria.serialize( ) );
+
+        assertEquals( values.length, listCriteria.size( ) );
+
+        for ( int i = 0; i < values.length; i++ )
+        {
+            assertEquals( "name:" + i, listCriteria.get( i ).getName( ) );
+            assertEquals( values [i], listCriteria.get( i ).getValue( ) );
+            assertEquals( "", listCriteria.get( i ).getFilter( ) );
+        }
+    }
+
+    /**
+     * Test of the parsing of hand written or truncated data
+     */
+    @Test
+    public void testParse( )
+    {
+        assertTrue( SearchCriteria.parse( null ).isEmpty( ) );
+        assertTrue( SearchCriteria.parse( "" ).isEmpty( ) );
+
+        // Entries without a value separator are ignored
+        List<Criteria> listCriteria = SearchCriteria.parse( "familyname:dupont,garbage,,site:a:b" );
+
+        assertEquals( 2, listCriteria.size( ) );
+        assertEquals( "dupont", listCriteria.get( 0 ).getValue( ) );
+        assertEquals( "site", listCriteria.get( 1 ).getName( ) );
+        assertEquals( "a:b", listCriteria.get( 1 ).getValue( ) );
+
+        // A trailing backslash has nothing to escape and is kept
+        assertEquals( "dupont\\", SearchCriteria.parse( "familyname:dupont\\" ).get( 0 ).getValue( ) );
+    }
+}
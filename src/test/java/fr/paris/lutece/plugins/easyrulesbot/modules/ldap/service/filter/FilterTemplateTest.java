@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * FilterTemplate Test
+ */
+public class FilterTemplateTest
+{
+    /**
+     * Test of the RFC 4515 escaping of the values
+     */
+    @Test
+    public void testEscape( )
+    {
+        assertEquals( "a\\2ab", FilterTemplate.escape( "a*b" ) );
+        assertEquals( "\\28x\\29", FilterTemplate.escape( "(x)" ) );
+        assertEquals( "\\5c", FilterTemplate.escape( "\\" ) );
+        assertEquals( "\\5c2a", FilterTemplate.escape( "\\2a" ) );
+        assertEquals( "a\\00b", FilterTemplate.escape( "a\u0000b" ) );
+        assertEquals( "\\2a\\28\\29\\5c", FilterTemplate.escape( "*()\\" ) );
+        assertEquals( "", FilterTemplate.escape( "" ) );
+
+        // Values without special characters are returned as is, non ASCII characters are left to the directory
+        String strValue = "H\u00e9bert d'Artagnan = <x>";
+        assertSame( strValue, FilterTemplate.escape( strValue ) );
+    }
+
+    /**
+     * Test of the clauses built from the templates
+     */
+    @Test
+    public void testFormat( )
+    {
+        assertEquals( "(cn=*a\\2ab*)", new FilterTemplate( "(cn=*{0}*)" ).format( "a*b" ) );
+        assertEquals( "(|(sn=\\28x\\29)(givenname=\\28x\\29))", new FilterTemplate( "(|(sn={0})(givenname={0}))" ).format( "(x)" ) );
+        assertEquals( "(objectclass=person)", new FilterTemplate( "(objectclass=person)" ).format( "ignored" ) );
+
+        // The MessageFormat quoting rules of the pattern are kept
+        assertEquals( "(sn=d'x)", new FilterTemplate( "(sn=d''{0})" ).format( "x" ) );
+        assertEquals( "(cn={0}x)", new FilterTemplate( "(cn='{0}'{0})" ).format( "x" ) );
+
+        StringBuilder sbFilter = new StringBuilder( "(&" );
+        new FilterTemplate( "(sn={0})" ).appendTo( sbFilter, "dupont" );
+        assertEquals( "(&(sn=dupont)", sbFilter.toString( ) );
+    }
+
+    /**
+     * Test of the escaped clauses, which match the raw value once parsed
+     */
+    @Test
+    public void testEscapedClausesMatchRawValues( )
+    {
+        Map<String, String> mapAttributeKeys = Collections.singletonMap( "cn", "cn" );
+        String [ ] values = {
+                "a*b", "(x)", "\\", "*()\\", "\\2a", "H\u00e9bert"
+        };
+
+        for ( String strValue : values )
+        {
+            Map<String, String> person = new HashMap<String, String>( );
+            person.put( "cn", strValue );
+
+            LdapFilter filter = LdapFilter.parse( new FilterTemplate( "(cn={0})" ).format( strValue ) );
+            assertTrue( strValue, filter.matches( person, mapAttributeKeys ) );
+
+            person.put( "cn", strValue + "x" );
+            assertTrue( strValue, !filter.matches( person, mapAttributeKeys ) );
+        }
+    }
+
+    /**
+     * Test of the attribute of the templates
+     */
+    @Test
+    public void testGetAttribute( )
+    {
+        assertEquals( "cn", new FilterTemplate( "(cn=*{0}*)" ).getAttribute( ) );
+        assertEquals( "sn", new FilterTemplate( "(SN={0})" ).getAttribute( ) );
+        assertEquals( "sn", new FilterTemplate( "(|(sn={0})(sn={0}*))" ).getAttribute( ) );
+        assertNull( new FilterTemplate( "(|(sn={0})(givenname={0}))" ).getAttribute( ) );
+        assertNull( new FilterTemplate( "(sn={0}" ).getAttribute( ) );
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * LdapFilter Test
+ */
+public class LdapFilterTest
+{
+    private static final Map<String, String> ATTRIBUTE_KEYS = new HashMap<String, String>( );
+
+    static
+    {
+        ATTRIBUTE_KEYS.put( "sn", "familyname" );
+        ATTRIBUTE_KEYS.put( "givenname", "name" );
+        ATTRIBUTE_KEYS.put( "mail", "mail" );
+        ATTRIBUTE_KEYS.put( "cn", "cn" );
+    }
+
+    /**
+     * Test of the equality, which ignores case and insignificant spaces
+     */
+    @Test
+    public void testEquality( )
+    {
+        Map<String, String> person = person( "familyname", "  De   LA Fontaine " );
+
+        assertTrue( matches( "(sn=de la fontaine)", person ) );
+        assertTrue( matches( "(SN=De La  Fontaine)", person ) );
+        assertTrue( matches( "sn=de la fontaine", person ) );
+        assertFalse( matches( "(sn=de la font)", person ) );
+        assertFalse( matches( "(givenname=de la fontaine)", person ) );
+    }
+
+    /**
+     * Test of the substrings assertions
+     */
+    @Test
+    public void testSubstrings( )
+    {
+        Map<String, String> person = person( "familyname", "Dupont" );
+
+        assertTrue( matches( "(sn=dup*)", person ) );
+        assertTrue( matches( "(sn=*ont)", person ) );
+        assertTrue( matches( "(sn=*upo*)", person ) );
+        assertTrue( matches( "(sn=d*p*t)", person ) );
+        assertFalse( matches( "(sn=*dupond*)", person ) );
+        assertFalse( matches( "(sn=t*d)", person ) );
+
+        // The initial and final parts must not overlap
+        assertFalse( matches( "(sn=dupo*pont)", person ) );
+        assertTrue( matches( "(sn=dup*ont)", person ) );
+    }
+
+    /**
+     * Test of the presence assertion, an empty value being no value
+     */
+    @Test
+    public void testPresence( )
+    {
+        assertTrue( matches( "(mail=*)", person( "mail", "jean.dupont@paris.fr" ) ) );
+        assertFalse( matches( "(mail=*)", person( "mail", "" ) ) );
+        assertFalse( matches( "(mail=*)", person( "familyname", "Dupont" ) ) );
+    }
+
+    /**
+     * Test of the and, or and not filters
+     */
+    @Test
+    public void testComposites( )
+    {
+        Map<String, String> person = person( "familyname", "Dupont" );
+        person.put( "name", "Jean" );
+
+        assertTrue( matches( "(&(sn=dupont)(givenname=jean))", person ) );
+        assertFalse( matches( "(&(sn=dupont)(givenname=paul))", person ) );
+        assertTrue( matches( "(|(sn=martin)(givenname=jean))", person ) );
+        assertFalse( matches( "(|(sn=martin)(givenname=paul))", person ) );
+        assertTrue( matches( "(!(sn=martin))", person ) );
+        assertTrue( matches( "(&(sn=dup*)(!(|(givenname=paul)(mail=*))))", person ) );
+
+        // Empty and / or filters are the absolute true and false filters
+        assertTrue( matches( "(&)", person ) );
+        assertFalse( matches( "(|)", person ) );
+    }
+
+    /**
+     * Test of the escaped values, an escaped wildcard being a plain character
+     */
+    @Test
+    public void testEscapes( )
+    {
+        assertTrue( matches( "(cn=a\\2ab)", person( "cn", "a*b" ) ) );
+        assertFalse( matches( "(cn=a\\2ab)", person( "cn", "axb" ) ) );
+        assertTrue( matches( "(cn=\\28x\\29\\5c)", person( "cn", "(x)\\" ) ) );
+        assertTrue( matches( "(sn=h\\c3\\a9bert)", person( "familyname", "H\u00e9bert" ) ) );
+    }
+
+    /**
+     * Test of the malformed filters
+     */
+    @Test
+    public void testMalformed( )
+    {
+        String [ ] filters = {
+                "", "(sn=dupont", "(sn=dupont))", "(&(sn=a)", "(&(sn=a)(sn=b)", "()", "(=dupont)", "(sn)", "(sn=a)(sn=b)", "(!)", "(sn=\\zz)"
+        };
+
+        for ( String strFilter : filters )
+        {
+            try
+            {
+                LdapFilter.parse( strFilter );
+                fail( "The filter should be rejected : " + strFilter );
+            }
+            catch( IllegalArgumentException e )
+            {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Test of the filters that can be evaluated in memory
+     */
+    @Test
+    public void testIsEvaluable( )
+    {
+        Set<String> multiValued = Collections.singleton( "mail" );
+
+        assertTrue( LdapFilter.parse( "(&(sn=dup*)(!(givenname=jean)))" ).isEvaluable( ATTRIBUTE_KEYS, multiValued ) );
+        assertFalse( LdapFilter.parse( "(sn>=dupont)" ).isEvaluable( ATTRIBUTE_KEYS, multiValued ) );
+        assertFalse( LdapFilter.parse( "(sn~=dupont)" ).isEvaluable( ATTRIBUTE_KEYS, multiValued ) );
+        assertFalse( LdapFilter.parse( "(sn=)" ).isEvaluable( ATTRIBUTE_KEYS, multiValued ) );
+        assertFalse( LdapFilter.parse( "(|(sn=dupont)(ou=dsti))" ).isEvaluable( ATTRIBUTE_KEYS, multiValued ) );
+        assertFalse( LdapFilter.parse( "(mail=*)" ).isEvaluable( ATTRIBUTE_KEYS, multiValued ) );
+    }
+
+    /**
+     * Test of the attributes collection
+     */
+    @Test
+    public void testCollectAttributes( )
+    {
+        Set<String> attributes = new TreeSet<String>( );
+        LdapFilter.parse( "(&(SN=a)(|(givenName=b)(!(mail=*))))" ).collectAttributes( attributes );
+
+        assertEquals( "[givenname, mail, sn]", attributes.toString( ) );
+    }
+
+    /**
+     * Test of the estimates : an and filter is bounded by its most selective part, an or filter by the sum of its parts and a negation is
+     * unbounded
+     */
+    @Test
+    public void testEstimate( )
+    {
+        FilterEstimator estimator = new FilterEstimator( )
+        {
+            @Override
+            public long estimate( String strAttribute, String strOperator, List<String> listParts, boolean bInitial, boolean bFinal )
+            {
+                return "sn".equals( strAttribute ) ? 10L : ( "mail".equals( strAttribute ) ? Long.MAX_VALUE : 1000L );
+            }
+        };
+
+        assertEquals( 10L, LdapFilter.parse( "(&(sn=a)(givenname=b))" ).estimate( estimator ) );
+        assertEquals( 1010L, LdapFilter.parse( "(|(sn=a)(givenname=b))" ).estimate( estimator ) );
+        assertEquals( Long.MAX_VALUE, LdapFilter.parse( "(|(sn=a)(mail=*))" ).estimate( estimator ) );
+        assertEquals( Long.MAX_VALUE, LdapFilter.parse( "(!(sn=a))" ).estimate( estimator ) );
+        assertEquals( 10L, LdapFilter.parse( "(&(sn=a)(!(sn=b)))" ).estimate( estimator ) );
+    }
+
+    /**
+     * Test of the normalization of the values
+     */
+    @Test
+    public void testNormalize( )
+    {
+        assertEquals( "jean de la fontaine", LdapFilter.normalize( "  Jean  de La   FONTAINE " ) );
+        assertEquals( "", LdapFilter.normalize( "   " ) );
+    }
+
+    private static boolean matches( String strFilter, Map<String, String> person )
+    {
+        LdapFilter filter = LdapFilter.parse( strFilter );
+
+        return filter.matches( person, ATTRIBUTE_KEYS );
+    }
+
+    private static Map<String, String> person( String strKey, String strValue )
+    {
+        Map<String, String> person = new HashMap<String, String>( );
+        person.put( strKey, strValue );
+
+        return person;
+    }
+}
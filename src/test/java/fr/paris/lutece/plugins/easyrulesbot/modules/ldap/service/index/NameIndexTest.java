@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * NameIndex Test
+ */
+public class NameIndexTest
+{
+    private static final int MIN_SIMILARITY = 60;
+    private static final int MAX_VALUES = 10;
+
+    private final NameIndex _index = new NameIndex( Arrays.asList( "Jean-Pierre Dupont", "Dupond", "Lefebvre", "Lefevre", "Martin",
+            "Martine Durand", "H\u00e9bert", "Durand" ) );
+
+    /**
+     * Test of the values containing the word of the term, ignoring accents and case
+     */
+    @Test
+    public void testContains( )
+    {
+        assertEquals( "[H\u00e9bert]", find( "HEBERT" ) );
+        assertEquals( "[Martin, Martine Durand]", find( "marti" ) );
+        assertEquals( "[Jean-Pierre Dupont]", find( "jean-pierre" ) );
+    }
+
+    /**
+     * Test of the values sounding the same
+     */
+    @Test
+    public void testPhonetic( )
+    {
+        assertEquals( "[Dupond, Jean-Pierre Dupont]", find( "dupont" ) );
+        assertEquals( "[Lefebvre, Lefevre]", find( "lefevre" ) );
+    }
+
+    /**
+     * Test of the values sharing enough trigrams with a mistyped word
+     */
+    @Test
+    public void testSimilarity( )
+    {
+        List<String> listValues = new ArrayList<String>( );
+
+        assertTrue( _index.findValues( "martne", 40, MAX_VALUES, listValues ) );
+        assertEquals( "[Martin, Martine Durand]", sorted( listValues ) );
+
+        listValues.clear( );
+
+        assertTrue( _index.findValues( "martne", 90, MAX_VALUES, listValues ) );
+        assertTrue( listValues.isEmpty( ) );
+    }
+
+    /**
+     * Test of the terms of several words, each word having to match a word of the value
+     */
+    @Test
+    public void testSeveralWords( )
+    {
+        assertEquals( "[Jean-Pierre Dupont]", find( "pierre dupont" ) );
+        assertEquals( "[Martine Durand]", find( "martin durand" ) );
+        assertEquals( "[]", find( "lefevre durand" ) );
+    }
+
+    /**
+     * Test of the terms whose values are not resolved
+     */
+    @Test
+    public void testUnresolved( )
+    {
+        List<String> listValues = new ArrayList<String>( );
+
+        // Too short to be compared
+        assertFalse( _index.findValues( "du", MIN_SIMILARITY, MAX_VALUES, listValues ) );
+        assertFalse( _index.findValues( "jean du", MIN_SIMILARITY, MAX_VALUES, listValues ) );
+
+        // Too many values
+        assertFalse( _index.findValues( "dur", MIN_SIMILARITY, 1, listValues ) );
+        assertTrue( listValues.isEmpty( ) );
+
+        // No word : nothing to find
+        assertTrue( _index.findValues( " - ", MIN_SIMILARITY, MAX_VALUES, listValues ) );
+        assertTrue( listValues.isEmpty( ) );
+    }
+
+    /**
+     * Test of the sizes of the index
+     */
+    @Test
+    public void testSize( )
+    {
+        assertEquals( 8, _index.size( ) );
+        assertEquals( 10, _index.getWordCount( ) );
+        assertEquals( 0, new NameIndex( Collections.<String> emptyList( ) ).size( ) );
+        assertEquals( "[]", sorted( findIn( new NameIndex( Collections.<String> emptyList( ) ), "dupont" ) ) );
+    }
+
+    private String find( String strTerm )
+    {
+        return sorted( findIn( _index, strTerm ) );
+    }
+
+    private static List<String> findIn( NameIndex index, String strTerm )
+    {
+        List<String> listValues = new ArrayList<String>( );
+        assertTrue( index.findValues( strTerm, MIN_SIMILARITY, MAX_VALUES, listValues ) );
+
+        return listValues;
+    }
+
+    private static String sorted( List<String> listValues )
+    {
+        List<String> listSorted = new ArrayList<String>( listValues );
+        Collections.sort( listSorted );
+
+        return listSorted.toString( );
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.business.Suggestion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * PrefixIndex Test
+ */
+public class PrefixIndexTest
+{
+    private static final int MAX_SIZE = 3;
+
+    private final PrefixIndex _index = new PrefixIndex( Arrays.asList( new Suggestion( "familyname", "Dupont", 10 ), new Suggestion(
+            "familyname", "Durand", 30 ), new Suggestion( "familyname", "Du Pont", 10 ), new Suggestion( "direction",
+            "Direction des Syst\u00e8mes d'Information", 50 ), new Suggestion( "site", "H\u00f4tel de Ville", 5 ), new Suggestion( "site",
+            "Ville de Villejuif", 2 ), new Suggestion( "site", " - ", 100 ) ), MAX_SIZE );
+
+    /**
+     * Test of the suggestions whose value starts with the prefix, the ones of the most persons first then by value
+     */
+    @Test
+    public void testValuePrefix( )
+    {
+        assertEquals( "[Durand, Du Pont, Dupont]", find( "du", MAX_SIZE ) );
+        assertEquals( "[Dupont]", find( "DUP", MAX_SIZE ) );
+        assertEquals( "[Du Pont]", find( "du-p", MAX_SIZE ) );
+        assertEquals( "[Dupont]", find( "dupont", MAX_SIZE ) );
+    }
+
+    /**
+     * Test of the suggestions having a word starting with the prefix, accents folded
+     */
+    @Test
+    public void testWordPrefix( )
+    {
+        assertEquals( "[Direction des Syst\u00e8mes d'Information]", find( "SYST\u00c8", MAX_SIZE ) );
+        assertEquals( "[Direction des Syst\u00e8mes d'Information]", find( "inf", MAX_SIZE ) );
+        assertEquals( "[H\u00f4tel de Ville]", find( "hotel", MAX_SIZE ) );
+
+        // Once per suggestion, even when several of its words start with the prefix
+        assertEquals( "[H\u00f4tel de Ville, Ville de Villejuif]", find( "vill", MAX_SIZE ) );
+    }
+
+    /**
+     * Test of the number of suggestions, bounded by the max size of the index
+     */
+    @Test
+    public void testSize( )
+    {
+        assertEquals( "[Direction des Syst\u00e8mes d'Information, Durand]", find( "d", 2 ) );
+        assertEquals( "[Direction des Syst\u00e8mes d'Information, Durand, Du Pont]", find( "d", 10 ) );
+        assertEquals( "[Durand]", find( "dur", 10 ) );
+        assertEquals( 7, _index.size( ) );
+    }
+
+    /**
+     * Test of the prefixes without suggestion
+     */
+    @Test
+    public void testNoSuggestion( )
+    {
+        assertTrue( _index.find( "", MAX_SIZE ).isEmpty( ) );
+        assertTrue( _index.find( " ' ", MAX_SIZE ).isEmpty( ) );
+        assertTrue( _index.find( "du", 0 ).isEmpty( ) );
+        assertTrue( _index.find( "zz", MAX_SIZE ).isEmpty( ) );
+        assertTrue( _index.find( "zzz", MAX_SIZE ).isEmpty( ) );
+        assertTrue( _index.find( "dupontel", MAX_SIZE ).isEmpty( ) );
+        assertTrue( new PrefixIndex( new ArrayList<Suggestion>( ), MAX_SIZE ).find( "du", MAX_SIZE ).isEmpty( ) );
+    }
+
+    /**
+     * Test of the keys : the folded value and its endings starting at each word, the blank values having none
+     */
+    @Test
+    public void testKeys( )
+    {
+        PrefixIndex index = new PrefixIndex( Arrays.asList( new Suggestion( "site", "H\u00f4tel de Ville", 5 ), new Suggestion( "site", "  ", 1 ) ),
+                MAX_SIZE );
+
+        assertEquals( 3, index.getKeyCount( ) );
+        assertEquals( 2, index.size( ) );
+    }
+
+    private String find( String strPrefix, int nSize )
+    {
+        List<String> listValues = new ArrayList<String>( );
+
+        for ( Suggestion suggestion : _index.find( strPrefix, nSize ) )
+        {
+            listValues.add( suggestion.getValue( ) );
+        }
+
+        return listValues.toString( );
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * TextFolding Test
+ */
+public class TextFoldingTest
+{
+    /**
+     * Test of the folding : accents, case, ligatures and separators
+     */
+    @Test
+    public void testFold( )
+    {
+        assertEquals( "eloise d arc en ciel", TextFolding.fold( "  \u00c9lo\u00efse  D'ARC-en-Ciel " ) );
+        assertEquals( "coeur aether strasse", TextFolding.fold( "C\u0153ur \u00c6ther Stra\u00dfe" ) );
+        assertEquals( "francois 2", TextFolding.fold( "Fran\u00e7ois (2)" ) );
+        assertEquals( "", TextFolding.fold( "" ) );
+        assertEquals( "", TextFolding.fold( " - ' " ) );
+    }
+
+    /**
+     * Test of the words of a value
+     */
+    @Test
+    public void testGetWords( )
+    {
+        assertEquals( "[jean, pierre, de, la, fontaine]", TextFolding.getWords( "Jean-Pierre  de LA Fontaine" ).toString( ) );
+        assertEquals( "[helene]", TextFolding.getWords( " H\u00e9l\u00e8ne. " ).toString( ) );
+        assertTrue( TextFolding.getWords( "" ).isEmpty( ) );
+        assertTrue( TextFolding.getWords( "--" ).isEmpty( ) );
+    }
+
+    /**
+     * Test of the phonetic keys of the spelling variants of names
+     */
+    @Test
+    public void testPhoneticKey( )
+    {
+        assertSameKey( "lefebvre", "lefevre" );
+        assertSameKey( "dupont", "dupond" );
+        assertSameKey( "philippe", "filipe" );
+        assertSameKey( "catherine", "katerine" );
+        assertSameKey( "gauthier", "gautier" );
+        assertSameKey( "bernard", "bernart" );
+        assertSameKey( "thomas", "tomas" );
+        assertSameKey( "rousseau", "rousso" );
+        assertSameKey( "lemaitre", "lemetre" );
+
+        // The final e is not heard
+        assertSameKey( "martin", "martine" );
+
+        assertFalse( key( "dupont" ).equals( key( "durand" ) ) );
+        assertFalse( key( "martin" ).equals( key( "marton" ) ) );
+    }
+
+    /**
+     * Test of the nasal rules, which only apply before a consonant or at the end of a word
+     */
+    @Test
+    public void testNasal( )
+    {
+        assertSameKey( "lambert", "lanbert" );
+        assertSameKey( "laurent", "lorant" );
+        assertFalse( key( "amelie" ).equals( key( "anelie" ) ) );
+    }
+
+    /**
+     * Test of the short words, whose last letter is kept
+     */
+    @Test
+    public void testShortWords( )
+    {
+        assertEquals( "", TextFolding.getPhoneticKey( "" ) );
+        assertEquals( "", TextFolding.getPhoneticKey( "h" ) );
+        assertEquals( "at", TextFolding.getPhoneticKey( "at" ) );
+        assertEquals( "le", TextFolding.getPhoneticKey( "le" ) );
+    }
+
+    private static void assertSameKey( String strWord1, String strWord2 )
+    {
+        assertEquals( strWord1 + " / " + strWord2, key( strWord1 ), key( strWord2 ) );
+    }
+
+    private static String key( String strWord )
+    {
+        return TextFolding.getPhoneticKey( strWord );
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * CircuitBreaker Test
+ */
+public class CircuitBreakerTest
+{
+    private static final long OPEN_DURATION = 200L;
+
+    /**
+     * Test of the opening, which waits for the min number of calls
+     */
+    @Test
+    public void testOpen( )
+    {
+        CircuitBreaker breaker = new CircuitBreaker( 10, 5, 50, 60000L );
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            assertTrue( breaker.allowRequest( ) );
+            breaker.recordFailure( );
+        }
+
+        assertEquals( CircuitBreaker.State.CLOSED, breaker.getState( ) );
+        assertEquals( 100.0, breaker.getFailureRate( ), 0.0 );
+
+        breaker.recordFailure( );
+
+        assertEquals( CircuitBreaker.State.OPEN, breaker.getState( ) );
+        assertEquals( 1L, breaker.getOpenedCount( ) );
+        assertFalse( breaker.allowRequest( ) );
+        assertFalse( breaker.allowRequest( ) );
+        assertEquals( 2L, breaker.getRejectedCount( ) );
+    }
+
+    /**
+     * Test of the failure rate, computed on the last calls only
+     */
+    @Test
+    public void testSlidingWindow( )
+    {
+        CircuitBreaker breaker = new CircuitBreaker( 4, 4, 75, 60000L );
+
+        breaker.recordFailure( );
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            breaker.recordSuccess( );
+        }
+
+        // The first failure left the window
+        assertEquals( 0.0, breaker.getFailureRate( ), 0.0 );
+
+        breaker.recordFailure( );
+        breaker.recordFailure( );
+
+        assertEquals( 50.0, breaker.getFailureRate( ), 0.0 );
+        assertEquals( CircuitBreaker.State.CLOSED, breaker.getState( ) );
+
+        breaker.recordFailure( );
+
+        assertEquals( CircuitBreaker.State.OPEN, breaker.getState( ) );
+    }
+
+    /**
+     * Test of the half open state closing the breaker after a successful probe
+     */
+    @Test
+    public void testProbeSuccess( )
+    {
+        CircuitBreaker breaker = openBreaker( 0L );
+
+        assertTrue( breaker.allowRequest( ) );
+        assertEquals( CircuitBreaker.State.HALF_OPEN, breaker.getState( ) );
+
+        breaker.recordSuccess( );
+
+        assertEquals( CircuitBreaker.State.CLOSED, breaker.getState( ) );
+        assertEquals( 0.0, breaker.getFailureRate( ), 0.0 );
+
+        // The window was cleared : a single failure doesn't open the breaker again
+        breaker.recordFailure( );
+        assertEquals( CircuitBreaker.State.CLOSED, breaker.getState( ) );
+    }
+
+    /**
+     * Test of the half open state opening the breaker again after a failed probe
+     */
+    @Test
+    public void testProbeFailure( ) throws InterruptedException
+    {
+        CircuitBreaker breaker = openBreaker( OPEN_DURATION );
+
+        assertFalse( breaker.allowRequest( ) );
+        Thread.sleep( OPEN_DURATION + 50L );
+        assertTrue( breaker.allowRequest( ) );
+
+        breaker.recordFailure( );
+
+        assertEquals( CircuitBreaker.State.OPEN, breaker.getState( ) );
+        assertEquals( 2L, breaker.getOpenedCount( ) );
+
+        // The open duration starts again
+        assertFalse( breaker.allowRequest( ) );
+    }
+
+    /**
+     * Test of the single probe of the half open state, given up when its outcome is not recorded in time
+     */
+    @Test
+    public void testProbeTimeout( ) throws InterruptedException
+    {
+        CircuitBreaker breaker = openBreaker( OPEN_DURATION );
+        Thread.sleep( OPEN_DURATION + 50L );
+
+        assertTrue( breaker.allowRequest( ) );
+
+        // Only one probe at a time
+        assertFalse( breaker.allowRequest( ) );
+        assertEquals( CircuitBreaker.State.HALF_OPEN, breaker.getState( ) );
+
+        Thread.sleep( OPEN_DURATION + 50L );
+
+        // The probe never recorded its outcome : another one is let through
+        assertTrue( breaker.allowRequest( ) );
+        assertFalse( breaker.allowRequest( ) );
+
+        breaker.recordSuccess( );
+
+        assertEquals( CircuitBreaker.State.CLOSED, breaker.getState( ) );
+        assertTrue( breaker.allowRequest( ) );
+        assertTrue( breaker.allowRequest( ) );
+    }
+
+    /**
+     * Test of the bounds of the settings
+     */
+    @Test
+    public void testSettingsBounds( )
+    {
+        // The min number of calls is bounded by the window size
+        CircuitBreaker breaker = new CircuitBreaker( 2, 10, 100, 60000L );
+        breaker.recordFailure( );
+        breaker.recordFailure( );
+
+        assertEquals( CircuitBreaker.State.OPEN, breaker.getState( ) );
+
+        // An empty window keeps the last call
+        CircuitBreaker singleCallBreaker = new CircuitBreaker( 0, 0, 100, 60000L );
+        singleCallBreaker.recordSuccess( );
+        singleCallBreaker.recordFailure( );
+
+        assertEquals( CircuitBreaker.State.OPEN, singleCallBreaker.getState( ) );
+    }
+
+    private static CircuitBreaker openBreaker( long lOpenDuration )
+    {
+        CircuitBreaker breaker = new CircuitBreaker( 2, 2, 50, lOpenDuration );
+        breaker.recordFailure( );
+        breaker.recordFailure( );
+
+        assertEquals( CircuitBreaker.State.OPEN, breaker.getState( ) );
+
+        return breaker;
+    }
+}
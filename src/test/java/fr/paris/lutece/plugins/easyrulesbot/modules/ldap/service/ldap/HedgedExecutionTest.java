@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * HedgedExecution Test
+ */
+public class HedgedExecutionTest
+{
+    private static final long LONG_DELAY = 10000L;
+
+    private ExecutorService _executor;
+
+    /**
+     * Creates the executor
+     */
+    @Before
+    public void setUp( )
+    {
+        _executor = Executors.newCachedThreadPool( );
+    }
+
+    /**
+     * Stops the executor
+     */
+    @After
+    public void tearDown( )
+    {
+        _executor.shutdownNow( );
+    }
+
+    /**
+     * Test of a call answering before its hedge delay
+     */
+    @Test
+    public void testPrimaryAnswer( ) throws InterruptedException
+    {
+        HedgedExecution<String> execution = new HedgedExecution<String>( _executor );
+        int nCall = execution.submit( answer( "primary", 0L, null ), answer( "hedge", 0L, null ), LONG_DELAY, LONG_DELAY );
+        execution.await( System.currentTimeMillis( ) + LONG_DELAY );
+
+        assertTrue( execution.isDone( nCall ) );
+        assertEquals( "primary", execution.getResult( nCall ) );
+        assertFalse( execution.isHedged( nCall ) );
+        assertNull( execution.getFailure( nCall ) );
+    }
+
+    /**
+     * Test of a slow call : the hedge is sent after the delay, its answer is kept and the primary attempt is cancelled
+     */
+    @Test
+    public void testHedgeAfterDelay( ) throws InterruptedException
+    {
+        CountDownLatch cancelled = new CountDownLatch( 1 );
+        HedgedExecution<String> execution = new HedgedExecution<String>( _executor );
+        int nCall = execution.submit( answer( "primary", LONG_DELAY, cancelled ), answer( "hedge", 0L, null ), 50L, LONG_DELAY );
+        long lStart = System.currentTimeMillis( );
+        execution.await( lStart + LONG_DELAY );
+
+        assertTrue( execution.isDone( nCall ) );
+        assertEquals( "hedge", execution.getResult( nCall ) );
+        assertTrue( execution.isHedged( nCall ) );
+        assertTrue( System.currentTimeMillis( ) - lStart < LONG_DELAY / 2 );
+        assertTrue( cancelled.await( 1L, TimeUnit.SECONDS ) );
+    }
+
+    /**
+     * Test of a failed call : the hedge is sent at once, without waiting for the delay
+     */
+    @Test
+    public void testFailover( ) throws InterruptedException
+    {
+        HedgedExecution<String> execution = new HedgedExecution<String>( _executor );
+        int nCall = execution.submit( failure( new IllegalStateException( "primary" ) ), answer( "hedge", 0L, null ), LONG_DELAY, LONG_DELAY );
+        long lStart = System.currentTimeMillis( );
+        execution.await( lStart + LONG_DELAY );
+
+        assertEquals( "hedge", execution.getResult( nCall ) );
+        assertTrue( execution.isHedged( nCall ) );
+        assertTrue( System.currentTimeMillis( ) - lStart < LONG_DELAY / 2 );
+    }
+
+    /**
+     * Test of the failures : the last failure of a call is kept
+     */
+    @Test
+    public void testFailures( ) throws InterruptedException
+    {
+        HedgedExecution<String> execution = new HedgedExecution<String>( _executor );
+        int nUnhedged = execution.submit( failure( new IllegalStateException( "unhedged" ) ), null, 0L, LONG_DELAY );
+        int nHedged = execution.submit( failure( new IllegalStateException( "primary" ) ), failure( new IllegalStateException( "hedge" ) ),
+                LONG_DELAY, LONG_DELAY );
+        int nAnswered = execution.submit( answer( "answer", 0L, null ), null, 0L, LONG_DELAY );
+        execution.await( System.currentTimeMillis( ) + LONG_DELAY );
+
+        assertFalse( execution.isDone( nUnhedged ) );
+        assertNull( execution.getResult( nUnhedged ) );
+        assertEquals( "unhedged", execution.getFailure( nUnhedged ).getMessage( ) );
+        assertFalse( execution.isDone( nHedged ) );
+        assertEquals( "hedge", execution.getFailure( nHedged ).getMessage( ) );
+        assertEquals( "answer", execution.getResult( nAnswered ) );
+    }
+
+    /**
+     * Test of the timeout of a call, which is cancelled without delaying the other calls
+     */
+    @Test
+    public void testTimeout( ) throws InterruptedException
+    {
+        CountDownLatch cancelled = new CountDownLatch( 1 );
+        HedgedExecution<String> execution = new HedgedExecution<String>( _executor );
+        int nSlow = execution.submit( answer( "slow", LONG_DELAY, cancelled ), null, 0L, 100L );
+        int nFast = execution.submit( answer( "fast", 0L, null ), null, 0L, LONG_DELAY );
+        long lStart = System.currentTimeMillis( );
+        execution.await( lStart + LONG_DELAY );
+
+        assertTrue( System.currentTimeMillis( ) - lStart < LONG_DELAY / 2 );
+        assertFalse( execution.isDone( nSlow ) );
+        assertTrue( execution.getFailure( nSlow ) instanceof TimeoutException );
+        assertTrue( cancelled.await( 1L, TimeUnit.SECONDS ) );
+        assertEquals( "fast", execution.getResult( nFast ) );
+    }
+
+    /**
+     * Test of the deadline, which cancels the calls and their hedges still running
+     */
+    @Test
+    public void testDeadline( ) throws InterruptedException
+    {
+        CountDownLatch cancelled = new CountDownLatch( 2 );
+        HedgedExecution<String> execution = new HedgedExecution<String>( _executor );
+        int nCall = execution.submit( answer( "primary", LONG_DELAY, cancelled ), answer( "hedge", LONG_DELAY, cancelled ), 10L, LONG_DELAY );
+        long lStart = System.currentTimeMillis( );
+        execution.await( lStart + 200L );
+
+        assertTrue( System.currentTimeMillis( ) - lStart < LONG_DELAY / 2 );
+        assertTrue( execution.isHedged( nCall ) );
+        assertTrue( execution.getFailure( nCall ) instanceof TimeoutException );
+        assertTrue( cancelled.await( 1L, TimeUnit.SECONDS ) );
+    }
+
+    private static Callable<String> answer( final String strResult, final long lDelay, final CountDownLatch cancelled )
+    {
+        return new Callable<String>( )
+        {
+            @Override
+            public String call( ) throws Exception
+            {
+                try
+                {
+                    Thread.sleep( lDelay );
+                }
+                catch( InterruptedException e )
+                {
+                    if ( cancelled != null )
+                    {
+                        cancelled.countDown( );
+                    }
+
+                    throw e;
+                }
+
+                return strResult;
+            }
+        };
+    }
+
+    private static Callable<String> failure( final RuntimeException exception )
+    {
+        return new Callable<String>( )
+        {
+            @Override
+            public String call( )
+            {
+                throw exception;
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * LatencyTracker Test
+ */
+public class LatencyTrackerTest
+{
+    /**
+     * Test of the percentile, which follows each sample until the refresh interval is reached
+     */
+    @Test
+    public void testPercentile( )
+    {
+        LatencyTracker tracker = new LatencyTracker( 100, 0.5, 4 );
+
+        assertEquals( -1L, tracker.getPercentile( ) );
+
+        tracker.record( 30L );
+        assertEquals( 30L, tracker.getPercentile( ) );
+
+        tracker.record( 10L );
+        tracker.record( 20L );
+        assertEquals( 3, tracker.getSampleCount( ) );
+        assertEquals( 20L, tracker.getPercentile( ) );
+    }
+
+    /**
+     * Test of the refresh of the percentile every few samples
+     */
+    @Test
+    public void testRefreshInterval( )
+    {
+        LatencyTracker tracker = new LatencyTracker( 100, 1.0, 4 );
+
+        for ( int i = 1; i <= 4; i++ )
+        {
+            tracker.record( i );
+        }
+
+        assertEquals( 4L, tracker.getPercentile( ) );
+
+        // The next samples are only taken into account at the next refresh
+        tracker.record( 100L );
+        tracker.record( 100L );
+        tracker.record( 100L );
+        assertEquals( 4L, tracker.getPercentile( ) );
+
+        tracker.record( 100L );
+        assertEquals( 100L, tracker.getPercentile( ) );
+    }
+
+    /**
+     * Test of the capacity : the oldest samples are replaced by the new ones
+     */
+    @Test
+    public void testCapacity( )
+    {
+        LatencyTracker tracker = new LatencyTracker( 2, 1.0, 1 );
+
+        tracker.record( 50L );
+        tracker.record( 10L );
+        tracker.record( 20L );
+
+        assertEquals( 2, tracker.getSampleCount( ) );
+        assertEquals( 20L, tracker.getPercentile( ) );
+    }
+}
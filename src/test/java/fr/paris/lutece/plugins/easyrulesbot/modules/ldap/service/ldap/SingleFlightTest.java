@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.NamingException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * SingleFlight Test
+ */
+public class SingleFlightTest
+{
+    private static final int CALLERS = 8;
+
+    private ExecutorService _executor;
+
+    /**
+     * Creates the executor
+     */
+    @Before
+    public void setUp( )
+    {
+        _executor = Executors.newCachedThreadPool( );
+    }
+
+    /**
+     * Stops the executor
+     */
+    @After
+    public void tearDown( )
+    {
+        _executor.shutdownNow( );
+    }
+
+    /**
+     * Test of a call without concurrent callers
+     */
+    @Test
+    public void testSingleCall( ) throws NamingException
+    {
+        SingleFlight<String, NamingException> singleFlight = new SingleFlight<String, NamingException>( NamingException.class );
+        AtomicInteger calls = new AtomicInteger( );
+
+        assertEquals( "result", singleFlight.execute( "key", counted( calls, "result" ) ) );
+        assertEquals( "result", singleFlight.execute( "key", counted( calls, "result" ) ) );
+
+        // The results are not kept
+        assertEquals( 2, calls.get( ) );
+        assertEquals( 0L, singleFlight.getSharedCount( ) );
+        assertEquals( 0, singleFlight.getInFlightCount( ) );
+    }
+
+    /**
+     * Test of concurrent identical calls, run once
+     */
+    @Test
+    public void testConcurrentCalls( ) throws Exception
+    {
+        final SingleFlight<String, NamingException> singleFlight = new SingleFlight<String, NamingException>( NamingException.class );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger calls = new AtomicInteger( );
+        List<Future<String>> listResults = startCallers( singleFlight, "key", new Callable<String>( )
+        {
+            @Override
+            public String call( ) throws Exception
+            {
+                calls.incrementAndGet( );
+                release.await( );
+
+                return "result";
+            }
+        } );
+
+        awaitShared( singleFlight, CALLERS - 1 );
+        assertEquals( 1, singleFlight.getInFlightCount( ) );
+
+        // Another key is not coalesced
+        assertEquals( "other", singleFlight.execute( "other", counted( new AtomicInteger( ), "other" ) ) );
+
+        release.countDown( );
+
+        for ( Future<String> result : listResults )
+        {
+            assertEquals( "result", result.get( 5L, TimeUnit.SECONDS ) );
+        }
+
+        assertEquals( 1, calls.get( ) );
+        assertEquals( 0, singleFlight.getInFlightCount( ) );
+    }
+
+    /**
+     * Test of a failure shared by the concurrent callers, the key being released for the next call
+     */
+    @Test
+    public void testConcurrentFailure( ) throws Exception
+    {
+        final SingleFlight<String, NamingException> singleFlight = new SingleFlight<String, NamingException>( NamingException.class );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final NamingException failure = new NamingException( "unreachable" );
+        List<Future<String>> listResults = startCallers( singleFlight, "key", new Callable<String>( )
+        {
+            @Override
+            public String call( ) throws Exception
+            {
+                release.await( );
+
+                throw failure;
+            }
+        } );
+
+        awaitShared( singleFlight, CALLERS - 1 );
+        release.countDown( );
+
+        for ( Future<String> result : listResults )
+        {
+            try
+            {
+                result.get( 5L, TimeUnit.SECONDS );
+                fail( "The failure should be shared" );
+            }
+            catch( ExecutionException e )
+            {
+                assertSame( failure, e.getCause( ) );
+            }
+        }
+
+        assertEquals( 0, singleFlight.getInFlightCount( ) );
+        assertEquals( "retry", singleFlight.execute( "key", counted( new AtomicInteger( ), "retry" ) ) );
+    }
+
+    /**
+     * Test of the failures that are not of the exception type of the calls
+     */
+    @Test
+    public void testOtherFailures( ) throws NamingException
+    {
+        SingleFlight<String, NamingException> singleFlight = new SingleFlight<String, NamingException>( NamingException.class );
+        IllegalArgumentException runtimeException = new IllegalArgumentException( );
+        IOException checkedException = new IOException( );
+
+        try
+        {
+            singleFlight.execute( "key", throwing( runtimeException ) );
+            fail( );
+        }
+        catch( IllegalArgumentException e )
+        {
+            assertSame( runtimeException, e );
+        }
+
+        try
+        {
+            singleFlight.execute( "key", throwing( checkedException ) );
+            fail( );
+        }
+        catch( IllegalStateException e )
+        {
+            assertSame( checkedException, e.getCause( ) );
+        }
+
+        assertEquals( 0, singleFlight.getInFlightCount( ) );
+    }
+
+    /**
+     * Test of a waiting caller interrupted : it still gets the result, its interruption being restored
+     */
+    @Test
+    public void testInterruptedCaller( ) throws Exception
+    {
+        final SingleFlight<String, NamingException> singleFlight = new SingleFlight<String, NamingException>( NamingException.class );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final CountDownLatch started = new CountDownLatch( 1 );
+
+        _executor.submit( new Callable<String>( )
+        {
+            @Override
+            public String call( ) throws Exception
+            {
+                return singleFlight.execute( "key", new Callable<String>( )
+                {
+                    @Override
+                    public String call( ) throws Exception
+                    {
+                        started.countDown( );
+                        release.await( );
+
+                        return "result";
+                    }
+                } );
+            }
+        } );
+
+        assertTrue( started.await( 5L, TimeUnit.SECONDS ) );
+
+        final String [ ] result = new String [ 1];
+        final boolean [ ] interrupted = new boolean [ 1];
+        Thread follower = new Thread( new Runnable( )
+        {
+            @Override
+            public void run( )
+            {
+                try
+                {
+                    result [0] = singleFlight.execute( "key", counted( new AtomicInteger( ), "not run" ) );
+                }
+                catch( NamingException e )
+                {
+                    result [0] = e.getMessage( );
+                }
+
+                interrupted [0] = Thread.currentThread( ).isInterrupted( );
+            }
+        } );
+        follower.start( );
+
+        awaitShared( singleFlight, 1 );
+        follower.interrupt( );
+        Thread.sleep( 50L );
+        release.countDown( );
+        follower.join( 5000L );
+
+        assertEquals( "result", result [0] );
+        assertTrue( interrupted [0] );
+    }
+
+    private List<Future<String>> startCallers( final SingleFlight<String, NamingException> singleFlight, final String strKey,
+            final Callable<String> call )
+    {
+        List<Future<String>> listResults = new ArrayList<Future<String>>( );
+
+        for ( int i = 0; i < CALLERS; i++ )
+        {
+            listResults.add( _executor.submit( new Callable<String>( )
+            {
+                @Override
+                public String call( ) throws Exception
+                {
+                    return singleFlight.execute( strKey, call );
+                }
+            } ) );
+        }
+
+        return listResults;
+    }
+
+    private static void awaitShared( SingleFlight<?, ?> singleFlight, long lCount ) throws InterruptedException
+    {
+        long lEnd = System.currentTimeMillis( ) + 5000L;
+
+        while ( singleFlight.getSharedCount( ) < lCount && System.currentTimeMillis( ) < lEnd )
+        {
+            Thread.sleep( 5L );
+        }
+
+        assertEquals( lCount, singleFlight.getSharedCount( ) );
+    }
+
+    private static Callable<String> counted( final AtomicInteger calls, final String strResult )
+    {
+        return new Callable<String>( )
+        {
+            @Override
+            public String call( )
+            {
+                calls.incrementAndGet( );
+
+                return strResult;
+            }
+        };
+    }
+
+    private static Callable<String> throwing( final Exception exception )
+    {
+        return new Callable<String>( )
+        {
+            @Override
+            public String call( ) throws Exception
+            {
+                throw exception;
+            }
+        };
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * TermMatcher Test
+ */
+public class TermMatcherTest
+{
+    /**
+     * Test of the match of a term, ignoring case
+     */
+    @Test
+    public void testMatch( )
+    {
+        TermMatcher matcher = new TermMatcher( map( "familyname", "nom", "name", "prenom", "direction", "direction" ) );
+
+        assertEquals( "familyname", matcher.match( "Par NOM de famille" ) );
+        assertEquals( "direction", matcher.match( "la direction" ) );
+        assertNull( matcher.match( "le service" ) );
+        assertNull( matcher.match( "" ) );
+        assertNull( matcher.match( null ) );
+    }
+
+    /**
+     * Test of the precedence of the longest term, then of the first term found
+     */
+    @Test
+    public void testPrecedence( )
+    {
+        TermMatcher matcher = new TermMatcher( map( "familyname", "nom", "name", "prenom", "mobilepro", "mobile pro", "phonenumber", "mobile" ) );
+
+        // prenom contains nom
+        assertEquals( "name", matcher.match( "le prenom" ) );
+        assertEquals( "mobilepro", matcher.match( "le mobile pro" ) );
+        assertEquals( "phonenumber", matcher.match( "le mobile" ) );
+        assertEquals( "mobilepro", matcher.match( "le nom et le mobile pro" ) );
+
+        // At equal length, the first one found wins
+        TermMatcher equalMatcher = new TermMatcher( map( "a", "xyz", "b", "abc" ) );
+        assertEquals( "b", equalMatcher.match( "abc ou xyz" ) );
+        assertEquals( "a", equalMatcher.match( "xyz ou abc" ) );
+    }
+
+    /**
+     * Test of a term shared by several values, which resolves to the first value in alphabetical order
+     */
+    @Test
+    public void testSharedTerm( )
+    {
+        Map<String, List<String>> map = new HashMap<String, List<String>>( );
+        map.put( "site", Arrays.asList( "adresse" ) );
+        map.put( "office", Arrays.asList( "bureau", "adresse" ) );
+
+        assertEquals( "office", new TermMatcher( map ).match( "son adresse" ) );
+    }
+
+    /**
+     * Test of the terms found through the failure links : overlapping terms and terms ending inside a longer term
+     */
+    @Test
+    public void testFailureLinks( )
+    {
+        TermMatcher matcher = new TermMatcher( map( "he", "he", "she", "she", "hers", "hers" ) );
+
+        assertEquals( "hers", matcher.match( "ushers" ) );
+        assertEquals( "she", matcher.match( "ushe" ) );
+
+        // bc is found when abcd fails after abc
+        TermMatcher suffixMatcher = new TermMatcher( map( "long", "abcd", "short", "bc" ) );
+        assertEquals( "short", suffixMatcher.match( "xabce" ) );
+        assertEquals( "long", suffixMatcher.match( "xabcd" ) );
+        assertEquals( "short", suffixMatcher.match( "aabc" ) );
+    }
+
+    /**
+     * Test of the blank and null terms, which are skipped
+     */
+    @Test
+    public void testBlankTerms( )
+    {
+        Map<String, List<String>> map = new HashMap<String, List<String>>( );
+        map.put( "mail", Arrays.asList( " Mail ", "", "   ", null ) );
+        map.put( "fax", null );
+
+        TermMatcher matcher = new TermMatcher( map );
+
+        assertEquals( 1, matcher.getTermCount( ) );
+        assertEquals( "mail", matcher.match( "son MAIL" ) );
+        assertNull( matcher.match( "   " ) );
+        assertNull( new TermMatcher( new HashMap<String, List<String>>( ) ).match( "nom" ) );
+    }
+
+    private static Map<String, List<String>> map( String... valueTerms )
+    {
+        Map<String, List<String>> map = new HashMap<String, List<String>>( );
+
+        for ( int i = 0; i < valueTerms.length; i += 2 )
+        {
+            map.put( valueTerms [i], Arrays.asList( valueTerms [i + 1] ) );
+        }
+
+        return map;
+    }
+}
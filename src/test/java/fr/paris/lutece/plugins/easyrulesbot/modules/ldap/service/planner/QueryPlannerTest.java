@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2002-2018, Mairie de Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.planner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import fr.paris.lutece.plugins.easyrulesbot.modules.ldap.service.filter.FilterTemplate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * QueryPlanner Test
+ */
+public class QueryPlannerTest
+{
+    private static final String PATTERN_MAIL = "^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$";
+    private static final String PATTERN_PHONE = "^\\+?[0-9][0-9 .-]{8,}[0-9]$";
+
+    /**
+     * Test of the rewriting of the values that look exact
+     */
+    @Test
+    public void testRewrite( )
+    {
+        QueryPlanner planner = newPlanner( true );
+
+        assertEquals( "(mail=jean.dupont@paris.fr)", planner.rewrite( "mail", "  jean.dupont@paris.fr ", new FilterTemplate( "(mail=*{0}*)" ) ) );
+        assertEquals( "(telephonenumber=01 42 76 40 40)",
+                planner.rewrite( "phonenumber", "01 42 76 40 40", new FilterTemplate( "(telephonenumber=*{0}*)" ) ) );
+        assertEquals( "(postalcode=75012)", planner.rewrite( "postalcode", "75012", new FilterTemplate( "(postalcode={0}*)" ) ) );
+        assertEquals( "(postalcode=750*)", planner.rewrite( "postalcode", "750", new FilterTemplate( "(postalcode={0}*)" ) ) );
+
+        // The rewritten values are escaped
+        assertEquals( "(mail=a\\2a\\28b\\29@paris.fr)", planner.rewrite( "mail", "a*(b)@paris.fr", new FilterTemplate( "(mail=*{0}*)" ) ) );
+        assertEquals( 5L, planner.getRewrittenCount( ) );
+    }
+
+    /**
+     * Test of the values left to their template
+     */
+    @Test
+    public void testNoRewrite( )
+    {
+        QueryPlanner planner = newPlanner( true );
+
+        assertNull( planner.rewrite( "mail", "dupont", new FilterTemplate( "(mail=*{0}*)" ) ) );
+        assertNull( planner.rewrite( "mail", "   ", new FilterTemplate( "(mail=*{0}*)" ) ) );
+        assertNull( planner.rewrite( "phonenumber", "4040", new FilterTemplate( "(telephonenumber=*{0}*)" ) ) );
+        assertNull( planner.rewrite( "familyname", "dupont", new FilterTemplate( "(sn=*{0}*)" ) ) );
+        assertNull( planner.rewrite( "postalcode", "7", new FilterTemplate( "(postalcode={0}*)" ) ) );
+
+        // A template on several attributes can't be rewritten to a single assertion
+        assertNull( planner.rewrite( "mail", "jean.dupont@paris.fr", new FilterTemplate( "(|(mail={0})(othermailbox={0}))" ) ) );
+        assertEquals( 0L, planner.getRewrittenCount( ) );
+    }
+
+    /**
+     * Test of the order of the clauses, by increasing cost, and of the duplicate clauses
+     */
+    @Test
+    public void testPlan( )
+    {
+        QueryPlanner planner = newPlanner( true );
+
+        assertEquals( "(&(sn=dupont)(givenname=jean)(ou=*dsti*))", planner.plan( "(&(ou=*dsti*)(givenname=jean)(sn=dupont))" ) );
+        assertEquals( "(&(sn=dupont)(ou=*dsti*))", planner.plan( "(&(ou=*dsti*)(sn=dupont)(SN=Dupont))" ) );
+        assertEquals( 1L, planner.getMergedCount( ) );
+
+        // Nested filters are clauses
+        assertEquals( "(&(mail=a@b.fr)(|(sn=a)(sn=b)))", planner.plan( "(&(|(sn=a)(sn=b))(mail=a@b.fr))" ) );
+    }
+
+    /**
+     * Test of the filters left as they are
+     */
+    @Test
+    public void testPlanUnchanged( )
+    {
+        QueryPlanner planner = newPlanner( true );
+
+        assertEquals( "", planner.plan( "" ) );
+        assertEquals( "(sn=dupont)", planner.plan( "(sn=dupont)" ) );
+        assertEquals( "(&(sn=a)))", planner.plan( "(&(sn=a)))" ) );
+        assertEquals( "(&(ou=*d*)(cn=\\zz))", planner.plan( "(&(ou=*d*)(cn=\\zz))" ) );
+
+        QueryPlanner disabled = newPlanner( false );
+
+        assertEquals( "(&(ou=*d*)(sn=*a*))", disabled.plan( "(&(ou=*d*)(sn=*a*))" ) );
+        assertEquals( 0L, disabled.getRejectedCount( ) );
+    }
+
+    /**
+     * Test of the filters rejected because none of their clauses is selective
+     */
+    @Test
+    public void testReject( )
+    {
+        QueryPlanner planner = newPlanner( true );
+
+        assertNull( planner.plan( "(&(sn=*a*)(givenname=*b*))" ) );
+        assertNull( planner.plan( "(&(sn=*a*)(!(givenname=jean)))" ) );
+        assertEquals( 2L, planner.getRejectedCount( ) );
+
+        // A single selective clause is enough
+        assertEquals( "(&(mail=a@b.fr)(sn=*a*))", planner.plan( "(&(sn=*a*)(mail=a@b.fr))" ) );
+        assertEquals( "(&(sn=*ab*))", planner.plan( "(&(sn=*ab*))" ) );
+    }
+
+    /**
+     * Test of the statistics of the previous searches, which order the clauses once they are reliable but never reject a filter
+     */
+    @Test
+    public void testStatistics( )
+    {
+        QueryPlanner planner = newPlanner( true );
+        String strFilter = "(&(ou=*dsti*)(givenname=jean))";
+
+        assertEquals( "(&(givenname=jean)(ou=*dsti*))", planner.plan( strFilter ) );
+
+        // Only the filters of a single assertion are recorded
+        planner.record( "(&(ou=*abcd*)(givenname=paul))", 0 );
+        planner.record( "(&(ou=*abcd*))", 0 );
+
+        assertEquals( "(&(givenname=jean)(ou=*dsti*))", planner.plan( strFilter ) );
+
+        // The shape of ou=*dsti* : a substring of 4 characters
+        planner.record( "(&(ou=*wxyz*))", 0 );
+
+        assertEquals( "(&(ou=*dsti*)(givenname=jean))", planner.plan( strFilter ) );
+
+        // A shape matching most of the directory is searched last but still searched
+        for ( int i = 0; i < 10; i++ )
+        {
+            planner.record( "(&(sn=*du*))", 100000 );
+        }
+
+        assertNotNull( planner.plan( "(&(sn=*du*))" ) );
+        assertEquals( "(&(ou=*dsti*)(sn=*du*))", planner.plan( "(&(sn=*du*)(ou=*dsti*))" ) );
+    }
+
+    private static QueryPlanner newPlanner( boolean bEnabled )
+    {
+        Map<String, Set<String>> mapIndexes = new HashMap<String, Set<String>>( );
+        mapIndexes.put( "sn", new HashSet<String>( Arrays.asList( "equality", "substring" ) ) );
+        mapIndexes.put( "mail", new HashSet<String>( Arrays.asList( "equality" ) ) );
+
+        Map<String, Pattern> mapExactPatterns = new HashMap<String, Pattern>( );
+        mapExactPatterns.put( "mail", Pattern.compile( PATTERN_MAIL ) );
+        mapExactPatterns.put( "phonenumber", Pattern.compile( PATTERN_PHONE ) );
+        mapExactPatterns.put( "postalcode", Pattern.compile( "^[0-9]{5}$" ) );
+
+        Map<String, Pattern> mapPrefixPatterns = new HashMap<String, Pattern>( );
+        mapPrefixPatterns.put( "postalcode", Pattern.compile( "^[0-9]{2,4}$" ) );
+
+        return new QueryPlanner( bEnabled, mapIndexes, mapExactPatterns, mapPrefixPatterns, 2, 2, 3600000L, 500L );
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Directory of the LDAP bot : the bot messages only hold a placeholder, the directories, their next pages, the details of the persons and
+ * the refinements by a facet value are loaded on demand from the directory servlet. The refinements are posted : they become the search the
+ * next criteria of the conversation are added to.
+ */
+function loadEasyRulesBotLdapDirectories( ) {
+    $( '.easyrulesbot-ldap-placeholder' ).not( '.easyrulesbot-ldap-loading' ).each( function( ) {
+        var placeholder = $( this ).addClass( 'easyrulesbot-ldap-loading' );
+        $.get( placeholder.data( 'url' ), { action: 'directory', handle: placeholder.data( 'handle' ) }, function( html ) {
+            placeholder.replaceWith( html );
+        } );
+    } );
+}
+
+$( document ).ready( function( ) {
+    loadEasyRulesBotLdapDirectories( );
+
+    // The messages added to the conversation without reloading the page are loaded as well
+    if ( window.MutationObserver ) {
+        new MutationObserver( function( mutations ) {
+            for ( var i = 0; i < mutations.length; i++ ) {
+                if ( mutations[i].addedNodes.length > 0 ) {
+                    loadEasyRulesBotLdapDirectories( );
+                    return;
+                }
+            }
+        } ).observe( document.body, { childList: true, subtree: true } );
+    }
+} );
+
+$( document ).on( 'click', '.easyrulesbot-ldap-next', function( event ) {
+    event.preventDefault( );
+    var link = $( this );
+    var directory = link.closest( '.easyrulesbot-ldap-directory' );
+    $.get( directory.data( 'url' ), { action: 'page', handle: directory.data( 'handle' ), page: link.data( 'page' ) }, function( html ) {
+        link.closest( '.easyrulesbot-ldap-more' ).replaceWith( html );
+    } );
+} );
+
+$( document ).on( 'click', '.easyrulesbot-ldap-person', function( event ) {
+    event.preventDefault( );
+    var directory = $( this ).closest( '.easyrulesbot-ldap-directory' );
+    var modal = directory.find( '.easyrulesbot-ldap-modal' );
+    $.get( directory.data( 'url' ), { action: 'person', handle: directory.data( 'handle' ), index: $( this ).data( 'index' ) }, function( html ) {
+        modal.find( '.easyrulesbot-ldap-person-details' ).html( html );
+        modal.modal( 'show' );
+    } );
+} );
+
+$( document ).on( 'click', '.easyrulesbot-ldap-facet', function( event ) {
+    event.preventDefault( );
+    var button = $( this );
+    var result = button.closest( '.easyrulesbot-ldap-result' );
+    $.post( result.data( 'url' ), { action: 'facet', handle: result.data( 'handle' ), name: button.data( 'name' ), value: button.attr( 'data-value' ) }, function( html ) {
+        result.replaceWith( html );
+    } );
+} );